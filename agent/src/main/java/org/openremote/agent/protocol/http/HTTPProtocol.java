@@ -37,6 +37,7 @@ import org.openremote.agent.protocol.AbstractProtocol;
 import org.openremote.container.timer.TimerService;
 import org.openremote.container.web.DynamicTimeInjectorFilter;
 import org.openremote.container.web.DynamicValueInjectorFilter;
+import org.openremote.container.web.HttpRequestExecutor;
 import org.openremote.container.web.WebTargetBuilder;
 import org.openremote.model.Constants;
 import org.openremote.model.Container;
@@ -59,6 +60,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -84,6 +87,11 @@ import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
  * <p>
  * <b>NOTE: if an exception is thrown during the request that means no response is returned then this is treated as if
  * a 500 response has been received</b>
+ * <h1>Request execution</h1>
+ * Requests are executed asynchronously by a shared {@link HttpRequestExecutor} so the container scheduled executor
+ * threads are never blocked waiting for slow servers; the executor limits concurrent requests per host and stops
+ * sending requests to a host that keeps failing for a short period. A polling request is skipped if the previous
+ * request for the same attribute is still in progress.
  * <h1>Dynamic placeholder injection</h1>
  * This allows the path, query params, headers and/or {@link AgentLink#getWriteValue()} to contain the linked
  * {@link Attribute} value when sending requests.
@@ -227,6 +235,10 @@ public class HTTPProtocol extends AbstractProtocol<HTTPAgent, HTTPAgentLink> {
             return invocation.invoke();
         }
 
+        public URI getUri() {
+            return requestTarget.getUri();
+        }
+
         @Override
         public String toString() {
             return client.getUri() + (path != null ? "/" + path : "");
@@ -279,11 +291,15 @@ public class HTTPProtocol extends AbstractProtocol<HTTPAgent, HTTPAgentLink> {
     protected static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, HTTPProtocol.class);
     public static int MIN_POLLING_MILLIS = 5000;
     protected static final AtomicReference<ResteasyClient> client = new AtomicReference<>();
+    protected static final AtomicReference<HttpRequestExecutor> requestExecutor = new AtomicReference<>();
+    protected static int requestExecutorUsers;
 
     protected final Map<AttributeRef, HttpClientRequest> requestMap = new HashMap<>();
     protected final Map<AttributeRef, ScheduledFuture<?>> pollingMap = new HashMap<>();
     protected final Map<AttributeRef, Set<AttributeRef>> pollingLinkedAttributeMap = new HashMap<>();
+    protected final Set<AttributeRef> pollingInProgress = ConcurrentHashMap.newKeySet();
     protected ResteasyWebTarget webTarget;
+    protected boolean requestExecutorAcquired;
 
     public HTTPProtocol(HTTPAgent agent) {
         super(agent);
@@ -295,7 +311,9 @@ public class HTTPProtocol extends AbstractProtocol<HTTPAgent, HTTPAgentLink> {
     protected void doStop(Container container) {
         pollingMap.forEach((attributeRef, scheduledFuture) -> scheduledFuture.cancel(true));
         pollingMap.clear();
+        pollingInProgress.clear();
         requestMap.clear();
+        releaseRequestExecutor();
     }
 
     @Override
@@ -347,6 +365,8 @@ public class HTTPProtocol extends AbstractProtocol<HTTPAgent, HTTPAgentLink> {
         LOG.fine("Creating web target client for agent '" + getAgent().getId() + "': " + baseUri);
         webTarget = webTargetBuilder.build();
 
+        acquireRequestExecutor(container);
+
         setConnectionStatus(ConnectionStatus.CONNECTED);
     }
 
@@ -469,6 +489,38 @@ public class HTTPProtocol extends AbstractProtocol<HTTPAgent, HTTPAgentLink> {
         }
     }
 
+    /**
+     * The request executor is shared by all running instances; it is created by the first instance to start and shut
+     * down when the last instance stops so its threads don't outlive the protocols (or the container).
+     */
+    protected void acquireRequestExecutor(Container container) {
+        synchronized (requestExecutor) {
+            if (requestExecutorAcquired) {
+                return;
+            }
+            if (requestExecutor.get() == null) {
+                requestExecutor.set(new HttpRequestExecutor("HTTPProtocolRequests", container.getMeterRegistry()));
+            }
+            requestExecutorUsers++;
+            requestExecutorAcquired = true;
+        }
+    }
+
+    protected void releaseRequestExecutor() {
+        synchronized (requestExecutor) {
+            if (!requestExecutorAcquired) {
+                return;
+            }
+            requestExecutorAcquired = false;
+            if (--requestExecutorUsers == 0) {
+                HttpRequestExecutor executor = requestExecutor.getAndSet(null);
+                if (executor != null) {
+                    executor.shutdown();
+                }
+            }
+        }
+    }
+
     protected HttpClientRequest buildClientRequest(String path, String method, MultivaluedMap<String, ?> headers, MultivaluedMap<String, ?> queryParams, boolean pagingEnabled, String contentType, TimerService timerService) {
         return new HttpClientRequest(
             webTarget,
@@ -506,6 +558,11 @@ public class HTTPProtocol extends AbstractProtocol<HTTPAgent, HTTPAgentLink> {
 
                 String valueStr = ignoreAndConverted.value == null ? null : ValueUtil.convert(ignoreAndConverted.value, String.class);
 
+                if (!pollingInProgress.add(attributeRef)) {
+                    LOG.finest(prefixLogMessage("Previous polling request still in progress so skipping: " + attributeRef));
+                    return;
+                }
+
                 executePollingRequest(clientRequest, valueStr, response -> {
                     try {
                         onPollingResponse(
@@ -516,40 +573,53 @@ public class HTTPProtocol extends AbstractProtocol<HTTPAgent, HTTPAgentLink> {
                     } catch (Exception e) {
                         LOG.log(Level.WARNING, prefixLogMessage("Exception thrown whilst processing polling response [" + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()) + "]: " + clientRequest.requestTarget.getUriBuilder().build().toString()));
                     }
-                });
+                }).whenComplete((result, throwable) -> pollingInProgress.remove(attributeRef));
             } catch (Exception e) {
+                pollingInProgress.remove(attributeRef);
                 LOG.log(Level.WARNING, prefixLogMessage("Exception thrown whilst processing polling response [" + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()) + "]: " + clientRequest.requestTarget.getUriBuilder().build().toString()));
             }
         }, 0, pollingMillis, TimeUnit.MILLISECONDS);
     }
 
-    protected void executePollingRequest(HttpClientRequest clientRequest, String body, Consumer<Response> responseConsumer) {
-        Response originalResponse = null, lastResponse = null;
-        List<String> entities = new ArrayList<>();
+    protected CompletableFuture<Void> executePollingRequest(HttpClientRequest clientRequest, String body, Consumer<Response> responseConsumer) {
+        return submitRequest(clientRequest, () -> {
+            Response originalResponse = clientRequest.invoke(body);
 
-        try {
-            originalResponse = clientRequest.invoke(body);
             if (clientRequest.pagingEnabled) {
-                lastResponse = originalResponse;
-                entities.add(lastResponse.readEntity(String.class));
-                while ((lastResponse = executePagingRequest(clientRequest, lastResponse)) != null) {
+                Response lastResponse = originalResponse;
+                List<String> entities = new ArrayList<>();
+
+                try {
                     entities.add(lastResponse.readEntity(String.class));
-                    lastResponse.close();
+                    while ((lastResponse = executePagingRequest(clientRequest, lastResponse)) != null) {
+                        entities.add(lastResponse.readEntity(String.class));
+                        lastResponse.close();
+                    }
+                    Response pagingResponse = PagingResponse.fromResponse(originalResponse).entity(entities).build();
+                    originalResponse.close();
+                    originalResponse = pagingResponse;
+                } catch (RuntimeException e) {
+                    originalResponse.close();
+                    throw e;
                 }
-                originalResponse = PagingResponse.fromResponse(originalResponse).entity(entities).build();
             }
 
-            responseConsumer.accept(originalResponse);
-        } catch (Exception e) {
-            LOG.log(Level.WARNING, prefixLogMessage("Exception thrown whilst doing polling request [" + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()) + "]: " + clientRequest.requestTarget.getUriBuilder().build().toString()));
-        } finally {
-            if (originalResponse != null) {
-                originalResponse.close();
-            }
-            if (lastResponse != null) {
-                lastResponse.close();
+            return originalResponse;
+        }).handle((response, e) -> {
+            try {
+                if (e != null) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    LOG.log(Level.WARNING, prefixLogMessage("Exception thrown whilst doing polling request [" + cause.getMessage() + "]: " + clientRequest.requestTarget.getUriBuilder().build().toString()));
+                } else {
+                    responseConsumer.accept(response);
+                }
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
             }
-        }
+            return null;
+        });
     }
 
     protected Response executePagingRequest(HttpClientRequest clientRequest, Response response) {
@@ -560,22 +630,40 @@ public class HTTPProtocol extends AbstractProtocol<HTTPAgent, HTTPAgentLink> {
         return null;
     }
 
-    protected void executeAttributeWriteRequest(HttpClientRequest clientRequest,
-                                                Object attributeValue,
-                                                Consumer<Response> responseConsumer) {
+    protected CompletableFuture<Void> executeAttributeWriteRequest(HttpClientRequest clientRequest,
+                                                                   Object attributeValue,
+                                                                   Consumer<Response> responseConsumer) {
         String valueStr = attributeValue == null ? null : ValueUtil.convert(attributeValue, String.class);
-        Response response = null;
 
-        try {
-            response = clientRequest.invoke(valueStr);
-            responseConsumer.accept(response);
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, "Exception thrown whilst doing attribute write request", e);
-        } finally {
-            if (response != null) {
-                response.close();
+        return submitRequest(clientRequest, () -> clientRequest.invoke(valueStr)).handle((response, e) -> {
+            try {
+                if (e != null) {
+                    LOG.log(Level.SEVERE, prefixLogMessage("Exception thrown whilst doing attribute write request: " + clientRequest), e);
+                } else {
+                    responseConsumer.accept(response);
+                }
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+            }
+            return null;
+        });
+    }
+
+    protected CompletableFuture<Response> submitRequest(HttpClientRequest clientRequest, Supplier<Response> request) {
+        HttpRequestExecutor executor = requestExecutor.get();
+
+        if (executor == null) {
+            // Protocol not started so execute in the calling thread
+            try {
+                return CompletableFuture.completedFuture(request.get());
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
             }
         }
+
+        return executor.submit(clientRequest.getUri(), request);
     }
 
     protected void onPollingResponse(HttpClientRequest request,
@@ -27,14 +27,14 @@ import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import io.micrometer.prometheus.PrometheusConfig;
 import io.prometheus.client.CollectorRegistry;
 import org.openremote.container.concurrent.ContainerScheduledExecutor;
+import org.openremote.container.concurrent.ContainerThreadFactory;
 import org.openremote.container.util.LogUtil;
 import org.openremote.model.ContainerService;
 import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.ValueUtil;
 
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.*;
 import java.util.logging.Handler;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -56,15 +56,73 @@ import static org.openremote.container.util.MapAccess.getInteger;
  */
 public class Container implements org.openremote.model.Container {
 
+    /**
+     * Timing of a single service lifecycle phase during container startup
+     */
+    public static class StartupTiming {
+        protected String service;
+        protected String phase;
+        protected long startOffsetMillis;
+        protected long durationMillis;
+        protected String thread;
+
+        public StartupTiming(String service, String phase, long startOffsetMillis, long durationMillis, String thread) {
+            this.service = service;
+            this.phase = phase;
+            this.startOffsetMillis = startOffsetMillis;
+            this.durationMillis = durationMillis;
+            this.thread = thread;
+        }
+
+        public String getService() {
+            return service;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getStartOffsetMillis() {
+            return startOffsetMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-5s +%6dms %6dms %s [%s]", phase, startOffsetMillis, durationMillis, service, thread);
+        }
+    }
+
+    @FunctionalInterface
+    protected interface ServiceAction {
+        void accept(ContainerService service) throws Exception;
+    }
+
     public static final System.Logger LOG = System.getLogger(Container.class.getName());
     public static ScheduledExecutorService EXECUTOR_SERVICE;
     public static final String OR_SCHEDULED_TASKS_THREADS_MAX = "OR_SCHEDULED_TASKS_THREADS_MAX";
     public static final int OR_SCHEDULED_TASKS_THREADS_MAX_DEFAULT = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+    /**
+     * Number of threads used to init and start services that declare {@link ContainerService#getStartupDependencies}
+     * (e.g. database migration runs whilst waiting for Keycloak); a value of 1 inits and starts all services
+     * sequentially on the calling thread in dependency order.
+     */
+    public static final String OR_CONTAINER_STARTUP_THREADS = "OR_CONTAINER_STARTUP_THREADS";
+    public static final int OR_CONTAINER_STARTUP_THREADS_DEFAULT = 4;
     protected final Map<String, String> config = new HashMap<>();
     protected final boolean devMode;
     protected MeterRegistry meterRegistry;
 
     protected Thread waitingThread;
+    protected final List<StartupTiming> startupTimeline = Collections.synchronizedList(new ArrayList<>());
+    protected long startupMillis;
     protected final Map<Class<? extends ContainerService>, ContainerService> services = new LinkedHashMap<>();
 
     static {
@@ -149,28 +207,200 @@ public class Container implements org.openremote.model.Container {
         if (isRunning())
             return;
         LOG.log(INFO, ">>> Starting runtime container...");
+        long startNanos = System.nanoTime();
+        startupTimeline.clear();
+        startupMillis = 0L;
+        int startupThreads = getInteger(getConfig(), OR_CONTAINER_STARTUP_THREADS, OR_CONTAINER_STARTUP_THREADS_DEFAULT);
+        ExecutorService startupExecutor = null;
+
         try {
-            for (ContainerService service : getServices()) {
+            ContainerService[] services = getServices();
+            Map<ContainerService, Set<ContainerService>> dependencies = getStartupDependencies(services);
+            List<ContainerService> orderedServices = sortByDependencies(services, dependencies);
+
+            // Nothing can run in parallel unless at least one service has declared its dependencies
+            if (startupThreads > 1 && Arrays.stream(services).anyMatch(service -> service.getStartupDependencies() != null)) {
+                startupExecutor = Executors.newFixedThreadPool(startupThreads, new ContainerThreadFactory("Container startup"));
+            }
+
+            runPhase("init", orderedServices, dependencies, startupExecutor, startNanos, service -> {
                 LOG.log(INFO, "Initializing service: " + service.getClass().getName());
                 service.init(Container.this);
-            }
+            });
 
             // Initialise the asset model
+            long modelNanos = System.nanoTime();
             ValueUtil.initialise(this);
+            startupTimeline.add(new StartupTiming(ValueUtil.class.getName(), "model", TimeUnit.NANOSECONDS.toMillis(modelNanos - startNanos), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - modelNanos), Thread.currentThread().getName()));
 
             if (this.devMode) {
                 ValueUtil.JSON.enable(SerializationFeature.INDENT_OUTPUT);
             }
 
-            for (ContainerService service : getServices()) {
+            runPhase("start", orderedServices, dependencies, startupExecutor, startNanos, service -> {
                 LOG.log(INFO, "Starting service: " + service.getClass().getName());
                 service.start(Container.this);
-            }
+            });
         } catch (Exception ex) {
             LOG.log(ERROR, ">>> Runtime container startup failed", ex);
             throw ex;
+        } finally {
+            if (startupExecutor != null) {
+                startupExecutor.shutdownNow();
+            }
+        }
+
+        startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        LOG.log(INFO, () -> "Runtime container startup timeline (phase, start offset, duration, service, thread):\n"
+            + getStartupTimeline().stream().map(StartupTiming::toString).collect(Collectors.joining("\n")));
+        LOG.log(INFO, ">>> Runtime container startup complete in " + startupMillis + "ms");
+    }
+
+    /**
+     * Resolve the services each service must wait for; a service without declared dependencies waits for every service
+     * ahead of it in the registry.
+     */
+    protected Map<ContainerService, Set<ContainerService>> getStartupDependencies(ContainerService[] services) {
+        Map<ContainerService, Set<ContainerService>> dependencies = new IdentityHashMap<>();
+
+        for (int i = 0; i < services.length; i++) {
+            ContainerService service = services[i];
+            Collection<Class<? extends ContainerService>> declared = service.getStartupDependencies();
+            Set<ContainerService> serviceDependencies = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            if (declared == null) {
+                serviceDependencies.addAll(Arrays.asList(services).subList(0, i));
+            } else {
+                for (Class<? extends ContainerService> type : declared) {
+                    for (ContainerService dependency : services) {
+                        if (dependency != service && type.isAssignableFrom(dependency.getClass())) {
+                            serviceDependencies.add(dependency);
+                        }
+                    }
+                }
+            }
+
+            dependencies.put(service, serviceDependencies);
+        }
+
+        return dependencies;
+    }
+
+    /**
+     * Order the services so that every service comes after its dependencies, otherwise keeping registry order
+     */
+    protected static List<ContainerService> sortByDependencies(ContainerService[] services, Map<ContainerService, Set<ContainerService>> dependencies) {
+        List<ContainerService> ordered = new ArrayList<>(services.length);
+        Set<ContainerService> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ContainerService> path = new ArrayDeque<>();
+
+        for (ContainerService service : services) {
+            visit(service, dependencies, visited, path, ordered);
+        }
+
+        return ordered;
+    }
+
+    protected static void visit(ContainerService service, Map<ContainerService, Set<ContainerService>> dependencies, Set<ContainerService> visited, Deque<ContainerService> path, List<ContainerService> ordered) {
+        if (visited.contains(service)) {
+            return;
+        }
+        if (path.contains(service)) {
+            path.addLast(service);
+            throw new IllegalStateException("Cyclic container service startup dependency: "
+                + path.stream().map(s -> s.getClass().getSimpleName()).collect(Collectors.joining(" -> ")));
+        }
+
+        path.addLast(service);
+        for (ContainerService dependency : dependencies.get(service)) {
+            visit(dependency, dependencies, visited, path, ordered);
         }
-        LOG.log(INFO, ">>> Runtime container startup complete");
+        path.removeLast();
+        visited.add(service);
+        ordered.add(service);
+    }
+
+    /**
+     * Run the action for each service once all of its dependencies have completed the same phase; runs sequentially on
+     * the calling thread if there is no executor.
+     */
+    protected void runPhase(String phase, List<ContainerService> orderedServices, Map<ContainerService, Set<ContainerService>> dependencies, ExecutorService executor, long startNanos, ServiceAction action) throws Exception {
+        if (executor == null) {
+            for (ContainerService service : orderedServices) {
+                runTimed(phase, service, startNanos, action);
+            }
+            return;
+        }
+
+        Map<ContainerService, CompletableFuture<Void>> futures = new IdentityHashMap<>();
+
+        for (ContainerService service : orderedServices) {
+            CompletableFuture<?>[] dependencyFutures = dependencies.get(service).stream()
+                .map(futures::get)
+                .toArray(CompletableFuture[]::new);
+
+            futures.put(service, CompletableFuture.allOf(dependencyFutures).thenRunAsync(() -> {
+                try {
+                    runTimed(phase, service, startNanos, action);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            // Report the first service that failed, services that depend on it fail with the same cause
+            for (ContainerService service : orderedServices) {
+                CompletableFuture<Void> future = futures.get(service);
+                if (future.isCompletedExceptionally()) {
+                    try {
+                        future.join();
+                    } catch (CompletionException ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        if (cause instanceof Exception) {
+                            throw (Exception) cause;
+                        }
+                        throw new IllegalStateException("Failed to " + phase + " service: " + service.getClass().getName(), cause);
+                    }
+                }
+            }
+            throw e;
+        }
+    }
+
+    protected void runTimed(String phase, ContainerService service, long startNanos, ServiceAction action) throws Exception {
+        long serviceStartNanos = System.nanoTime();
+        try {
+            action.accept(service);
+        } finally {
+            long endNanos = System.nanoTime();
+            startupTimeline.add(new StartupTiming(
+                service.getClass().getName(),
+                phase,
+                TimeUnit.NANOSECONDS.toMillis(serviceStartNanos - startNanos),
+                TimeUnit.NANOSECONDS.toMillis(endNanos - serviceStartNanos),
+                Thread.currentThread().getName()));
+        }
+    }
+
+    /**
+     * Get the per service init/start timings of the last startup ordered by start offset
+     */
+    public List<StartupTiming> getStartupTimeline() {
+        synchronized (startupTimeline) {
+            List<StartupTiming> timeline = new ArrayList<>(startupTimeline);
+            timeline.sort(Comparator.comparingLong(StartupTiming::getStartOffsetMillis));
+            return timeline;
+        }
+    }
+
+    /**
+     * Get the total duration of the last startup or 0 if the container hasn't started
+     */
+    public long getStartupMillis() {
+        return startupMillis;
     }
 
     public synchronized void stop() {
@@ -29,6 +29,18 @@ import java.util.Properties;
 public interface Database {
 
     String PROPERTY_POOL_NAME = Database.class.getName() + ".POOL_NAME";
+    /**
+     * Number of executions of a prepared statement before the driver switches to a named server side prepared statement
+     */
+    String PROPERTY_PREPARE_THRESHOLD = Database.class.getName() + ".PREPARE_THRESHOLD";
+    /**
+     * Maximum number of server side prepared statements cached by the driver per connection
+     */
+    String PROPERTY_PREPARED_STATEMENT_CACHE_QUERIES = Database.class.getName() + ".PREPARED_STATEMENT_CACHE_QUERIES";
+    /**
+     * Maximum size in MiB of the driver prepared statement cache per connection
+     */
+    String PROPERTY_PREPARED_STATEMENT_CACHE_SIZE_MIB = Database.class.getName() + ".PREPARED_STATEMENT_CACHE_SIZE_MIB";
 
     /**
      * @return Persistence unit properties you want to use for this database (e.g. Hibernate dialect already set), will be passed into {@link #open}.
@@ -40,6 +52,12 @@ public interface Database {
      */
     void open(Properties properties, String connectionUrl, String username, String password, int connectionTimeoutSeconds, int minIdle, int maxPoolSize);
 
+    /**
+     * Modify persistence properties (e.g. set datasource) used to create a separate read only persistence unit for a
+     * read replica of the database; this is closed along with the primary datasource by {@link #close}.
+     */
+    void openReadOnly(Properties properties, String connectionUrl, String username, String password, int connectionTimeoutSeconds, int minIdle, int maxPoolSize);
+
     void close();
 
     String getConnectorName();
@@ -49,6 +67,7 @@ public interface Database {
         POSTGRES {
             protected HikariConfig hikariConfig;
             protected HikariDataSource hikariDataSource;
+            protected HikariDataSource readOnlyDataSource;
 
         @Override
         public Properties createProperties() {
@@ -63,18 +82,8 @@ public interface Database {
         @SuppressWarnings("deprecation")
         @Override
         public void open(Properties properties, String connectionUrl, String username, String password, int connectionTimeoutSeconds, int minIdle, int maxPoolSize) {
-            hikariConfig = new HikariConfig();
-            hikariConfig.setRegisterMbeans(true);
-            hikariConfig.setPoolName(properties.containsKey(PROPERTY_POOL_NAME) ? properties.get(PROPERTY_POOL_NAME).toString() : "or-pool");
+            hikariConfig = createConfig(properties, properties.containsKey(PROPERTY_POOL_NAME) ? properties.get(PROPERTY_POOL_NAME).toString() : "or-pool", connectionUrl, username, password, connectionTimeoutSeconds, minIdle, maxPoolSize);
             hikariConfig.setThreadFactory(new ContainerThreadFactory("Database Connections"));
-            hikariConfig.setDataSourceClassName("org.postgresql.ds.PGSimpleDataSource");
-            hikariConfig.addDataSourceProperty("url", connectionUrl);
-            hikariConfig.setUsername(username);
-            hikariConfig.setPassword(password);
-            hikariConfig.setConnectionTimeout(connectionTimeoutSeconds * 1000L);
-            hikariConfig.setInitializationFailTimeout(connectionTimeoutSeconds * 1000L);
-            hikariConfig.setMinimumIdle(minIdle);
-            hikariConfig.setMaximumPoolSize(maxPoolSize);
 
             hikariDataSource = new HikariDataSource(hikariConfig);
 
@@ -82,12 +91,52 @@ public interface Database {
             properties.put(AvailableSettings.DATASOURCE, hikariDataSource);
         }
 
+        @SuppressWarnings("deprecation")
+        @Override
+        public void openReadOnly(Properties properties, String connectionUrl, String username, String password, int connectionTimeoutSeconds, int minIdle, int maxPoolSize) {
+            HikariConfig readOnlyConfig = createConfig(properties, (properties.containsKey(PROPERTY_POOL_NAME) ? properties.get(PROPERTY_POOL_NAME).toString() : "or-pool") + "-replica", connectionUrl, username, password, connectionTimeoutSeconds, minIdle, maxPoolSize);
+            readOnlyConfig.setThreadFactory(new ContainerThreadFactory("Database Replica Connections"));
+            readOnlyConfig.setReadOnly(true);
+            // Don't block startup if the replica is unavailable, reads will go to the primary until it is reachable
+            readOnlyConfig.setInitializationFailTimeout(-1);
+
+            readOnlyDataSource = new HikariDataSource(readOnlyConfig);
+            properties.put(AvailableSettings.DATASOURCE, readOnlyDataSource);
+        }
+
+        protected HikariConfig createConfig(Properties properties, String poolName, String connectionUrl, String username, String password, int connectionTimeoutSeconds, int minIdle, int maxPoolSize) {
+            HikariConfig config = new HikariConfig();
+            config.setRegisterMbeans(true);
+            config.setPoolName(poolName);
+            config.setDataSourceClassName("org.postgresql.ds.PGSimpleDataSource");
+            config.addDataSourceProperty("url", connectionUrl);
+            if (properties.containsKey(PROPERTY_PREPARE_THRESHOLD)) {
+                config.addDataSourceProperty("prepareThreshold", properties.get(PROPERTY_PREPARE_THRESHOLD));
+            }
+            if (properties.containsKey(PROPERTY_PREPARED_STATEMENT_CACHE_QUERIES)) {
+                config.addDataSourceProperty("preparedStatementCacheQueries", properties.get(PROPERTY_PREPARED_STATEMENT_CACHE_QUERIES));
+            }
+            if (properties.containsKey(PROPERTY_PREPARED_STATEMENT_CACHE_SIZE_MIB)) {
+                config.addDataSourceProperty("preparedStatementCacheSizeMiB", properties.get(PROPERTY_PREPARED_STATEMENT_CACHE_SIZE_MIB));
+            }
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setConnectionTimeout(connectionTimeoutSeconds * 1000L);
+            config.setInitializationFailTimeout(connectionTimeoutSeconds * 1000L);
+            config.setMinimumIdle(minIdle);
+            config.setMaximumPoolSize(maxPoolSize);
+            return config;
+        }
+
         @Override
         public void close() {
+            if (readOnlyDataSource != null)
+                readOnlyDataSource.close();
             if (hikariDataSource != null)
                 hikariDataSource.close();
             hikariConfig = null;
             hikariDataSource = null;
+            readOnlyDataSource = null;
         }
     }
 }
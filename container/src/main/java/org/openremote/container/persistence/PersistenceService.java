@@ -19,10 +19,14 @@
  */
 package org.openremote.container.persistence;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.*;
 import jakarta.persistence.spi.ClassTransformer;
 import jakarta.persistence.spi.PersistenceUnitTransactionType;
 import jakarta.ws.rs.core.UriBuilder;
+import org.apache.camel.Exchange;
 import org.apache.camel.FluentProducerTemplate;
 import org.apache.camel.Predicate;
 import org.flywaydb.core.Flyway;
@@ -33,6 +37,7 @@ import org.hibernate.Session;
 import org.hibernate.annotations.Formula;
 import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.exception.JDBCConnectionException;
 import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
 import org.hibernate.jpa.boot.internal.PersistenceUnitInfoDescriptor;
 import org.openremote.container.message.MessageBrokerService;
@@ -62,6 +67,7 @@ import org.openremote.model.security.RealmRole;
 import org.openremote.model.security.User;
 import org.openremote.model.security.UserAttribute;
 import org.openremote.model.syslog.SyslogEvent;
+import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.ValueUtil;
 
 import javax.sql.DataSource;
@@ -72,7 +78,10 @@ import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.SQLTransientConnectionException;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
@@ -235,7 +244,39 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
     public static final String OR_STORAGE_DIR = "OR_STORAGE_DIR";
     public static final String OR_STORAGE_DIR_DEFAULT = "tmp";
     public static final String OR_DB_FLYWAY_OUT_OF_ORDER = "OR_DB_FLYWAY_OUT_OF_ORDER";
+    /**
+     * Number of executions of a statement on a connection before the JDBC driver uses a server side prepared statement
+     * (the driver default is 5); hot statements are then only parsed and planned once per connection.
+     */
+    public static final String OR_DB_PREPARE_THRESHOLD = "OR_DB_PREPARE_THRESHOLD";
+    public static final int OR_DB_PREPARE_THRESHOLD_DEFAULT = 3;
+    public static final String OR_DB_PREPARED_STATEMENT_CACHE_QUERIES = "OR_DB_PREPARED_STATEMENT_CACHE_QUERIES";
+    public static final int OR_DB_PREPARED_STATEMENT_CACHE_QUERIES_DEFAULT = 512;
+    public static final String OR_DB_PREPARED_STATEMENT_CACHE_SIZE_MIB = "OR_DB_PREPARED_STATEMENT_CACHE_SIZE_MIB";
+    public static final int OR_DB_PREPARED_STATEMENT_CACHE_SIZE_MIB_DEFAULT = 10;
+    /**
+     * Host of an optional read replica of the database (same database name and schema as the primary); when set, work
+     * submitted via {@link #doReturningReadOnlyTransaction} is routed to the replica whilst it is reachable and its
+     * replication lag is within {@link #OR_DB_REPLICA_MAX_LAG_MILLIS}, otherwise the primary is used. Reads routed to
+     * the replica can therefore be stale by up to this lag.
+     */
+    public static final String OR_DB_REPLICA_HOST = "OR_DB_REPLICA_HOST";
+    public static final String OR_DB_REPLICA_PORT = "OR_DB_REPLICA_PORT";
+    public static final String OR_DB_REPLICA_USER = "OR_DB_REPLICA_USER";
+    public static final String OR_DB_REPLICA_PASSWORD = "OR_DB_REPLICA_PASSWORD";
+    public static final String OR_DB_REPLICA_POOL_MAX_SIZE = "OR_DB_REPLICA_POOL_MAX_SIZE";
+    public static final String OR_DB_REPLICA_MAX_LAG_MILLIS = "OR_DB_REPLICA_MAX_LAG_MILLIS";
+    public static final int OR_DB_REPLICA_MAX_LAG_MILLIS_DEFAULT = 5000;
+    public static final String OR_DB_REPLICA_CHECK_INTERVAL_MILLIS = "OR_DB_REPLICA_CHECK_INTERVAL_MILLIS";
+    public static final int OR_DB_REPLICA_CHECK_INTERVAL_MILLIS_DEFAULT = 5000;
+    public static final String METRIC_PREFIX = "or.persistence";
     public static final int PRIORITY = Integer.MIN_VALUE + 100;
+    /**
+     * Replication lag of the replica in milliseconds; this is 0 if the replica has replayed everything it has received
+     * (or it isn't actually in recovery) as the last replay timestamp doesn't advance when the primary is idle.
+     */
+    protected static final String REPLICA_LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+        + " ELSE COALESCE(EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())) * 1000, 0) END";
 
     protected MessageBrokerService messageBrokerService;
     protected Database database;
@@ -247,6 +288,15 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
     protected Set<String> defaultSchemaLocations = new HashSet<>();
     protected Set<String> schemas = new HashSet<>();
     protected Path storageDir;
+    protected Properties replicaPersistenceUnitProperties;
+    protected volatile EntityManagerFactory replicaEntityManagerFactory;
+    protected long replicaMaxLagMillis;
+    protected long replicaCheckIntervalMillis;
+    protected volatile boolean replicaAvailable;
+    protected volatile long replicaLagMillis = -1;
+    protected ScheduledFuture<?> replicaCheckFuture;
+    protected Counter replicaReadCounter;
+    protected Counter primaryReadCounter;
 
     public static Predicate isPersistenceEventForEntityType(Class<?> type) {
         return exchange -> {
@@ -255,11 +305,37 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
         };
     }
 
+    /**
+     * Get the {@link PersistenceEvent}s of a {@link #PERSISTENCE_TOPIC} exchange, the body is either a single event or
+     * a batch of events for the same entity type published by {@link #publishPersistenceEvents}.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<PersistenceEvent<?>> getPersistenceEvents(Exchange exchange) {
+        Object body = exchange.getIn().getBody();
+
+        if (body instanceof PersistenceEvent<?> persistenceEvent) {
+            return Collections.singletonList(persistenceEvent);
+        }
+        if (body instanceof List<?> list && list.stream().allMatch(item -> item instanceof PersistenceEvent)) {
+            return (List<PersistenceEvent<?>>) list;
+        }
+        return Collections.emptyList();
+    }
+
     @Override
     public int getPriority() {
         return PRIORITY;
     }
 
+    /**
+     * Only needs the configuration and the database so schema migration can overlap with waiting for the identity
+     * provider.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getStartupDependencies() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void init(Container container) throws Exception {
         this.messageBrokerService = container.hasService(MessageBrokerService.class)
@@ -300,6 +376,10 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
 
         persistenceUnitProperties.put(AvailableSettings.DEFAULT_SCHEMA, dbSchema);
 
+        persistenceUnitProperties.put(Database.PROPERTY_PREPARE_THRESHOLD, getInteger(container.getConfig(), OR_DB_PREPARE_THRESHOLD, OR_DB_PREPARE_THRESHOLD_DEFAULT));
+        persistenceUnitProperties.put(Database.PROPERTY_PREPARED_STATEMENT_CACHE_QUERIES, getInteger(container.getConfig(), OR_DB_PREPARED_STATEMENT_CACHE_QUERIES, OR_DB_PREPARED_STATEMENT_CACHE_QUERIES_DEFAULT));
+        persistenceUnitProperties.put(Database.PROPERTY_PREPARED_STATEMENT_CACHE_SIZE_MIB, getInteger(container.getConfig(), OR_DB_PREPARED_STATEMENT_CACHE_SIZE_MIB, OR_DB_PREPARED_STATEMENT_CACHE_SIZE_MIB_DEFAULT));
+
         // Add custom integrator so we can register a custom flush entity event listener
         persistenceUnitProperties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER, IntegratorProvider.class.getName());
 
@@ -329,6 +409,18 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
 
         openDatabase(container, database, dbUsername, dbPassword, connectionUrl);
         prepareSchema(container, connectionUrl, dbUsername, dbPassword, dbSchema);
+
+        String replicaHost = getString(container.getConfig(), OR_DB_REPLICA_HOST, null);
+        if (!TextUtil.isNullOrEmpty(replicaHost)) {
+            int replicaPort = getInteger(container.getConfig(), OR_DB_REPLICA_PORT, dbPort);
+            String replicaUsername = getString(container.getConfig(), OR_DB_REPLICA_USER, dbUsername);
+            String replicaPassword = getString(container.getConfig(), OR_DB_REPLICA_PASSWORD, dbPassword);
+            String replicaConnectionUrl = "jdbc:" + database.getConnectorName() + "://" + replicaHost + ":" + replicaPort + "/" + dbName;
+            replicaConnectionUrl = UriBuilder.fromUri(replicaConnectionUrl).replaceQueryParam("currentSchema", dbSchema).build().toString();
+            replicaMaxLagMillis = getInteger(container.getConfig(), OR_DB_REPLICA_MAX_LAG_MILLIS, OR_DB_REPLICA_MAX_LAG_MILLIS_DEFAULT);
+            replicaCheckIntervalMillis = getInteger(container.getConfig(), OR_DB_REPLICA_CHECK_INTERVAL_MILLIS, OR_DB_REPLICA_CHECK_INTERVAL_MILLIS_DEFAULT);
+            openReplicaDatabase(container, database, replicaUsername, replicaPassword, replicaConnectionUrl);
+        }
     }
 
     protected EntityManagerFactory getEntityManagerFactory(Properties properties, List<String> classNames) {
@@ -384,10 +476,32 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
 
         this.entityManagerFactory = getEntityManagerFactory(persistenceUnitProperties, entityClasses);
         //Persistence.createEntityManagerFactory(persistenceUnitName, persistenceUnitProperties);
+
+        if (replicaPersistenceUnitProperties != null) {
+            replicaEntityManagerFactory = getEntityManagerFactory(replicaPersistenceUnitProperties, entityClasses);
+            MeterRegistry meterRegistry = container.getMeterRegistry();
+
+            if (meterRegistry != null) {
+                Gauge.builder(METRIC_PREFIX + ".replica.lag", this, service -> service.replicaLagMillis).baseUnit("milliseconds").register(meterRegistry);
+                replicaReadCounter = meterRegistry.counter(METRIC_PREFIX + ".read.only.transactions", "target", "replica");
+                primaryReadCounter = meterRegistry.counter(METRIC_PREFIX + ".read.only.transactions", "target", "primary");
+            }
+
+            replicaCheckFuture = container.getExecutorService().scheduleWithFixedDelay(this::checkReplica, 0, replicaCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
     public void stop(Container container) throws Exception {
+        if (replicaCheckFuture != null) {
+            replicaCheckFuture.cancel(true);
+            replicaCheckFuture = null;
+        }
+        if (replicaEntityManagerFactory != null) {
+            replicaEntityManagerFactory.close();
+            replicaEntityManagerFactory = null;
+        }
+        replicaAvailable = false;
         if (entityManagerFactory != null) {
             entityManagerFactory.close();
         }
@@ -401,7 +515,11 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
     }
 
     public EntityManager createEntityManager() {
-        EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+        return createEntityManager(getEntityManagerFactory());
+    }
+
+    protected EntityManager createEntityManager(EntityManagerFactory entityManagerFactory) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
 
         if (messageBrokerService != null) {
             // The persistence event interceptor is scoped to an EntityManager, so each new EM needs
@@ -423,7 +541,68 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
     }
 
     public <R> R doReturningTransaction(Function<EntityManager, R> entityManagerFunction) {
-        EntityManager em = createEntityManager();
+        return doReturningTransaction(createEntityManager(), entityManagerFunction);
+    }
+
+    public void doReadOnlyTransaction(Consumer<EntityManager> entityManagerConsumer) {
+        doReturningReadOnlyTransaction(entityManager -> {
+            entityManagerConsumer.accept(entityManager);
+            return null;
+        });
+    }
+
+    /**
+     * Executes work that doesn't modify the database; this is routed to the read replica (if configured) when it is
+     * available and its replication lag is acceptable otherwise the primary is used. If the replica connection fails
+     * then the work is retried on the primary so the work must be safe to repeat. Entities loaded are read only.
+     * <p>
+     * Only use this for reads that can tolerate stale results (e.g. reporting and export queries); reads that must see
+     * recent writes should use {@link #doReturningTransaction}.
+     */
+    public <R> R doReturningReadOnlyTransaction(Function<EntityManager, R> entityManagerFunction) {
+        EntityManagerFactory replicaFactory = replicaEntityManagerFactory;
+
+        if (replicaFactory != null && isReplicaUsable()) {
+            try {
+                R result = doReturningTransaction(createReadOnlyEntityManager(replicaFactory), entityManagerFunction);
+                if (replicaReadCounter != null) {
+                    replicaReadCounter.increment();
+                }
+                return result;
+            } catch (RuntimeException ex) {
+                if (!isConnectionFailure(ex)) {
+                    throw ex;
+                }
+                replicaAvailable = false;
+                LOG.log(Level.WARNING, "Database read replica connection failed so using primary until the next replica check: " + ex.getMessage());
+            }
+        }
+
+        R result = doReturningTransaction(createReadOnlyEntityManager(getEntityManagerFactory()), entityManagerFunction);
+        if (primaryReadCounter != null) {
+            primaryReadCounter.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Indicates whether read only work will currently be routed to the read replica
+     */
+    public boolean isReplicaUsable() {
+        return replicaEntityManagerFactory != null && replicaAvailable && replicaLagMillis <= replicaMaxLagMillis;
+    }
+
+    public long getReplicaLagMillis() {
+        return replicaLagMillis;
+    }
+
+    protected EntityManager createReadOnlyEntityManager(EntityManagerFactory entityManagerFactory) {
+        EntityManager entityManager = createEntityManager(entityManagerFactory);
+        entityManager.unwrap(Session.class).setDefaultReadOnly(true);
+        return entityManager;
+    }
+
+    protected <R> R doReturningTransaction(EntityManager em, Function<EntityManager, R> entityManagerFunction) {
         EntityTransaction tx = em.getTransaction();
         try {
             tx.begin();
@@ -505,6 +684,35 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
         }
     }
 
+    /**
+     * Publish a large number of {@link PersistenceEvent}s (e.g. after a bulk insert) as coalesced batches so they only
+     * take up a few slots of the {@link #PERSISTENCE_TOPIC} queue; the events are grouped by entity type and each
+     * group is sent in batches of at most the specified size. The body of a batch exchange is a {@link List} of the
+     * events and the {@link #HEADER_ENTITY_TYPE} is the type of their entities, consumers should use
+     * {@link #getPersistenceEvents} to handle both single and batched events.
+     */
+    public void publishPersistenceEvents(List<? extends PersistenceEvent<?>> persistenceEvents, int batchSize) {
+        FluentProducerTemplate producerTemplate = messageBrokerService.getFluentProducerTemplate();
+
+        if (persistenceEvents.isEmpty() || producerTemplate == null) {
+            return;
+        }
+
+        Map<Class<?>, List<PersistenceEvent<?>>> entityTypeEvents = new LinkedHashMap<>();
+        persistenceEvents.forEach(persistenceEvent ->
+            entityTypeEvents.computeIfAbsent(persistenceEvent.getEntity().getClass(), type -> new ArrayList<>()).add(persistenceEvent));
+
+        entityTypeEvents.forEach((entityType, events) -> {
+            for (int i = 0; i < events.size(); i += batchSize) {
+                producerTemplate
+                    .withBody(new ArrayList<>(events.subList(i, Math.min(i + batchSize, events.size()))))
+                    .withHeader(HEADER_ENTITY_TYPE, entityType)
+                    .to(PERSISTENCE_TOPIC)
+                    .asyncSend();
+            }
+        });
+    }
+
     protected void openDatabase(Container container, Database database, String username, String password, String connectionUrl) {
 
         int databaseMinPoolSize = getInteger(container.getConfig(), OR_DB_POOL_MIN_SIZE, OR_DB_POOL_MIN_SIZE_DEFAULT);
@@ -514,6 +722,63 @@ public class PersistenceService implements ContainerService, Consumer<Persistenc
         database.open(persistenceUnitProperties, connectionUrl, username, password, connectionTimeoutSeconds, databaseMinPoolSize, databaseMaxPoolSize);
     }
 
+    protected void openReplicaDatabase(Container container, Database database, String username, String password, String connectionUrl) {
+
+        int databaseMinPoolSize = getInteger(container.getConfig(), OR_DB_POOL_MIN_SIZE, OR_DB_POOL_MIN_SIZE_DEFAULT);
+        int databaseMaxPoolSize = getInteger(container.getConfig(), OR_DB_REPLICA_POOL_MAX_SIZE, getInteger(container.getConfig(), OR_DB_POOL_MAX_SIZE, OR_DB_POOL_MAX_SIZE_DEFAULT));
+        int connectionTimeoutSeconds = getInteger(container.getConfig(), OR_DB_CONNECTION_TIMEOUT_SECONDS, OR_DB_CONNECTION_TIMEOUT_SECONDS_DEFAULT);
+        LOG.info("Opening database read replica connection: " + connectionUrl);
+        Properties properties = new Properties();
+        properties.putAll(persistenceUnitProperties);
+        database.openReadOnly(properties, connectionUrl, username, password, connectionTimeoutSeconds, Math.min(databaseMinPoolSize, databaseMaxPoolSize), databaseMaxPoolSize);
+        replicaPersistenceUnitProperties = properties;
+    }
+
+    /**
+     * Checks the replica is reachable and updates its replication lag
+     */
+    protected void checkReplica() {
+        EntityManagerFactory replicaFactory = replicaEntityManagerFactory;
+        if (replicaFactory == null) {
+            return;
+        }
+
+        EntityManager em = null;
+        try {
+            em = replicaFactory.createEntityManager();
+            Number lag = (Number) em.createNativeQuery(REPLICA_LAG_QUERY).getSingleResult();
+            replicaLagMillis = lag != null ? lag.longValue() : 0L;
+
+            if (!replicaAvailable) {
+                LOG.info("Database read replica is available: lag=" + replicaLagMillis + "ms");
+            }
+            if (replicaLagMillis > replicaMaxLagMillis) {
+                LOG.fine("Database read replica lag exceeds maximum so using primary: lag=" + replicaLagMillis + "ms");
+            }
+            replicaAvailable = true;
+        } catch (Exception e) {
+            if (replicaAvailable) {
+                LOG.log(Level.WARNING, "Database read replica is unavailable so using primary: " + e.getMessage());
+            }
+            replicaAvailable = false;
+            replicaLagMillis = -1;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+        }
+    }
+
+    protected static boolean isConnectionFailure(Throwable throwable) {
+        while (throwable != null) {
+            if (throwable instanceof JDBCConnectionException || throwable instanceof SQLTransientConnectionException) {
+                return true;
+            }
+            throwable = throwable.getCause();
+        }
+        return false;
+    }
+
     protected void prepareSchema(Container container, String connectionUrl, String databaseUsername, String databasePassword, String schemaName) {
 
         boolean outOfOrder = getBoolean(container.getConfig(), OR_DB_FLYWAY_OUT_OF_ORDER, false);
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.container.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.ws.rs.core.Response;
+import org.openremote.container.concurrent.ContainerExecutor;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes blocking JAX-RS requests on a dedicated bounded thread pool so that callers (typically tasks running on
+ * the container scheduled executor) are never blocked by slow upstream servers; each request is exposed as a
+ * {@link CompletableFuture}.
+ * <p>
+ * Requests are tracked per target host (host and port of the request {@link URI}):
+ * <ul>
+ * <li>The number of in-flight requests per host is limited; requests exceeding the limit wait in a bounded per host
+ * queue and are started in order as in-flight requests complete, requests are only rejected when this queue is
+ * full</li>
+ * <li>A simple circuit breaker opens after consecutive failures (exceptions or 5xx responses) and rejects requests to
+ * that host until the open period has elapsed; a single trial request is then allowed through and the circuit closes
+ * if it succeeds or opens again if it fails, other requests are rejected whilst the trial is in progress</li>
+ * <li>Requests that take longer than the overall request timeout (including any time spent queued) are completed
+ * exceptionally with a {@link TimeoutException}, queued requests that time out are never started and any response
+ * that arrives later is closed</li>
+ * <li>If a {@link MeterRegistry} is supplied then request timings and rejections are recorded with a {@code host}
+ * tag</li>
+ * </ul>
+ * Rejected requests complete exceptionally with a {@link RejectedExecutionException}.
+ */
+public class HttpRequestExecutor {
+
+    protected enum Admission {
+        REJECTED,
+        ALLOWED,
+        TRIAL,
+        QUEUED
+    }
+
+    protected static class PendingRequest {
+        protected final Supplier<Response> request;
+        protected final CompletableFuture<Response> future;
+        protected final boolean trial;
+
+        protected PendingRequest(Supplier<Response> request, CompletableFuture<Response> future, boolean trial) {
+            this.request = request;
+            this.future = future;
+            this.trial = trial;
+        }
+    }
+
+    protected class HostState {
+        protected final String host;
+        protected final Deque<PendingRequest> queuedRequests = new ArrayDeque<>();
+        protected int inFlightRequests;
+        protected int consecutiveFailures;
+        protected long openUntilMillis;
+        protected boolean trialInProgress;
+        protected Timer requestTimer;
+        protected Counter rejectedCounter;
+
+        protected HostState(String host) {
+            this.host = host;
+
+            if (meterRegistry != null) {
+                Tags tags = Tags.of("name", name, "host", host);
+                requestTimer = meterRegistry.timer(METRIC_PREFIX + ".requests", tags);
+                rejectedCounter = meterRegistry.counter(METRIC_PREFIX + ".rejected", tags);
+            }
+        }
+
+        /**
+         * Check the circuit; once the open period has elapsed only a single trial request is allowed until it
+         * completes.
+         */
+        protected synchronized Admission admit(long now) {
+            if (consecutiveFailures < circuitFailureThreshold) {
+                return Admission.ALLOWED;
+            }
+            if (now < openUntilMillis || trialInProgress) {
+                return Admission.REJECTED;
+            }
+            trialInProgress = true;
+            return Admission.TRIAL;
+        }
+
+        protected synchronized void onSuccess(boolean trial) {
+            if (trial) {
+                trialInProgress = false;
+            }
+            consecutiveFailures = 0;
+        }
+
+        protected synchronized void onFailure(boolean trial, long now) {
+            if (trial) {
+                trialInProgress = false;
+            }
+            consecutiveFailures++;
+            if (consecutiveFailures >= circuitFailureThreshold) {
+                if (now >= openUntilMillis) {
+                    LOG.info("Opening circuit for host '" + host + "' after " + consecutiveFailures + " consecutive failures: " + name);
+                }
+                openUntilMillis = now + circuitOpenMillis;
+            }
+        }
+
+        /**
+         * The request was never made (e.g. it timed out whilst queued) so if it was the trial request then allow
+         * another one.
+         */
+        protected synchronized void onAborted(boolean trial) {
+            if (trial) {
+                trialInProgress = false;
+            }
+        }
+
+        /**
+         * Take an in-flight slot for the request if one is free otherwise queue it; returns
+         * {@link Admission#ALLOWED} if the request should be started now, {@link Admission#QUEUED} if it was queued and
+         * {@link Admission#REJECTED} if the queue is full.
+         */
+        protected synchronized Admission offer(PendingRequest pendingRequest) {
+            if (inFlightRequests < maxRequestsPerHost) {
+                inFlightRequests++;
+                return Admission.ALLOWED;
+            }
+            if (queuedRequests.size() < maxQueuedRequestsPerHost) {
+                queuedRequests.add(pendingRequest);
+                return Admission.QUEUED;
+            }
+            return Admission.REJECTED;
+        }
+
+        /**
+         * Hand the in-flight slot of a completed request to the next queued request or release it if there is none
+         */
+        protected synchronized PendingRequest next() {
+            PendingRequest pendingRequest = queuedRequests.poll();
+            if (pendingRequest == null) {
+                inFlightRequests--;
+            }
+            return pendingRequest;
+        }
+
+        protected void onRejected() {
+            if (rejectedCounter != null) {
+                rejectedCounter.increment();
+            }
+        }
+    }
+
+    public static final String METRIC_PREFIX = "or.http.client";
+    public static final int DEFAULT_MAX_THREADS = 20;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = WebTargetBuilder.CONNECTION_POOL_SIZE;
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS_PER_HOST = 1000;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    public static final long DEFAULT_CIRCUIT_OPEN_MILLIS = 30000;
+    protected static final Logger LOG = Logger.getLogger(HttpRequestExecutor.class.getName());
+
+    protected final String name;
+    protected final ThreadPoolExecutor executorService;
+    protected final int maxRequestsPerHost;
+    protected final int maxQueuedRequestsPerHost;
+    protected final long requestTimeoutMillis;
+    protected final int circuitFailureThreshold;
+    protected final long circuitOpenMillis;
+    protected final MeterRegistry meterRegistry;
+    protected final Map<String, HostState> hostStates = new ConcurrentHashMap<>();
+
+    public HttpRequestExecutor(String name, MeterRegistry meterRegistry) {
+        this(name, DEFAULT_MAX_THREADS, DEFAULT_MAX_REQUESTS_PER_HOST, DEFAULT_MAX_QUEUED_REQUESTS_PER_HOST, DEFAULT_REQUEST_TIMEOUT_MILLIS, DEFAULT_CIRCUIT_FAILURE_THRESHOLD, DEFAULT_CIRCUIT_OPEN_MILLIS, meterRegistry);
+    }
+
+    public HttpRequestExecutor(String name,
+                               int maxThreads,
+                               int maxRequestsPerHost,
+                               int maxQueuedRequestsPerHost,
+                               long requestTimeoutMillis,
+                               int circuitFailureThreshold,
+                               long circuitOpenMillis,
+                               MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.maxQueuedRequestsPerHost = maxQueuedRequestsPerHost;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.circuitFailureThreshold = circuitFailureThreshold;
+        this.circuitOpenMillis = circuitOpenMillis;
+        this.meterRegistry = meterRegistry;
+        // Per host limits bound the number of in-flight requests so the queue only needs to absorb bursts
+        this.executorService = new ContainerExecutor(name, maxThreads, maxThreads, 60, DEFAULT_QUEUE_CAPACITY, new ThreadPoolExecutor.AbortPolicy());
+        this.executorService.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Execute the supplied blocking request on the request thread pool; the {@link URI} is used to determine the
+     * target host for concurrency limits, circuit breaking and metrics. The caller is responsible for closing the
+     * {@link Response}.
+     */
+    public CompletableFuture<Response> submit(URI uri, Supplier<Response> request) {
+        HostState hostState = hostStates.computeIfAbsent(getHostKey(uri), HostState::new);
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        Admission admission = hostState.admit(System.currentTimeMillis());
+
+        if (admission == Admission.REJECTED) {
+            hostState.onRejected();
+            future.completeExceptionally(new RejectedExecutionException("Circuit is open for host: " + hostState.host));
+            return future;
+        }
+
+        // Apply the timeout before queueing so the time spent waiting for an in-flight slot counts towards it
+        CompletableFuture<Response> result = requestTimeoutMillis > 0 ? future.orTimeout(requestTimeoutMillis, TimeUnit.MILLISECONDS) : future;
+        PendingRequest pendingRequest = new PendingRequest(request, future, admission == Admission.TRIAL);
+
+        switch (hostState.offer(pendingRequest)) {
+            case ALLOWED -> dispatch(hostState, pendingRequest);
+            case REJECTED -> {
+                hostState.onRejected();
+                hostState.onAborted(pendingRequest.trial);
+                future.completeExceptionally(new RejectedExecutionException("Too many queued requests for host: " + hostState.host));
+            }
+            case QUEUED -> {
+                // Started once an in-flight request for this host completes
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Start the request on the request thread pool; the request holds an in-flight slot of the host which is handed
+     * on to the next queued request when it completes (or can't be started).
+     */
+    protected void dispatch(HostState hostState, PendingRequest pendingRequest) {
+        while (pendingRequest != null) {
+            if (pendingRequest.future.isDone()) {
+                // Timed out whilst queued
+                hostState.onAborted(pendingRequest.trial);
+                pendingRequest = hostState.next();
+                continue;
+            }
+
+            try {
+                PendingRequest startRequest = pendingRequest;
+                executorService.execute(() -> execute(hostState, startRequest));
+                return;
+            } catch (RejectedExecutionException e) {
+                hostState.onRejected();
+                hostState.onAborted(pendingRequest.trial);
+                pendingRequest.future.completeExceptionally(e);
+                pendingRequest = hostState.next();
+            }
+        }
+    }
+
+    protected void execute(HostState hostState, PendingRequest pendingRequest) {
+        long startNanos = System.nanoTime();
+        Response response = null;
+        boolean failed = false;
+
+        try {
+            response = pendingRequest.request.get();
+            if (response != null && response.getStatusInfo().getFamily() == Response.Status.Family.SERVER_ERROR) {
+                hostState.onFailure(pendingRequest.trial, System.currentTimeMillis());
+            } else {
+                hostState.onSuccess(pendingRequest.trial);
+            }
+        } catch (Throwable t) {
+            failed = true;
+            hostState.onFailure(pendingRequest.trial, System.currentTimeMillis());
+            pendingRequest.future.completeExceptionally(t);
+        } finally {
+            if (hostState.requestTimer != null) {
+                hostState.requestTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        // Future may already have timed out in which case nobody is going to consume the response
+        if (!failed && !pendingRequest.future.complete(response)) {
+            closeQuietly(response);
+        }
+
+        dispatch(hostState, hostState.next());
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+        if (meterRegistry != null) {
+            hostStates.values().forEach(hostState -> {
+                meterRegistry.remove(hostState.requestTimer);
+                meterRegistry.remove(hostState.rejectedCounter);
+            });
+        }
+        hostStates.clear();
+    }
+
+    protected static String getHostKey(URI uri) {
+        if (uri == null || uri.getHost() == null) {
+            return "unknown";
+        }
+        return uri.getPort() > 0 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+    }
+
+    protected static void closeQuietly(Response response) {
+        if (response != null) {
+            try {
+                response.close();
+            } catch (Exception e) {
+                LOG.log(Level.FINEST, "Failed to close response", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "name='" + name + '\'' +
+            ", maxRequestsPerHost=" + maxRequestsPerHost +
+            ", maxQueuedRequestsPerHost=" + maxQueuedRequestsPerHost +
+            ", requestTimeoutMillis=" + requestTimeoutMillis +
+            '}';
+    }
+}
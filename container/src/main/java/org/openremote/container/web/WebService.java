@@ -49,6 +49,7 @@ import org.xnio.Options;
 import java.net.Inet4Address;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -103,7 +104,9 @@ public abstract class WebService implements ContainerService {
     protected String host;
     protected int port;
     protected Undertow undertow;
-    protected List<RequestHandler> httpHandlers = new ArrayList<>();
+    // Handlers are added during (potentially parallel) service startup and by protocols at runtime whilst requests are
+    // being routed
+    protected List<RequestHandler> httpHandlers = new CopyOnWriteArrayList<>();
     protected URI containerHostUri;
 
     protected static String getLocalIpAddress() throws Exception {
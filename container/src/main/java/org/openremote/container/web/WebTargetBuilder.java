@@ -62,6 +62,7 @@ public class WebTargetBuilder {
     public static final int CONNECTION_POOL_SIZE = 10;
     public static final long CONNECTION_CHECKOUT_TIMEOUT_MILLISECONDS = 5000;
     public static final long CONNECTION_TIMEOUT_MILLISECONDS = 10000;
+    public static final long CONNECTION_TIME_TO_LIVE_MILLISECONDS = 60000;
     protected ResteasyClient client;
     protected static ExecutorService executorService;
     protected BasicAuthentication basicAuthentication;
@@ -182,8 +183,14 @@ public class WebTargetBuilder {
             .setConnectTimeout(Long.valueOf(CONNECTION_CHECKOUT_TIMEOUT_MILLISECONDS).intValue())
             .setSocketTimeout(Long.valueOf(overrideSocketTimeout).intValue())
             .build();
+        // The engine owns the connection pool so the pool size must be set here (the resteasy builder pool size is
+        // ignored when an engine is supplied), otherwise apache defaults to 2 connections per host
         HttpClient apacheClient = HttpClientBuilder.create()
             .setDefaultRequestConfig(requestConfig)
+            .setMaxConnTotal(connectionPoolSize)
+            .setMaxConnPerRoute(connectionPoolSize)
+            .setConnectionTimeToLive(CONNECTION_TIME_TO_LIVE_MILLISECONDS, TimeUnit.MILLISECONDS)
+            .evictIdleConnections(CONNECTION_TIME_TO_LIVE_MILLISECONDS, TimeUnit.MILLISECONDS)
             .build();
         ApacheHttpClient43Engine engine = new ApacheHttpClient43Engine(apacheClient);
 
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.asset;
+
+import org.openjdk.jmh.annotations.*;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.impl.ThingAsset;
+import org.openremote.model.attribute.Attribute;
+import org.openremote.model.attribute.MetaItem;
+import org.openremote.model.util.UniqueIdentifierGenerator;
+import org.openremote.model.util.ValueUtil;
+import org.openremote.model.value.MetaItemType;
+import org.openremote.model.value.ValueType;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the explicit {@link Asset#copy} (which {@link ValueUtil#clone} now uses for assets) with the Jackson round
+ * trip that {@link ValueUtil#clone} previously used for assets; the asset has the given number of attributes of mixed
+ * value types (numbers, text, booleans, arrays and JSON objects) with meta. Run with
+ * {@code -PjmhArgs="AssetCopy -prof gc"} to also compare the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssetCopyBenchmark {
+
+    @Param({"10", "50"})
+    public int attributeCount;
+
+    protected Asset<?> asset;
+
+    @Setup
+    public void setup() {
+        // Needed to deserialise the asset type
+        ValueUtil.initialise(null);
+
+        asset = new ThingAsset("Copy benchmark asset")
+            .setRealm("master")
+            .setId(UniqueIdentifierGenerator.generateId());
+        asset.setCreatedOn(new Date());
+
+        for (int i = 0; i < attributeCount; i++) {
+            Attribute<?> attribute = switch (i % 5) {
+                case 0 -> new Attribute<>("number" + i, ValueType.NUMBER, i * 1.5d).addMeta(new MetaItem<>(MetaItemType.LABEL, "Number " + i));
+                case 1 -> new Attribute<>("text" + i, ValueType.TEXT, "text" + i);
+                case 2 -> new Attribute<>("boolean" + i, ValueType.BOOLEAN, i % 2 == 0).addMeta(new MetaItem<>(MetaItemType.READ_ONLY, true));
+                case 3 -> new Attribute<>("textArray" + i, ValueType.TEXT.asArray(), new String[] {"a" + i, "b" + i});
+                default -> new Attribute<>("json" + i, ValueType.JSON_OBJECT, ValueUtil.parse("{\"a\": {\"b\": " + i + "}}", ValueType.ObjectMap.class).orElseThrow());
+            };
+            asset.getAttributes().addOrReplace(attribute);
+        }
+    }
+
+    @Benchmark
+    public Asset<?> copy() {
+        return asset.copy();
+    }
+
+    @Benchmark
+    public Asset<?> valueUtilClone() {
+        return ValueUtil.clone(asset);
+    }
+
+    @Benchmark
+    public Asset<?> jsonRoundTrip() throws Exception {
+        return ValueUtil.JSON.readValue(ValueUtil.JSON.writeValueAsString(asset), Asset.class);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.energy;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Compares a full storage optimisation run of the {@link EnergyOptimiser} using the primitive functions and re-usable
+ * buffers with the same run using the boxed {@link Function}/{@link BiFunction} methods (which is how the optimiser
+ * was used before the primitive functions were introduced). Run with {@code -PjmhArgs="EnergyOptimiser -prof gc"} to
+ * also compare the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnergyOptimiserBenchmark {
+
+    @Param({"0.25", "1"})
+    public double intervalSize;
+
+    protected EnergyOptimiser optimiser;
+    protected int count;
+    protected double energyLevel = 63.7d;
+    protected double powerImportMax = 7.3d;
+    protected double powerExportMax = -11.7d;
+    protected double[] powerNets;
+    protected double[] tariffImports;
+    protected double[] tariffExports;
+    protected double[] importLimits;
+    protected double[] exportLimits;
+    protected double[] energyLevelMins;
+    protected double[] energyLevelMaxs;
+
+    @Setup
+    public void setup() {
+        optimiser = new EnergyOptimiser(intervalSize, 1d);
+        count = (int) (24d / intervalSize);
+        powerNets = new double[count];
+        tariffImports = new double[count];
+        tariffExports = new double[count];
+        importLimits = new double[count];
+        exportLimits = new double[count];
+        energyLevelMins = new double[count];
+        energyLevelMaxs = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            powerNets[i] = (((i * 5) % 9) - 4) * 3d;
+            tariffImports[i] = (((i * 7) % 11) - 3) / 10d;
+            tariffExports[i] = (((i * 3) % 7) - 4) / 10d;
+        }
+        Arrays.fill(importLimits, 30d);
+        Arrays.fill(exportLimits, -30d);
+        Arrays.fill(energyLevelMins, 41.9d);
+        Arrays.fill(energyLevelMaxs, 171.3d);
+        energyLevelMins[count / 3] = 149.1d;
+    }
+
+    @Benchmark
+    public double[] primitive() {
+        double[] mins = Arrays.copyOf(energyLevelMins, count);
+        double[] setpoints = new double[count];
+        IntToDoubleFunction importMaxCalculator = interval -> powerImportMax;
+        IntToDoubleFunction exportMaxCalculator = interval -> powerExportMax;
+
+        optimiser.normaliseEnergyMinRequirements(mins, importMaxCalculator, exportMaxCalculator, energyLevel);
+        EnergyOptimiser.CostAndPowerOptimiser importOptimiser = optimiser.getImportCostAndPowerOptimiser(powerNets, importLimits, tariffImports, tariffExports, 0.01d);
+        EnergyOptimiser.CostAndPowerOptimiser exportOptimiser = optimiser.getExportCostAndPowerOptimiser(powerNets, exportLimits, tariffImports, tariffExports, 0.02d);
+        double[][] importCostAndPower = optimiser.getImportCostAndPower(importOptimiser, powerImportMax);
+        double[][] exportCostAndPower = optimiser.getExportCostAndPower(exportOptimiser, powerExportMax);
+        IntToDoubleFunction energyLevelCalculator = optimiser.getEnergyLevelCalculator(energyLevel, setpoints);
+        optimiser.applyEnergyMinImports(importCostAndPower, mins, setpoints, energyLevelCalculator, importOptimiser, importMaxCalculator);
+        optimiser.applyEarningOpportunities(importCostAndPower, exportCostAndPower, mins, energyLevelMaxs, setpoints, energyLevelCalculator, importMaxCalculator, exportMaxCalculator);
+        return setpoints;
+    }
+
+    @Benchmark
+    public double[] boxed() {
+        double[] mins = Arrays.copyOf(energyLevelMins, count);
+        double[] setpoints = new double[count];
+        Function<Integer, Double> importMaxCalculator = interval -> powerImportMax;
+        Function<Integer, Double> exportMaxCalculator = interval -> powerExportMax;
+
+        optimiser.normaliseEnergyMinRequirements(mins, importMaxCalculator, exportMaxCalculator, energyLevel);
+        BiFunction<Integer, double[], double[]> importOptimiser = optimiser.getImportOptimiser(powerNets, importLimits, tariffImports, tariffExports, 0.01d);
+        BiFunction<Integer, Double, double[]> exportOptimiser = optimiser.getExportOptimiser(powerNets, exportLimits, tariffImports, tariffExports, 0.02d);
+        double[][] importCostAndPower = IntStream.range(0, count).mapToObj(i -> importOptimiser.apply(i, new double[] {0d, powerImportMax})).toArray(double[][]::new);
+        double[][] exportCostAndPower = IntStream.range(0, count).mapToObj(i -> exportOptimiser.apply(i, powerExportMax)).toArray(double[][]::new);
+        Function<Integer, Double> energyLevelCalculator = interval ->
+            energyLevel + IntStream.range(0, interval).mapToDouble(j -> setpoints[j] * intervalSize).sum();
+        optimiser.applyEnergyMinImports(importCostAndPower, mins, setpoints, energyLevelCalculator, importOptimiser, importMaxCalculator);
+        optimiser.applyEarningOpportunities(importCostAndPower, exportCostAndPower, mins, energyLevelMaxs, setpoints, energyLevelCalculator, importMaxCalculator, exportMaxCalculator);
+        return setpoints;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.event;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.camel.support.DefaultMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openremote.container.timer.TimerService;
+import org.openremote.model.asset.AssetFilter;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.event.TriggeredEventSubscription;
+import org.openremote.model.event.shared.EventSubscription;
+import org.openremote.model.event.shared.SharedEvent;
+import org.openremote.model.util.UniqueIdentifierGenerator;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.openremote.model.Constants.SESSION_KEY;
+
+/**
+ * Measures routing an {@link AttributeEvent} to its subscribers with {@link EventSubscriptions#splitForSubscribers}
+ * against the per subscriber work that was done before (eager log message, {@link TriggeredEventSubscription} and
+ * singleton list wrapper for every subscriber and a copy of the inbound headers for every external message). Half of the
+ * subscriptions are internal and half are for external sessions, all of them match the event. The baseline iterates
+ * its own list of the subscriptions so it doesn't depend on how {@link EventSubscriptions} stores them. Run with
+ * {@code -PjmhArgs="EventRouting -prof gc"} to compare the allocation rate, which is what the change targets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventRoutingBenchmark {
+
+    protected static class Subscriber {
+        protected final String sessionKey;
+        protected final EventSubscription<AttributeEvent> subscription;
+
+        protected Subscriber(String sessionKey, EventSubscription<AttributeEvent> subscription) {
+            this.sessionKey = sessionKey;
+            this.subscription = subscription;
+        }
+    }
+
+    @Param({"10", "100"})
+    public int subscriberCount;
+
+    protected DefaultCamelContext context;
+    protected EventSubscriptions eventSubscriptions;
+    protected Exchange exchange;
+    protected Blackhole blackhole;
+    protected List<Subscriber> subscribers;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        String assetId = UniqueIdentifierGenerator.generateId();
+        context = new DefaultCamelContext();
+        eventSubscriptions = new EventSubscriptions(new TimerService() {
+            @Override
+            public long getCurrentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+        });
+
+        subscribers = new ArrayList<>(subscriberCount);
+
+        for (int i = 0; i < subscriberCount; i++) {
+            AssetFilter<AttributeEvent> filter = new AssetFilter<AttributeEvent>().setAssetIds(assetId);
+            EventSubscription<AttributeEvent> subscription = i % 2 == 0
+                ? new EventSubscription<>(AttributeEvent.class, filter, "sub" + i, blackhole::consume)
+                : new EventSubscription<>(AttributeEvent.class, filter, "sub" + i);
+            eventSubscriptions.createOrUpdate("session" + i, subscription);
+            subscribers.add(new Subscriber("session" + i, subscription));
+        }
+
+        exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(new AttributeEvent(assetId, "temperature", 21.5d, System.currentTimeMillis()));
+        // Typical inbound headers of an event published by the asset processing service
+        exchange.getIn().setHeader(SESSION_KEY, "publisher");
+        exchange.getIn().setHeader("CamelJmsDestination", "seda://ClientPublishQueue");
+        exchange.getIn().setHeader("CamelBreadcrumbId", UniqueIdentifierGenerator.generateId());
+        exchange.getIn().setHeader("Realm", "master");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public List<Message> split() {
+        return eventSubscriptions.splitForSubscribers(exchange);
+    }
+
+    @Benchmark
+    public List<Message> splitBaseline() {
+        List<Message> messageList = new ArrayList<>();
+        AttributeEvent event = (AttributeEvent) exchange.getIn().getBody(SharedEvent.class);
+
+        for (Subscriber subscriber : subscribers) {
+            EventSubscription<AttributeEvent> subscription = subscriber.subscription;
+            AttributeEvent filteredEvent = subscription.getFilter() == null ? event : subscription.getFilter().apply(event);
+
+            if (filteredEvent != null) {
+                // The log message was always built even though the level is normally off
+                blackhole.consume("Creating message for subscribed session '" + subscriber.sessionKey + "': " + filteredEvent);
+                TriggeredEventSubscription<AttributeEvent> triggeredEventSubscription = new TriggeredEventSubscription<>(Collections.singletonList(filteredEvent), subscription.getSubscriptionId());
+
+                if (subscription.isInternal()) {
+                    triggeredEventSubscription.getEvents().forEach(e -> subscription.getInternalConsumer().accept(e));
+                } else {
+                    Message msg = new DefaultMessage(exchange.getContext());
+                    msg.setBody(triggeredEventSubscription);
+                    msg.setHeaders(new HashMap<>(exchange.getIn().getHeaders()));
+                    msg.setHeader(SESSION_KEY, subscriber.sessionKey);
+                    messageList.add(msg);
+                }
+            }
+        }
+        return messageList;
+    }
+}
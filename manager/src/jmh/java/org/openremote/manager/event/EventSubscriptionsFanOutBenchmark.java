@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.event;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openremote.container.timer.TimerService;
+import org.openremote.model.asset.AssetFilter;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.event.shared.EventSubscription;
+import org.openremote.model.util.UniqueIdentifierGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.openremote.model.Constants.SESSION_KEY;
+
+/**
+ * Measures the fan-out of an {@link AttributeEvent} with {@link EventSubscriptions#splitForSubscribers} as the total
+ * number of subscriptions grows whilst the number of matching subscriptions stays fixed; the non-matching
+ * subscriptions filter on other asset IDs or other attribute names (as MQTT clients subscribed to other assets or
+ * attributes would). {@link #linearScan} applies every subscription filter to the event, which is what the fan-out
+ * cost was before subscriptions were indexed, so its time grows with the total subscriber count whereas
+ * {@link #split} should stay roughly constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventSubscriptionsFanOutBenchmark {
+
+    public static final int MATCHING_SUBSCRIBER_COUNT = 10;
+
+    @Param({"100", "1000", "10000"})
+    public int subscriberCount;
+
+    protected DefaultCamelContext context;
+    protected EventSubscriptions eventSubscriptions;
+    protected List<EventSubscription<AttributeEvent>> subscriptions;
+    protected Exchange exchange;
+    protected AttributeEvent event;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        String assetId = UniqueIdentifierGenerator.generateId();
+        context = new DefaultCamelContext();
+        eventSubscriptions = new EventSubscriptions(new TimerService() {
+            @Override
+            public long getCurrentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+        });
+        subscriptions = new ArrayList<>(subscriberCount);
+
+        for (int i = 0; i < subscriberCount; i++) {
+            AssetFilter<AttributeEvent> filter;
+
+            if (i < MATCHING_SUBSCRIBER_COUNT) {
+                filter = new AssetFilter<AttributeEvent>().setAssetIds(assetId);
+            } else if (i % 2 == 0) {
+                filter = new AssetFilter<AttributeEvent>().setAssetIds(UniqueIdentifierGenerator.generateId());
+            } else {
+                filter = new AssetFilter<AttributeEvent>().setAttributeNames("attribute" + i);
+            }
+
+            // Half internal and half external so both message paths are included
+            EventSubscription<AttributeEvent> subscription = i % 2 == 0
+                ? new EventSubscription<>(AttributeEvent.class, filter, "sub" + i, blackhole::consume)
+                : new EventSubscription<>(AttributeEvent.class, filter, "sub" + i);
+            eventSubscriptions.createOrUpdate("session" + i, subscription);
+            subscriptions.add(subscription);
+        }
+
+        event = new AttributeEvent(assetId, "temperature", 21.5d, System.currentTimeMillis());
+        exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(event);
+        exchange.getIn().setHeader(SESSION_KEY, "publisher");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public List<Message> split() {
+        return eventSubscriptions.splitForSubscribers(exchange);
+    }
+
+    @Benchmark
+    public int linearScan(Blackhole blackhole) {
+        int matched = 0;
+
+        for (EventSubscription<AttributeEvent> subscription : subscriptions) {
+            AttributeEvent filteredEvent = subscription.getFilter() == null ? event : subscription.getFilter().apply(event);
+
+            if (filteredEvent != null) {
+                blackhole.consume(filteredEvent);
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -64,6 +64,7 @@ import java.util.stream.Stream;
 import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
 import static org.openremote.manager.gateway.GatewayService.isNotForGateway;
 import static org.openremote.model.attribute.Attribute.getAddedOrModifiedAttributes;
@@ -276,16 +277,13 @@ public class AgentService extends RouteBuilder implements ContainerService {
             .routeId("Persistence-Agent")
             .filter(isPersistenceEventForEntityType(Asset.class))
             .filter(isNotForGateway(gatewayService))
-            .process(exchange -> {
-                PersistenceEvent<Asset<?>> persistenceEvent = (PersistenceEvent<Asset<?>>)exchange.getIn().getBody(PersistenceEvent.class);
-
-                if (isPersistenceEventForEntityType(Agent.class).matches(exchange)) {
-                    PersistenceEvent<Agent<?, ?, ?>> agentEvent = (PersistenceEvent<Agent<?,?,?>>)(PersistenceEvent<?>)persistenceEvent;
-                    processAgentChange(agentEvent);
+            .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent -> {
+                if (persistenceEvent.getEntity() instanceof Agent) {
+                    processAgentChange((PersistenceEvent<Agent<?, ?, ?>>) persistenceEvent);
                 } else {
-                    processAssetChange(persistenceEvent);
+                    processAssetChange((PersistenceEvent<Asset<?>>) persistenceEvent);
                 }
-            });
+            }));
     }
 
     /**
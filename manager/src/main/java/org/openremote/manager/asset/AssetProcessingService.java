@@ -19,6 +19,8 @@
  */
 package org.openremote.manager.asset;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tags;
@@ -44,6 +46,7 @@ import org.openremote.model.ContainerService;
 import org.openremote.model.asset.Asset;
 import org.openremote.model.attribute.Attribute;
 import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.attribute.MetaItem;
 import org.openremote.model.security.ClientRole;
 import org.openremote.model.util.ValueUtil;
@@ -95,6 +98,12 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
     private static final System.Logger LOG = System.getLogger(AssetProcessingService.class.getName());
 
     final protected List<AttributeEventInterceptor> eventInterceptors = new ArrayList<>();
+    /**
+     * Canonical {@link AttributeRef} per attribute for enriched events so that subscribers that retain events (e.g.
+     * rule facts and attribute link/datapoint state) share one ref and one asset ID/attribute name string per attribute
+     * rather than one per event; weakly held so refs of removed attributes are collected.
+     */
+    final protected Interner<AttributeRef> attributeRefInterner = Interners.newWeakInterner();
     protected TimerService timerService;
     protected ManagerIdentityService identityService;
     protected PersistenceService persistenceService;
@@ -283,24 +292,22 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
         // All user authorisation checks MUST have been carried out before events reach this queue
 
         // Router is responsible for routing events to the same processor for a given asset ID, this allows for
-        // multithreaded processing across assets
+        // multithreaded processing across assets; a batch of events (a List body) is split into one batch per
+        // processor so a batch only costs a single hop into each processor queue
         from(ATTRIBUTE_EVENT_ROUTER_QUEUE)
             .routeId("AttributeEvent-Router")
             .routeConfigurationId(ATTRIBUTE_EVENT_ROUTE_CONFIG_ID)
             .process(exchange -> {
+                if (exchange.getIn().getBody() instanceof List<?> events) {
+                    routeAttributeEvents((List<AttributeEvent>) events);
+                    exchange.setRouteStop(true);
+                    return;
+                }
+
                 AttributeEvent event = exchange.getIn().getBody(AttributeEvent.class);
 
-                if (event.getId() == null || event.getId().isEmpty())
-                    return; // Ignore events with no asset ID
-                if (event.getName() == null || event.getName().isEmpty())
-                    return; // Ignore events with no attribute name
-
-                if (event.getTimestamp() <= 0) {
-                    // Set timestamp if not set
-                    event.setTimestamp(timerService.getCurrentTimeMillis());
-                } else if (event.getTimestamp() > timerService.getCurrentTimeMillis()) {
-                    // Use system time if event time is in the future (clock issue)
-                    event.setTimestamp(timerService.getCurrentTimeMillis());
+                if (!prepareAttributeEvent(event)) {
+                    return;
                 }
 
                 exchange.getIn().setHeader(EVENT_ROUTE_COUNT_HEADER, getEventProcessingRouteNumber(event.getId()));
@@ -315,6 +322,12 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
                 .routeId(EVENT_PROCESSOR_ROUTE_ID_PREFIX + processorCount)
                 .routeConfigurationId(ATTRIBUTE_EVENT_ROUTE_CONFIG_ID)
                 .process(exchange -> {
+                    if (exchange.getIn().getBody() instanceof List<?> events) {
+                        LOG.log(System.Logger.Level.TRACE, () -> ">>> Attribute event batch processing start: processor=" + processorCount + ", events=" + events.size());
+                        processAttributeEvents((List<AttributeEvent>) events);
+                        exchange.getIn().setBody(true);
+                        return;
+                    }
                     AttributeEvent event = exchange.getIn().getBody(AttributeEvent.class);
                     LOG.log(System.Logger.Level.TRACE, () -> ">>> Attribute event processing start: processor=" + processorCount + ", event=" + event);
                     boolean processed = processAttributeEvent(event);
@@ -323,6 +336,60 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
         });
     }
 
+    /**
+     * Validates the event and normalises its timestamp; returns false if the event should be ignored.
+     */
+    protected boolean prepareAttributeEvent(AttributeEvent event) {
+        if (event.getId() == null || event.getId().isEmpty())
+            return false; // Ignore events with no asset ID
+        if (event.getName() == null || event.getName().isEmpty())
+            return false; // Ignore events with no attribute name
+
+        if (event.getTimestamp() <= 0) {
+            // Set timestamp if not set
+            event.setTimestamp(timerService.getCurrentTimeMillis());
+        } else if (event.getTimestamp() > timerService.getCurrentTimeMillis()) {
+            // Use system time if event time is in the future (clock issue)
+            event.setTimestamp(timerService.getCurrentTimeMillis());
+        }
+        return true;
+    }
+
+    /**
+     * Splits the events by processor (preserving the order of events within each processor) and sends each group to
+     * its processor as a single message.
+     */
+    protected void routeAttributeEvents(List<AttributeEvent> events) {
+        Map<Integer, List<AttributeEvent>> processorEvents = new LinkedHashMap<>();
+
+        for (AttributeEvent event : events) {
+            if (prepareAttributeEvent(event)) {
+                processorEvents.computeIfAbsent(getEventProcessingRouteNumber(event.getId()), n -> new ArrayList<>()).add(event);
+            }
+        }
+
+        processorEvents.forEach((routeNumber, routeEvents) ->
+            messageBrokerService.getFluentProducerTemplate()
+                .withBody(routeEvents)
+                .to(EVENT_PROCESSOR_URI_PREFIX + routeNumber)
+                .asyncSend());
+    }
+
+    /**
+     * Process each event in order; a failure only affects the event that caused it.
+     */
+    protected void processAttributeEvents(List<AttributeEvent> events) {
+        for (AttributeEvent event : events) {
+            try {
+                processAttributeEvent(event);
+            } catch (AssetProcessingException e) {
+                LOG.log(e.getReason() == ASSET_NOT_FOUND ? System.Logger.Level.DEBUG : System.Logger.Level.WARNING, () -> "Error processing batched attribute event: " + event + " - " + e.getMessage());
+            } catch (Exception e) {
+                LOG.log(System.Logger.Level.WARNING, "Error processing batched attribute event: " + event, e);
+            }
+        }
+    }
+
     public void addEventInterceptor(AttributeEventInterceptor eventInterceptor) {
         eventInterceptors.add(eventInterceptor);
         eventInterceptors.sort(Comparator.comparingInt(AttributeEventInterceptor::getPriority));
@@ -385,7 +452,7 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
             }).orElse(null);
             event.setValue(value);
 
-            AttributeEvent enrichedEvent = new AttributeEvent(asset, attribute, event.getSource(), event.getValue().orElse(null), event.getTimestamp(), attribute.getValue().orElse(null), attribute.getTimestamp().orElse(0L));
+            AttributeEvent enrichedEvent = new AttributeEvent(attributeRefInterner.intern(event.getRef()), asset, attribute, event.getSource(), event.getValue().orElse(null), event.getTimestamp(), attribute.getValue().orElse(null), attribute.getTimestamp().orElse(0L));
 
             // Do standard JSR-380 validation on the event
             Set<ConstraintViolation<AttributeEvent>> validationFailures = ValueUtil.validate(enrichedEvent);
@@ -19,6 +19,9 @@
  */
 package org.openremote.manager.asset;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.NullNode;
 import jakarta.persistence.OptimisticLockException;
 import jakarta.validation.ConstraintViolationException;
@@ -29,6 +32,7 @@ import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import org.jboss.resteasy.plugins.validation.ResteasyViolationExceptionImpl;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.timer.TimerService;
@@ -47,6 +51,8 @@ import org.openremote.model.security.ClientRole;
 import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.ValueUtil;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -493,6 +499,53 @@ public class AssetResourceImpl extends ManagerWebResource implements AssetResour
         }
     }
 
+    @Override
+    public Asset<?>[] bulkMerge(RequestParams requestParams, Asset<?>[] assets) {
+        try {
+            if (isRestrictedUser()) {
+                throw new WebApplicationException(FORBIDDEN);
+            }
+
+            if (assets == null || assets.length == 0) {
+                LOG.finest("No assets in request");
+                throw new WebApplicationException(BAD_REQUEST);
+            }
+
+            Map<String, Boolean> accessibleRealms = new HashMap<>();
+            List<Asset<?>> mergeAssets = new ArrayList<>(assets.length);
+
+            for (Asset<?> asset : assets) {
+                if (asset == null) {
+                    throw new WebApplicationException(BAD_REQUEST);
+                }
+
+                // If there was no realm provided use the auth realm
+                if (asset.getRealm() == null || asset.getRealm().isEmpty()) {
+                    asset.setRealm(getAuthenticatedRealm().getName());
+                } else if (!accessibleRealms.computeIfAbsent(asset.getRealm(), this::isRealmActiveAndAccessible)) {
+                    LOG.fine("Forbidden access for user '" + getUsername() + "', can't merge: " + asset);
+                    throw new WebApplicationException(FORBIDDEN);
+                }
+
+                Asset<?> mergeAsset = ValueUtil.clone(asset);
+
+                // Allow client to set identifier
+                if (asset.getId() != null) {
+                    mergeAsset.setId(asset.getId());
+                }
+                mergeAsset.setVersion(asset.getVersion());
+                mergeAssets.add(mergeAsset);
+            }
+
+            return assetStorageService.bulkMerge(mergeAssets, false, null).toArray(new Asset<?>[0]);
+
+        } catch (ConstraintViolationException ex) {
+            throw new ResteasyViolationExceptionImpl(ex.getConstraintViolations(), requestParams.headers.getAcceptableMediaTypes());
+        } catch (IllegalStateException ex) {
+            throw new WebApplicationException(ex, BAD_REQUEST);
+        }
+    }
+
     @Override
     public void delete(RequestParams requestParams, List<String> assetIds) {
 
@@ -546,6 +599,40 @@ public class AssetResourceImpl extends ManagerWebResource implements AssetResour
         return result.toArray(new Asset[0]);
     }
 
+    @Override
+    public Response streamAssets(RequestParams requestParams, AssetQuery query) {
+        final AssetQuery assetQuery = query != null ? query : new AssetQuery();
+
+        if (!assetStorageService.authorizeAssetQuery(assetQuery, getAuthContext(), getRequestRealmName())) {
+            throw new ForbiddenException("User not authorized to execute specified query");
+        }
+
+        StreamingOutput output = outputStream -> {
+            ObjectWriter writer = ValueUtil.JSON.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+            try (JsonGenerator generator = ValueUtil.JSON.getFactory().createGenerator(outputStream)) {
+                // Response stream is closed by the container
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                assetStorageService.streamAll(assetQuery, true, asset -> {
+                    try {
+                        writer.writeValue(generator, asset);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+
+        // Compress response (the request attribute enables the interceptor)
+        request.setAttribute(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        return Response.ok(output, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
     protected AttributeWriteResult doAttributeWrite(AttributeEvent event) {
         AttributeWriteFailure failure = null;
 
@@ -19,6 +19,14 @@
  */
 package org.openremote.manager.asset;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
@@ -52,6 +60,7 @@ import org.openremote.model.attribute.AttributeMap;
 import org.openremote.model.event.shared.EventRequestResponseWrapper;
 import org.openremote.model.event.shared.EventSubscription;
 import org.openremote.model.event.shared.SharedEvent;
+import org.openremote.model.gateway.GatewayAssetSyncInfo;
 import org.openremote.model.query.AssetQuery;
 import org.openremote.model.query.LogicGroup;
 import org.openremote.model.query.filter.*;
@@ -59,14 +68,17 @@ import org.openremote.model.security.ClientRole;
 import org.openremote.model.security.User;
 import org.openremote.model.util.Pair;
 import org.openremote.model.util.TextUtil;
+import org.openremote.model.util.UniqueIdentifierGenerator;
 import org.openremote.model.util.ValueUtil;
-import org.postgresql.util.PGobject;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.logging.Level;
@@ -77,7 +89,9 @@ import java.util.stream.Stream;
 
 import static java.util.logging.Level.FINE;
 import static java.util.stream.Collectors.groupingBy;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
 import static org.openremote.manager.event.ClientEventService.CLIENT_INBOUND_QUEUE;
 import static org.openremote.model.attribute.Attribute.getAddedOrModifiedAttributes;
@@ -90,39 +104,80 @@ import static org.openremote.model.value.MetaItemType.ACCESS_RESTRICTED_READ;
 
 public class AssetStorageService extends RouteBuilder implements ContainerService {
 
+    /**
+     * The SQL and parameter binders for an {@link AssetQuery}; binders read their values from the bound query when
+     * applied so the SQL and binders can be shared by all queries with the same shape (see
+     * {@link #getQueryShapeKey}).
+     */
     protected static class PreparedAssetQuery {
 
         final protected String querySql;
         final protected List<ParameterBinder> binders;
+        final protected AssetQuery query;
 
-        public PreparedAssetQuery(String querySql, List<ParameterBinder> binders) {
+        public PreparedAssetQuery(String querySql, List<ParameterBinder> binders, AssetQuery query) {
             this.querySql = querySql;
             this.binders = binders;
+            this.query = query;
+        }
+
+        /**
+         * Bind this SQL to another query of the same shape
+         */
+        protected PreparedAssetQuery bind(AssetQuery query) {
+            return new PreparedAssetQuery(querySql, binders, query);
         }
 
-        protected void apply(EntityManager em, org.hibernate.query.Query<Object[]> query) {
+        protected void apply(EntityManager em, org.hibernate.query.Query<Object[]> st) {
             for (ParameterBinder binder : binders) {
-                binder.accept(em, query);
+                binder.accept(query, em, st);
             }
         }
     }
 
-    public interface ParameterBinder extends BiConsumer<EntityManager, org.hibernate.query.Query<Object[]>> {
+    @FunctionalInterface
+    public interface ParameterBinder {
 
-        @Override
-        default void accept(EntityManager em, org.hibernate.query.Query<Object[]> st) {
+        default void accept(AssetQuery query, EntityManager em, org.hibernate.query.Query<Object[]> st) {
             try {
-                acceptStatement(em, st);
+                acceptStatement(query, em, st);
             } catch (SQLException ex) {
                 throw new RuntimeException(ex);
             }
         }
 
-        void acceptStatement(EntityManager em, org.hibernate.query.Query<Object[]> st) throws SQLException;
+        void acceptStatement(AssetQuery query, EntityManager em, org.hibernate.query.Query<Object[]> st) throws SQLException;
     }
 
+    /**
+     * Placeholder used in query shape keys for values that are only used as SQL parameters
+     */
+    protected static final String QUERY_SHAPE_PARAMETER = "?";
+
     private static final Logger LOG = Logger.getLogger(AssetStorageService.class.getName());
     public static final int PRIORITY = MED_PRIORITY;
+    /**
+     * Maximum number of generated asset query SQL statements (and their parameter binders) to cache; set to 0 to
+     * disable the cache.
+     */
+    public static final String OR_ASSET_QUERY_CACHE_SIZE = "OR_ASSET_QUERY_CACHE_SIZE";
+    public static final int OR_ASSET_QUERY_CACHE_SIZE_DEFAULT = 1000;
+    /**
+     * Number of rows fetched from the DB cursor at a time when streaming asset query results
+     */
+    public static final String OR_ASSET_QUERY_STREAM_FETCH_SIZE = "OR_ASSET_QUERY_STREAM_FETCH_SIZE";
+    public static final int OR_ASSET_QUERY_STREAM_FETCH_SIZE_DEFAULT = 500;
+    // Must match the expression of the ASSET_LOCATION_POINT_IDX index
+    protected static final String LOCATION_POINT_SQL = "(CASE WHEN jsonb_typeof(A.ATTRIBUTES #> '{location,value,coordinates,0}') = 'number'"
+        + " AND jsonb_typeof(A.ATTRIBUTES #> '{location,value,coordinates,1}') = 'number'"
+        + " THEN ST_MakePoint((A.ATTRIBUTES #>> '{location,value,coordinates,0}')\\:\\:float8, (A.ATTRIBUTES #>> '{location,value,coordinates,1}')\\:\\:float8) END)";
+    public static final String METRIC_PREFIX = "or.asset.query";
+    /**
+     * Number of assets inserted per JDBC batch (and loaded per query) by {@link #bulkMerge}
+     */
+    public static final int BULK_MERGE_BATCH_SIZE = 1000;
+    protected static final String INSERT_ASSET_SQL = "INSERT INTO ASSET (ID, ATTRIBUTES, CREATED_ON, NAME, PARENT_ID, REALM, TYPE, ACCESS_PUBLIC_READ, VERSION) VALUES (?, ?::jsonb, ?, ?, ?, ?, ?, ?, 0)";
+    protected static final String UPDATE_ATTRIBUTE_VALUE_SQL = "UPDATE asset SET attributes[?] = attributes[?] || ?\\:\\:jsonb where id = ?";
 //    protected static final Field assetParentNameField;
 //    protected static final Field assetParentTypeField;
 //
@@ -228,6 +283,9 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     protected ManagerIdentityService identityService;
     protected ClientEventService clientEventService;
     protected GatewayService gatewayService;
+    protected int streamFetchSize = OR_ASSET_QUERY_STREAM_FETCH_SIZE_DEFAULT;
+    protected Cache<String, Pair<PreparedAssetQuery, Boolean>> preparedQueryCache;
+    protected Timer queryBuildTimer;
 
     /**
      * Will evaluate each {@link CalendarEventPredicate} and apply it depending on the {@link LogicGroup} type
@@ -313,6 +371,24 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         identityService = container.getService(ManagerIdentityService.class);
         clientEventService = container.getService(ClientEventService.class);
         gatewayService = container.getService(GatewayService.class);
+
+        int queryCacheSize = getInteger(container.getConfig(), OR_ASSET_QUERY_CACHE_SIZE, OR_ASSET_QUERY_CACHE_SIZE_DEFAULT);
+        streamFetchSize = Math.max(1, getInteger(container.getConfig(), OR_ASSET_QUERY_STREAM_FETCH_SIZE, OR_ASSET_QUERY_STREAM_FETCH_SIZE_DEFAULT));
+        if (queryCacheSize > 0) {
+            preparedQueryCache = CacheBuilder.newBuilder()
+                .maximumSize(queryCacheSize)
+                .recordStats()
+                .build();
+        }
+
+        MeterRegistry meterRegistry = container.getMeterRegistry();
+        if (meterRegistry != null) {
+            queryBuildTimer = meterRegistry.timer(METRIC_PREFIX + ".build");
+            if (preparedQueryCache != null) {
+                GuavaCacheMetrics.monitor(meterRegistry, preparedQueryCache, METRIC_PREFIX + ".sql");
+            }
+        }
+
         EventSubscriptionAuthorizer assetEventAuthorizer = AssetStorageService.assetInfoAuthorizer(identityService, this);
 
         clientEventService.addSubscriptionAuthorizer((realm, auth, subscription) -> {
@@ -378,7 +454,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         from(PERSISTENCE_TOPIC)
             .routeId("Persistence-Asset")
             .filter(isPersistenceEventForEntityType(Asset.class))
-            .process(exchange -> publishModificationEvents(exchange.getIn().getBody(PersistenceEvent.class)));
+            .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent ->
+                publishModificationEvents((PersistenceEvent<Asset<?>>) persistenceEvent)));
 
         // React if a client wants to read assets and attributes
         from(CLIENT_INBOUND_QUEUE)
@@ -633,208 +710,506 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
      * @return The current stored asset state.
      * @throws IllegalArgumentException if the realm or parent is illegal, or other asset constraint is violated.
      */
-    @SuppressWarnings("unchecked")
     public <T extends Asset<?>> T merge(T asset, boolean overrideVersion, boolean skipGatewayCheck, String userName) throws IllegalStateException, ConstraintViolationException {
+        return persistenceService.doReturningTransaction(em -> merge(em, asset, overrideVersion, skipGatewayCheck, userName));
+    }
 
-        if (LOG.isLoggable(Level.FINEST)) {
-            LOG.finest("Merging asset: " + asset);
+    /**
+     * Merge the requested {@link Asset}s in a single transaction, see {@link #bulkMerge(List, boolean, boolean, String)}.
+     * @return The current stored asset states in the same order as the requested assets.
+     */
+    public <T extends Asset<?>> List<T> merge(List<T> assets, boolean overrideVersion, boolean skipGatewayCheck, String userName) throws IllegalStateException, ConstraintViolationException {
+        return bulkMerge(assets, overrideVersion, skipGatewayCheck, userName);
+    }
+
+    /**
+     * See {@link #bulkMerge(List, boolean, boolean, String)}
+     */
+    public <T extends Asset<?>> List<T> bulkMerge(List<T> assets, boolean skipGatewayCheck, String userName) throws IllegalStateException, ConstraintViolationException {
+        return bulkMerge(assets, false, skipGatewayCheck, userName);
+    }
+
+    /**
+     * Merge a large number of {@link Asset}s (e.g. when provisioning devices) in a single transaction; validation is
+     * the same as {@link #merge(Asset, boolean, boolean, String)} but is done for the whole batch before anything is
+     * written. New assets are inserted using JDBC batching and a parent may be created in the same call as its
+     * children (the batch is inserted in hierarchy order); existing assets and new assets that belong to a gateway
+     * are merged individually. Persistence events for the inserted assets are published once the transaction has
+     * committed (coalesced into batches of {@link #BULK_MERGE_BATCH_SIZE}); if any asset fails validation then none of
+     * the assets are merged.
+     * @param overrideVersion If <code>true</code>, the merge of existing assets will override the data in the database,
+     *                        independent of version.
+     * @param skipGatewayCheck Don't check if asset is a gateway asset and merge asset into local persistence service.
+     * @param userName        the user which the new assets need to be assigned to.
+     * @return The current stored asset states in the same order as the requested assets.
+     * @throws IllegalArgumentException if the realm or parent is illegal, or other asset constraint is violated.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Asset<?>> List<T> bulkMerge(List<T> assets, boolean overrideVersion, boolean skipGatewayCheck, String userName) throws IllegalStateException, ConstraintViolationException {
+        if (assets.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        return persistenceService.doReturningTransaction(em -> {
+        long startTime = System.currentTimeMillis();
+        List<Asset<?>> insertedAssets = new ArrayList<>();
 
-            long startTime = System.currentTimeMillis();
-            String gatewayId = gatewayService.getLocallyRegisteredGatewayId(asset.getId(), asset.getParentId());
+        List<T> mergedAssets = persistenceService.doReturningTransaction(em -> {
 
-            if (!skipGatewayCheck && gatewayId != null) {
-                LOG.fine("Sending asset merge request to gateway: Gateway ID=" + gatewayId);
-                return gatewayService.mergeGatewayAsset(gatewayId, asset);
+            // Assign identifiers up front so children can reference a parent in the same batch
+            Map<String, T> batchAssets = new LinkedHashMap<>(assets.size());
+            for (T asset : assets) {
+                if (TextUtil.isNullOrEmpty(asset.getId())) {
+                    asset.setId(UniqueIdentifierGenerator.generateId());
+                }
+                if (batchAssets.put(asset.getId(), asset) != null) {
+                    String msg = "Asset is included more than once in bulk merge: asset=" + asset;
+                    LOG.warning(msg);
+                    throw new IllegalStateException(msg);
+                }
             }
 
-            // Validate realm
-            if (asset.getRealm() == null) {
-                String msg = "Asset realm must be set : asset=" + asset;
-                LOG.warning(msg);
-                throw new IllegalStateException(msg);
+            Set<String> existingIds = new HashSet<>();
+            for (List<String> ids : partition(batchAssets.keySet(), BULK_MERGE_BATCH_SIZE)) {
+                existingIds.addAll(em.createQuery("select a.id from Asset a where a.id in :ids", String.class)
+                    .setParameter("ids", ids)
+                    .getResultList());
             }
 
-            // Do standard JSR-380 validation on the asset (includes custom validation using descriptors and constraints)
-            Set<ConstraintViolation<Asset<?>>> validationFailures = ValueUtil.validate(asset);
+            // Parents that aren't new assets in this batch are loaded from the DB
+            Map<String, T> newAssets = new LinkedHashMap<>();
+            batchAssets.forEach((id, asset) -> {
+                if (!existingIds.contains(id)) {
+                    newAssets.put(id, asset);
+                }
+            });
+            Set<String> parentIds = newAssets.values().stream()
+                .map(Asset::getParentId)
+                .filter(parentId -> parentId != null && !newAssets.containsKey(parentId))
+                .collect(Collectors.toSet());
+            Map<String, Asset<?>> storedParents = new HashMap<>();
+            for (List<String> ids : partition(parentIds, BULK_MERGE_BATCH_SIZE)) {
+                findAll(em, new AssetQuery().ids(ids.toArray(String[]::new)))
+                    .forEach(parent -> storedParents.put(parent.getId(), parent));
+            }
+
+            Map<String, Boolean> realmsExist = new HashMap<>();
+            Map<String, String[]> paths = new HashMap<>();
+            for (T asset : newAssets.values()) {
+                validateBulkAsset(asset, realmsExist);
+
+                Asset<?> parent = asset.getParentId() == null ? null : newAssets.containsKey(asset.getParentId())
+                    ? newAssets.get(asset.getParentId())
+                    : storedParents.get(asset.getParentId());
+
+                if (asset.getParentId() != null) {
+                    if (parent == null) {
+                        String msg = "Asset parent not found: asset=" + asset;
+                        LOG.warning(msg);
+                        throw new IllegalStateException(msg);
+                    }
+                    validateParent(parent, asset);
+                }
 
-            if (!validationFailures.isEmpty()) {
-                String msg = "Asset merge failed as asset has failed constraint validation: asset=" + asset;
-                ConstraintViolationException ex = new ConstraintViolationException(validationFailures);
-                LOG.log(Level.WARNING, msg + ", exception=" + ex.getMessage());
-                throw ex;
+                getBulkAssetPath(asset, newAssets, storedParents, paths, new HashSet<>());
             }
 
-            T existingAsset = TextUtil.isNullOrEmpty(asset.getId()) ? null : (T)em.find(Asset.class, asset.getId());
+            // Parents must be inserted before their children
+            List<T> orderedNewAssets = new ArrayList<>(newAssets.values());
+            orderedNewAssets.sort(Comparator.comparingInt(asset -> paths.get(asset.getId()).length));
 
-            if (existingAsset != null) {
-
-                // Verify type has not been changed
-                if (!existingAsset.getType().equals(asset.getType())) {
-                    String msg = "Asset type cannot be changed: asset=" + asset;
-                    LOG.warning(msg);
-                    throw new IllegalStateException(msg);
+            List<T> insertAssets = new ArrayList<>(orderedNewAssets.size());
+            List<T> delegatedAssets = new ArrayList<>();
+            Set<String> delegatedIds = new HashSet<>();
+            for (T asset : orderedNewAssets) {
+                if (!skipGatewayCheck && (delegatedIds.contains(asset.getParentId())
+                    || gatewayService.getLocallyRegisteredGatewayId(asset.getId(), asset.getParentId()) != null)) {
+                    delegatedAssets.add(asset);
+                    delegatedIds.add(asset.getId());
+                } else {
+                    insertAssets.add(asset);
                 }
+            }
+            batchAssets.values().stream().filter(asset -> existingIds.contains(asset.getId())).forEach(delegatedAssets::add);
 
-                if (!existingAsset.getRealm().equals(asset.getRealm())) {
-                    String msg = "Asset realm cannot be changed: asset=" + asset;
-                    LOG.warning(msg);
-                    throw new IllegalStateException(msg);
+            Map<String, User> realmUsers = new HashMap<>();
+            List<UserAssetLink> userAssetLinks = new ArrayList<>();
+            if (!TextUtil.isNullOrEmpty(userName)) {
+                for (T asset : insertAssets) {
+                    User user = realmUsers.computeIfAbsent(asset.getRealm(), realm -> {
+                        User realmUser = identityService.getIdentityProvider().getUserByUsername(realm, userName);
+                        if (realmUser == null) {
+                            String msg = "User not found: " + userName;
+                            LOG.warning(msg);
+                            throw new IllegalStateException(msg);
+                        }
+                        return realmUser;
+                    });
+                    userAssetLinks.add(new UserAssetLink(user.getRealm(), user.getId(), asset.getId()));
                 }
+            }
 
-                // Update timestamp on modified attributes this allows fast equality checking
-                asset.getAttributes().stream().forEach(attr ->
-                    existingAsset.getAttribute(attr.getName()).ifPresent(existingAttr -> {
-                        // If attribute is modified make sure the timestamp is also updated to allow simple equality
-                        if (!attr.deepEquals(existingAttr) && attr.getTimestamp().orElse(0L) <= existingAttr.getTimestamp().orElse(0L)) {
-                            // In the unlikely situation that we are in the same millisecond as last update
-                            // we will always ensure a delta of >= 1ms
-                            attr.setTimestamp(Math.max(existingAttr.getTimestamp().orElse(0L)+1, timerService.getCurrentTimeMillis()));
-                        }
-                }));
+            insertAssets(em, insertAssets);
 
-                // If this is real merge and desired, copy the persistent version number over the detached
-                // version, so the detached state always wins and this update will go through and ignore
-                // concurrent updates
-                if (overrideVersion) {
-                    asset.setVersion(existingAsset.getVersion());
-                }
+            if (!userAssetLinks.isEmpty()) {
+                createUserAssetLinks(em, userAssetLinks);
             }
 
-            if (!identityService.getIdentityProvider().realmExists(asset.getRealm())) {
-                String msg = "Asset realm not found or is inactive: asset=" + asset;
-                LOG.warning(msg);
-                throw new IllegalStateException(msg);
+            Map<String, T> storedAssets = new HashMap<>(batchAssets.size());
+            for (List<String> ids : partition(insertAssets.stream().map(Asset::getId).toList(), BULK_MERGE_BATCH_SIZE)) {
+                findAll(em, new AssetQuery().ids(ids.toArray(String[]::new)))
+                    .forEach(asset -> storedAssets.put(asset.getId(), (T) asset));
             }
+            insertAssets.forEach(asset -> insertedAssets.add(storedAssets.get(asset.getId())));
 
-            if (asset.getParentId() != null && asset.getParentId().equals(asset.getId())) {
-                String msg = "Asset parent cannot be the asset: asset=" + asset;
-                LOG.warning(msg);
-                throw new IllegalStateException(msg);
+            for (T asset : delegatedAssets) {
+                storedAssets.put(asset.getId(), merge(em, asset, overrideVersion, skipGatewayCheck, userName));
             }
 
-            // Validate parent only if asset is new or parent has changed
-            if ((existingAsset == null && asset.getParentId() != null)
-                || (existingAsset != null && asset.getParentId() != null && !asset.getParentId().equals(existingAsset.getParentId()))) {
+            return batchAssets.keySet().stream().map(storedAssets::get).collect(Collectors.toList());
+        });
 
-                Asset<?> parent = find(em, asset.getParentId(), true);
+        // Publish after commit so consumers can load the new assets; these are coalesced into batches so a large bulk
+        // merge doesn't overflow the persistence topic queue
+        persistenceService.publishPersistenceEvents(insertedAssets.stream()
+            .map(asset -> new PersistenceEvent<>(PersistenceEvent.Cause.CREATE, asset, null, null, null))
+            .collect(Collectors.toList()), BULK_MERGE_BATCH_SIZE);
 
-                // The parent must exist
-                if (parent == null) {
-                    String msg = "Asset parent not found: asset=" + asset;
-                    LOG.warning(msg);
-                    throw new IllegalStateException(msg);
-                }
+        if (LOG.isLoggable(FINE)) {
+            LOG.fine("Bulk merge of " + assets.size() + " asset(s) took: " + (System.currentTimeMillis() - startTime) + "ms");
+        }
 
-                // The parent can not be a child of the asset
-                if (parent.pathContains(asset.getId())) {
-                    String msg = "Asset parent cannot be a descendant of the asset: asset=" + asset;
-                    LOG.warning(msg);
-                    throw new IllegalStateException(msg);
-                }
+        return mergedAssets;
+    }
+
+    protected void validateBulkAsset(Asset<?> asset, Map<String, Boolean> realmsExist) {
+        if (asset.getRealm() == null) {
+            String msg = "Asset realm must be set : asset=" + asset;
+            LOG.warning(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        Set<ConstraintViolation<Asset<?>>> validationFailures = ValueUtil.validate(asset);
+
+        if (!validationFailures.isEmpty()) {
+            String msg = "Asset merge failed as asset has failed constraint validation: asset=" + asset;
+            ConstraintViolationException ex = new ConstraintViolationException(validationFailures);
+            LOG.log(Level.WARNING, msg + ", exception=" + ex.getMessage());
+            throw ex;
+        }
 
-                // The parent should be in the same realm
-                if (!parent.getRealm().equals(asset.getRealm())) {
-                    String msg = "Asset parent must be in the same realm: asset=" + asset;
+        if (!realmsExist.computeIfAbsent(asset.getRealm(), realm -> identityService.getIdentityProvider().realmExists(realm))) {
+            String msg = "Asset realm not found or is inactive: asset=" + asset;
+            LOG.warning(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        if (asset.getParentId() != null && asset.getParentId().equals(asset.getId())) {
+            String msg = "Asset parent cannot be the asset: asset=" + asset;
+            LOG.warning(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        if (asset instanceof GroupAsset && ((GroupAsset)asset).getChildAssetType().map(TextUtil::isNullOrEmpty).orElse(true)) {
+            String msg = "Asset of type GROUP childAssetType attribute must be a valid string: asset=" + asset;
+            LOG.warning(msg);
+            throw new IllegalStateException(msg);
+        }
+    }
+
+    /**
+     * Check the parent is in the same realm as the asset and, if the parent is a {@link GroupAsset}, that the asset
+     * is of the group's child asset type.
+     */
+    protected static void validateParent(Asset<?> parent, Asset<?> asset) {
+        // The parent should be in the same realm
+        if (!parent.getRealm().equals(asset.getRealm())) {
+            String msg = "Asset parent must be in the same realm: asset=" + asset;
+            LOG.warning(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        // if parent is of type group then this child asset must have the correct type
+        if (parent instanceof GroupAsset) {
+            String childAssetType = parent.getAttributes().getValue(GroupAsset.CHILD_ASSET_TYPE)
+                .orElseThrow(() -> {
+                    String msg = "Asset parent is of type GROUP but the childAssetType attribute is invalid: asset=" + asset;
                     LOG.warning(msg);
-                    throw new IllegalStateException(msg);
-                }
+                    return new IllegalStateException(msg);
+                });
 
-                // if parent is of type group then this child asset must have the correct type
-                if (parent instanceof GroupAsset) {
-                    String childAssetType = parent.getAttributes().getValue(GroupAsset.CHILD_ASSET_TYPE)
-                        .orElseThrow(() -> {
-                            String msg = "Asset parent is of type GROUP but the childAssetType attribute is invalid: asset=" + asset;
-                            LOG.warning(msg);
-                            return new IllegalStateException(msg);
-                        });
+            // Look through type hierarchy for a match - this allows sub types
+            Class<?> clazz = asset.getClass();
+            boolean typeMatch = childAssetType.equals(clazz.getSimpleName());
 
-                    // Look through type hierarchy for a match - this allows sub types
-                    Class<?> clazz = asset.getClass();
-                    boolean typeMatch = childAssetType.equals(clazz.getSimpleName());
+            while (!typeMatch && clazz != Asset.class) {
+                clazz = clazz.getSuperclass();
+                typeMatch = childAssetType.equals(clazz.getSimpleName());
+            }
 
-                    while (!typeMatch && clazz != Asset.class) {
-                        clazz = clazz.getSuperclass();
-                        typeMatch = childAssetType.equals(clazz.getSimpleName());
-                    }
+            if (!typeMatch) {
+                String msg = "Asset type does not match parent GROUP asset's childAssetType attribute: asset=" + asset;
+                LOG.warning(msg);
+                throw new IllegalStateException(msg);
+            }
+        }
+    }
 
-                    if (!typeMatch) {
-                        String msg = "Asset type does not match parent GROUP asset's childAssetType attribute: asset=" + asset;
-                        LOG.warning(msg);
-                        throw new IllegalStateException(msg);
+    /**
+     * Compute the path of a new asset in a bulk merge from its parent's path (which is either another new asset or a
+     * stored asset), detecting cycles between the new assets.
+     */
+    protected String[] getBulkAssetPath(Asset<?> asset, Map<String, ? extends Asset<?>> newAssets, Map<String, Asset<?>> storedParents, Map<String, String[]> paths, Set<String> visited) {
+        String[] path = paths.get(asset.getId());
+        if (path != null) {
+            return path;
+        }
+
+        if (!visited.add(asset.getId())) {
+            String msg = "Asset parent cannot be a descendant of the asset: asset=" + asset;
+            LOG.warning(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        String[] parentPath = new String[0];
+        if (asset.getParentId() != null) {
+            Asset<?> newParent = newAssets.get(asset.getParentId());
+            parentPath = newParent != null
+                ? getBulkAssetPath(newParent, newAssets, storedParents, paths, visited)
+                : storedParents.get(asset.getParentId()).getPath();
+        }
+
+        path = Arrays.copyOf(parentPath, parentPath.length + 1);
+        path[parentPath.length] = asset.getId();
+        paths.put(asset.getId(), path);
+        return path;
+    }
+
+    /**
+     * Insert new assets using JDBC batching; the asset path is set by the DB trigger.
+     */
+    protected void insertAssets(EntityManager em, List<? extends Asset<?>> assets) {
+        if (assets.isEmpty()) {
+            return;
+        }
+
+        long timestamp = timerService.getCurrentTimeMillis();
+
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement st = connection.prepareStatement(INSERT_ASSET_SQL)) {
+                int count = 0;
+                for (Asset<?> asset : assets) {
+                    // Update all empty attribute timestamps with server-time
+                    asset.getAttributes().forEach(attribute -> {
+                        if (!attribute.hasExplicitTimestamp()) {
+                            attribute.setTimestamp(timestamp);
+                        }
+                    });
+                    asset.setCreatedOn(new java.util.Date(timestamp));
+                    asset.setVersion(0);
+
+                    st.setString(1, asset.getId());
+                    st.setString(2, ValueUtil.asJSON(asset.getAttributes()).orElse("{}"));
+                    st.setTimestamp(3, new Timestamp(timestamp));
+                    st.setString(4, asset.getName());
+                    st.setString(5, asset.getParentId());
+                    st.setString(6, asset.getRealm());
+                    st.setString(7, asset.getType());
+                    st.setBoolean(8, asset.isAccessPublicRead());
+                    st.addBatch();
+
+                    if (++count % BULK_MERGE_BATCH_SIZE == 0) {
+                        st.executeBatch();
                     }
                 }
+                if (count % BULK_MERGE_BATCH_SIZE != 0) {
+                    st.executeBatch();
+                }
+            } catch (Exception e) {
+                String msg = "Failed to insert assets: count=" + assets.size();
+                LOG.log(Level.WARNING, msg, e);
+                throw new IllegalStateException(msg, e);
             }
+        });
+    }
 
-            // Validate group child asset type attribute
-            if (asset instanceof GroupAsset) {
-                String childAssetType = ((GroupAsset)asset).getChildAssetType()
-                    .map(childAssetTypeString -> TextUtil.isNullOrEmpty(childAssetTypeString) ? null : childAssetTypeString)
-                    .orElseThrow(() -> {
-                        String msg = "Asset of type GROUP childAssetType attribute must be a valid string: asset=" + asset;
-                        LOG.warning(msg);
-                        return new IllegalStateException(msg);
-                    });
+    protected static List<List<String>> partition(Collection<String> ids, int size) {
+        List<String> list = new ArrayList<>(ids);
+        List<List<String>> partitions = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) {
+            partitions.add(list.subList(i, Math.min(list.size(), i + size)));
+        }
+        return partitions;
+    }
 
-                String existingChildAssetType = existingAsset != null ? ((GroupAsset)existingAsset)
-                    .getChildAssetType()
-                    .orElseThrow(() -> {
-                        String msg = "Asset of type GROUP childAssetType attribute must be a valid string: asset=" + asset;
-                        LOG.warning(msg);
-                        return new IllegalStateException(msg);
-                    }) : childAssetType;
+    @SuppressWarnings("unchecked")
+    protected <T extends Asset<?>> T merge(EntityManager em, T asset, boolean overrideVersion, boolean skipGatewayCheck, String userName) throws IllegalStateException, ConstraintViolationException {
 
-                if (!childAssetType.equals(existingChildAssetType)) {
-                    String msg = "Asset of type GROUP so childAssetType attribute cannot be changed: asset=" + asset;
-                    LOG.warning(msg);
-                    throw new IllegalStateException(msg);
-                }
+        if (LOG.isLoggable(Level.FINEST)) {
+            LOG.finest("Merging asset: " + asset);
+        }
+
+        long startTime = System.currentTimeMillis();
+        String gatewayId = gatewayService.getLocallyRegisteredGatewayId(asset.getId(), asset.getParentId());
+
+        if (!skipGatewayCheck && gatewayId != null) {
+            LOG.fine("Sending asset merge request to gateway: Gateway ID=" + gatewayId);
+            return gatewayService.mergeGatewayAsset(gatewayId, asset);
+        }
+
+        // Validate realm
+        if (asset.getRealm() == null) {
+            String msg = "Asset realm must be set : asset=" + asset;
+            LOG.warning(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        // Do standard JSR-380 validation on the asset (includes custom validation using descriptors and constraints)
+        Set<ConstraintViolation<Asset<?>>> validationFailures = ValueUtil.validate(asset);
+
+        if (!validationFailures.isEmpty()) {
+            String msg = "Asset merge failed as asset has failed constraint validation: asset=" + asset;
+            ConstraintViolationException ex = new ConstraintViolationException(validationFailures);
+            LOG.log(Level.WARNING, msg + ", exception=" + ex.getMessage());
+            throw ex;
+        }
+
+        T existingAsset = TextUtil.isNullOrEmpty(asset.getId()) ? null : (T)em.find(Asset.class, asset.getId());
+
+        if (existingAsset != null) {
+
+            // Verify type has not been changed
+            if (!existingAsset.getType().equals(asset.getType())) {
+                String msg = "Asset type cannot be changed: asset=" + asset;
+                LOG.warning(msg);
+                throw new IllegalStateException(msg);
             }
 
-            // Update all empty attribute timestamps with server-time (a caller which doesn't have a
-            // reliable time source such as a browser should clear the timestamp when setting an attribute
-            // value).
-            asset.getAttributes().forEach(attribute -> {
-                if (!attribute.hasExplicitTimestamp()) {
-                    attribute.setTimestamp(timerService.getCurrentTimeMillis());
-                }
-            });
+            if (!existingAsset.getRealm().equals(asset.getRealm())) {
+                String msg = "Asset realm cannot be changed: asset=" + asset;
+                LOG.warning(msg);
+                throw new IllegalStateException(msg);
+            }
 
-            // If username present
-            User user = null;
-            if (!TextUtil.isNullOrEmpty(userName)) {
-                user = identityService.getIdentityProvider().getUserByUsername(asset.getRealm(), userName);
-                if (user == null) {
-                    String msg = "User not found: " + userName;
-                    LOG.warning(msg);
-                    throw new IllegalStateException(msg);
-                }
+            // Update timestamp on modified attributes this allows fast equality checking
+            asset.getAttributes().stream().forEach(attr ->
+                existingAsset.getAttribute(attr.getName()).ifPresent(existingAttr -> {
+                    // If attribute is modified make sure the timestamp is also updated to allow simple equality
+                    if (!attr.deepEquals(existingAttr) && attr.getTimestamp().orElse(0L) <= existingAttr.getTimestamp().orElse(0L)) {
+                        // In the unlikely situation that we are in the same millisecond as last update
+                        // we will always ensure a delta of >= 1ms
+                        attr.setTimestamp(Math.max(existingAttr.getTimestamp().orElse(0L)+1, timerService.getCurrentTimeMillis()));
+                    }
+            }));
+
+            // If this is real merge and desired, copy the persistent version number over the detached
+            // version, so the detached state always wins and this update will go through and ignore
+            // concurrent updates
+            if (overrideVersion) {
+                asset.setVersion(existingAsset.getVersion());
             }
+        }
 
-            T updatedAsset = em.merge(asset);
+        if (!identityService.getIdentityProvider().realmExists(asset.getRealm())) {
+            String msg = "Asset realm not found or is inactive: asset=" + asset;
+            LOG.warning(msg);
+            throw new IllegalStateException(msg);
+        }
 
-            if (LOG.isLoggable(FINE)) {
-                LOG.fine("Asset merge took: " + (System.currentTimeMillis() - startTime) + "ms");
+        if (asset.getParentId() != null && asset.getParentId().equals(asset.getId())) {
+            String msg = "Asset parent cannot be the asset: asset=" + asset;
+            LOG.warning(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        // Validate parent only if asset is new or parent has changed
+        if ((existingAsset == null && asset.getParentId() != null)
+            || (existingAsset != null && asset.getParentId() != null && !asset.getParentId().equals(existingAsset.getParentId()))) {
+
+            Asset<?> parent = find(em, asset.getParentId(), true);
+
+            // The parent must exist
+            if (parent == null) {
+                String msg = "Asset parent not found: asset=" + asset;
+                LOG.warning(msg);
+                throw new IllegalStateException(msg);
             }
 
-            if (user != null) {
-                createUserAssetLinks(em, Collections.singletonList(new UserAssetLink(user.getRealm(), user.getId(), updatedAsset.getId())));
+            // The parent can not be a child of the asset
+            if (parent.pathContains(asset.getId())) {
+                String msg = "Asset parent cannot be a descendant of the asset: asset=" + asset;
+                LOG.warning(msg);
+                throw new IllegalStateException(msg);
             }
 
-            if (existingAsset == null && updatedAsset instanceof ThingAsset && !ThingAsset.DESCRIPTOR.getName().equals(updatedAsset.getType())) {
-                // When an asset is first saved then any custom type is not persisted as JPA will set it to ThingAsset so we need to override
-                // We don't need to do this when updating an existing asset as JPA doesn't overwrite the type - if this changes in future it
-                // should be detected by tests
-                em.createNativeQuery("update ASSET set type = ? where id = ?;")
-                    .setParameter(1, updatedAsset.getType())
-                    .setParameter(2, updatedAsset.getId())
-                    .executeUpdate();
+            validateParent(parent, asset);
+        }
+
+        // Validate group child asset type attribute
+        if (asset instanceof GroupAsset) {
+            String childAssetType = ((GroupAsset)asset).getChildAssetType()
+                .map(childAssetTypeString -> TextUtil.isNullOrEmpty(childAssetTypeString) ? null : childAssetTypeString)
+                .orElseThrow(() -> {
+                    String msg = "Asset of type GROUP childAssetType attribute must be a valid string: asset=" + asset;
+                    LOG.warning(msg);
+                    return new IllegalStateException(msg);
+                });
+
+            String existingChildAssetType = existingAsset != null ? ((GroupAsset)existingAsset)
+                .getChildAssetType()
+                .orElseThrow(() -> {
+                    String msg = "Asset of type GROUP childAssetType attribute must be a valid string: asset=" + asset;
+                    LOG.warning(msg);
+                    return new IllegalStateException(msg);
+                }) : childAssetType;
+
+            if (!childAssetType.equals(existingChildAssetType)) {
+                String msg = "Asset of type GROUP so childAssetType attribute cannot be changed: asset=" + asset;
+                LOG.warning(msg);
+                throw new IllegalStateException(msg);
             }
+        }
 
-            return updatedAsset;
+        // Update all empty attribute timestamps with server-time (a caller which doesn't have a
+        // reliable time source such as a browser should clear the timestamp when setting an attribute
+        // value).
+        asset.getAttributes().forEach(attribute -> {
+            if (!attribute.hasExplicitTimestamp()) {
+                attribute.setTimestamp(timerService.getCurrentTimeMillis());
+            }
         });
+
+        // If username present
+        User user = null;
+        if (!TextUtil.isNullOrEmpty(userName)) {
+            user = identityService.getIdentityProvider().getUserByUsername(asset.getRealm(), userName);
+            if (user == null) {
+                String msg = "User not found: " + userName;
+                LOG.warning(msg);
+                throw new IllegalStateException(msg);
+            }
+        }
+
+        T updatedAsset = em.merge(asset);
+
+        if (LOG.isLoggable(FINE)) {
+            LOG.fine("Asset merge took: " + (System.currentTimeMillis() - startTime) + "ms");
+        }
+
+        if (user != null) {
+            createUserAssetLinks(em, Collections.singletonList(new UserAssetLink(user.getRealm(), user.getId(), updatedAsset.getId())));
+        }
+
+        if (existingAsset == null && updatedAsset instanceof ThingAsset && !ThingAsset.DESCRIPTOR.getName().equals(updatedAsset.getType())) {
+            // When an asset is first saved then any custom type is not persisted as JPA will set it to ThingAsset so we need to override
+            // We don't need to do this when updating an existing asset as JPA doesn't overwrite the type - if this changes in future it
+            // should be detected by tests
+            em.createNativeQuery("update ASSET set type = ? where id = ?;")
+                .setParameter(1, updatedAsset.getType())
+                .setParameter(2, updatedAsset.getId())
+                .executeUpdate();
+        }
+
+        return updatedAsset;
     }
 
     /**
@@ -1036,8 +1411,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return persistenceService.doReturningTransaction(entityManager -> entityManager.unwrap(Session.class).doReturningWork(new AbstractReturningWork<>() {
             @Override
             public Boolean execute(Connection connection) throws SQLException {
-                try (PreparedStatement st = connection.prepareStatement("select count(*) from Asset a where a.path ~ lquery(?) AND a.id = ANY(?)")) {
-                    st.setString(1, "*." + parentAssetId + ".*");
+                try (PreparedStatement st = connection.prepareStatement("select count(*) from Asset a where a.path <@ (select p.path from Asset p where p.id = ?) AND a.id = ANY(?)")) {
+                    st.setString(1, parentAssetId);
                     st.setArray(2, st.getConnection().createArrayOf("text", assetIds.toArray()));
                     ResultSet rs = st.executeQuery();
                     return rs.next() && rs.getInt(1) == assetIds.size();
@@ -1049,6 +1424,29 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         }));
     }
 
+    /**
+     * Get the ID, parent ID and version of every asset in the realm along with a flag indicating if any attribute
+     * value timestamp is newer than the specified time; used to answer gateway delta synchronisation requests without
+     * loading full assets.
+     */
+    public List<GatewayAssetSyncInfo> findGatewayAssetSyncInfo(String realm, long modifiedSince) {
+        return persistenceService.doReturningTransaction(entityManager -> entityManager.unwrap(Session.class).doReturningWork(new AbstractReturningWork<>() {
+            @Override
+            public List<GatewayAssetSyncInfo> execute(Connection connection) throws SQLException {
+                try (PreparedStatement st = connection.prepareStatement("select A.ID, A.PARENT_ID, A.VERSION, exists(select 1 from jsonb_each(A.ATTRIBUTES) as AX where (AX.VALUE ->> 'timestamp')::bigint > ?) from ASSET A where A.REALM = ?")) {
+                    st.setLong(1, modifiedSince);
+                    st.setString(2, realm);
+                    ResultSet rs = st.executeQuery();
+                    List<GatewayAssetSyncInfo> result = new ArrayList<>();
+                    while (rs.next()) {
+                        result.add(new GatewayAssetSyncInfo(rs.getString(1), rs.getString(2), rs.getLong(3), rs.getBoolean(4)));
+                    }
+                    return result;
+                }
+            }
+        }));
+    }
+
     public List<UserAssetLink> findUserAssetLinks(String realm, String userId, String assetId) {
         return findUserAssetLinks(
             realm,
@@ -1165,12 +1563,23 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
      * Delete all {@link UserAssetLink}s for the specified {@link User}
      */
     public void deleteUserAssetLinks(String userId) {
-        persistenceService.doTransaction(entityManager -> {
+        List<UserAssetLink> existingLinks = persistenceService.doReturningTransaction(entityManager -> {
+            List<UserAssetLink> links = buildFindUserAssetLinksQuery(entityManager, null, Collections.singletonList(userId), null).getResultList();
             Query query = entityManager.createQuery("DELETE FROM UserAssetLink ual WHERE ual.id.userId = ?1");
             query.setParameter(1, userId);
             int deleteCount = query.executeUpdate();
             LOG.fine("Deleted all user asset links for user: user ID=" + userId + ", count=" + deleteCount);
+            return links;
         });
+
+        existingLinks.forEach(userAssetLink ->
+            persistenceService.publishPersistenceEvent(
+                PersistenceEvent.Cause.DELETE,
+                null,
+                userAssetLink,
+                UserAssetLink.class,
+                null,
+                null));
     }
 
     /**
@@ -1259,42 +1668,15 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
         long startMillis = System.currentTimeMillis();
 
-        if (query.access == null)
-            query.access = PRIVATE;
+        Pair<PreparedAssetQuery, Boolean> queryAndContainsCalendarPredicate = prepareFindQuery(query);
 
-        // Do some sanity checks on query values and return empty result set if empty query parameters
-        if (query.ids != null && query.ids.length == 0) {
-            return Collections.emptyList();
-        }
-        if (query.paths != null && query.paths.length == 0) {
-            return Collections.emptyList();
-        }
-        if (query.types != null && query.types.length == 0) {
-            return Collections.emptyList();
-        }
-        if (query.names != null && query.names.length == 0) {
+        if (queryAndContainsCalendarPredicate == null) {
             return Collections.emptyList();
         }
-        if (query.userIds != null && query.userIds.length == 0) {
-            return Collections.emptyList();
-        }
-        if (query.parents != null && query.parents.length == 0) {
-            return Collections.emptyList();
-        }
-
-        // Default to order by creation date if the query may return multiple results
-        if (query.orderBy == null && query.ids == null)
-            query.orderBy = new OrderBy(OrderBy.Property.CREATED_ON);
 
-        Pair<PreparedAssetQuery, Boolean> queryAndContainsCalendarPredicate = buildQuery(query, timerService::getCurrentTimeMillis);
         PreparedAssetQuery querySql = queryAndContainsCalendarPredicate.key;
         boolean containsCalendarPredicate = queryAndContainsCalendarPredicate.value;
 
-        if (containsCalendarPredicate && (query.select != null && (query.select.attributes == null))) {
-            LOG.warning("Asset query contains a calendar event predicate which requires the attribute values and types to be included in the select (as calendar event predicate is applied post DB query)");
-            throw new IllegalArgumentException("Asset query contains a calendar event predicate which requires the attribute values and types to be included in the select (as calendar event predicate is applied post DB query)");
-        }
-
         // RT: No longer used as parent info removed for simplicity and security reasons
 //        // Use a SqlResultSetMapping to allow auto hydration with retrieval of transient data as well
 //        // Using hibernate query object rather than JPA as postgres array parameter support doesn't work in JPQL without specifying the data type
@@ -1334,6 +1716,251 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return assets;
     }
 
+    /**
+     * Like {@link #findAll(AssetQuery)} but the results are read from a server side DB cursor
+     * ({@link #OR_ASSET_QUERY_STREAM_FETCH_SIZE} rows at a time) and passed to the consumer one at a time; each asset
+     * is detached once consumed so memory use does not depend on the size of the result. The consumer is called
+     * within a transaction so it should not block for long.
+     *
+     * @return The number of assets passed to the consumer
+     */
+    public long streamAll(AssetQuery query, Consumer<Asset<?>> consumer) {
+        return streamAll(query, false, consumer);
+    }
+
+    /**
+     * Like {@link #streamAll(AssetQuery, Consumer)} but when {@code readOnly} is true the query can be served by the
+     * database read replica (see {@link PersistenceService#doReturningReadOnlyTransaction}) so the results can be
+     * stale by up to the replication lag; only use this for reporting and export style queries.
+     */
+    public long streamAll(AssetQuery query, boolean readOnly, Consumer<Asset<?>> consumer) {
+        return readOnly
+            ? persistenceService.doReturningReadOnlyTransaction(em -> streamAll(em, query, consumer))
+            : persistenceService.doReturningTransaction(em -> streamAll(em, query, consumer));
+    }
+
+    @SuppressWarnings("unchecked")
+    protected long streamAll(EntityManager em, AssetQuery query, Consumer<Asset<?>> consumer) {
+        long startMillis = System.currentTimeMillis();
+
+        Pair<PreparedAssetQuery, Boolean> queryAndContainsCalendarPredicate = prepareFindQuery(query);
+
+        if (queryAndContainsCalendarPredicate == null) {
+            return 0L;
+        }
+
+        PreparedAssetQuery querySql = queryAndContainsCalendarPredicate.key;
+        boolean containsCalendarPredicate = queryAndContainsCalendarPredicate.value;
+
+        org.hibernate.query.Query<Object[]> jpql = em.createNativeQuery(querySql.querySql, Asset.class).unwrap(org.hibernate.query.Query.class)
+            .setHint(AvailableHints.HINT_READ_ONLY, true)
+            .setFetchSize(streamFetchSize);
+        querySql.apply(em, jpql);
+        long count = 0L;
+
+        try (Stream<Asset<?>> assets = (Stream<Asset<?>>)(Object)jpql.getResultStream()) {
+            Iterator<Asset<?>> iterator = assets.iterator();
+            while (iterator.hasNext()) {
+                Asset<?> asset = iterator.next();
+                if (!containsCalendarPredicate || calendarEventPredicateMatches(timerService::getCurrentTimeMillis, query, asset)) {
+                    consumer.accept(asset);
+                    count++;
+                }
+                em.detach(asset);
+            }
+        }
+
+        if (LOG.isLoggable(FINE)) {
+            LOG.fine("Asset query stream took " + (System.currentTimeMillis() - startMillis) + "ms: return count=" + count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Applies the query defaults and returns the prepared query or null if the query cannot return any results
+     */
+    protected Pair<PreparedAssetQuery, Boolean> prepareFindQuery(AssetQuery query) {
+        if (query.access == null)
+            query.access = PRIVATE;
+
+        // Do some sanity checks on query values and return empty result set if empty query parameters
+        if (isEmptyResultQuery(query)) {
+            return null;
+        }
+
+        // Default to order by creation date if the query may return multiple results
+        if (query.orderBy == null && query.ids == null)
+            query.orderBy = new OrderBy(OrderBy.Property.CREATED_ON);
+
+        Pair<PreparedAssetQuery, Boolean> queryAndContainsCalendarPredicate = getPreparedQuery(query);
+
+        if (queryAndContainsCalendarPredicate.value && (query.select != null && (query.select.attributes == null))) {
+            LOG.warning("Asset query contains a calendar event predicate which requires the attribute values and types to be included in the select (as calendar event predicate is applied post DB query)");
+            throw new IllegalArgumentException("Asset query contains a calendar event predicate which requires the attribute values and types to be included in the select (as calendar event predicate is applied post DB query)");
+        }
+
+        return queryAndContainsCalendarPredicate;
+    }
+
+    /**
+     * Count the assets that match the query without loading them; combined with a {@link PathPredicate} (optionally
+     * with a {@link PathPredicate#maxDepth}) this gives the size of a subtree. Attribute values are not selected so
+     * queries containing calendar event predicates (which are applied after the DB query) are counted by loading the
+     * matching assets.
+     */
+    public long count(AssetQuery query) {
+        if (query.access == null)
+            query.access = PRIVATE;
+
+        if (isEmptyResultQuery(query)) {
+            return 0L;
+        }
+
+        Select select = query.select;
+        OrderBy orderBy = query.orderBy;
+        query.select = new Select().excludeAttributes();
+        query.orderBy = null;
+        Pair<PreparedAssetQuery, Boolean> queryAndContainsCalendarPredicate;
+        try {
+            queryAndContainsCalendarPredicate = getPreparedQuery(query);
+        } finally {
+            query.select = select;
+            query.orderBy = orderBy;
+        }
+
+        if (queryAndContainsCalendarPredicate.value) {
+            return findAll(query).size();
+        }
+
+        PreparedAssetQuery querySql = queryAndContainsCalendarPredicate.key;
+
+        return persistenceService.doReturningTransaction(em -> {
+            @SuppressWarnings("unchecked")
+            org.hibernate.query.Query<Object[]> countQuery = em.createNativeQuery("select count(*) from (" + querySql.querySql + ") C")
+                .unwrap(org.hibernate.query.Query.class);
+            querySql.apply(em, countQuery);
+            return ((Number) (Object) countQuery.getSingleResult()).longValue();
+        });
+    }
+
+    protected static boolean isEmptyResultQuery(AssetQuery query) {
+        return (query.ids != null && query.ids.length == 0)
+            || (query.paths != null && query.paths.length == 0)
+            || (query.types != null && query.types.length == 0)
+            || (query.names != null && query.names.length == 0)
+            || (query.userIds != null && query.userIds.length == 0)
+            || (query.parents != null && query.parents.length == 0);
+    }
+
+    /**
+     * Returns the SQL and parameter binders for the supplied query; these are cached by the shape of the query (see
+     * {@link #getQueryShapeKey}) unless it contains predicates relative to the current time, so queries that only
+     * differ in their parameter values (IDs, names, parents, paths etc.) share a cache entry. Values that are written
+     * into the SQL are part of the shape and are captured by the cached entry so it is built from a copy of the query,
+     * this prevents later modification of the supplied query from affecting cached entries. The returned SQL is bound to
+     * the supplied query.
+     */
+    protected Pair<PreparedAssetQuery, Boolean> getPreparedQuery(AssetQuery query) {
+        Cache<String, Pair<PreparedAssetQuery, Boolean>> cache = preparedQueryCache;
+        String cacheKey = cache != null ? getQueryShapeKey(query) : null;
+        AssetQuery queryCopy = null;
+
+        if (cacheKey != null) {
+            Pair<PreparedAssetQuery, Boolean> prepared = cache.getIfPresent(cacheKey);
+            if (prepared != null) {
+                return new Pair<>(prepared.key.bind(query), prepared.value);
+            }
+            queryCopy = ValueUtil.parse(ValueUtil.asJSON(query).orElse(null), AssetQuery.class).orElse(null);
+        }
+
+        long startNanos = System.nanoTime();
+        Pair<PreparedAssetQuery, Boolean> prepared;
+
+        if (queryCopy != null) {
+            AtomicBoolean timeDependent = new AtomicBoolean();
+            prepared = buildQuery(queryCopy, () -> {
+                timeDependent.set(true);
+                return timerService.getCurrentTimeMillis();
+            });
+            if (!timeDependent.get()) {
+                cache.put(cacheKey, prepared);
+            }
+            prepared = new Pair<>(prepared.key.bind(query), prepared.value);
+        } else {
+            prepared = buildQuery(query, timerService::getCurrentTimeMillis);
+        }
+
+        if (queryBuildTimer != null) {
+            queryBuildTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+
+        return prepared;
+    }
+
+    /**
+     * Returns the JSON representation of the query with the values that are only used as SQL parameters replaced by
+     * {@link #QUERY_SHAPE_PARAMETER}; queries with the same key generate the same SQL. Values that change the SQL
+     * (e.g. the presence or emptiness of arrays, attribute names, which are used to group attribute predicates, and
+     * geofence coordinates) are kept. Returns null if the query cannot be serialised.
+     */
+    protected static String getQueryShapeKey(AssetQuery query) {
+        ObjectNode shape;
+        try {
+            shape = ValueUtil.JSON.valueToTree(query);
+        } catch (IllegalArgumentException e) {
+            LOG.log(Level.FINE, "Failed to serialise asset query so it won't be cached", e);
+            return null;
+        }
+
+        replaceNonEmptyParameter(shape.path("select"), "attributes");
+        replaceNonEmptyParameter(shape, "ids");
+        replaceNonEmptyParameter(shape, "userIds");
+        replaceNonEmptyParameter(shape, "types");
+        replaceNonEmptyParameter(shape.path("realm"), "name");
+        shape.path("names").forEach(name -> replaceNonEmptyParameter(name, "value"));
+        shape.path("parents").forEach(parent -> replaceNonEmptyParameter(parent, "id"));
+        shape.path("paths").forEach(path -> {
+            JsonNode elements = path.path("path");
+            if (elements instanceof ArrayNode elementsArray) {
+                for (int i = 0; i < elementsArray.size(); i++) {
+                    elementsArray.set(i, elementsArray.textNode(QUERY_SHAPE_PARAMETER));
+                }
+            }
+            replaceNonEmptyParameter(path, "maxDepth");
+        });
+        replaceAttributePredicateParameters(shape.path("attributes"));
+
+        return shape.toString();
+    }
+
+    protected static void replaceAttributePredicateParameters(JsonNode group) {
+        group.path("items").forEach(item -> {
+            replaceValuePredicateParameters(item.path("value"));
+            item.path("meta").forEach(meta -> replaceValuePredicateParameters(meta.path("value")));
+        });
+        group.path("groups").forEach(AssetStorageService::replaceAttributePredicateParameters);
+    }
+
+    protected static void replaceValuePredicateParameters(JsonNode valuePredicate) {
+        switch (valuePredicate.path("predicateType").asText()) {
+            case StringPredicate.name, ArrayPredicate.name -> replaceNonEmptyParameter(valuePredicate, "value");
+            case NumberPredicate.name -> {
+                replaceNonEmptyParameter(valuePredicate, "value");
+                replaceNonEmptyParameter(valuePredicate, "rangeValue");
+            }
+        }
+    }
+
+    protected static void replaceNonEmptyParameter(JsonNode node, String fieldName) {
+        if (node instanceof ObjectNode objectNode) {
+            JsonNode value = objectNode.get(fieldName);
+            if (value != null && !value.isNull() && !(value.isContainerNode() && value.isEmpty()) && !(value.isTextual() && value.asText().isEmpty())) {
+                objectNode.put(fieldName, QUERY_SHAPE_PARAMETER);
+            }
+        }
+    }
+
     /**
      * This does a low level JDBC update so hibernate event interceptor doesn't get called and we 'manually'
      * generate the {@link AttributeEvent}
@@ -1344,12 +1971,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         long timestamp = event.getTimestamp() > 0 ? event.getTimestamp() : timerService.getCurrentTimeMillis();
 
         try {
-            PGobject valueTimestampJSON = new PGobject();
-            valueTimestampJSON.setType("jsonb");
-            valueTimestampJSON.setValue("{\"value\":" + ValueUtil.asJSON(event.getValue().orElse(null)).orElse(ValueUtil.NULL_LITERAL) + ",\"timestamp\":" + timestamp + "}");
-
             // TODO: Use jsonb type directly to optimise over wire data (couldn't get this to work even after seeing https://stackoverflow.com/questions/53847917/postgresql-throws-column-is-of-type-jsonb-but-expression-is-of-type-bytea-with)
-            Query query = em.createNativeQuery("UPDATE asset SET attributes[?] = attributes[?] || ?\\:\\:jsonb where id = ?")
+            Query query = em.createNativeQuery(UPDATE_ATTRIBUTE_VALUE_SQL)
                 .setParameter(1, event.getName())
                 .setParameter(2, event.getName())
                 .setParameter(3, "{\"value\":" + ValueUtil.asJSON(event.getValue().orElse(null)).orElse(ValueUtil.NULL_LITERAL) + ",\"timestamp\":" + timestamp + "}")
@@ -1515,7 +2138,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
         sb.append(buildOrderByString(query));
         sb.append(buildLimitString(query));
-        return new Pair<>(new PreparedAssetQuery(sb.toString(), binders), containsCalendarPredicate);
+        return new Pair<>(new PreparedAssetQuery(sb.toString(), binders, query), containsCalendarPredicate);
     }
 
     protected static String buildSelectString(AssetQuery query, int level, List<ParameterBinder> binders, Supplier<Long> timeProvider) {
@@ -1569,7 +2192,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 .append("?")
                 .append(pos)
                 .append(")");
-            binders.add((em, st) -> st.setParameter(pos, select.attributes));
+            binders.add((q, em, st) -> st.setParameter(pos, q.select.attributes));
         }
 
         if (query.access != PRIVATE) {
@@ -1651,7 +2274,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             sb.append(" and A.ID = ANY(?")
                 .append(pos)
                 .append(")");
-            binders.add((em, st) -> st.setParameter(pos, query.ids));
+            binders.add((q, em, st) -> st.setParameter(pos, q.ids));
         }
 
         if (level == 1 && query.names != null) {
@@ -1659,15 +2282,17 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             sb.append(" and (");
             boolean isFirst = true;
 
-            for (StringPredicate pred : query.names) {
+            for (int i = 0; i < query.names.length; i++) {
+                StringPredicate pred = query.names[i];
                 if (!isFirst) {
                     sb.append(" or ");
                 }
                 isFirst = false;
                 final int pos = binders.size() + 1;
+                final int index = i;
                 sb.append(pred.caseSensitive ? "A.NAME " : "upper(A.NAME)");
                 sb.append(StringPredicate.toSQLParameter(pred, pos, false));
-                binders.add((em, st) -> st.setParameter(pos, pred.prepareValue()));
+                binders.add((q, em, st) -> st.setParameter(pos, q.names[index].prepareValue()));
             }
             sb.append(")");
         }
@@ -1677,7 +2302,9 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             sb.append(" and (");
             boolean isFirst = true;
 
-            for (ParentPredicate pred : query.parents) {
+            for (int i = 0; i < query.parents.length; i++) {
+                ParentPredicate pred = query.parents[i];
+                final int index = i;
                 if (!isFirst) {
                     sb.append(" or (");
                 } else {
@@ -1688,7 +2315,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 if (level == 1 && pred.id != null) {
                     final int pos = binders.size() + 1;
                     sb.append("A.PARENT_ID = ?").append(pos);
-                    binders.add((em, st) -> st.setParameter(pos, pred.id));
+                    binders.add((q, em, st) -> st.setParameter(pos, q.parents[index].id));
                 } else if (level == 1) {
                     sb.append("A.PARENT_ID is null");
                 } else {
@@ -1703,13 +2330,13 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
         if (level == 1 && query.paths != null) {
             sb.append(" and (");
-            Arrays.stream(query.paths)
-                .map(p -> String.join(".", p.path))
-                .forEach(lqueryStr -> {
-                    int pos = binders.size() + 1;
-                    sb.append("A.PATH ~ lquery(?").append(pos).append(") or ");
-                    binders.add((em, st) -> st.setParameter(pos, "*." + lqueryStr + ".*"));
-                });
+            for (int i = 0; i < query.paths.length; i++) {
+                if (query.paths[i].hasPath()) {
+                    sb.append("(");
+                    appendPathPredicate(sb, query.paths[i], i, binders);
+                    sb.append(") or ");
+                }
+            }
 
             sb.append("false)");
         }
@@ -1718,7 +2345,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             if (query.realm != null && !TextUtil.isNullOrEmpty(query.realm.name)) {
                 final int pos = binders.size() + 1;
                 sb.append(" and A.REALM = ?").append(pos);
-                binders.add((em, st) -> st.setParameter(pos, query.realm.name));
+                binders.add((q, em, st) -> st.setParameter(pos, q.realm.name));
             }
 
             if (query.userIds != null) {
@@ -1726,7 +2353,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 sb.append(" and UA.USER_ID = ANY(?")
                     .append(pos)
                     .append(")");
-                binders.add((em, st) -> st.setParameter(pos, query.userIds));
+                binders.add((q, em, st) -> st.setParameter(pos, q.userIds));
             }
 
             if (level == 1 && query.access == Access.PUBLIC) {
@@ -1734,28 +2361,55 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             }
 
             if (query.types != null) {
-                String[] resolvedTypes = getResolvedAssetTypes(query.types);
                 final int pos = binders.size() + 1;
                 sb.append(" and A.TYPE = ANY(?")
                     .append(pos)
                     .append(")");
-                binders.add((em, st) -> st.setParameter(pos, resolvedTypes));
+                binders.add((q, em, st) -> st.setParameter(pos, getResolvedAssetTypes(q.types)));
             }
 
             if (query.attributes != null) {
+                addLocationBoundingBoxFilter(sb, query.attributes);
                 sb.append(" and A.id in (select A.id from ");
                 AtomicInteger offset = new AtomicInteger(sb.length());
                 Consumer<String> selectInserter = (str) -> sb.insert(offset.getAndAdd(str.length()), str);
                 sb.append(" where true AND ");
-                containsCalendarPredicate = addAttributePredicateGroupQuery(sb, binders, 0, selectInserter, query.attributes, timeProvider);
+                containsCalendarPredicate = addAttributePredicateGroupQuery(sb, binders, 0, selectInserter, query, q -> q.attributes, timeProvider);
                 sb.append(")");
             }
         }
         return containsCalendarPredicate;
     }
 
-    protected static boolean addAttributePredicateGroupQuery(StringBuilder sb, List<ParameterBinder> binders, int groupIndex, Consumer<String> selectInserter, LogicGroup<AttributePredicate> attributePredicateGroup, Supplier<Long> timeProvider) {
+    /**
+     * Adds a bounding box filter on the asset's location point for each geofence that a match must satisfy; this
+     * allows the spatial index on {@link #LOCATION_POINT_SQL} to be used and the exact geofence predicate is then
+     * only applied to the assets within the bounding box.
+     */
+    protected static void addLocationBoundingBoxFilter(StringBuilder sb, LogicGroup<AttributePredicate> attributePredicates) {
+        for (GeofencePredicate geofencePredicate : LocationAttributePredicate.getRequiredLocationPredicates(attributePredicates)) {
+            double[] boundingBox = geofencePredicate.getBoundingBox();
+            sb.append(" and ")
+                .append(LOCATION_POINT_SQL)
+                .append(" && ST_MakeEnvelope(")
+                .append(boundingBox[0])
+                .append(",")
+                .append(boundingBox[1])
+                .append(",")
+                .append(boundingBox[2])
+                .append(",")
+                .append(boundingBox[3])
+                .append(")");
+        }
+    }
+
+    /**
+     * Adds the attribute predicate group returned by the group accessor for the query; parameter binders use the
+     * accessor to get the predicate values from the query they are bound to.
+     */
+    protected static boolean addAttributePredicateGroupQuery(StringBuilder sb, List<ParameterBinder> binders, int groupIndex, Consumer<String> selectInserter, AssetQuery query, Function<AssetQuery, LogicGroup<AttributePredicate>> groupAccessor, Supplier<Long> timeProvider) {
 
+        LogicGroup<AttributePredicate> attributePredicateGroup = groupAccessor.apply(query);
         boolean containsCalendarPredicate = false;
         LogicGroup.Operator operator = attributePredicateGroup.operator;
 
@@ -1765,36 +2419,42 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
         sb.append("(");
 
-        if (!attributePredicateGroup.getItems().isEmpty()) {
+        List<AttributePredicate> items = attributePredicateGroup.getItems();
+
+        if (!items.isEmpty()) {
 
-            Collection<List<AttributePredicate>> grouped;
+            Collection<List<Integer>> grouped;
 
             if (operator == LogicGroup.Operator.AND) {
                 // Group predicates by their attribute name predicate
-                grouped = attributePredicateGroup.getItems().stream().collect(groupingBy(predicate -> predicate.name != null ? predicate.name : "")).values();
+                grouped = IntStream.range(0, items.size()).boxed().collect(groupingBy(i -> items.get(i).name != null ? items.get(i).name : "")).values();
             } else {
                 grouped = new ArrayList<>();
-                grouped.add(attributePredicateGroup.getItems());
+                grouped.add(IntStream.range(0, items.size()).boxed().toList());
             }
 
             boolean isFirst = true;
 
-            for (List<AttributePredicate> group : grouped) {
+            for (List<Integer> group : grouped) {
                 if (!isFirst) {
                     sb.append(operator == LogicGroup.Operator.OR ? " or " : " and ");
                 }
                 isFirst = false;
 
+                List<Function<AssetQuery, ? extends NameValuePredicate>> predicateAccessors = group.stream()
+                    .<Function<AssetQuery, ? extends NameValuePredicate>>map(i -> q -> groupAccessor.apply(q).getItems().get(i))
+                    .toList();
                 selectInserter.accept((groupIndex > 0 ? ", " : "") + "jsonb_each(A.attributes) as AX" + groupIndex);
-                containsCalendarPredicate = !containsCalendarPredicate && addNameValuePredicates(group, sb, binders, "AX" + groupIndex, selectInserter, operator == LogicGroup.Operator.OR, timeProvider);
+                containsCalendarPredicate = !containsCalendarPredicate && addNameValuePredicates(query, predicateAccessors, sb, binders, "AX" + groupIndex, selectInserter, operator == LogicGroup.Operator.OR, timeProvider);
                 groupIndex++;
             }
         }
 
         if (attributePredicateGroup.groups != null && attributePredicateGroup.groups.size() > 0) {
-            for (LogicGroup<AttributePredicate> group : attributePredicateGroup.groups) {
+            for (int i = 0; i < attributePredicateGroup.groups.size(); i++) {
+                final int index = i;
                 sb.append(operator == LogicGroup.Operator.OR ? " or " : " and ");
-                boolean containsCalPred = addAttributePredicateGroupQuery(sb, binders, groupIndex, selectInserter, group, timeProvider);
+                boolean containsCalPred = addAttributePredicateGroupQuery(sb, binders, groupIndex, selectInserter, query, q -> groupAccessor.apply(q).groups.get(index), timeProvider);
                 if (!containsCalendarPredicate && containsCalPred) {
                     containsCalendarPredicate = true;
                 }
@@ -1805,12 +2465,13 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return containsCalendarPredicate;
     }
 
-    protected static boolean addNameValuePredicates(List<? extends NameValuePredicate> nameValuePredicates, StringBuilder sb, List<ParameterBinder> binders, String jsonObjName, Consumer<String> selectInserter, boolean useOr, Supplier<Long> timeProvider) {
+    protected static boolean addNameValuePredicates(AssetQuery query, List<Function<AssetQuery, ? extends NameValuePredicate>> predicateAccessors, StringBuilder sb, List<ParameterBinder> binders, String jsonObjName, Consumer<String> selectInserter, boolean useOr, Supplier<Long> timeProvider) {
         boolean containsCalendarPredicate = false;
 
         boolean isFirst = true;
         int metaIndex = 0;
-        for (NameValuePredicate nameValuePredicate : nameValuePredicates) {
+        for (Function<AssetQuery, ? extends NameValuePredicate> predicateAccessor : predicateAccessors) {
+            NameValuePredicate nameValuePredicate = predicateAccessor.apply(query);
             if (!containsCalendarPredicate && nameValuePredicate.value instanceof CalendarEventPredicate) {
                 containsCalendarPredicate = true;
             }
@@ -1821,7 +2482,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
             sb.append("(");
 
-            sb.append(buildNameValuePredicateFilter(nameValuePredicate, jsonObjName, binders, timeProvider));
+            sb.append(buildNameValuePredicateFilter(nameValuePredicate, predicateAccessor, jsonObjName, binders, timeProvider));
 
             if (nameValuePredicate instanceof AttributePredicate attributePredicate) {
 
@@ -1829,7 +2490,10 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     String metaJsonObjName = jsonObjName + "_AM" + metaIndex++;
                     selectInserter.accept(" LEFT JOIN jsonb_each(" + jsonObjName + ".VALUE #> '{meta}') as " + metaJsonObjName + " ON true");
                     sb.append(" and (");
-                    addNameValuePredicates(Arrays.asList(attributePredicate.meta.clone()), sb, binders, metaJsonObjName, selectInserter, true, timeProvider);
+                    List<Function<AssetQuery, ? extends NameValuePredicate>> metaAccessors = IntStream.range(0, attributePredicate.meta.length)
+                        .<Function<AssetQuery, ? extends NameValuePredicate>>mapToObj(i -> q -> ((AttributePredicate) predicateAccessor.apply(q)).meta[i])
+                        .toList();
+                    addNameValuePredicates(query, metaAccessors, sb, binders, metaJsonObjName, selectInserter, true, timeProvider);
                     sb.append(")");
                 }
             }
@@ -1839,7 +2503,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return containsCalendarPredicate;
     }
 
-    protected static String buildNameValuePredicateFilter(NameValuePredicate nameValuePredicate, String jsonObjName, List<ParameterBinder> binders, Supplier<Long> timeProvider) {
+    protected static String buildNameValuePredicateFilter(NameValuePredicate nameValuePredicate, Function<AssetQuery, ? extends NameValuePredicate> predicateAccessor, String jsonObjName, List<ParameterBinder> binders, Supplier<Long> timeProvider) {
         if (nameValuePredicate.name == null && nameValuePredicate.value == null) {
             return "TRUE";
         }
@@ -1860,7 +2524,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
             final int pos = binders.size() + 1;
             attributeBuilder.append(StringPredicate.toSQLParameter(nameValuePredicate.name, pos, false));
-            binders.add((em, st) -> st.setParameter(pos, nameValuePredicate.name.prepareValue()));
+            binders.add((q, em, st) -> st.setParameter(pos, predicateAccessor.apply(q).name.prepareValue()));
 
         }
 
@@ -1901,7 +2565,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 valuePathInserter = (sb, b) -> {
                     final int pos = binders.size() + 1;
                     sb.append("(").append(jsonObjName).append(".VALUE ").append(operator).append(" ?").append(pos).append(")");
-                    binders.add((em, st) -> st.setParameter(pos, paths.toArray(new String[0])));
+                    binders.add((q, em, st) -> st.setParameter(pos, paths.toArray(new String[0])));
                 };
             }
 
@@ -1915,7 +2579,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 }
                 final int pos = binders.size() + 1;
                 attributeBuilder.append(StringPredicate.toSQLParameter(stringPredicate, pos, false));
-                binders.add((em, st) -> st.setParameter(pos, stringPredicate.prepareValue()));
+                binders.add((q, em, st) -> st.setParameter(pos, ((StringPredicate) predicateAccessor.apply(q).value).prepareValue()));
             } else if (nameValuePredicate.value instanceof BooleanPredicate booleanPredicate) {
                 valuePathInserter.accept(attributeBuilder, binders);
                 attributeBuilder
@@ -1931,12 +2595,12 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 Pair<Long, Long> fromAndTo = dateTimePredicate.asFromAndTo(timeProvider.get());
 
                 final int pos = binders.size() + 1;
-                binders.add((em, st) -> st.setParameter(pos, new java.sql.Timestamp(fromAndTo.key != null ? fromAndTo.key : 0L)));
+                binders.add((q, em, st) -> st.setParameter(pos, new java.sql.Timestamp(fromAndTo.key != null ? fromAndTo.key : 0L)));
                 attributeBuilder.append(buildOperatorFilter(dateTimePredicate.operator, dateTimePredicate.negate, pos));
 
                 if (dateTimePredicate.operator == Operator.BETWEEN) {
                     final int pos2 = binders.size() + 1;
-                    binders.add((em, st) -> st.setParameter(pos2, new java.sql.Timestamp(fromAndTo.value != null ? fromAndTo.value : Long.MAX_VALUE)));
+                    binders.add((q, em, st) -> st.setParameter(pos2, new java.sql.Timestamp(fromAndTo.value != null ? fromAndTo.value : Long.MAX_VALUE)));
                 }
             } else if (nameValuePredicate.value instanceof NumberPredicate numberPredicate) {
                 attributeBuilder.append("(");
@@ -1945,10 +2609,10 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     .append(" #>> '{}')\\:\\:numeric");
                 final int pos = binders.size() + 1;
                 attributeBuilder.append(buildOperatorFilter(numberPredicate.operator, numberPredicate.negate, pos));
-                binders.add((em, st) -> st.setParameter(pos, numberPredicate.value));
+                binders.add((q, em, st) -> st.setParameter(pos, ((NumberPredicate) predicateAccessor.apply(q).value).value));
                 if (numberPredicate.operator == Operator.BETWEEN) {
                     final int pos2 = binders.size() + 1;
-                    binders.add((em, st) -> st.setParameter(pos2, numberPredicate.rangeValue));
+                    binders.add((q, em, st) -> st.setParameter(pos2, ((NumberPredicate) predicateAccessor.apply(q).value).rangeValue));
                 }
             } else if (nameValuePredicate.value instanceof ArrayPredicate arrayPredicate) {
                 if (arrayPredicate.negated) {
@@ -1964,7 +2628,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     }
                     final int pos = binders.size() + 1;
                     attributeBuilder.append(" @> ?").append(pos).append(" \\:\\:jsonb");
-                    binders.add((em, st) -> st.setParameter(pos, ValueUtil.asJSON(arrayPredicate.value).orElse(ValueUtil.NULL_LITERAL)));
+                    binders.add((q, em, st) -> st.setParameter(pos, ValueUtil.asJSON(((ArrayPredicate) predicateAccessor.apply(q).value).value).orElse(ValueUtil.NULL_LITERAL)));
                 } else {
                     attributeBuilder.append("true");
                 }
@@ -2058,8 +2722,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 valuePathInserter.accept(attributeBuilder, binders);
                 attributeBuilder
                     .append(" #> '{recurrence}') = 'string'))");
-                binders.add((em, st) -> st.setParameter(pos, when));
-                binders.add((em, st) -> st.setParameter(pos+1, when));
+                binders.add((q, em, st) -> st.setParameter(pos, when));
+                binders.add((q, em, st) -> st.setParameter(pos+1, when));
             } else {
                 throw new UnsupportedOperationException("Attribute value predicate is not supported: " + nameValuePredicate.value);
             }
@@ -2077,6 +2741,37 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return attributeBuilder.toString();
     }
 
+    /**
+     * Appends an anchored path predicate; the path of the asset identified by the last path element is looked up and
+     * the ltree containment operator is used against it so the PATH GIST index can be used (a leading wildcard lquery
+     * cannot use the index). Any preceding path elements must be the ancestors of that asset.
+     */
+    protected static void appendPathPredicate(StringBuilder sb, PathPredicate pathPredicate, int index, List<ParameterBinder> binders) {
+        int pos = binders.size() + 1;
+        sb.append("A.PATH <@ (select P.PATH from ASSET P where P.ID = ?").append(pos);
+        binders.add((q, em, st) -> st.setParameter(pos, getPathAnchorId(q.paths[index])));
+
+        if (pathPredicate.path.length > 1) {
+            int lqueryPos = binders.size() + 1;
+            sb.append(" and P.PATH ~ lquery(?").append(lqueryPos).append(")");
+            binders.add((q, em, st) -> st.setParameter(lqueryPos, "*." + String.join(".", q.paths[index].path)));
+        }
+        sb.append(")");
+
+        if (pathPredicate.maxDepth != null) {
+            int anchorPos = binders.size() + 1;
+            int depthPos = anchorPos + 1;
+            sb.append(" and nlevel(A.PATH) <= (select nlevel(P.PATH) from ASSET P where P.ID = ?").append(anchorPos)
+                .append(") + ?").append(depthPos);
+            binders.add((q, em, st) -> st.setParameter(anchorPos, getPathAnchorId(q.paths[index])));
+            binders.add((q, em, st) -> st.setParameter(depthPos, q.paths[index].maxDepth));
+        }
+    }
+
+    protected static String getPathAnchorId(PathPredicate pathPredicate) {
+        return pathPredicate.path[pathPredicate.path.length - 1];
+    }
+
     protected static String buildOperatorFilter(AssetQuery.Operator operator, boolean negate, int pos) {
         switch (operator) {
             case EQUALS -> {
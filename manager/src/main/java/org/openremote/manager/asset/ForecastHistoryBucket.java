@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.asset;
+
+import java.util.Arrays;
+
+/**
+ * History datapoints of an attribute within a time window, ordered by timestamp. Values are held as primitive doubles
+ * unless the bucket holds raw values (used for {@link java.math.BigDecimal} and {@link java.math.BigInteger}
+ * attributes to retain precision).
+ */
+public class ForecastHistoryBucket {
+
+    protected final long begin;
+    protected final long end;
+    protected long[] timestamps = new long[16];
+    protected double[] values = new double[16];
+    protected String[] rawValues;
+    protected int size;
+
+    public ForecastHistoryBucket(long begin, long end, boolean raw) {
+        this.begin = begin;
+        this.end = end;
+        if (raw) {
+            rawValues = new String[timestamps.length];
+        }
+    }
+
+    public long getBegin() {
+        return begin;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public boolean isInTimeRange(long timestamp) {
+        return timestamp >= begin && timestamp <= end;
+    }
+
+    public boolean isRaw() {
+        return rawValues != null;
+    }
+
+    /**
+     * Add a datapoint, datapoints must be added in timestamp order; non numeric values are ignored unless this is a
+     * raw bucket.
+     */
+    public void add(long timestamp, String value) {
+        double doubleValue = 0d;
+
+        if (rawValues == null) {
+            try {
+                doubleValue = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return;
+            }
+        }
+
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            values = Arrays.copyOf(values, capacity);
+            if (rawValues != null) {
+                rawValues = Arrays.copyOf(rawValues, capacity);
+            }
+        }
+        timestamps[size] = timestamp;
+        values[size] = doubleValue;
+        if (rawValues != null) {
+            rawValues[size] = value;
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    public String getRawValue(int index) {
+        return rawValues != null ? rawValues[index] : null;
+    }
+
+    /**
+     * @return the index of the latest datapoint with a timestamp at or before the specified timestamp or -1 if
+     * there is none
+     */
+    public int indexOf(long timestamp) {
+        int index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+        return index >= 0 ? index : -index - 2;
+    }
+}
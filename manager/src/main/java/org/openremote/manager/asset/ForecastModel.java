@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.asset;
+
+import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.value.ForecastConfiguration;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * A forecast model for a single attribute; models are created by the {@link ForecastModelProvider} registered for the
+ * {@link ForecastConfiguration#getType} of the attribute. The {@link ForecastService} calls
+ * {@link #calculate} when the next forecast is due; history datapoints for the windows returned by
+ * {@link #getHistoryWindows} are loaded beforehand (for all due attributes at once).
+ * <p>
+ * Incremental models keep their state in memory and are {@link #update}d with each new attribute value so they don't
+ * need any history to calculate a forecast; their state is snapshotted to the database using {@link #getState} and
+ * restored on restart using {@link #setState}. Implementations must be thread safe as updates and calculations happen
+ * on different threads.
+ */
+public interface ForecastModel {
+
+    long[][] NO_HISTORY_WINDOWS = new long[0][];
+
+    /**
+     * @return the interval between forecast values in milliseconds
+     */
+    long getForecastPeriod();
+
+    /**
+     * @return the number of forecast values to calculate
+     */
+    int getForecastCount();
+
+    /**
+     * @return the inclusive {@code [begin, end]} timestamp windows of history datapoints required to calculate the
+     * forecast values for the supplied forecast timestamps.
+     */
+    long[][] getHistoryWindows(long now, List<Long> forecastTimestamps);
+
+    /**
+     * Calculate the forecast values for the supplied forecast timestamps; the history buckets are in the same order as
+     * the windows returned by {@link #getHistoryWindows}. Forecast timestamps without a value can be omitted.
+     */
+    List<ValueDatapoint<?>> calculate(long now, List<Long> forecastTimestamps, ForecastHistoryBucket[] history);
+
+    default boolean isIncremental() {
+        return false;
+    }
+
+    /**
+     * Update the model with a new value of the attribute (only called for incremental models)
+     */
+    default void update(long timestamp, Object value) {
+    }
+
+    /**
+     * @return a JSON snapshot of the model state or {@code null} if there is no state to store
+     */
+    default String getState() {
+        return null;
+    }
+
+    /**
+     * Restore a snapshot previously returned by {@link #getState}; invalid or incompatible state should be ignored
+     */
+    default void setState(String state) {
+    }
+
+    static boolean isNumberType(Class<?> typeClass) {
+        return Long.class == typeClass || Integer.class == typeClass || Short.class == typeClass ||
+            Byte.class == typeClass || Double.class == typeClass || Float.class == typeClass;
+    }
+
+    static boolean isBigNumberType(Class<?> typeClass) {
+        return BigDecimal.class == typeClass || BigInteger.class == typeClass;
+    }
+
+    /**
+     * Convert the calculated value to the attribute type (see {@link #isNumberType}); returns {@code null} for other
+     * types.
+     */
+    static Number toNumber(double value, Class<?> typeClass) {
+        if (typeClass == Long.class) {
+            return (long) value;
+        } else if (typeClass == Integer.class) {
+            return (int) value;
+        } else if (typeClass == Short.class) {
+            return (short) (int) value;
+        } else if (typeClass == Byte.class) {
+            return (byte) (int) value;
+        } else if (typeClass == Double.class) {
+            return value;
+        } else if (typeClass == Float.class) {
+            return (float) value;
+        }
+        return null;
+    }
+}
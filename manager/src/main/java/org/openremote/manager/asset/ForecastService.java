@@ -19,23 +19,28 @@
  */
 package org.openremote.manager.asset;
 
-import jakarta.persistence.TypedQuery;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.camel.builder.RouteBuilder;
+import org.hibernate.Session;
+import org.openremote.container.concurrent.ContainerExecutor;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.persistence.PersistenceService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.datapoint.AssetDatapointService;
 import org.openremote.manager.datapoint.AssetPredictedDatapointService;
+import org.openremote.manager.event.ClientEventService;
 import org.openremote.manager.gateway.GatewayService;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
 import org.openremote.model.PersistenceEvent;
 import org.openremote.model.asset.Asset;
 import org.openremote.model.attribute.Attribute;
+import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.attribute.AttributeMap;
 import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.datapoint.AssetDatapoint;
-import org.openremote.model.datapoint.Datapoint;
 import org.openremote.model.datapoint.ValueDatapoint;
 import org.openremote.model.query.AssetQuery;
 import org.openremote.model.query.filter.AttributePredicate;
@@ -44,22 +49,25 @@ import org.openremote.model.query.filter.StringPredicate;
 import org.openremote.model.value.ForecastConfiguration;
 import org.openremote.model.value.ForecastConfigurationWeightedExponentialAverage;
 import org.openremote.model.value.MetaItemType;
+import org.postgresql.util.PGobject;
 
-import java.math.BigDecimal;
-import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import static java.util.stream.Collectors.toList;
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.manager.gateway.GatewayService.isNotForGateway;
 import static org.openremote.model.attribute.Attribute.getAddedOrModifiedAttributes;
 import static org.openremote.model.util.TextUtil.requireNonNullAndNonEmpty;
@@ -68,11 +76,26 @@ import static org.openremote.model.value.MetaItemType.FORECAST;
 /**
  * Calculates forecast values for asset attributes with an attached {@link MetaItemType#FORECAST}
  * configuration like {@link ForecastConfigurationWeightedExponentialAverage}.
+ * <p>
+ * Forecasts are calculated by {@link ForecastModel}s which are created by the {@link ForecastModelProvider} registered
+ * for the configuration type; providers are discovered using the {@link ServiceLoader} mechanism in addition to the
+ * built in {@link WeightedExponentialAverageForecastModel} and {@link HoltWintersForecastModel}. Incremental models are
+ * updated from the {@link AttributeEvent} stream and their state is snapshotted to the database after each calculation
+ * and on stop so it survives restarts.
+ * <p>
+ * Forecasts are calculated in cycles; the history datapoints of all attributes that are due are loaded with set based
+ * queries, the forecast values are computed in parallel on a bounded thread pool and the predicted datapoints of all
+ * attributes are replaced in a single batched transaction.
  */
 public class ForecastService extends RouteBuilder implements ContainerService {
 
     private static final Logger LOG = Logger.getLogger(ForecastService.class.getName());
     private static long STOP_TIMEOUT = Duration.ofSeconds(5).toMillis();
+    public static final String OR_FORECAST_THREADS_MAX = "OR_FORECAST_THREADS_MAX";
+    public static final int OR_FORECAST_THREADS_MAX_DEFAULT = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    public static final String METRIC_PREFIX = "or.forecast";
+    protected static final int HISTORY_QUERY_WINDOWS_MAX = 5000;
+    protected static final String MODEL_STATE_TABLE_NAME = "forecast_model_state";
 
     protected TimerService timerService;
     protected GatewayService gatewayService;
@@ -80,7 +103,17 @@ public class ForecastService extends RouteBuilder implements ContainerService {
     protected AssetDatapointService assetDatapointService;
     protected PersistenceService persistenceService;
     protected AssetPredictedDatapointService assetPredictedDatapointService;
+    protected ClientEventService clientEventService;
     protected ScheduledExecutorService executorService;
+    protected ExecutorService calculationExecutor;
+    protected int calculationThreads;
+    protected Timer cycleTimer;
+    protected Timer loadTimer;
+    protected Timer computeTimer;
+    protected Timer storeTimer;
+    protected Counter attributeCounter;
+    protected final Map<String, ForecastModelProvider> modelProviders = new ConcurrentHashMap<>();
+    protected final Map<AttributeRef, ForecastAttribute> incrementalAttributes = new ConcurrentHashMap<>();
     protected ForecastTaskManager forecastTaskManager = new ForecastTaskManager();
 
     @Override
@@ -91,13 +124,32 @@ public class ForecastService extends RouteBuilder implements ContainerService {
         assetDatapointService = container.getService(AssetDatapointService.class);
         persistenceService = container.getService(PersistenceService.class);
         assetPredictedDatapointService = container.getService(AssetPredictedDatapointService.class);
+        clientEventService = container.getService(ClientEventService.class);
         executorService = container.getExecutorService();
+        calculationThreads = Math.max(1, getInteger(container.getConfig(), OR_FORECAST_THREADS_MAX, OR_FORECAST_THREADS_MAX_DEFAULT));
+
+        MeterRegistry meterRegistry = container.getMeterRegistry();
+        if (meterRegistry != null) {
+            cycleTimer = meterRegistry.timer(METRIC_PREFIX + ".cycle");
+            loadTimer = meterRegistry.timer(METRIC_PREFIX + ".cycle.load");
+            computeTimer = meterRegistry.timer(METRIC_PREFIX + ".cycle.compute");
+            storeTimer = meterRegistry.timer(METRIC_PREFIX + ".cycle.store");
+            attributeCounter = meterRegistry.counter(METRIC_PREFIX + ".attributes");
+        }
+
+        addModelProvider(new WeightedExponentialAverageForecastModel.Provider());
+        addModelProvider(new HoltWintersForecastModel.Provider());
+        ServiceLoader.load(ForecastModelProvider.class).forEach(this::addModelProvider);
     }
 
     @Override
     public void start(Container container) throws Exception {
         container.getService(MessageBrokerService.class).getContext().addRoutes(this);
 
+        if (calculationThreads > 1) {
+            calculationExecutor = new ContainerExecutor("Forecast calculation", calculationThreads, calculationThreads, 60, calculationThreads, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
         LOG.fine("Loading forecast asset attributes...");
 
         List<Asset<?>> assets = getForecastAssets();
@@ -106,25 +158,31 @@ public class ForecastService extends RouteBuilder implements ContainerService {
             .stream()
             .flatMap(asset -> asset.getAttributes()
                 .stream()
-                .filter(attr -> {
-                    if (attr.hasMeta(FORECAST)) {
-                        Optional<ForecastConfiguration> forecastConfig = attr.getMetaValue(FORECAST);
-                        return forecastConfig.isPresent() &&
-                               ForecastConfigurationWeightedExponentialAverage.TYPE.equals(forecastConfig.get().getType());
-                    }
-                    return false;
-                })
+                .filter(this::isModelSupported)
                .map(attr -> new ForecastAttribute(asset, attr)))
             .collect(Collectors.toSet());
 
         LOG.fine("Found forecast asset attributes count  = " + forecastAttributes.size());
 
         forecastTaskManager.init(forecastAttributes);
+
+        clientEventService.addInternalSubscription(AttributeEvent.class, null, this::onAttributeEvent);
     }
 
     @Override
     public void stop(Container container) throws Exception {
         forecastTaskManager.stop(STOP_TIMEOUT);
+
+        try {
+            saveModelStates(incrementalAttributes.values());
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to store forecast model states", e);
+        }
+
+        if (calculationExecutor != null) {
+            calculationExecutor.shutdownNow();
+            calculationExecutor = null;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -134,10 +192,122 @@ public class ForecastService extends RouteBuilder implements ContainerService {
             .routeId("Persistence-ForecastConfiguration")
             .filter(isPersistenceEventForEntityType(Asset.class))
             .filter(isNotForGateway(gatewayService))
-            .process(exchange -> {
-                PersistenceEvent<Asset<?>> persistenceEvent = (PersistenceEvent<Asset<?>>)exchange.getIn().getBody(PersistenceEvent.class);
-                processAssetChange(persistenceEvent);
-            });
+            .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent ->
+                processAssetChange((PersistenceEvent<Asset<?>>) persistenceEvent)));
+    }
+
+    /**
+     * Register a {@link ForecastModelProvider}; this replaces any existing provider for the same type and must be called
+     * before the service is started.
+     */
+    public void addModelProvider(ForecastModelProvider modelProvider) {
+        LOG.fine("Adding forecast model provider for type: " + modelProvider.getType());
+        modelProviders.put(modelProvider.getType(), modelProvider);
+    }
+
+    protected boolean isModelSupported(Attribute<?> attribute) {
+        if (attribute.hasMeta(FORECAST)) {
+            Optional<ForecastConfiguration> forecastConfig = attribute.getMetaValue(FORECAST);
+            return forecastConfig.isPresent() && modelProviders.containsKey(forecastConfig.get().getType());
+        }
+        return false;
+    }
+
+    protected ForecastModel createModel(ForecastAttribute attribute) {
+        ForecastModelProvider modelProvider = modelProviders.get(attribute.getConfig().getType());
+        if (modelProvider == null) {
+            return null;
+        }
+        try {
+            return modelProvider.createModel(attribute);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to create forecast model for attribute: " + attribute.getAttributeRef(), e);
+            return null;
+        }
+    }
+
+    protected void onAttributeEvent(AttributeEvent event) {
+        ForecastAttribute attribute = incrementalAttributes.get(event.getRef());
+        if (attribute != null && !event.isDeleted()) {
+            event.getValue().ifPresent(value -> attribute.getModel().update(event.getTimestamp(), value));
+        }
+    }
+
+    /**
+     * Restore the state of the supplied incremental models from the database
+     */
+    protected void loadModelStates(Map<AttributeRef, ForecastAttribute> attributes) {
+        if (attributes.isEmpty()) {
+            return;
+        }
+
+        persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+            String query = "SELECT ENTITY_ID, ATTRIBUTE_NAME, TYPE, STATE FROM " + MODEL_STATE_TABLE_NAME +
+                " WHERE ENTITY_ID = ANY(?) AND ATTRIBUTE_NAME = ANY(?)";
+
+            try (PreparedStatement st = connection.prepareStatement(query)) {
+                st.setArray(1, connection.createArrayOf("varchar", attributes.keySet().stream().map(AttributeRef::getId).distinct().toArray(String[]::new)));
+                st.setArray(2, connection.createArrayOf("varchar", attributes.keySet().stream().map(AttributeRef::getName).distinct().toArray(String[]::new)));
+
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        ForecastAttribute attribute = attributes.get(new AttributeRef(rs.getString(1), rs.getString(2)));
+                        if (attribute != null && attribute.getModel() != null && attribute.getConfig().getType().equals(rs.getString(3))) {
+                            attribute.getModel().setState(rs.getString(4));
+                        }
+                    }
+                }
+            }
+        }));
+    }
+
+    /**
+     * Snapshot the state of the supplied incremental models to the database in a single batch
+     */
+    protected void saveModelStates(Collection<ForecastAttribute> attributes) {
+        if (attributes.isEmpty()) {
+            return;
+        }
+
+        Timestamp timestamp = new Timestamp(timerService.getCurrentTimeMillis());
+
+        persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+            String query = "INSERT INTO " + MODEL_STATE_TABLE_NAME + " (ENTITY_ID, ATTRIBUTE_NAME, TYPE, STATE, TIMESTAMP) VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT (ENTITY_ID, ATTRIBUTE_NAME) DO UPDATE SET TYPE = excluded.TYPE, STATE = excluded.STATE, TIMESTAMP = excluded.TIMESTAMP";
+
+            try (PreparedStatement st = connection.prepareStatement(query)) {
+                int count = 0;
+                for (ForecastAttribute attribute : attributes) {
+                    String state = attribute.getModel() != null ? attribute.getModel().getState() : null;
+                    if (state == null) {
+                        continue;
+                    }
+                    PGobject pgJsonValue = new PGobject();
+                    pgJsonValue.setType("jsonb");
+                    pgJsonValue.setValue(state);
+                    st.setString(1, attribute.getId());
+                    st.setString(2, attribute.getName());
+                    st.setString(3, attribute.getConfig().getType());
+                    st.setObject(4, pgJsonValue);
+                    st.setTimestamp(5, timestamp);
+                    st.addBatch();
+                    count++;
+                }
+                if (count > 0) {
+                    st.executeBatch();
+                }
+            }
+        }));
+    }
+
+    protected void deleteModelState(AttributeRef attributeRef) {
+        persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement st = connection.prepareStatement("DELETE FROM " + MODEL_STATE_TABLE_NAME + " WHERE ENTITY_ID = ? AND ATTRIBUTE_NAME = ?")) {
+                st.setString(1, attributeRef.getId());
+                st.setString(2, attributeRef.getName());
+                st.executeUpdate();
+            }
+        }));
     }
 
     protected List<Asset<?>> getForecastAssets() {
@@ -162,14 +332,7 @@ public class ForecastService extends RouteBuilder implements ContainerService {
             case CREATE:
                 forecastAttributes = asset.getAttributes()
                     .stream()
-                    .filter(attr -> {
-                        if (attr.hasMeta(FORECAST)) {
-                            Optional<ForecastConfiguration> forecastConfig = attr.getMetaValue(FORECAST);
-                            return forecastConfig.isPresent() &&
-                                   ForecastConfigurationWeightedExponentialAverage.TYPE.equals(forecastConfig.get().getType());
-                        }
-                        return false;
-                    })
+                    .filter(this::isModelSupported)
                     .map(attr -> new ForecastAttribute(asset, attr))
                     .collect(Collectors.toSet());
 
@@ -214,14 +377,7 @@ public class ForecastService extends RouteBuilder implements ContainerService {
 
                 forecastAttributes = newOrModifiedAttributes
                     .stream()
-                    .filter(attr -> {
-                        if (attr.hasMeta(FORECAST)) {
-                            Optional<ForecastConfiguration> forecastConfig = attr.getMetaValue(FORECAST);
-                            return forecastConfig.isPresent() &&
-                                ForecastConfigurationWeightedExponentialAverage.TYPE.equals(forecastConfig.get().getType());
-                        }
-                        return false;
-                    })
+                    .filter(this::isModelSupported)
                     .map(attr -> new ForecastAttribute(asset, attr))
                     .collect(Collectors.toSet());
 
@@ -255,12 +411,14 @@ public class ForecastService extends RouteBuilder implements ContainerService {
                 return;
             }
             long now = timerService.getCurrentTimeMillis();
+            Map<AttributeRef, ForecastAttribute> incremental = new HashMap<>();
             attributes.forEach(attr -> {
-                if (attr.isValidConfig()) {
+                if (attr.isValidConfig() && initModel(attr, incremental)) {
                     attr.setForecastTimestamps(loadForecastTimestampsFromDb(attr.getAttributeRef(), now));
                     forecastAttributes.add(attr);
                 }
             });
+            startIncrementalModels(incremental);
             start(now, true);
         }
 
@@ -268,12 +426,14 @@ public class ForecastService extends RouteBuilder implements ContainerService {
             if (attributes == null || attributes.size() == 0) {
                 return;
             }
+            Map<AttributeRef, ForecastAttribute> incremental = new HashMap<>();
             attributes.forEach(attr -> {
-                if (attr.isValidConfig()) {
+                if (attr.isValidConfig() && initModel(attr, incremental)) {
                     LOG.fine("Adding asset attribute to forecast calculation service: " + attr.getAttributeRef());
                     forecastAttributes.add(attr);
                 }
             });
+            startIncrementalModels(incremental);
             long now = timerService.getCurrentTimeMillis();
             if (scheduledFuture != null) {
                 if (scheduledFuture.getDelay(TimeUnit.MILLISECONDS) > DELAY_MIN_TO_CANCEL_SAFELY) {
@@ -297,6 +457,31 @@ public class ForecastService extends RouteBuilder implements ContainerService {
             forecastAttributes.remove(attribute);
 
             assetPredictedDatapointService.purgeValues(attribute.getAttributeRef().getId(), attribute.getAttributeRef().getName());
+
+            if (incrementalAttributes.remove(attribute.getAttributeRef()) != null) {
+                deleteModelState(attribute.getAttributeRef());
+            }
+        }
+
+        private boolean initModel(ForecastAttribute attribute, Map<AttributeRef, ForecastAttribute> incremental) {
+            ForecastModel model = createModel(attribute);
+            if (model == null) {
+                return false;
+            }
+            attribute.setModel(model);
+            if (model.isIncremental()) {
+                incremental.put(attribute.getAttributeRef(), attribute);
+            }
+            return true;
+        }
+
+        private void startIncrementalModels(Map<AttributeRef, ForecastAttribute> attributes) {
+            try {
+                loadModelStates(attributes);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to load forecast model states", e);
+            }
+            incrementalAttributes.putAll(attributes);
         }
 
         public synchronized boolean containsAttribute(ForecastAttribute attribute) {
@@ -358,10 +543,10 @@ public class ForecastService extends RouteBuilder implements ContainerService {
             }
         }
 
-        @SuppressWarnings("OptionalGetWithoutIsPresent")
         private void calculateForecasts() {
             final long now = timerService.getCurrentTimeMillis();
-            List<ForecastAttribute> attributesToCalculate = new ArrayList<>();
+            final long startNanos = System.nanoTime();
+            List<ForecastCalculation> calculations = new ArrayList<>();
 
             try {
                 synchronized (ForecastTaskManager.this) {
@@ -374,58 +559,41 @@ public class ForecastService extends RouteBuilder implements ContainerService {
 
                     nextForecastCalculationMap.forEach((attribute, nextForecastCalculationTimestamp) -> {
                         if (nextForecastCalculationTimestamp <= now) {
-                            attributesToCalculate.add(attribute);
+                            ForecastCalculation calculation = createCalculation(attribute, now);
+                            if (calculation != null) {
+                                calculations.add(calculation);
+                            }
                         }
                     });
                 }
 
-                attributesToCalculate.forEach(attr -> {
+                if (!calculations.isEmpty()) {
+                    LOG.fine("Calculating forecast values for attribute count: " + calculations.size());
+
+                    long phaseStartNanos = System.nanoTime();
+                    loadHistoryData(calculations);
+                    phaseStartNanos = recordDuration(loadTimer, phaseStartNanos);
+                    computeForecasts(calculations);
+                    phaseStartNanos = recordDuration(computeTimer, phaseStartNanos);
+
                     if (Thread.currentThread().isInterrupted()) {
                         return;
                     }
-                    List<Long> forecastTimestamps = attr.getForecastTimestamps();
-                    if (forecastTimestamps == null || forecastTimestamps.size() == 0) {
-                        return;
-                    }
-                    if (!(attr.getConfig() instanceof ForecastConfigurationWeightedExponentialAverage)) {
-                        return;
-                    }
-                    ForecastConfigurationWeightedExponentialAverage weaConfig = (ForecastConfigurationWeightedExponentialAverage)attr.getConfig();
-
-                    LOG.fine("Calculating forecast values for attribute: " + attr.getAttributeRef());
-
-                    Long offset = forecastTimestamps.get(0) - (now + weaConfig.getForecastPeriod().toMillis());
-                    List<List<Long>> allSampleTimestamps = calculateSampleTimestamps(weaConfig, offset);
-                    List<DatapointBucket> historyDatapointBuckets = getHistoryDataFromDb(attr.getAttributeRef(), weaConfig, offset);
 
-                    List<Optional<Number>> forecastValues = allSampleTimestamps.stream().map(sampleTimestamps -> {
-                        List<AssetDatapoint> sampleDatapoints = findSampleDatapoints(historyDatapointBuckets, sampleTimestamps);
+                    storeForecasts(calculations);
+                    saveModelStates(calculations.stream()
+                        .filter(calculation -> calculation.model.isIncremental())
+                        .map(calculation -> calculation.attribute)
+                        .toList());
+                    recordDuration(storeTimer, phaseStartNanos);
+                    recordDuration(cycleTimer, startNanos);
 
-                        if (sampleDatapoints.size() == weaConfig.getPastCount()) {
-                            return calculateWeightedExponentialAverage(attr.getAttribute(), sampleDatapoints);
-                        } else {
-                            return Optional.<Number>empty();
-                        }
-                    }).toList();
-
-                    if (forecastTimestamps.size() >= forecastValues.size()) {
-                        List<ValueDatapoint<?>> datapoints = IntStream
-                            .range(0, forecastValues.size())
-                            .filter(i -> forecastValues.get(i).isPresent())
-                            .mapToObj(i -> new ValueDatapoint<>(
-                                forecastTimestamps.get(i),
-                                forecastValues.get(i).get())
-                            )
-                            .collect(Collectors.toList());
-
-                        assetPredictedDatapointService.purgeValues(attr.getId(), attr.getName());
-
-                        if (datapoints.size() > 0) {
-                            LOG.fine("Updating forecast values for attribute: " + attr.getAttributeRef());
-                            assetPredictedDatapointService.updateValues(attr.getId(), attr.getName(), datapoints);
-                        }
+                    if (attributeCounter != null) {
+                        attributeCounter.increment(calculations.size());
                     }
-                });
+
+                    LOG.fine("Calculated forecast values for attribute count '" + calculations.size() + "' in '" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " [ms]'.");
+                }
 
                 synchronized (ForecastTaskManager.this) {
                     if (Thread.currentThread().isInterrupted()) {
@@ -444,153 +612,183 @@ public class ForecastService extends RouteBuilder implements ContainerService {
             }
         }
 
-        private synchronized void scheduleForecastCalculation(long now, Optional<Long> fixedDelay) {
-            Optional<Long> delay = fixedDelay;
-
-            if (delay.isEmpty()) {
-                delay = calculateScheduleDelay(now);
+        private ForecastCalculation createCalculation(ForecastAttribute attr, long now) {
+            List<Long> forecastTimestamps = attr.getForecastTimestamps();
+            if (forecastTimestamps == null || forecastTimestamps.size() == 0) {
+                return null;
             }
-
-            if (delay.isPresent()) {
-                LOG.fine("Scheduling next forecast calculation in '" + delay.get() + " [ms]'.");
-                scheduledFuture = executorService.schedule(() -> calculateForecasts(), delay.get(), TimeUnit.MILLISECONDS);
-            } else {
-                scheduledFuture = null;
-                if (forecastAttributes.size() > 0) {
-                    LOG.fine("Scheduling next forecast calculation in '" + DEFAULT_SCHEDULE_DELAY + " [ms]'.");
-                    scheduleForecastCalculation(now, Optional.of(DEFAULT_SCHEDULE_DELAY));
-                }
+            if (attr.getModel() == null) {
+                return null;
             }
+            return new ForecastCalculation(attr, new ArrayList<>(forecastTimestamps), now);
         }
 
-        private List<List<Long>> calculateSampleTimestamps(ForecastConfigurationWeightedExponentialAverage config, Long offset) {
-            List<List<Long>> sampleTimestamps = new ArrayList<>(config.getForecastCount());
-            long now = timerService.getCurrentTimeMillis();
-            long pastPeriod = config.getPastPeriod().toMillis();
-            long forecastPeriod = config.getForecastPeriod().toMillis();
+        /**
+         * Loads the history datapoints of all the calculations using set based queries; the sample windows of all
+         * attributes are passed as arrays and joined to the datapoint table so only a few queries are needed per cycle
+         * regardless of the number of attributes.
+         */
+        private void loadHistoryData(List<ForecastCalculation> calculations) {
+            List<ForecastCalculation> queryCalculations = calculations.stream()
+                .filter(calculation -> calculation.buckets.length > 0)
+                .toList();
 
-            for (int forecastIndex = 1; forecastIndex <= config.getForecastCount(); forecastIndex++) {
-                List<Long> timestamps = new ArrayList<>(config.getPastCount());
-                for (int pastPeriodIndex = config.getPastCount(); pastPeriodIndex > 0; pastPeriodIndex--) {
-                    timestamps.add(now - (pastPeriod * pastPeriodIndex) + (forecastPeriod * forecastIndex) + offset);
-                }
-                sampleTimestamps.add(timestamps);
+            if (queryCalculations.isEmpty()) {
+                return;
             }
 
-            return sampleTimestamps;
-        }
+            persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+                List<ForecastCalculation> chunk = new ArrayList<>();
+                int windowCount = 0;
 
-        private List<Long> calculateForecastTimestamps(long now, ForecastConfigurationWeightedExponentialAverage config) {
-            List<Long> forecastTimestamps = new ArrayList<>(config.getForecastCount());
-            long forecastPeriod = config.getForecastPeriod().toMillis();
+                for (ForecastCalculation calculation : queryCalculations) {
+                    chunk.add(calculation);
+                    windowCount += calculation.buckets.length;
 
-            for (int forecastIndex = 1; forecastIndex <= config.getForecastCount(); forecastIndex++) {
-                forecastTimestamps.add(now + forecastPeriod * forecastIndex);
+                    if (windowCount >= HISTORY_QUERY_WINDOWS_MAX) {
+                        queryHistoryData(connection, chunk, windowCount);
+                        chunk.clear();
+                        windowCount = 0;
+                    }
+                }
+
+                if (!chunk.isEmpty()) {
+                    queryHistoryData(connection, chunk, windowCount);
+                }
+            }));
+        }
+
+        private void queryHistoryData(Connection connection, List<ForecastCalculation> chunk, int windowCount) throws SQLException {
+            Integer[] indexes = new Integer[windowCount];
+            Integer[] bucketIndexes = new Integer[windowCount];
+            String[] assetIds = new String[windowCount];
+            String[] attributeNames = new String[windowCount];
+            Timestamp[] timestampsMin = new Timestamp[windowCount];
+            Timestamp[] timestampsMax = new Timestamp[windowCount];
+            int window = 0;
+
+            for (int i = 0; i < chunk.size(); i++) {
+                ForecastCalculation calculation = chunk.get(i);
+                for (int j = 0; j < calculation.buckets.length; j++) {
+                    indexes[window] = i;
+                    bucketIndexes[window] = j;
+                    assetIds[window] = calculation.attribute.getId();
+                    attributeNames[window] = calculation.attribute.getName();
+                    timestampsMin[window] = new Timestamp(calculation.buckets[j].getBegin());
+                    timestampsMax[window] = new Timestamp(calculation.buckets[j].getEnd());
+                    window++;
+                }
             }
 
-            return forecastTimestamps;
+            String query = "SELECT W.IDX, W.BUCKET, DP.TIMESTAMP, DP.VALUE #>> '{}' " +
+                "FROM unnest(?::int[], ?::int[], ?::varchar[], ?::varchar[], ?::timestamp[], ?::timestamp[]) AS W(IDX, BUCKET, ENTITY_ID, ATTRIBUTE_NAME, T_MIN, T_MAX) " +
+                "JOIN " + AssetDatapoint.TABLE_NAME + " DP ON DP.ENTITY_ID = W.ENTITY_ID AND DP.ATTRIBUTE_NAME = W.ATTRIBUTE_NAME " +
+                "AND DP.TIMESTAMP >= W.T_MIN AND DP.TIMESTAMP <= W.T_MAX " +
+                "ORDER BY W.IDX, W.BUCKET, DP.TIMESTAMP";
+
+            try (PreparedStatement st = connection.prepareStatement(query)) {
+                st.setArray(1, connection.createArrayOf("int4", indexes));
+                st.setArray(2, connection.createArrayOf("int4", bucketIndexes));
+                st.setArray(3, connection.createArrayOf("varchar", assetIds));
+                st.setArray(4, connection.createArrayOf("varchar", attributeNames));
+                st.setArray(5, connection.createArrayOf("timestamp", timestampsMin));
+                st.setArray(6, connection.createArrayOf("timestamp", timestampsMax));
+
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        String value = rs.getString(4);
+                        if (value != null) {
+                            chunk.get(rs.getInt(1)).add(rs.getInt(2), rs.getTimestamp(3).getTime(), value);
+                        }
+                    }
+                }
+            }
         }
 
-        private List<AssetDatapoint> findSampleDatapoints(List<DatapointBucket> datapointBuckets, List<Long> sampleTimestamps) {
-            List<AssetDatapoint> sampleDatapoints = new ArrayList<>(sampleTimestamps.size());
+        /**
+         * Computes the forecast values of the calculations; the calculations are split into one partition per
+         * calculation thread and computed in parallel.
+         */
+        private void computeForecasts(List<ForecastCalculation> calculations) throws Exception {
+            if (calculationExecutor == null || calculationThreads <= 1 || calculations.size() == 1) {
+                calculations.forEach(ForecastCalculation::compute);
+                return;
+            }
 
-            for (Long timestamp : sampleTimestamps) {
-                AssetDatapoint foundDatapoint = null;
+            int partitionSize = (calculations.size() + calculationThreads - 1) / calculationThreads;
+            List<Callable<Void>> tasks = new ArrayList<>(calculationThreads);
 
-                List<AssetDatapoint> datapoints = datapointBuckets
-                    .stream()
-                    .filter(bucket -> bucket.isInTimeRange(timestamp))
-                    .findFirst()
-                    .map(bucket -> bucket.getDatapoints())
-                    .orElse(null);
+            for (int i = 0; i < calculations.size(); i += partitionSize) {
+                List<ForecastCalculation> partition = calculations.subList(i, Math.min(i + partitionSize, calculations.size()));
+                tasks.add(() -> {
+                    partition.forEach(ForecastCalculation::compute);
+                    return null;
+                });
+            }
 
-                if (datapoints == null) {
-                    continue;
+            try {
+                for (Future<Void> future : calculationExecutor.invokeAll(tasks)) {
+                    future.get();
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
 
-                for (AssetDatapoint assetDatapoint : datapoints) {
-                    if (assetDatapoint.getTimestamp() <= timestamp) {
-                        foundDatapoint = assetDatapoint;
-                    } else if (assetDatapoint.getTimestamp() > timestamp) {
-                        break;
-                    }
-                }
+        /**
+         * Replaces the predicted datapoints of all calculated attributes in a single batched transaction
+         */
+        private void storeForecasts(List<ForecastCalculation> calculations) {
+            Map<AttributeRef, List<ValueDatapoint<?>>> attributeDatapoints = new LinkedHashMap<>();
 
-                if (foundDatapoint != null) {
-                    sampleDatapoints.add(foundDatapoint);
+            calculations.forEach(calculation -> {
+                if (calculation.datapoints != null) {
+                    attributeDatapoints.put(calculation.attribute.getAttributeRef(), calculation.datapoints);
                 }
+            });
+
+            if (!attributeDatapoints.isEmpty()) {
+                LOG.fine("Updating forecast values for attribute count: " + attributeDatapoints.size());
+                assetPredictedDatapointService.replaceValues(attributeDatapoints);
             }
-            return sampleDatapoints;
         }
 
-        private Optional<Number> calculateWeightedExponentialAverage(Attribute<?> attribute, List<AssetDatapoint> datapoints) {
-            // a = 2 / (R + 1)
-            // p: past period
-            // Attr(t) = Attr(t-p) * a + Attr(t-2p) * (1 - a)
-            List<Object> values = datapoints
-                .stream()
-                .map(Datapoint::getValue)
-                .collect(Collectors.toList());
-            double R = datapoints.size();
-            double a = 2 / (R + 1);
-
-            Class<?> clazz = attribute.getTypeClass();
-            if (Long.class == clazz || Integer.class == clazz || Short.class == clazz || Byte.class == clazz ||
-                Double.class == clazz || Float.class == clazz) {
-                if (values.size() == 1) {
-                    values.add(0, Double.valueOf(0));
-                }
-                Optional<Number> value = values
-                    .stream()
-                    .map(v -> (Number)v)
-                    .reduce((olderValue, oldValue) ->
-                        Double.valueOf(oldValue.doubleValue() * a + olderValue.doubleValue() * (1 - a))
-                    );
-                if (value.isPresent()) {
-                    if (clazz == Long.class) {
-                        value = Optional.of(Long.valueOf(value.get().longValue()));
-                    } else if (clazz == Integer.class) {
-                        value = Optional.of(Integer.valueOf(value.get().intValue()));
-                    } else if (clazz == Short.class) {
-                        value = Optional.of(Short.valueOf(value.get().shortValue()));
-                    } else if (clazz == Byte.class) {
-                        value = Optional.of(Byte.valueOf(value.get().byteValue()));
-                    } else if (clazz == Double.class) {
-                        value = Optional.of(Double.valueOf(value.get().doubleValue()));
-                    } else if (clazz == Float.class) {
-                        value = Optional.of(Float.valueOf(value.get().floatValue()));
-                    } else {
-                        value = Optional.empty();
-                    }
-                }
-                return value;
-            } else if (attribute.getTypeClass() == BigDecimal.class) {
-                if (values.size() == 1) {
-                    values.add(0, BigDecimal.valueOf(0));
-                }
-                return values
-                    .stream()
-                    .map(v -> (Number)v)
-                    .reduce((olderValue, oldValue) ->
-                        ((BigDecimal)oldValue).multiply(BigDecimal.valueOf(a)).add(((BigDecimal)olderValue).multiply(BigDecimal.valueOf(1 - a)))
-                    );
-            } else if (attribute.getTypeClass() == BigInteger.class) {
-                if (values.size() == 1) {
-                    values.add(0, BigInteger.valueOf(0));
+        private long recordDuration(Timer timer, long startNanos) {
+            long nowNanos = System.nanoTime();
+            if (timer != null) {
+                timer.record(nowNanos - startNanos, TimeUnit.NANOSECONDS);
+            }
+            return nowNanos;
+        }
+
+        private synchronized void scheduleForecastCalculation(long now, Optional<Long> fixedDelay) {
+            Optional<Long> delay = fixedDelay;
+
+            if (delay.isEmpty()) {
+                delay = calculateScheduleDelay(now);
+            }
+
+            if (delay.isPresent()) {
+                LOG.fine("Scheduling next forecast calculation in '" + delay.get() + " [ms]'.");
+                scheduledFuture = executorService.schedule(() -> calculateForecasts(), delay.get(), TimeUnit.MILLISECONDS);
+            } else {
+                scheduledFuture = null;
+                if (forecastAttributes.size() > 0) {
+                    LOG.fine("Scheduling next forecast calculation in '" + DEFAULT_SCHEDULE_DELAY + " [ms]'.");
+                    scheduleForecastCalculation(now, Optional.of(DEFAULT_SCHEDULE_DELAY));
                 }
-                // Attr(t) = Attr(t-p) * a + Attr(t-2p) * (1 - a)
-                // Attr(t) = (Attr(t-p) * 2 / (R + 1) + Attr(t-2p) * (1 - 2 / (R + 1))) * (R + 1)/(R + 1)
-                // Attr(t) = ((Attr(t-p) * 2 + Attr(t-2p) * (R - 1)) / (R + 1)
-                return values
-                    .stream()
-                    .map(v -> (Number)v)
-                    .reduce((olderValue, oldValue) ->
-                        ((BigInteger)oldValue).multiply(BigInteger.valueOf(2))
-                        .add(((BigInteger)olderValue).multiply(BigInteger.valueOf((long)R - 1)))
-                        .divide(BigInteger.valueOf((long)R + 1))
-                    );
             }
-            return Optional.empty();
+        }
+
+        private List<Long> calculateForecastTimestamps(long now, ForecastModel model) {
+            List<Long> forecastTimestamps = new ArrayList<>(model.getForecastCount());
+            long forecastPeriod = model.getForecastPeriod();
+
+            for (int forecastIndex = 1; forecastIndex <= model.getForecastCount(); forecastIndex++) {
+                forecastTimestamps.add(now + forecastPeriod * forecastIndex);
+            }
+
+            return forecastTimestamps;
         }
 
         private void updateNextForecastCalculationMap() {
@@ -615,14 +813,11 @@ public class ForecastService extends RouteBuilder implements ContainerService {
 
         private void addForecastTimestamps(long now, boolean isServerRestart) {
             forecastAttributes.forEach(attr -> {
-                ForecastConfiguration config = attr.getConfig();
-                ForecastConfigurationWeightedExponentialAverage weaConfig = null;
-                if (config instanceof ForecastConfigurationWeightedExponentialAverage) {
-                    weaConfig = (ForecastConfigurationWeightedExponentialAverage)config;
-                } else {
+                ForecastModel model = attr.getModel();
+                if (model == null) {
                     return;
                 }
-                List<Long> newTimestamps = calculateForecastTimestamps(now, weaConfig);
+                List<Long> newTimestamps = calculateForecastTimestamps(now, model);
                 List<Long> oldTimestamps = attr.getForecastTimestamps();
                 if (oldTimestamps == null || oldTimestamps.size() == 0) {
                     if (newTimestamps.size() > 0) {
@@ -637,7 +832,7 @@ public class ForecastService extends RouteBuilder implements ContainerService {
                         if (newShiftedTimestamps.get(0) < now) {
                             newShiftedTimestamps = newShiftedTimestamps
                                 .stream()
-                                .map(timestamp -> timestamp + ((ForecastConfigurationWeightedExponentialAverage)config).getForecastPeriod().toMillis())
+                                .map(timestamp -> timestamp + model.getForecastPeriod())
                                 .collect(Collectors.toList());
                         } else {
                             break;
@@ -679,55 +874,6 @@ public class ForecastService extends RouteBuilder implements ContainerService {
             });
         }
 
-        private List<DatapointBucket> getHistoryDataFromDb(AttributeRef attributeRef, ForecastConfigurationWeightedExponentialAverage config, long offset) {
-            List<DatapointBucket> datapointBuckets = new ArrayList<>(config.getPastCount());
-
-            StringBuilder sb = new StringBuilder();
-            sb.append(
-                "select dp from " + AssetDatapoint.class.getSimpleName() + " dp " +
-                    "where dp.assetId = :assetId " +
-                    "and dp.attributeName = :attributeName "
-            );
-            for (int i = 1; i <= config.getPastCount(); i++) {
-                sb.append(i == 1 ? "and (" : " or " );
-                sb.append("(dp.timestamp >= :timestampMin" + i + " and dp.timestamp <= :timestampMax" + i + ")");
-                if (i == config.getPastCount()) {
-                    sb.append(") ");
-                }
-            }
-            sb.append("order by dp.timestamp asc");
-
-            List<AssetDatapoint> datapoints = persistenceService.doReturningTransaction(entityManager -> {
-                TypedQuery<AssetDatapoint> query = entityManager.createQuery(sb.toString(), AssetDatapoint.class)
-                    .setParameter("assetId", attributeRef.getId())
-                    .setParameter("attributeName", attributeRef.getName());
-                long now = timerService.getCurrentTimeMillis();
-                long pastPeriod = config.getPastPeriod().toMillis();
-                long forecastPeriod = config.getForecastPeriod().toMillis();
-                long totalForecastPeriod = Math.min(forecastPeriod * config.getForecastCount(), pastPeriod);
-
-                for (int i = config.getPastCount(); i >= 1; i--) {
-                    long timestampMin = now - (pastPeriod * i) + offset;
-                    long timestampMax = now - (pastPeriod * i) + totalForecastPeriod + offset;
-
-                    datapointBuckets.add(new DatapointBucket(timestampMin, timestampMax));
-
-                    query.setParameter("timestampMin" + i, new Date(timestampMin));
-                    query.setParameter("timestampMax" + i, new Date(timestampMax));
-                }
-                return query.getResultList();
-            });
-
-            datapoints.forEach(datapoint -> {
-                datapointBuckets.stream()
-                    .filter(bucket -> bucket.isInTimeRange(datapoint.getTimestamp()))
-                    .findFirst()
-                    .ifPresent(bucket -> bucket.add(datapoint));
-            });
-
-            return datapointBuckets;
-        }
-
         private List<Long> loadForecastTimestampsFromDb(AttributeRef attributeRef, long now) {
             List<ValueDatapoint> datapoints = assetPredictedDatapointService.getDatapoints(attributeRef);
             List<Long> timestamps = datapoints
@@ -747,6 +893,7 @@ public class ForecastService extends RouteBuilder implements ContainerService {
         private Attribute<?> attribute;
         private ForecastConfiguration config;
         private List<Long> forecastTimestamps = new ArrayList<>();
+        private ForecastModel model;
 
         public ForecastAttribute(Asset<?> asset, Attribute<?> attribute) {
             this(asset.getId(), attribute);
@@ -809,36 +956,61 @@ public class ForecastService extends RouteBuilder implements ContainerService {
         public List<Long> getForecastTimestamps() {
             return forecastTimestamps;
         }
-    }
-
-    private static class DatapointBucket {
-        private long begin;
-        private long end;
-        private List<AssetDatapoint> datapoints = new ArrayList<>();
-
-        public DatapointBucket(long begin, long end) {
-            this.begin = begin;
-            this.end = end;
-        }
 
-        public long getBegin() {
-            return begin;
+        public ForecastModel getModel() {
+            return model;
         }
 
-        public long getEnd() {
-            return end;
+        public void setModel(ForecastModel model) {
+            this.model = model;
         }
+    }
 
-        public List<AssetDatapoint> getDatapoints() {
-            return datapoints;
+    /**
+     * The state of a single attribute forecast calculation within a calculation cycle; the history datapoints required
+     * by the {@link ForecastModel} are loaded into a {@link ForecastHistoryBucket} per history window so the
+     * calculation can run without touching the database.
+     */
+    private static class ForecastCalculation {
+        private final ForecastAttribute attribute;
+        private final ForecastModel model;
+        private final List<Long> forecastTimestamps;
+        private final long now;
+        private final ForecastHistoryBucket[] buckets;
+        private List<ValueDatapoint<?>> datapoints;
+
+        public ForecastCalculation(ForecastAttribute attribute, List<Long> forecastTimestamps, long now) {
+            this.attribute = attribute;
+            this.model = attribute.getModel();
+            this.forecastTimestamps = forecastTimestamps;
+            this.now = now;
+
+            boolean raw = ForecastModel.isBigNumberType(attribute.getAttribute().getTypeClass());
+            long[][] windows = model.getHistoryWindows(now, forecastTimestamps);
+            buckets = new ForecastHistoryBucket[windows.length];
+            for (int i = 0; i < windows.length; i++) {
+                buckets[i] = new ForecastHistoryBucket(windows[i][0], windows[i][1], raw);
+            }
         }
 
-        public boolean isInTimeRange(long timestamp) {
-            return timestamp >= begin && timestamp <= end;
+        /**
+         * Add a history datapoint returned for the specified bucket; datapoints must be added in timestamp order and a
+         * datapoint that is also in the time range of an earlier bucket belongs to that bucket.
+         */
+        public void add(int bucketIndex, long timestamp, String value) {
+            for (int i = 0; i < bucketIndex; i++) {
+                if (buckets[i].isInTimeRange(timestamp)) {
+                    return;
+                }
+            }
+            buckets[bucketIndex].add(timestamp, value);
         }
 
-        public void add(AssetDatapoint datapoint) {
-            datapoints.add(datapoint);
+        public void compute() {
+            if (forecastTimestamps.size() < model.getForecastCount()) {
+                return;
+            }
+            datapoints = model.calculate(now, forecastTimestamps, buckets);
         }
     }
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.asset;
+
+import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.util.ValueUtil;
+import org.openremote.model.value.ForecastConfigurationHoltWinters;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Incremental {@link ForecastModel} for {@link ForecastConfigurationHoltWinters} using additive triple exponential
+ * smoothing:
+ * <pre>
+ * L(t) = alpha * (y(t) - S(t-m)) + (1 - alpha) * (L(t-1) + T(t-1))
+ * T(t) = beta * (L(t) - L(t-1)) + (1 - beta) * T(t-1)
+ * S(t) = gamma * (y(t) - L(t)) + (1 - gamma) * S(t-m)
+ * F(t+h) = L(t) + h * T(t) + S(t-m+h)
+ * </pre>
+ * Attribute values are aggregated (mean) per forecast period slot and the model is updated when a slot is complete;
+ * missing slots are filled with the last value. Forecasts are only produced once a full season has been observed. If
+ * there is no stored state then the model is warmed up once from the last two seasons of history.
+ */
+public class HoltWintersForecastModel implements ForecastModel {
+
+    public static class Provider implements ForecastModelProvider {
+        @Override
+        public String getType() {
+            return ForecastConfigurationHoltWinters.TYPE;
+        }
+
+        @Override
+        public ForecastModel createModel(ForecastService.ForecastAttribute attribute) {
+            return new HoltWintersForecastModel(attribute.getAttribute().getTypeClass(), (ForecastConfigurationHoltWinters) attribute.getConfig());
+        }
+    }
+
+    /**
+     * Model state which is snapshotted as JSON
+     */
+    protected static class State {
+        protected boolean initialised;
+        protected long period;
+        protected double level;
+        protected double trend;
+        protected double[] season;
+        protected long observedSlots;
+        protected long lastSlot = Long.MIN_VALUE;
+        protected double lastValue;
+        protected long currentSlot = Long.MIN_VALUE;
+        protected double currentSum;
+        protected int currentCount;
+
+        protected State() {
+        }
+
+        protected State(long period, int seasonLength) {
+            this.period = period;
+            this.season = new double[seasonLength];
+        }
+    }
+
+    protected final Class<?> typeClass;
+    protected final long forecastPeriod;
+    protected final int forecastCount;
+    protected final int seasonLength;
+    protected final double alpha;
+    protected final double beta;
+    protected final double gamma;
+    protected State state;
+
+    public HoltWintersForecastModel(Class<?> typeClass, ForecastConfigurationHoltWinters config) {
+        this.typeClass = typeClass;
+        this.forecastPeriod = config.getForecastPeriod().toMillis();
+        this.forecastCount = config.getForecastCount();
+        this.seasonLength = config.getSeasonLength();
+        this.alpha = config.getAlpha();
+        this.beta = config.getBeta();
+        this.gamma = config.getGamma();
+        this.state = new State(forecastPeriod, seasonLength);
+    }
+
+    @Override
+    public long getForecastPeriod() {
+        return forecastPeriod;
+    }
+
+    @Override
+    public int getForecastCount() {
+        return forecastCount;
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    @Override
+    public synchronized long[][] getHistoryWindows(long now, List<Long> forecastTimestamps) {
+        if (state.initialised || (!ForecastModel.isNumberType(typeClass) && !ForecastModel.isBigNumberType(typeClass))) {
+            return NO_HISTORY_WINDOWS;
+        }
+        return new long[][] {{now - forecastPeriod * seasonLength * 2L, now}};
+    }
+
+    @Override
+    public synchronized List<ValueDatapoint<?>> calculate(long now, List<Long> forecastTimestamps, ForecastHistoryBucket[] history) {
+        if (!state.initialised) {
+            warmUp(history);
+        }
+
+        if (state.observedSlots < seasonLength) {
+            return Collections.emptyList();
+        }
+
+        List<ValueDatapoint<?>> datapoints = new ArrayList<>(forecastTimestamps.size());
+
+        for (Long timestamp : forecastTimestamps) {
+            long h = Math.max(1L, Math.floorDiv(timestamp, forecastPeriod) - state.lastSlot);
+            int seasonIndex = (int) Math.floorMod(state.lastSlot + h, (long) seasonLength);
+            double value = state.level + h * state.trend + state.season[seasonIndex];
+            Number number = toNumber(value);
+
+            if (number != null) {
+                datapoints.add(new ValueDatapoint<>(timestamp, number));
+            }
+        }
+
+        return datapoints;
+    }
+
+    @Override
+    public synchronized void update(long timestamp, Object value) {
+        ValueUtil.getValueCoerced(value, Double.class).ifPresent(doubleValue -> addValue(timestamp, doubleValue));
+    }
+
+    @Override
+    public synchronized String getState() {
+        return ValueUtil.asJSON(state).orElse(null);
+    }
+
+    @Override
+    public synchronized void setState(String json) {
+        ValueUtil.parse(json, State.class)
+            .filter(restoredState -> restoredState.period == forecastPeriod && restoredState.season != null && restoredState.season.length == seasonLength)
+            .ifPresent(restoredState -> state = restoredState);
+    }
+
+    protected void warmUp(ForecastHistoryBucket[] history) {
+        state = new State(forecastPeriod, seasonLength);
+        for (ForecastHistoryBucket bucket : history) {
+            for (int i = 0; i < bucket.size(); i++) {
+                if (bucket.isRaw()) {
+                    try {
+                        addValue(bucket.getTimestamp(i), Double.parseDouble(bucket.getRawValue(i)));
+                    } catch (NumberFormatException ignored) {
+                    }
+                } else {
+                    addValue(bucket.getTimestamp(i), bucket.getValue(i));
+                }
+            }
+        }
+        state.initialised = true;
+    }
+
+    protected void addValue(long timestamp, double value) {
+        long slot = Math.floorDiv(timestamp, forecastPeriod);
+
+        if (state.currentSlot == Long.MIN_VALUE) {
+            state.currentSlot = slot;
+        } else if (slot < state.currentSlot) {
+            // Late values of an already completed slot are ignored
+            return;
+        } else if (slot > state.currentSlot) {
+            completeSlot(state.currentSlot, state.currentSum / state.currentCount);
+
+            // Fill missing slots (at most one season) with the last value
+            for (long missingSlot = Math.max(state.currentSlot + 1, slot - seasonLength); missingSlot < slot; missingSlot++) {
+                completeSlot(missingSlot, state.lastValue);
+            }
+
+            state.currentSlot = slot;
+            state.currentSum = 0d;
+            state.currentCount = 0;
+        }
+
+        state.currentSum += value;
+        state.currentCount++;
+    }
+
+    protected void completeSlot(long slot, double value) {
+        int seasonIndex = (int) Math.floorMod(slot, (long) seasonLength);
+
+        if (state.observedSlots == 0) {
+            state.level = value;
+            state.trend = 0d;
+        } else {
+            double previousLevel = state.level;
+            state.level = alpha * (value - state.season[seasonIndex]) + (1 - alpha) * (state.level + state.trend);
+            state.trend = beta * (state.level - previousLevel) + (1 - beta) * state.trend;
+            state.season[seasonIndex] = gamma * (value - state.level) + (1 - gamma) * state.season[seasonIndex];
+        }
+
+        state.lastSlot = slot;
+        state.lastValue = value;
+        state.observedSlots++;
+    }
+
+    protected Number toNumber(double value) {
+        if (typeClass == BigDecimal.class) {
+            return BigDecimal.valueOf(value);
+        } else if (typeClass == BigInteger.class) {
+            return BigDecimal.valueOf(value).toBigInteger();
+        }
+        return ForecastModel.toNumber(value, typeClass);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.asset;
+
+import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.value.ForecastConfigurationWeightedExponentialAverage;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ForecastModel} for {@link ForecastConfigurationWeightedExponentialAverage}; each forecast value is the
+ * weighted exponential average of the values at the same offset within the previous {@code pastCount} past periods so
+ * the model is recalculated from history every time.
+ */
+public class WeightedExponentialAverageForecastModel implements ForecastModel {
+
+    public static class Provider implements ForecastModelProvider {
+        @Override
+        public String getType() {
+            return ForecastConfigurationWeightedExponentialAverage.TYPE;
+        }
+
+        @Override
+        public ForecastModel createModel(ForecastService.ForecastAttribute attribute) {
+            return new WeightedExponentialAverageForecastModel(attribute.getAttribute().getTypeClass(), (ForecastConfigurationWeightedExponentialAverage) attribute.getConfig());
+        }
+    }
+
+    protected final Class<?> typeClass;
+    protected final int pastCount;
+    protected final int forecastCount;
+    protected final long pastPeriod;
+    protected final long forecastPeriod;
+
+    public WeightedExponentialAverageForecastModel(Class<?> typeClass, ForecastConfigurationWeightedExponentialAverage config) {
+        this.typeClass = typeClass;
+        this.pastCount = config.getPastCount();
+        this.forecastCount = config.getForecastCount();
+        this.pastPeriod = config.getPastPeriod().toMillis();
+        this.forecastPeriod = config.getForecastPeriod().toMillis();
+    }
+
+    @Override
+    public long getForecastPeriod() {
+        return forecastPeriod;
+    }
+
+    @Override
+    public int getForecastCount() {
+        return forecastCount;
+    }
+
+    @Override
+    public long[][] getHistoryWindows(long now, List<Long> forecastTimestamps) {
+        if (!ForecastModel.isNumberType(typeClass) && !ForecastModel.isBigNumberType(typeClass)) {
+            return NO_HISTORY_WINDOWS;
+        }
+
+        long offset = getOffset(now, forecastTimestamps);
+        long totalForecastPeriod = Math.min(forecastPeriod * forecastCount, pastPeriod);
+        long[][] windows = new long[pastCount][];
+
+        for (int i = pastCount; i >= 1; i--) {
+            long timestampMin = now - (pastPeriod * i) + offset;
+            windows[pastCount - i] = new long[] {timestampMin, timestampMin + totalForecastPeriod};
+        }
+        return windows;
+    }
+
+    @Override
+    public List<ValueDatapoint<?>> calculate(long now, List<Long> forecastTimestamps, ForecastHistoryBucket[] history) {
+        List<ValueDatapoint<?>> datapoints = new ArrayList<>(forecastCount);
+
+        if (history.length != pastCount) {
+            return datapoints;
+        }
+
+        long offset = getOffset(now, forecastTimestamps);
+        boolean bigNumber = ForecastModel.isBigNumberType(typeClass);
+        double[] values = new double[pastCount];
+        String[] rawValues = new String[pastCount];
+
+        for (int forecastIndex = 1; forecastIndex <= forecastCount; forecastIndex++) {
+            int sampleCount = 0;
+
+            for (int pastPeriodIndex = pastCount; pastPeriodIndex > 0; pastPeriodIndex--) {
+                long timestamp = now - (pastPeriod * pastPeriodIndex) + (forecastPeriod * forecastIndex) + offset;
+                ForecastHistoryBucket bucket = findBucket(history, timestamp);
+                int index = bucket != null ? bucket.indexOf(timestamp) : -1;
+
+                if (index >= 0) {
+                    values[sampleCount] = bucket.getValue(index);
+                    rawValues[sampleCount] = bucket.getRawValue(index);
+                    sampleCount++;
+                }
+            }
+
+            if (sampleCount == pastCount) {
+                Number value = bigNumber
+                    ? calculateWeightedExponentialAverage(rawValues)
+                    : ForecastModel.toNumber(calculateWeightedExponentialAverage(values), typeClass);
+
+                if (value != null) {
+                    datapoints.add(new ValueDatapoint<>(forecastTimestamps.get(forecastIndex - 1), value));
+                }
+            }
+        }
+
+        return datapoints;
+    }
+
+    protected long getOffset(long now, List<Long> forecastTimestamps) {
+        return forecastTimestamps.get(0) - (now + forecastPeriod);
+    }
+
+    protected static ForecastHistoryBucket findBucket(ForecastHistoryBucket[] buckets, long timestamp) {
+        for (ForecastHistoryBucket bucket : buckets) {
+            if (bucket.isInTimeRange(timestamp)) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    protected static double calculateWeightedExponentialAverage(double[] values) {
+        // a = 2 / (R + 1)
+        // p: past period
+        // Attr(t) = Attr(t-p) * a + Attr(t-2p) * (1 - a)
+        int R = values.length;
+        double a = 2d / (R + 1);
+        double value = R == 1 ? 0d : values[0];
+
+        for (int i = R == 1 ? 0 : 1; i < R; i++) {
+            value = values[i] * a + value * (1 - a);
+        }
+        return value;
+    }
+
+    protected Number calculateWeightedExponentialAverage(String[] rawValues) {
+        int R = rawValues.length;
+        double a = 2d / (R + 1);
+
+        try {
+            if (typeClass == BigDecimal.class) {
+                BigDecimal value = R == 1 ? BigDecimal.valueOf(0) : new BigDecimal(rawValues[0]);
+                for (int i = R == 1 ? 0 : 1; i < R; i++) {
+                    value = new BigDecimal(rawValues[i]).multiply(BigDecimal.valueOf(a)).add(value.multiply(BigDecimal.valueOf(1 - a)));
+                }
+                return value;
+            }
+
+            // Attr(t) = ((Attr(t-p) * 2 + Attr(t-2p) * (R - 1)) / (R + 1)
+            BigInteger value = R == 1 ? BigInteger.valueOf(0) : new BigInteger(rawValues[0]);
+            for (int i = R == 1 ? 0 : 1; i < R; i++) {
+                value = new BigInteger(rawValues[i]).multiply(BigInteger.valueOf(2))
+                    .add(value.multiply(BigInteger.valueOf(R - 1)))
+                    .divide(BigInteger.valueOf(R + 1));
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
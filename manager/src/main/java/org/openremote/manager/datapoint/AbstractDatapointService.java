@@ -20,6 +20,7 @@
 package org.openremote.manager.datapoint;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
 import jakarta.validation.constraints.NotNull;
 import org.hibernate.Session;
@@ -35,6 +36,7 @@ import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.datapoint.Datapoint;
 import org.openremote.model.datapoint.DatapointPeriod;
 import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.datapoint.query.AssetDatapointIntervalQuery;
 import org.openremote.model.datapoint.query.AssetDatapointQuery;
 import org.openremote.model.util.ValueUtil;
 import org.postgresql.util.PGobject;
@@ -48,11 +50,14 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -69,6 +74,7 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
     protected TimerService timerService;
     protected ScheduledExecutorService executorService;
     protected ScheduledFuture<?> dataPointsPurgeScheduledFuture;
+    protected String upsertSql;
 
     @Override
     public int getPriority() {
@@ -185,13 +191,22 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
     }
 
     public List<ValueDatapoint<?>> queryDatapoints(String assetId, Attribute<?> attribute, @NotNull AssetDatapointQuery datapointQuery) {
+        return queryDatapoints(assetId, attribute, datapointQuery, false);
+    }
+
+    /**
+     * Like {@link #queryDatapoints(String, Attribute, AssetDatapointQuery)} but when {@code readOnly} is true the query
+     * can be served by the database read replica (see {@link PersistenceService#doReturningReadOnlyTransaction}) so
+     * recently stored datapoints may be missing; only use this for reporting queries.
+     */
+    public List<ValueDatapoint<?>> queryDatapoints(String assetId, Attribute<?> attribute, @NotNull AssetDatapointQuery datapointQuery, boolean readOnly) {
 
         AttributeRef attributeRef = new AttributeRef(assetId, attribute.getName());
         Map<Integer, Object> parameters = datapointQuery.getSQLParameters(attributeRef);
 
         getLogger().finest("Querying datapoints for: " + attributeRef);
 
-        return persistenceService.doReturningTransaction(entityManager ->
+        Function<EntityManager, List<ValueDatapoint<?>>> work = entityManager ->
                 entityManager.unwrap(Session.class).doReturningWork(new AbstractReturningWork<>() {
 
                     @Override
@@ -241,7 +256,62 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
                             }
                         }
                     }
-                })
+                });
+
+        return readOnly ? persistenceService.doReturningReadOnlyTransaction(work) : persistenceService.doReturningTransaction(work);
+    }
+
+    /**
+     * Batched equivalent of {@link #queryDatapoints} for number attributes using an
+     * {@link AssetDatapointIntervalQuery}; the datapoints of all the supplied {@link AttributeRef}s are retrieved with a
+     * single query. Each supplied {@link AttributeRef} is present in the returned map, the list is empty if no
+     * datapoints exist for it.
+     */
+    public Map<AttributeRef, List<ValueDatapoint<?>>> queryDatapoints(Collection<AttributeRef> attributeRefs, @NotNull AssetDatapointIntervalQuery datapointQuery) {
+
+        Map<AttributeRef, List<ValueDatapoint<?>>> result = new HashMap<>(attributeRefs.size());
+        attributeRefs.forEach(ref -> result.put(ref, new ArrayList<>()));
+
+        if (attributeRefs.isEmpty()) {
+            return result;
+        }
+
+        String function = datapointQuery.gapFill ? "public.time_bucket_gapfill" : "public.time_bucket";
+        String query = "SELECT ENTITY_ID, ATTRIBUTE_NAME, " + function + "(?::interval, TIMESTAMP) AS x, "
+            + datapointQuery.formula.toString().toLowerCase() + "(VALUE::text::numeric) FROM " + getDatapointTableName()
+            + " WHERE (ENTITY_ID, ATTRIBUTE_NAME) IN (SELECT * FROM unnest(?::varchar[], ?::varchar[]))"
+            + " AND TIMESTAMP >= ? AND TIMESTAMP <= ? GROUP BY ENTITY_ID, ATTRIBUTE_NAME, x ORDER BY ENTITY_ID, ATTRIBUTE_NAME, x ASC";
+
+        // The time parameters don't depend on the attribute so just take them from the single attribute parameters
+        Map<Integer, Object> parameters = datapointQuery.getSQLParameters(attributeRefs.iterator().next());
+
+        getLogger().finest("Querying datapoints for attribute count: " + attributeRefs.size());
+
+        return persistenceService.doReturningTransaction(entityManager ->
+            entityManager.unwrap(Session.class).doReturningWork(new AbstractReturningWork<>() {
+
+                @Override
+                public Map<AttributeRef, List<ValueDatapoint<?>>> execute(Connection connection) throws SQLException {
+                    try (PreparedStatement st = connection.prepareStatement(query)) {
+                        st.setString(1, parameters.get(1).toString());
+                        st.setArray(2, connection.createArrayOf("varchar", attributeRefs.stream().map(AttributeRef::getId).toArray()));
+                        st.setArray(3, connection.createArrayOf("varchar", attributeRefs.stream().map(AttributeRef::getName).toArray()));
+                        st.setObject(4, parameters.get(4));
+                        st.setObject(5, parameters.get(5));
+
+                        try (ResultSet rs = st.executeQuery()) {
+                            while (rs.next()) {
+                                List<ValueDatapoint<?>> datapoints = result.get(new AttributeRef(rs.getString(1), rs.getString(2)));
+                                if (datapoints != null) {
+                                    Object value = rs.getObject(4) != null ? ValueUtil.getValueCoerced(rs.getObject(4), Double.class).orElse(null) : null;
+                                    datapoints.add(new ValueDatapoint<>(rs.getTimestamp(3).getTime(), value));
+                                }
+                            }
+                            return result;
+                        }
+                    }
+                }
+            })
         );
     }
 
@@ -275,10 +345,14 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
     }
 
     protected PreparedStatement getUpsertPreparedStatement(Connection connection) throws SQLException {
-        return connection.prepareStatement("INSERT INTO " + getDatapointTableName() + " (entity_id, attribute_name, value, timestamp) " +
+        // Only build the SQL once, the driver caches the server side prepared statement per connection by SQL text
+        if (upsertSql == null) {
+            upsertSql = "INSERT INTO " + getDatapointTableName() + " (entity_id, attribute_name, value, timestamp) " +
                 "VALUES (?, ?, ?, ?) " +
                 "ON CONFLICT (entity_id, attribute_name, timestamp) DO UPDATE " +
-                "SET value = excluded.value");
+                "SET value = excluded.value";
+        }
+        return connection.prepareStatement(upsertSql);
     }
 
     protected void setUpsertValues(PreparedStatement st, String assetId, String attributeName, Object value, long timestamp) throws Exception {
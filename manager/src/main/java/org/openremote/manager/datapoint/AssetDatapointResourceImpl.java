@@ -129,7 +129,7 @@ public class AssetDatapointResourceImpl extends ManagerWebResource implements As
                 });
             }
             if (query != null) {
-                return assetDatapointService.queryDatapoints(assetId, attribute, query).toArray(ValueDatapoint[]::new);
+                return assetDatapointService.queryDatapoints(assetId, attribute, query, true).toArray(ValueDatapoint[]::new);
             }
 
             return assetDatapointService.getDatapoints(new AttributeRef(assetId, attributeName)).toArray(ValueDatapoint[]::new);
@@ -110,7 +110,7 @@ public class AssetPredictedDatapointResourceImpl extends ManagerWebResource impl
                     throw new WebApplicationException(Response.Status.FORBIDDEN);
                 });
             }
-            return assetPredictedDatapointService.queryDatapoints(assetId, attribute, query).toArray(ValueDatapoint[]::new);
+            return assetPredictedDatapointService.queryDatapoints(assetId, attribute, query, true).toArray(ValueDatapoint[]::new);
 
         } catch (IllegalStateException ex) {
             throw new WebApplicationException(ex, Response.Status.BAD_REQUEST);
@@ -19,6 +19,7 @@
  */
 package org.openremote.manager.datapoint;
 
+import org.hibernate.Session;
 import org.openremote.agent.protocol.ProtocolPredictedDatapointService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
@@ -29,11 +30,13 @@ import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.datapoint.AssetPredictedDatapoint;
 import org.openremote.model.datapoint.ValueDatapoint;
 
+import java.sql.PreparedStatement;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -84,6 +87,50 @@ public class AssetPredictedDatapointService extends AbstractDatapointService<Ass
         persistenceService.doTransaction(em -> upsertValues(assetId, attributeName, valuesAndTimestamps));
     }
 
+    /**
+     * Replaces all predicted datapoints of each of the supplied attributes with the supplied datapoints (which can be
+     * empty to just purge the existing datapoints) in a single transaction using batched statements.
+     */
+    public void replaceValues(Map<AttributeRef, List<ValueDatapoint<?>>> attributeDatapoints) throws IllegalStateException {
+        if (attributeDatapoints.isEmpty()) {
+            return;
+        }
+
+        persistenceService.doTransaction(em ->
+            em.unwrap(Session.class).doWork(connection -> {
+
+                LOG.finest("Replacing predicted datapoints for attribute count: " + attributeDatapoints.size());
+
+                try (PreparedStatement deleteSt = connection.prepareStatement(
+                    "DELETE FROM " + getDatapointTableName() + " WHERE entity_id = ? AND attribute_name = ?");
+                     PreparedStatement upsertSt = getUpsertPreparedStatement(connection)) {
+
+                    for (AttributeRef attributeRef : attributeDatapoints.keySet()) {
+                        deleteSt.setString(1, attributeRef.getId());
+                        deleteSt.setString(2, attributeRef.getName());
+                        deleteSt.addBatch();
+                    }
+                    deleteSt.executeBatch();
+
+                    int count = 0;
+                    for (Map.Entry<AttributeRef, List<ValueDatapoint<?>>> entry : attributeDatapoints.entrySet()) {
+                        for (ValueDatapoint<?> datapoint : entry.getValue()) {
+                            setUpsertValues(upsertSt, entry.getKey().getId(), entry.getKey().getName(), datapoint.getValue(), datapoint.getTimestamp());
+                            upsertSt.addBatch();
+                            count++;
+                        }
+                    }
+                    if (count > 0) {
+                        upsertSt.executeBatch();
+                    }
+                } catch (Exception e) {
+                    String msg = "Failed to replace predicted data points for attribute count: " + attributeDatapoints.size();
+                    LOG.log(Level.WARNING, msg, e);
+                    throw new IllegalStateException(msg, e);
+                }
+            }));
+    }
+
     public void purgeValues(String assetId, String attributeName) {
         persistenceService.doTransaction(em -> em.createQuery(
             "delete from " + getDatapointClass().getSimpleName() + " dp where dp.assetId=?1 and dp.attributeName=?2"
@@ -19,7 +19,10 @@
  */
 package org.openremote.manager.energy;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.camel.builder.RouteBuilder;
+import org.openremote.container.concurrent.ContainerExecutor;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetProcessingService;
@@ -45,31 +48,35 @@ import org.openremote.model.query.filter.AttributePredicate;
 import org.openremote.model.query.filter.BooleanPredicate;
 import org.openremote.model.query.filter.StringPredicate;
 import org.openremote.model.util.ValueUtil;
+import org.openremote.model.value.AttributeDescriptor;
 import org.openremote.model.value.MetaItemType;
 
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BiFunction;
-import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static java.time.temporal.ChronoUnit.HOURS;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
 import static org.openremote.manager.gateway.GatewayService.isNotForGateway;
 
 /**
  * Handles optimisation instances for {@link EnergyOptimisationAsset}.
+ * <p>
+ * Optimisations are triggered by the container scheduler but run on a dedicated bounded thread pool (size can be set
+ * with {@link #OR_ENERGY_OPTIMISATION_THREADS_MAX}) so multiple sites are optimised in parallel without occupying the
+ * shared scheduler threads; a run is skipped if the previous run for the same site is still in progress.
  */
 public class EnergyOptimisationService extends RouteBuilder implements ContainerService {
 
@@ -77,6 +84,8 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
         EnergyOptimisationAsset optimisationAsset;
         EnergyOptimiser energyOptimiser;
         ScheduledFuture<?> optimiserFuture;
+        final AtomicBoolean running = new AtomicBoolean();
+        Timer optimisationTimer;
 
         /**
          * This keeps track of a theoretical energy level of storage assets. This is used to calculate
@@ -93,6 +102,10 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
 
     protected static final Logger LOG = Logger.getLogger(EnergyOptimisationService.class.getName());
     protected static final int OPTIMISATION_TIMEOUT_MILLIS = 60000*10; // 10 mins
+    public static final String OR_ENERGY_OPTIMISATION_THREADS_MAX = "OR_ENERGY_OPTIMISATION_THREADS_MAX";
+    public static final int OR_ENERGY_OPTIMISATION_THREADS_MAX_DEFAULT = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    protected static final int OPTIMISATION_QUEUE_CAPACITY = 1000;
+    public static final String METRIC_PREFIX = "or.energy.optimisation";
     protected DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME.withZone(ZoneId.from(ZoneOffset.UTC));
     protected TimerService timerService;
     protected AssetProcessingService assetProcessingService;
@@ -102,8 +115,10 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
     protected ClientEventService clientEventService;
     protected GatewayService gatewayService;
     protected ScheduledExecutorService executorService;
-    protected final Map<String, OptimisationInstance> assetOptimisationInstanceMap = new HashMap<>();
-    protected List<String> forceChargeAssetIds = new ArrayList<>();
+    protected ThreadPoolExecutor optimisationExecutor;
+    protected MeterRegistry meterRegistry;
+    protected final Map<String, OptimisationInstance> assetOptimisationInstanceMap = new ConcurrentHashMap<>();
+    protected List<String> forceChargeAssetIds = new CopyOnWriteArrayList<>();
 
     @Override
     public void init(Container container) throws Exception {
@@ -115,6 +130,11 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
         clientEventService = container.getService(ClientEventService.class);
         gatewayService = container.getService(GatewayService.class);
         executorService = container.getExecutorService();
+        meterRegistry = container.getMeterRegistry();
+
+        int optimisationThreads = Math.max(1, getInteger(container.getConfig(), OR_ENERGY_OPTIMISATION_THREADS_MAX, OR_ENERGY_OPTIMISATION_THREADS_MAX_DEFAULT));
+        optimisationExecutor = new ContainerExecutor("Energy optimisation", optimisationThreads, optimisationThreads, 60, OPTIMISATION_QUEUE_CAPACITY, new ThreadPoolExecutor.AbortPolicy());
+        optimisationExecutor.allowCoreThreadTimeOut(true);
     }
 
     @Override
@@ -150,13 +170,18 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
             .routeId("Persistence-EnergyOptimisation")
             .filter(isPersistenceEventForEntityType(EnergyOptimisationAsset.class))
             .filter(isNotForGateway(gatewayService))
-            .process(exchange -> processAssetChange((PersistenceEvent<EnergyOptimisationAsset>) exchange.getIn().getBody(PersistenceEvent.class)));
+            .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent ->
+                processAssetChange((PersistenceEvent<EnergyOptimisationAsset>) persistenceEvent)));
     }
 
     @Override
     public void stop(Container container) throws Exception {
         new ArrayList<>(assetOptimisationInstanceMap.keySet())
             .forEach(this::stopOptimisation);
+
+        if (optimisationExecutor != null) {
+            optimisationExecutor.shutdownNow();
+        }
     }
 
     protected void processAssetChange(PersistenceEvent<EnergyOptimisationAsset> persistenceEvent) {
@@ -290,18 +315,17 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
             Duration startDuration = Duration.between(Instant.ofEpochMilli(currentMillis), optimisationStartTime.plus(offsetSeconds, ChronoUnit.SECONDS));
 
             ScheduledFuture<?> optimisationFuture = scheduleOptimisation(optimisationAsset.getId(), optimiser, startDuration, periodSeconds);
-            assetOptimisationInstanceMap.put(optimisationAsset.getId(), new OptimisationInstance(optimisationAsset, optimiser, optimisationFuture));
+            OptimisationInstance optimisationInstance = new OptimisationInstance(optimisationAsset, optimiser, optimisationFuture);
+
+            if (meterRegistry != null) {
+                optimisationInstance.optimisationTimer = meterRegistry.timer(METRIC_PREFIX + ".run", "asset", optimisationAsset.getId());
+            }
+
+            assetOptimisationInstanceMap.put(optimisationAsset.getId(), optimisationInstance);
 
             // Execute first optimisation at the period that started previous to now
             LOG.finest(getLogPrefix(optimisationAsset.getId()) + "Running first optimisation for time '" + formatter.format(optimisationStartTime));
-
-            executorService.execute(() -> {
-                try {
-                    runOptimisation(optimisationAsset.getId(), optimisationStartTime);
-                } catch (Exception e) {
-                    LOG.log(Level.SEVERE, "Failed to run energy optimiser for asset: " + optimisationAsset.getId(), e);
-                }
-            });
+            submitOptimisation(optimisationAsset.getId(), optimisationStartTime);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Failed to start energy optimiser for asset: " + optimisationAsset, e);
         }
@@ -310,7 +334,15 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
     protected synchronized void stopOptimisation(String optimisationAssetId) {
         OptimisationInstance optimisationInstance = assetOptimisationInstanceMap.remove(optimisationAssetId);
 
-        if (optimisationInstance == null || optimisationInstance.optimiserFuture == null) {
+        if (optimisationInstance == null) {
+            return;
+        }
+
+        if (meterRegistry != null && optimisationInstance.optimisationTimer != null) {
+            meterRegistry.remove(optimisationInstance.optimisationTimer);
+        }
+
+        if (optimisationInstance.optimiserFuture == null) {
             return;
         }
 
@@ -318,6 +350,42 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
         optimisationInstance.optimiserFuture.cancel(false);
     }
 
+    /**
+     * Submits an optimisation run for the specified asset to the optimisation thread pool; the run is skipped if the
+     * previous run for this asset hasn't yet completed.
+     */
+    protected void submitOptimisation(String optimisationAssetId, Instant optimisationTime) {
+        OptimisationInstance optimisationInstance = assetOptimisationInstanceMap.get(optimisationAssetId);
+
+        if (optimisationInstance == null) {
+            return;
+        }
+
+        if (!optimisationInstance.running.compareAndSet(false, true)) {
+            LOG.warning(getLogPrefix(optimisationAssetId) + "Previous optimisation is still running so skipping run for time '" + formatter.format(optimisationTime));
+            return;
+        }
+
+        try {
+            optimisationExecutor.execute(() -> {
+                long startNanos = System.nanoTime();
+                try {
+                    runOptimisation(optimisationAssetId, optimisationTime);
+                } catch (Exception e) {
+                    LOG.log(Level.SEVERE, "Failed to run energy optimiser for asset: " + optimisationAssetId, e);
+                } finally {
+                    optimisationInstance.running.set(false);
+                    if (optimisationInstance.optimisationTimer != null) {
+                        optimisationInstance.optimisationTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            optimisationInstance.running.set(false);
+            LOG.warning(getLogPrefix(optimisationAssetId) + "Optimisation thread pool rejected run for time '" + formatter.format(optimisationTime));
+        }
+    }
+
 
     /**
      * Schedules execution of the optimiser at the start of the interval window with up to 30s of offset randomness
@@ -332,13 +400,8 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
             throw new IllegalStateException("Optimiser instance not found for asset: " + optimisationAssetId);
         }
 
-        return executorService.scheduleAtFixedRate(() -> {
-                try {
-                    runOptimisation(optimisationAssetId, Instant.ofEpochMilli(timerService.getCurrentTimeMillis()).truncatedTo(ChronoUnit.MINUTES));
-                } catch (Exception e) {
-                    LOG.log(Level.SEVERE, "Failed to run energy optimiser for asset: " + optimisationAssetId, e);
-                }
-            },
+        return executorService.scheduleAtFixedRate(() ->
+                submitOptimisation(optimisationAssetId, Instant.ofEpochMilli(timerService.getCurrentTimeMillis()).truncatedTo(ChronoUnit.MINUTES)),
             startDuration.getSeconds(),
             periodSeconds,
             TimeUnit.SECONDS);
@@ -444,6 +507,9 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
 
         checkTimeoutAndThrow(optimisationAssetId, startTimeMillis);
 
+        // Power attributes that contribute to the net power are collected (in summation order) so their predicted
+        // values can be loaded with a single query
+        Map<AttributeRef, Attribute<Double>> powerAttributes = new LinkedHashMap<>();
         List<ElectricityStorageAsset> finalOptimisableStorageAssets = optimisableStorageAssets;
         optimisableStorageAssets = optimisableStorageAssets
             .stream()
@@ -454,8 +520,7 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
                     LOG.finest("Optimisable asset was requested to force charge so it won't be optimised: " + asset.getId());
                     @SuppressWarnings("OptionalGetWithoutIsPresent")
                     Attribute<Double> powerAttribute = asset.getAttribute(ElectricityAsset.POWER).get();
-                    double[] powerLevels = get24HAttributeValues(asset.getId(), powerAttribute, optimiser.getIntervalSize(), intervalCount, optimisationTime);
-                    IntStream.range(0, intervalCount).forEach(i -> powerNets[i] += powerLevels[i]);
+                    powerAttributes.put(new AttributeRef(asset.getId(), powerAttribute.getName()), powerAttribute);
 
                     double currentEnergyLevel = asset.getEnergyLevel().orElse(0d);
                     double maxEnergyLevel = getElectricityStorageAssetEnergyLevelMax(asset);
@@ -528,8 +593,7 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
             .forEach(asset -> {
                 @SuppressWarnings("OptionalGetWithoutIsPresent")
                 Attribute<Double> powerAttribute = asset.getAttribute(ElectricityAsset.POWER).get();
-                double[] powerLevels = get24HAttributeValues(asset.getId(), powerAttribute, optimiser.getIntervalSize(), intervalCount, optimisationTime);
-                IntStream.range(0, intervalCount).forEach(i -> powerNets[i] += powerLevels[i]);
+                powerAttributes.put(new AttributeRef(asset.getId(), powerAttribute.getName()), powerAttribute);
                 count.incrementAndGet();
             });
 
@@ -579,18 +643,12 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
             .forEach(asset -> {
                 @SuppressWarnings("OptionalGetWithoutIsPresent")
                 Attribute<Double> powerAttribute = asset.getAttribute(ElectricityAsset.POWER).get();
-                double[] powerLevels = get24HAttributeValues(asset.getId(), powerAttribute, optimiser.getIntervalSize(), intervalCount, optimisationTime);
-                IntStream.range(0, intervalCount).forEach(i -> powerNets[i] += powerLevels[i]);
+                powerAttributes.put(new AttributeRef(asset.getId(), powerAttribute.getName()), powerAttribute);
                 count.incrementAndGet();
             });
 
         checkTimeoutAndThrow(optimisationAssetId, startTimeMillis);
 
-        if (LOG.isLoggable(Level.FINEST)) {
-            LOG.finest(getLogPrefix(optimisationAssetId) + "Found plain consumer and producer child assets count=" + count.get());
-            LOG.finest("Calculated net power of consumers and producers: " + Arrays.toString(powerNets));
-        }
-
         // Get supplier costs for each interval
         double financialWeightingImport = optimiser.getFinancialWeighting();
         double financialWeightingExport = optimiser.getFinancialWeighting();
@@ -603,12 +661,33 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
             financialWeightingExport = 1d;
         }
 
-        double[] costsImport = get24HAttributeValues(supplierAsset.getId(), supplierAsset.getAttribute(ElectricitySupplierAsset.TARIFF_IMPORT).orElse(null), optimiser.getIntervalSize(), intervalCount, optimisationTime);
-        double[] costsExport = get24HAttributeValues(supplierAsset.getId(), supplierAsset.getAttribute(ElectricitySupplierAsset.TARIFF_EXPORT).orElse(null), optimiser.getIntervalSize(), intervalCount, optimisationTime);
+        // Load the predicted values of all power and supplier attributes in one go
+        boolean includeCarbon = financialWeightingImport < 1d || financialWeightingExport < 1d;
+        Map<AttributeRef, Attribute<Double>> inputAttributes = new HashMap<>(powerAttributes);
+        AttributeRef tariffImportRef = addSupplierAttribute(inputAttributes, supplierAsset, ElectricitySupplierAsset.TARIFF_IMPORT);
+        AttributeRef tariffExportRef = addSupplierAttribute(inputAttributes, supplierAsset, ElectricitySupplierAsset.TARIFF_EXPORT);
+        AttributeRef carbonImportRef = includeCarbon ? addSupplierAttribute(inputAttributes, supplierAsset, ElectricitySupplierAsset.CARBON_IMPORT) : null;
+        AttributeRef carbonExportRef = includeCarbon ? addSupplierAttribute(inputAttributes, supplierAsset, ElectricitySupplierAsset.CARBON_EXPORT) : null;
+        Map<AttributeRef, double[]> inputValues = get24HAttributeValues(inputAttributes, intervalSize, intervalCount, optimisationTime);
+
+        checkTimeoutAndThrow(optimisationAssetId, startTimeMillis);
+
+        for (AttributeRef powerRef : powerAttributes.keySet()) {
+            double[] powerLevels = inputValues.get(powerRef);
+            IntStream.range(0, intervalCount).forEach(i -> powerNets[i] += powerLevels[i]);
+        }
+
+        if (LOG.isLoggable(Level.FINEST)) {
+            LOG.finest(getLogPrefix(optimisationAssetId) + "Found plain consumer and producer child assets count=" + count.get());
+            LOG.finest("Calculated net power of consumers and producers: " + Arrays.toString(powerNets));
+        }
+
+        double[] costsImport = inputValues.get(tariffImportRef);
+        double[] costsExport = inputValues.get(tariffExportRef);
 
-        if (financialWeightingImport < 1d || financialWeightingExport < 1d) {
-            double[] carbonImport = get24HAttributeValues(supplierAsset.getId(), supplierAsset.getAttribute(ElectricitySupplierAsset.CARBON_IMPORT).orElse(null), optimiser.getIntervalSize(), intervalCount, optimisationTime);
-            double[] carbonExport = get24HAttributeValues(supplierAsset.getId(), supplierAsset.getAttribute(ElectricitySupplierAsset.CARBON_EXPORT).orElse(null), optimiser.getIntervalSize(), intervalCount, optimisationTime);
+        if (includeCarbon) {
+            double[] carbonImport = inputValues.get(carbonImportRef);
+            double[] carbonExport = inputValues.get(carbonExportRef);
 
             LOG.finest(getLogPrefix(optimisationAssetId) + "Adjusting costs to include some carbon weighting, financialWeightingImport=" + financialWeightingImport + ", financialWeightingExport=" + financialWeightingExport);
 
@@ -690,8 +769,8 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
             boolean isConnected = storageAssetConnected(storageAsset);
 
             // TODO: Make these a function of energy level
-            Function<Integer, Double> powerImportMaxCalculator = interval -> interval == 0 && !isConnected ? 0 : powerImportMax;
-            Function<Integer, Double> powerExportMaxCalculator = interval -> interval == 0 && !isConnected ? 0 : powerExportMax;
+            IntToDoubleFunction powerImportMaxCalculator = interval -> interval == 0 && !isConnected ? 0 : powerImportMax;
+            IntToDoubleFunction powerExportMaxCalculator = interval -> interval == 0 && !isConnected ? 0 : powerExportMax;
 
             if (hasEnergyMinRequirement) {
                 LOG.finest(getLogPrefix(optimisationAssetId) + "Normalising min energy requirements for storage asset: " + storageAsset.getId());
@@ -787,65 +866,100 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
 
     protected double[] get24HAttributeValues(String assetId, Attribute<Double> attribute, double intervalSize, int intervalCount, Instant optimisationTime) {
 
-        double[] values = new double[intervalCount];
-
         if (attribute == null) {
-            return values;
+            return new double[intervalCount];
         }
 
         AttributeRef ref = new AttributeRef(assetId, attribute.getName());
+        return get24HAttributeValues(Collections.singletonMap(ref, attribute), intervalSize, intervalCount, optimisationTime).get(ref);
+    }
+
+    /**
+     * Gets the values for the next 24 hours of each of the supplied attributes; the predicted data points of all the
+     * attributes are retrieved with a single query. A <code>null</code> attribute results in all values being zero.
+     */
+    protected Map<AttributeRef, double[]> get24HAttributeValues(Map<AttributeRef, Attribute<Double>> attributes, double intervalSize, int intervalCount, Instant optimisationTime) {
+
+        Map<AttributeRef, double[]> result = new HashMap<>(attributes.size());
+        List<AttributeRef> predictedRefs = attributes.entrySet().stream()
+            .filter(entry -> entry.getValue() != null && entry.getValue().hasMeta(MetaItemType.HAS_PREDICTED_DATA_POINTS))
+            .map(Map.Entry::getKey)
+            .toList();
+        Map<AttributeRef, List<ValueDatapoint<?>>> predictedData = Collections.emptyMap();
 
-        if (attribute.hasMeta(MetaItemType.HAS_PREDICTED_DATA_POINTS)) {
+        if (!predictedRefs.isEmpty()) {
             LocalDateTime timestamp = LocalDateTime.ofInstant(optimisationTime, ZoneId.systemDefault());
-            List<ValueDatapoint<?>> predictedData = assetPredictedDatapointService.queryDatapoints(
-                    ref.getId(),
-                    ref.getName(),
-                    new AssetDatapointIntervalQuery(
-                            timestamp,
-                            timestamp.plus(24, HOURS).minus((long)(intervalSize * 60), ChronoUnit.MINUTES),
-                            (intervalSize * 60) + " minutes",
-                            AssetDatapointIntervalQuery.Formula.AVG,
-                            true
-                    )
+            predictedData = assetPredictedDatapointService.queryDatapoints(
+                predictedRefs,
+                new AssetDatapointIntervalQuery(
+                    timestamp,
+                    timestamp.plus(24, HOURS).minus((long)(intervalSize * 60), ChronoUnit.MINUTES),
+                    (intervalSize * 60) + " minutes",
+                    AssetDatapointIntervalQuery.Formula.AVG,
+                    true
+                )
             );
-            if (predictedData.size() != values.length) {
-                LOG.warning("Returned predicted data point count does not match interval count: Ref=" + ref + ", expected=" + values.length + ", actual=" + predictedData.size());
-            } else {
+        }
 
-                IntStream.range(0, predictedData.size()).forEach(i -> {
-                    if (predictedData.get(i).getValue() != null) {
-                        values[i] = (double) (Object) predictedData.get(i).getValue();
-                    } else {
-                        // Average previous and next values to fill in gaps (goes up to 5 back and forward) - this fixes
-                        // issues with resolution differences between stored predicted data and optimisation interval
-                        Double previous = null;
-                        Double next = null;
-                        int j = i-1;
-                        while (previous == null && j >= 0) {
-                            previous = (Double) predictedData.get(j).getValue();
-                            j--;
-                        }
-                        j = i+1;
-                        while (next == null && j < predictedData.size()) {
-                            next = (Double) predictedData.get(j).getValue();
-                            j++;
-                        }
-                        if (next == null) {
-                            next = previous;
-                        }
-                        if (previous == null) {
-                            previous = next;
-                        }
-                        if (next != null) {
-                            values[i] = (previous + next) / 2;
-                        }
-                    }
-                });
+        for (Map.Entry<AttributeRef, Attribute<Double>> entry : attributes.entrySet()) {
+            double[] values = new double[intervalCount];
+            result.put(entry.getKey(), values);
+
+            if (entry.getValue() == null) {
+                continue;
+            }
+
+            List<ValueDatapoint<?>> datapoints = predictedData.get(entry.getKey());
+            if (datapoints != null) {
+                fillPredictedValues(entry.getKey(), datapoints, values);
             }
+            values[0] = entry.getValue().getValue().orElse(0d);
         }
 
-        values[0] = attribute.getValue().orElse(0d);
-        return values;
+        return result;
+    }
+
+    protected static void fillPredictedValues(AttributeRef ref, List<ValueDatapoint<?>> predictedData, double[] values) {
+        if (predictedData.size() != values.length) {
+            LOG.warning("Returned predicted data point count does not match interval count: Ref=" + ref + ", expected=" + values.length + ", actual=" + predictedData.size());
+            return;
+        }
+
+        IntStream.range(0, predictedData.size()).forEach(i -> {
+            if (predictedData.get(i).getValue() != null) {
+                values[i] = (double) (Object) predictedData.get(i).getValue();
+            } else {
+                // Average previous and next values to fill in gaps (goes up to 5 back and forward) - this fixes
+                // issues with resolution differences between stored predicted data and optimisation interval
+                Double previous = null;
+                Double next = null;
+                int j = i-1;
+                while (previous == null && j >= 0) {
+                    previous = (Double) predictedData.get(j).getValue();
+                    j--;
+                }
+                j = i+1;
+                while (next == null && j < predictedData.size()) {
+                    next = (Double) predictedData.get(j).getValue();
+                    j++;
+                }
+                if (next == null) {
+                    next = previous;
+                }
+                if (previous == null) {
+                    previous = next;
+                }
+                if (next != null) {
+                    values[i] = (previous + next) / 2;
+                }
+            }
+        });
+    }
+
+    protected static AttributeRef addSupplierAttribute(Map<AttributeRef, Attribute<Double>> attributes, ElectricitySupplierAsset supplierAsset, AttributeDescriptor<Double> descriptor) {
+        AttributeRef ref = new AttributeRef(supplierAsset.getId(), descriptor.getName());
+        attributes.put(ref, supplierAsset.getAttribute(descriptor).orElse(null));
+        return ref;
     }
 
     /**
@@ -881,24 +995,22 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
         boolean isConnected = storageAssetConnected(storageAsset);
 
         // TODO: Make these a function of energy level
-        Function<Integer, Double> powerImportMaxCalculator = interval -> interval == 0 && !isConnected ? 0 : powerImportMax;
-        Function<Integer, Double> powerExportMaxCalculator = interval -> interval == 0 && !isConnected ? 0 : powerExportMax;
+        IntToDoubleFunction powerImportMaxCalculator = interval -> interval == 0 && !isConnected ? 0 : powerImportMax;
+        IntToDoubleFunction powerExportMaxCalculator = interval -> interval == 0 && !isConnected ? 0 : powerExportMax;
 
         double[][] exportCostAndPower = null;
         double[][] importCostAndPower = null;
         double[] powerSetpoints = new double[intervalCount];
 
-        Function<Integer, Double> energyLevelCalculator = interval ->
-                energyLevel + IntStream.range(0, interval).mapToDouble(j -> powerSetpoints[j] * optimiser.getIntervalSize()).sum();
+        IntToDoubleFunction energyLevelCalculator = optimiser.getEnergyLevelCalculator(energyLevel, powerSetpoints);
 
         // If asset supports exporting energy (V2G, battery storage, etc.) then need to determine if there are
         // opportunities to export energy to save/earn, taking into consideration the cost of exporting from this asset
         if (supportsExport) {
             LOG.finest(getLogPrefix(optimisationAssetId) + "Storage asset supports export so calculating export cost and power levels for each interval: " + storageAsset.getId());
             // Find intervals that save/earn by exporting energy from this storage asset by looking at power levels
-            BiFunction<Integer, Double, double[]> exportOptimiser = optimiser.getExportOptimiser(powerNets, exportPowerLimits, costImports, costExports, storageAsset.getTariffExport().orElse(0d));
-            exportCostAndPower = IntStream.range(0, intervalCount).mapToObj(it -> exportOptimiser.apply(it, powerExportMax))
-                .toArray(double[][]::new);
+            EnergyOptimiser.CostAndPowerOptimiser exportOptimiser = optimiser.getExportCostAndPowerOptimiser(powerNets, exportPowerLimits, costImports, costExports, storageAsset.getTariffExport().orElse(0d));
+            exportCostAndPower = optimiser.getExportCostAndPower(exportOptimiser, powerExportMax);
         }
 
         // If asset supports importing energy then need to determine if there are opportunities to import energy to
@@ -906,9 +1018,8 @@ public class EnergyOptimisationService extends RouteBuilder implements Container
         // energy demands are met.
         if (supportsImport) {
             LOG.finest(getLogPrefix(optimisationAssetId) + "Storage asset supports import so calculating export cost and power levels for each interval: " + storageAsset.getId());
-            BiFunction<Integer, double[], double[]> importOptimiser = optimiser.getImportOptimiser(powerNets, importPowerLimits, costImports, costExports, storageAsset.getTariffImport().orElse(0d));
-            importCostAndPower = IntStream.range(0, intervalCount).mapToObj(it -> importOptimiser.apply(it, new double[]{0d, powerImportMax}))
-                .toArray(double[][]::new);
+            EnergyOptimiser.CostAndPowerOptimiser importOptimiser = optimiser.getImportCostAndPowerOptimiser(powerNets, importPowerLimits, costImports, costExports, storageAsset.getTariffImport().orElse(0d));
+            importCostAndPower = optimiser.getImportCostAndPower(importOptimiser, powerImportMax);
 
             boolean hasEnergyMinRequirement = Arrays.stream(normalisedEnergyLevelMins).anyMatch(el -> el > 0);
 
@@ -19,29 +19,45 @@
  */
 package org.openremote.manager.energy;
 
-import org.openremote.model.util.Pair;
-
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import static org.openremote.manager.energy.EnergyOptimisationService.LOG;
 
+/**
+ * Calculates optimised power setpoints for storage assets. The optimisation routines operate on primitive arrays and
+ * primitive functions; the {@link Function}/{@link BiFunction} based methods are retained for compatibility and
+ * delegate to these. Scratch buffers are re-used between calls so an instance must not be used concurrently.
+ */
 public class EnergyOptimiser {
 
+    /**
+     * Primitive form of the optimisers returned by {@link #getImportOptimiser} and {@link #getExportOptimiser}; the
+     * [cost, powerMin, powerMax] result for the interval is written to the supplied array (powerMin is ignored by
+     * export optimisers).
+     */
+    @FunctionalInterface
+    public interface CostAndPowerOptimiser {
+        void apply(int interval, double powerMin, double powerMax, double[] costAndPower);
+    }
+
     protected double intervalSize;
     protected double financialWeighting;
+    protected double[][] importCostAndPowerBuffer;
+    protected double[][] exportCostAndPowerBuffer;
+    protected double[][] opportunityCostAndPowers = new double[0][];
+    protected int[] opportunityIntervals = new int[0];
+    protected int[] pastOpportunityIntervals = new int[0];
+    protected int[] powerDeltaIntervals = new int[0];
+    protected double[] powerDeltas = new double[0];
 
     /**
      * 24 divided by intervalSize must be a whole number
@@ -52,6 +68,9 @@ public class EnergyOptimiser {
         }
         this.intervalSize = intervalSize;
         this.financialWeighting = Math.max(0, Math.min(1d, financialWeighting));
+        int intervalCount = get24HourIntervalCount();
+        importCostAndPowerBuffer = new double[intervalCount][3];
+        exportCostAndPowerBuffer = new double[intervalCount][3];
     }
 
     public double getIntervalSize() {
@@ -234,21 +253,28 @@ public class EnergyOptimiser {
      * rates).
      */
     public void normaliseEnergyMinRequirements(double[] energyLevelMins, Function<Integer, Double> powerImportMaxCalculator, Function<Integer, Double> powerExportMaxCalculator, double energyLevel) {
+        normaliseEnergyMinRequirements(energyLevelMins, toPrimitive(powerImportMaxCalculator), toPrimitive(powerExportMaxCalculator), energyLevel);
+    }
+
+    /**
+     * Adjusts the supplied energyLevelMin values to match the physical characteristics (i.e. the charge and discharge
+     * rates).
+     */
+    public void normaliseEnergyMinRequirements(double[] energyLevelMins, IntToDoubleFunction powerImportMaxCalculator, IntToDoubleFunction powerExportMaxCalculator, double energyLevel) {
 
         int intervalCount = get24HourIntervalCount();
-        Function<Integer, Double> previousEnergyLevelCalculator = i -> (i == 0 ? energyLevel : energyLevelMins[i - 1]);
 
         // Adjust energy min requirements to match physical characteristics (charge/discharge rate)
-        IntStream.range(0, intervalCount).forEach(i -> {
-            double energyDelta = energyLevelMins[i] - previousEnergyLevelCalculator.apply(i);
+        for (int i = 0; i < intervalCount; i++) {
+            double energyDelta = energyLevelMins[i] - (i == 0 ? energyLevel : energyLevelMins[i - 1]);
 
             if (energyDelta > 0) {
 
                 // May need to increase earlier min values until there is no energy deficit with previous interval
                 // If we reach interval 0 and there is still a deficit then need to reduce this energy level
                 for (int j = i; j >= 0; j--) {
-                    double previousMin = energyLevelMins[j] - (powerImportMaxCalculator.apply(j) * intervalSize);
-                    double previous = previousEnergyLevelCalculator.apply(j);
+                    double previousMin = energyLevelMins[j] - (powerImportMaxCalculator.applyAsDouble(j) * intervalSize);
+                    double previous = j == 0 ? energyLevel : energyLevelMins[j - 1];
 
                     if (previous < previousMin) {
                         if (j == 0) {
@@ -272,7 +298,7 @@ public class EnergyOptimiser {
                 // May need to spread discharge over this and later intervals
                 for (int j = i; j < intervalCount; j++) {
 
-                    double min = previousEnergyLevelCalculator.apply(j) + (powerExportMaxCalculator.apply(j) * intervalSize);
+                    double min = (j == 0 ? energyLevel : energyLevelMins[j - 1]) + (powerExportMaxCalculator.applyAsDouble(j) * intervalSize);
 
                     if (min > energyLevelMins[j]) {
                         energyLevelMins[j] = min;
@@ -282,31 +308,65 @@ public class EnergyOptimiser {
                     }
                 }
             }
-        });
+        }
+    }
+
+    /**
+     * Returns a function that calculates the energy level at the start of the requested interval based on the supplied
+     * starting energy level and the current power setpoints of the earlier intervals. The setpoint energies are summed
+     * using the same compensated summation as {@link java.util.stream.DoubleStream#sum}.
+     */
+    public IntToDoubleFunction getEnergyLevelCalculator(double energyLevel, double[] powerSetpoints) {
+        return interval -> {
+            double sum = 0d;
+            double compensation = 0d;
+            double simpleSum = 0d;
+
+            for (int j = 0; j < interval; j++) {
+                double value = powerSetpoints[j] * intervalSize;
+                double tmp = value - compensation;
+                double velvel = sum + tmp;
+                compensation = (velvel - sum) - tmp;
+                sum = velvel;
+                simpleSum += value;
+            }
+
+            return energyLevel + getCompensatedSum(sum, compensation, simpleSum);
+        };
     }
 
     /**
      * Will update the powerSetpoints in order to achieve the energyLevelMin values supplied.
      */
     public void applyEnergyMinImports(double[][] importCostAndPower, double[] energyLevelMins, double[] powerSetpoints, Function<Integer, Double> energyLevelCalculator, BiFunction<Integer, double[], double[]> importOptimiser, Function<Integer, Double> powerImportMaxCalculator) {
+        applyEnergyMinImports(importCostAndPower, energyLevelMins, powerSetpoints, toPrimitive(energyLevelCalculator), toPrimitive(importOptimiser), toPrimitive(powerImportMaxCalculator));
+    }
+
+    /**
+     * Will update the powerSetpoints in order to achieve the energyLevelMin values supplied.
+     */
+    public void applyEnergyMinImports(double[][] importCostAndPower, double[] energyLevelMins, double[] powerSetpoints, IntToDoubleFunction energyLevelCalculator, CostAndPowerOptimiser importOptimiser, IntToDoubleFunction powerImportMaxCalculator) {
         // Ensure min energy levels are attained by the end of the interval as these have priority
-        AtomicInteger fromInterval = new AtomicInteger(0);
+        int fromInterval = 0;
+        int intervalCount = get24HourIntervalCount();
 
-        IntStream.range(0, get24HourIntervalCount()).forEach(i -> {
-            double intervalEnergyLevel = energyLevelCalculator.apply(i);
+        for (int i = 0; i < intervalCount; i++) {
+            double intervalEnergyLevel = energyLevelCalculator.applyAsDouble(i);
             double energyDeficit = energyLevelMins[i] - intervalEnergyLevel;
 
             if (energyDeficit > 0) {
-                double energyAttainable = powerImportMaxCalculator.apply(i) * intervalSize;
+                double energyAttainable = powerImportMaxCalculator.applyAsDouble(i) * intervalSize;
                 energyAttainable = Math.min(energyDeficit, energyAttainable);
                 powerSetpoints[i] = energyAttainable / intervalSize;
                 energyDeficit -= energyAttainable;
 
                 if (energyDeficit > 0) {
-                    retrospectiveEnergyAllocator(importCostAndPower, energyLevelMins, powerSetpoints, importOptimiser, powerImportMaxCalculator, energyDeficit, fromInterval.getAndSet(i), i);
+                    int previousFromInterval = fromInterval;
+                    fromInterval = i;
+                    retrospectiveEnergyAllocator(importCostAndPower, energyLevelMins, powerSetpoints, importOptimiser, powerImportMaxCalculator, energyDeficit, previousFromInterval, i);
                 }
             }
-        });
+        }
     }
 
     /**
@@ -314,6 +374,14 @@ public class EnergyOptimiser {
      * level requirement at the specified interval based on the provided energy level at the start of fromInterval.
      */
     public void retrospectiveEnergyAllocator(double[][] importCostAndPower, double[] energyLevelMins, double[] powerSetpoints, BiFunction<Integer, double[], double[]> importOptimiser, Function<Integer, Double> powerImportMaxCalculator, double energyLevel, int fromInterval, int toInterval) {
+        retrospectiveEnergyAllocator(importCostAndPower, energyLevelMins, powerSetpoints, toPrimitive(importOptimiser), toPrimitive(powerImportMaxCalculator), energyLevel, fromInterval, toInterval);
+    }
+
+    /**
+     * Creates earlier imports between fromInterval (inclusive) and toInterval (exclusive) in order to meet min energy
+     * level requirement at the specified interval based on the provided energy level at the start of fromInterval.
+     */
+    public void retrospectiveEnergyAllocator(double[][] importCostAndPower, double[] energyLevelMins, double[] powerSetpoints, CostAndPowerOptimiser importOptimiser, IntToDoubleFunction powerImportMaxCalculator, double energyLevel, int fromInterval, int toInterval) {
 
         double energyDeficit = energyLevelMins[toInterval] - energyLevel;
 
@@ -322,30 +390,38 @@ public class EnergyOptimiser {
         }
 
         // Do import until energy deficit reaches 0 or there are no more intervals
-        boolean canMeetDeficit = IntStream.range(fromInterval, toInterval).mapToDouble(i ->
-            Math.min(powerImportMaxCalculator.apply(i), importCostAndPower[i][2])
-        ).sum() >= energyDeficit;
-        boolean morePowerAvailable = !canMeetDeficit && IntStream.range(fromInterval, toInterval).mapToObj(i -> importCostAndPower[i][2] < powerImportMaxCalculator.apply(i)).anyMatch(b -> b);
+        double sum = 0d;
+        double compensation = 0d;
+        double simpleSum = 0d;
+        for (int i = fromInterval; i < toInterval; i++) {
+            double value = Math.min(powerImportMaxCalculator.applyAsDouble(i), importCostAndPower[i][2]);
+            double tmp = value - compensation;
+            double velvel = sum + tmp;
+            compensation = (velvel - sum) - tmp;
+            sum = velvel;
+            simpleSum += value;
+        }
+        boolean canMeetDeficit = getCompensatedSum(sum, compensation, simpleSum) >= energyDeficit;
+        boolean morePowerAvailable = false;
+
+        for (int i = fromInterval; !canMeetDeficit && !morePowerAvailable && i < toInterval; i++) {
+            morePowerAvailable = importCostAndPower[i][2] < powerImportMaxCalculator.applyAsDouble(i);
+        }
 
         if (!canMeetDeficit && morePowerAvailable) {
             // Need to push imports beyond optimum to fulfill energy deficit
-            IntStream.range(fromInterval, toInterval).forEach(i -> {
-                double powerImportMax = powerImportMaxCalculator.apply(i);
+            for (int i = fromInterval; i < toInterval; i++) {
+                double powerImportMax = powerImportMaxCalculator.applyAsDouble(i);
                 if (importCostAndPower[i][2] < powerImportMax) {
-                    importCostAndPower[i] = importOptimiser.apply(i, new double[]{0d, powerImportMax});
+                    importOptimiser.apply(i, 0d, powerImportMax, importCostAndPower[i]);
                 }
-            });
+            }
         }
 
-        // Sort import intervals by cost (lowest to highest)
-        List<Pair<Integer, double[]>> sortedImportCostAndPower = IntStream.range(fromInterval, toInterval)
-            .mapToObj(i -> new Pair<>(i, importCostAndPower[i])).sorted(
-                Comparator.comparingDouble(pair -> pair.value[0])
-            ).collect(Collectors.toList());
-
+        int intervalCount = Math.max(0, toInterval - fromInterval);
         int i = 0;
-        while (energyDeficit > 0 && i < sortedImportCostAndPower.size()) {
-            double importPower = Math.min(powerImportMaxCalculator.apply(i), importCostAndPower[i][2]);
+        while (energyDeficit > 0 && i < intervalCount) {
+            double importPower = Math.min(powerImportMaxCalculator.applyAsDouble(i), importCostAndPower[i][2]);
             double requiredPower = energyDeficit / intervalSize;
             // If we earn by importing then take the maximum power
             importPower = importCostAndPower[i][0] < 0 ? importPower : Math.min(importPower, requiredPower);
@@ -361,39 +437,52 @@ public class EnergyOptimiser {
      * updated as a result.
      */
     public void applyEarningOpportunities(double[][] importCostAndPower, double[][] exportCostAndPower, double[] energyLevelMins, double[] energyLevelMaxs, double[] powerSetpoints, Function<Integer, Double> energyLevelCalculator, Function<Integer, Double> powerImportMaxCalculator, Function<Integer, Double> powerExportMaxCalculator) {
+        applyEarningOpportunities(importCostAndPower, exportCostAndPower, energyLevelMins, energyLevelMaxs, powerSetpoints, toPrimitive(energyLevelCalculator), toPrimitive(powerImportMaxCalculator), toPrimitive(powerExportMaxCalculator));
+    }
+
+    /**
+     * Will find the best earning opportunity for each interval (import or export) and will then try to apply them in
+     * chronological order (reallocating earlier import/exports if it cost beneficial). The powerSetpoints will be
+     * updated as a result.
+     */
+    public void applyEarningOpportunities(double[][] importCostAndPower, double[][] exportCostAndPower, double[] energyLevelMins, double[] energyLevelMaxs, double[] powerSetpoints, IntToDoubleFunction energyLevelCalculator, IntToDoubleFunction powerImportMaxCalculator, IntToDoubleFunction powerExportMaxCalculator) {
         LOG.finest("Applying earning opportunities");
 
         // Look for import and export earning opportunities
         double[][] primary = importCostAndPower != null ? importCostAndPower : exportCostAndPower; // Never null
         double[][] secondary = importCostAndPower != null ? exportCostAndPower : null; // Could be null
+        double[][] costAndPowers = opportunityCostAndPowers = ensureCapacity(opportunityCostAndPowers, primary.length);
+        int[] intervals = opportunityIntervals = ensureCapacity(opportunityIntervals, primary.length);
+        int count = 0;
 
-        List<Pair<Integer, double[]>> earningOpportunities = IntStream.range(0, primary.length).mapToObj(i -> {
-            if (secondary == null) {
-                return new Pair<>(i, primary[i]);
-            }
-            // Return whichever has the lowest cost
-            if (primary[i][0] < secondary[i][0]) {
-                return new Pair<>(i, primary[i]);
+        for (int i = 0; i < primary.length; i++) {
+            // Use whichever has the lowest cost
+            double[] costAndPower = secondary == null || primary[i][0] < secondary[i][0] ? primary[i] : secondary[i];
+
+            if (costAndPower[0] < 0) {
+                costAndPowers[i] = costAndPower;
+                intervals[count++] = i;
             }
-            return new Pair<>(i, secondary[i]);
-        })
-            .filter(intervalCostAndPowerBand -> intervalCostAndPowerBand.value[0] < 0)
-            .sorted(Comparator.comparingDouble(optimisedInterval -> optimisedInterval.value[0]))
-            .collect(Collectors.toList());
+        }
 
-        if (earningOpportunities.isEmpty()) {
+        sortByCost(intervals, count, costAndPowers);
+
+        if (count == 0) {
             LOG.finest("No earning opportunities found");
         }
 
         if (LOG.isLoggable(Level.FINEST)) {
-            earningOpportunities.forEach(op -> LOG.finest("Earning opportunity: interval=" + op.key + ", cost=" + op.value[0] + ", powerMin=" + op.value[1] + ", powerMax=" + op.value[2]));
+            for (int i = 0; i < count; i++) {
+                double[] costAndPower = costAndPowers[intervals[i]];
+                LOG.finest("Earning opportunity: interval=" + intervals[i] + ", cost=" + costAndPower[0] + ", powerMin=" + costAndPower[1] + ", powerMax=" + costAndPower[2]);
+            }
         }
 
         // Go through each earning opportunity and determine if it can be utilised without breaching the energy min
         // levels
-        for (Pair<Integer, double[]> earningOpportunity : earningOpportunities) {
-            int interval = earningOpportunity.key;
-            double[] costAndPower = earningOpportunity.value;
+        for (int i = 0; i < count; i++) {
+            int interval = intervals[i];
+            double[] costAndPower = costAndPowers[interval];
             assert importCostAndPower != null;
             assert exportCostAndPower != null;
 
@@ -408,11 +497,19 @@ public class EnergyOptimiser {
     }
 
     protected boolean isImportOpportunity(double[] costAndPower, double powerSetpoint, int interval, Function<Integer, Double> powerImportMaxCalculator) {
-        return costAndPower[2] > 0 && powerSetpoint >= 0 && powerSetpoint < Math.min(powerImportMaxCalculator.apply(interval), costAndPower[2]);
+        return isImportOpportunity(costAndPower, powerSetpoint, interval, toPrimitive(powerImportMaxCalculator));
+    }
+
+    protected boolean isImportOpportunity(double[] costAndPower, double powerSetpoint, int interval, IntToDoubleFunction powerImportMaxCalculator) {
+        return costAndPower[2] > 0 && powerSetpoint >= 0 && powerSetpoint < Math.min(powerImportMaxCalculator.applyAsDouble(interval), costAndPower[2]);
     }
 
     protected boolean isExportOpportunity(double[] costAndPower, double powerSetpoint, int interval, Function<Integer, Double> powerExportMaxCalculator) {
-        return costAndPower[1] < 0 && powerSetpoint <= 0 && powerSetpoint > Math.max(powerExportMaxCalculator.apply(interval), costAndPower[1]);
+        return isExportOpportunity(costAndPower, powerSetpoint, interval, toPrimitive(powerExportMaxCalculator));
+    }
+
+    protected boolean isExportOpportunity(double[] costAndPower, double powerSetpoint, int interval, IntToDoubleFunction powerExportMaxCalculator) {
+        return costAndPower[1] < 0 && powerSetpoint <= 0 && powerSetpoint > Math.max(powerExportMaxCalculator.applyAsDouble(interval), costAndPower[1]);
     }
 
     /**
@@ -422,10 +519,23 @@ public class EnergyOptimiser {
      * powerSetpoints will be updated as a result.
      */
     public void applyImportOpportunity(double[][] importCostAndPower, double[][] exportCostAndPower, double[] energyLevelMins, double[] energyLevelMaxs, double[] powerSetpoints, Function<Integer, Double> energyLevelCalculator, Function<Integer, Double> powerImportMaxCalculator, Function<Integer, Double> powerExportMaxCalculator, int interval) {
-        LOG.finest("Applying import earning opportunity: interval=" + interval);
+        applyImportOpportunity(importCostAndPower, exportCostAndPower, energyLevelMins, energyLevelMaxs, powerSetpoints, toPrimitive(energyLevelCalculator), toPrimitive(powerImportMaxCalculator), toPrimitive(powerExportMaxCalculator), interval);
+    }
+
+    /**
+     * Tries to apply the maximum import power as defined in the importCostAndPower at the specified interval taking
+     * into consideration the maximum power and energy levels; if there is insufficient power or energy capacity at the
+     * interval then an earlier cost effective export opportunity will be attempted to offset the requirement. The
+     * powerSetpoints will be updated as a result.
+     */
+    public void applyImportOpportunity(double[][] importCostAndPower, double[][] exportCostAndPower, double[] energyLevelMins, double[] energyLevelMaxs, double[] powerSetpoints, IntToDoubleFunction energyLevelCalculator, IntToDoubleFunction powerImportMaxCalculator, IntToDoubleFunction powerExportMaxCalculator, int interval) {
+        boolean finest = LOG.isLoggable(Level.FINEST);
+        if (finest) {
+            LOG.finest("Applying import earning opportunity: interval=" + interval);
+        }
         double[] costAndPower = importCostAndPower[interval];
         double impPowerMin = costAndPower[1];
-        double impPowerMax = Math.min(powerImportMaxCalculator.apply(interval), costAndPower[2]);
+        double impPowerMax = Math.min(powerImportMaxCalculator.applyAsDouble(interval), costAndPower[2]);
         double powerCapacity = impPowerMax - powerSetpoints[interval];
 
         if (impPowerMin > powerCapacity) {
@@ -433,14 +543,16 @@ public class EnergyOptimiser {
             return;
         }
 
-        double energySpace = energyLevelMaxs[interval] - energyLevelCalculator.apply(interval);
+        double energySpace = energyLevelMaxs[interval] - energyLevelCalculator.applyAsDouble(interval);
         double energySpaceMax = powerCapacity * intervalSize;
         double energySpaceMin = impPowerMin * intervalSize;
-        List<Pair<Integer, Double>> pastIntervalPowerDeltas = new ArrayList<>();
+        int[] deltaIntervals = powerDeltaIntervals = ensureCapacity(powerDeltaIntervals, powerSetpoints.length);
+        double[] deltas = powerDeltas = ensureCapacity(powerDeltas, powerSetpoints.length);
+        int deltaCount = 0;
 
         int k = interval;
         while (k < powerSetpoints.length && energySpace > 0 && energySpace >= energySpaceMin) {
-            double futureEnergySpace = energyLevelMaxs[k] - energyLevelCalculator.apply(k);
+            double futureEnergySpace = energyLevelMaxs[k] - energyLevelCalculator.applyAsDouble(k);
             energySpace = Math.min(energySpace, futureEnergySpace);
             k++;
         }
@@ -448,33 +560,33 @@ public class EnergyOptimiser {
         if (energySpace < energySpaceMax && exportCostAndPower != null) {
             // Can't maximise on opportunity without exporting earlier on so can this be done
             // in a cost effective way
-            LOG.finest("Looking for earlier export opportunities to maximise on this import opportunity: space=" + energySpace + ", max=" + energySpaceMax);
-            int i = interval - 1;
-            List<Pair<Integer, Double>> pastOpportunities = new ArrayList<>();
+            if (finest) {
+                LOG.finest("Looking for earlier export opportunities to maximise on this import opportunity: space=" + energySpace + ", max=" + energySpaceMax);
+            }
+            int[] pastIntervals = pastOpportunityIntervals = ensureCapacity(pastOpportunityIntervals, powerSetpoints.length);
+            int pastCount = 0;
 
-            while (i >= 0) {
+            for (int i = interval - 1; i >= 0; i--) {
                 if (costAndPower[0] + exportCostAndPower[i][0] < 0 && powerSetpoints[i] <= 0) {
                     // We can afford to export earlier and still earn from this import
-                    pastOpportunities.add(new Pair<>(i, exportCostAndPower[i][0]));
+                    pastIntervals[pastCount++] = i;
                 }
-                i--;
             }
 
-            pastOpportunities.sort(Comparator.comparingDouble(op -> op.value));
+            sortByCost(pastIntervals, pastCount, exportCostAndPower);
             int j = 0;
 
-            if (pastOpportunities.isEmpty()) {
+            if (pastCount == 0) {
                 LOG.finest("No earlier export opportunities identified");
             }
 
-            while (energySpace < energySpaceMax && j < pastOpportunities.size()) {
+            while (energySpace < energySpaceMax && j < pastCount) {
                 // Energy level at this interval must be above energy min to consider exporting
-                Pair<Integer, Double> opportunity = pastOpportunities.get(j);
-                int pastInterval = opportunity.key;
+                int pastInterval = pastIntervals[j];
 
                 // Power capacity must be within the optimum power band
                 double[] pastCostAndPower = exportCostAndPower[pastInterval];
-                double expPowerMax = Math.max(powerExportMaxCalculator.apply(pastInterval), pastCostAndPower[1]);
+                double expPowerMax = Math.max(powerExportMaxCalculator.applyAsDouble(pastInterval), pastCostAndPower[1]);
                 double expPowerCapacity = expPowerMax - powerSetpoints[pastInterval];
 
                 if (expPowerCapacity >= 0 || expPowerCapacity > pastCostAndPower[2]) {
@@ -484,15 +596,15 @@ public class EnergyOptimiser {
                 }
 
                 double energySurplusMin = pastCostAndPower[2] * intervalSize;
-                double energySurplus = energyLevelMins[pastInterval] - energyLevelCalculator.apply(pastInterval);
+                double energySurplus = energyLevelMins[pastInterval] - energyLevelCalculator.applyAsDouble(pastInterval);
                 energySurplus = Math.max(energySurplus, energySpace - energySpaceMax);
 
                 // We have spare energy capacity and power check if we don't violate energy min for any future exports
                 k = pastInterval;
                 while (k < powerSetpoints.length && energySurplus < 0 && energySurplus <= energySurplusMin) {
-                    double futureEnergySurplus = energyLevelCalculator.apply(k) - energyLevelMins[k];
+                    double futureEnergySurplus = energyLevelCalculator.applyAsDouble(k) - energyLevelMins[k];
                     energySurplus = Math.max(energySurplus, -futureEnergySurplus);
-                    if (energySurplus <= 0) {
+                    if (finest && energySurplus <= 0) {
                         LOG.finest("Earlier export opportunity would violate future energy min level: interval=" + j + ", futureInterval=" + k);
                     }
                     k++;
@@ -503,8 +615,11 @@ public class EnergyOptimiser {
                 if (expPowerCapacity < 0 && expPowerCapacity < pastCostAndPower[2]) {
                     // We can export in the optimum range
                     energySpace += (-1d * expPowerCapacity * intervalSize);
-                    pastIntervalPowerDeltas.add(new Pair<>(pastInterval, expPowerCapacity));
-                    LOG.finest("Earlier export opportunity identified: interval=" + pastInterval + ", power=" + expPowerCapacity);
+                    deltaIntervals[deltaCount] = pastInterval;
+                    deltas[deltaCount++] = expPowerCapacity;
+                    if (finest) {
+                        LOG.finest("Earlier export opportunity identified: interval=" + pastInterval + ", power=" + expPowerCapacity);
+                    }
                 }
 
                 j++;
@@ -515,12 +630,16 @@ public class EnergyOptimiser {
         if (energySpace > 0 && energySpace >= energySpaceMin) {
 
             // Adjust past interval set points as required
-            pastIntervalPowerDeltas.forEach(intervalAndDelta -> powerSetpoints[intervalAndDelta.key] += intervalAndDelta.value);
+            for (int i = 0; i < deltaCount; i++) {
+                powerSetpoints[deltaIntervals[i]] += deltas[i];
+            }
 
             energySpaceMax = Math.min(energySpaceMax, energySpace);
             powerCapacity = Math.min(impPowerMax - powerSetpoints[interval], (energySpaceMax / intervalSize));
             powerSetpoints[interval] = powerSetpoints[interval] + powerCapacity;
-            LOG.finest("Applied import earning opportunity: set point=" + powerSetpoints[interval] + " (delta: " + powerCapacity + ")");
+            if (finest) {
+                LOG.finest("Applied import earning opportunity: set point=" + powerSetpoints[interval] + " (delta: " + powerCapacity + ")");
+            }
         }
     }
 
@@ -531,10 +650,23 @@ public class EnergyOptimiser {
      * powerSetpoints will be updated as a result.
      */
     public void applyExportOpportunity(double[][] importCostAndPower, double[][] exportCostAndPower, double[] energyLevelMins, double[] energyLevelMaxs, double[] powerSetpoints, Function<Integer, Double> energyLevelCalculator, Function<Integer, Double> powerImportMaxCalculator, Function<Integer, Double> powerExportMaxCalculator, int interval) {
-        LOG.finest("Applying export earning opportunity: interval=" + interval);
+        applyExportOpportunity(importCostAndPower, exportCostAndPower, energyLevelMins, energyLevelMaxs, powerSetpoints, toPrimitive(energyLevelCalculator), toPrimitive(powerImportMaxCalculator), toPrimitive(powerExportMaxCalculator), interval);
+    }
+
+    /**
+     * Tries to apply the maximum export power as defined in the exportCostAndPower at the specified interval taking
+     * into consideration the maximum power and energy levels; if there is insufficient power or energy capacity at the
+     * interval then an earlier cost effective import opportunity will be attempted to offset the requirement. The
+     * powerSetpoints will be updated as a result.
+     */
+    public void applyExportOpportunity(double[][] importCostAndPower, double[][] exportCostAndPower, double[] energyLevelMins, double[] energyLevelMaxs, double[] powerSetpoints, IntToDoubleFunction energyLevelCalculator, IntToDoubleFunction powerImportMaxCalculator, IntToDoubleFunction powerExportMaxCalculator, int interval) {
+        boolean finest = LOG.isLoggable(Level.FINEST);
+        if (finest) {
+            LOG.finest("Applying export earning opportunity: interval=" + interval);
+        }
         double[] costAndPower = exportCostAndPower[interval];
         double expPowerMin = costAndPower[2];
-        double expPowerMax = Math.max(powerExportMaxCalculator.apply(interval), costAndPower[1]);
+        double expPowerMax = Math.max(powerExportMaxCalculator.applyAsDouble(interval), costAndPower[1]);
         double powerCapacity = expPowerMax - powerSetpoints[interval];
 
         if (expPowerMin < powerCapacity) {
@@ -542,77 +674,49 @@ public class EnergyOptimiser {
             return;
         }
 
-        double energySurplus = energyLevelCalculator.apply(interval) - energyLevelMins[interval];
+        double energySurplus = energyLevelCalculator.applyAsDouble(interval) - energyLevelMins[interval];
         double energySurplusMin = -1d * expPowerMin * intervalSize;
         double energySurplusMax = -1d * powerCapacity * intervalSize;
-        List<Pair<Integer, Double>> pastAndFutureIntervalPowerDeltas = new ArrayList<>();
+        int[] deltaIntervals = powerDeltaIntervals = ensureCapacity(powerDeltaIntervals, powerSetpoints.length);
+        double[] deltas = powerDeltas = ensureCapacity(powerDeltas, powerSetpoints.length);
+        int deltaCount = 0;
 
         int k = interval;
         while (k < powerSetpoints.length && energySurplus > 0 && energySurplus >= energySurplusMin) {
-
-            double futureEnergySurplus = energyLevelCalculator.apply(k) - energyLevelMins[k];
-
-            // The following is an attempt to make use of an earning opportunity that would violate future energy limits
-            // by allocating extra imports between 'now' and 'then' - this needs more work
-//            if (futureEnergySurplus < energySurplusMin || futureEnergySurplus <= 0) {
-//                // Try and allocate an import between this future point and the earning opportunity to prevent this deficit
-//                int l = k - 1;
-//                while (futureEnergySurplus < energySurplusMax && l > interval) {
-//                    int finalL = l;
-//                    if (powerSetpoints[l] >= 0 && pastAndFutureIntervalPowerDeltas.stream().noneMatch(delta -> delta.key.equals(finalL))) {
-//
-//                        double surplusDeficit = energySurplusMax - futureEnergySurplus;
-//                        double intermediateEnergyCapacity = energyLevelMax - energyLevelCalculator.apply(l);
-//                        double intermediatePowerCapacity = powerImportMaxCalculator.apply(l) - powerSetpoints[l];
-//                        intermediatePowerCapacity = Math.min(intermediatePowerCapacity, surplusDeficit / intervalSize);
-//                        intermediatePowerCapacity = Math.min(intermediatePowerCapacity, intermediateEnergyCapacity / intervalSize);
-//
-//                        if (intermediatePowerCapacity > 0 && powerSetpoints[l] + intermediatePowerCapacity > importCostAndPower[l][1] && costAndPower[0] + importCostAndPower[l][0] < 0) {
-//                            // There is capacity and it is cost effective to use it
-//                            futureEnergySurplus = intermediatePowerCapacity * intervalSize;
-//                            pastAndFutureIntervalPowerDeltas.add(new Pair<>(l, intermediatePowerCapacity));
-//                        }
-//                    }
-//                    l--;
-//                }
-//            }
-
+            double futureEnergySurplus = energyLevelCalculator.applyAsDouble(k) - energyLevelMins[k];
             energySurplus = Math.min(energySurplus, futureEnergySurplus);
             k++;
-
         }
 
         if (energySurplus < energySurplusMax && importCostAndPower != null) {
             // Can't maximise on opportunity without importing earlier on so can this be done
             // in a cost effective way
-            LOG.finest("Looking for earlier import opportunities to maximise on this export opportunity: surplus=" + energySurplus + ", max=" + energySurplusMax);
-            int i = interval - 1;
-            List<Pair<Integer, Double>> pastOpportunities = new ArrayList<>();
-
-            while (i >= 0) {
+            if (finest) {
+                LOG.finest("Looking for earlier import opportunities to maximise on this export opportunity: surplus=" + energySurplus + ", max=" + energySurplusMax);
+            }
+            int[] pastIntervals = pastOpportunityIntervals = ensureCapacity(pastOpportunityIntervals, powerSetpoints.length);
+            int pastCount = 0;
 
+            for (int i = interval - 1; i >= 0; i--) {
                 if (costAndPower[0] + importCostAndPower[i][0] < 0 && powerSetpoints[i] >= 0) {
                     // We can afford to import and still earn using original export
-                    pastOpportunities.add(new Pair<>(i, importCostAndPower[i][0]));
+                    pastIntervals[pastCount++] = i;
                 }
-
-                i--;
             }
 
-            pastOpportunities.sort(Comparator.comparingDouble(op -> op.value));
+            sortByCost(pastIntervals, pastCount, importCostAndPower);
             int j = 0;
 
-            if (pastOpportunities.isEmpty()) {
+            if (pastCount == 0) {
                 LOG.finest("No earlier import opportunities identified");
             }
 
-            while (energySurplus < energySurplusMax && j < pastOpportunities.size()) {
-                Pair<Integer, Double> opportunity = pastOpportunities.get(j);
-                int pastInterval = opportunity.key;
+            while (energySurplus < energySurplusMax && j < pastCount) {
+                int pastInterval = pastIntervals[j];
 
                 // Power capacity must be within the optimum power band
                 double[] pastCostAndPower = importCostAndPower[pastInterval];
-                double impPowerMax = Math.min(powerImportMaxCalculator.apply(interval), pastCostAndPower[2]);
+                double impPowerMax = Math.min(powerImportMaxCalculator.applyAsDouble(interval), pastCostAndPower[2]);
                 double impPowerCapacity = impPowerMax - powerSetpoints[pastInterval];
 
                 if (impPowerCapacity <= 0 || impPowerCapacity < pastCostAndPower[1]) {
@@ -622,16 +726,16 @@ public class EnergyOptimiser {
                 }
 
                 double energySpaceMin = pastCostAndPower[1] * intervalSize;
-                double energySpace = energyLevelMaxs[interval] - energyLevelCalculator.apply(pastInterval);
+                double energySpace = energyLevelMaxs[interval] - energyLevelCalculator.applyAsDouble(pastInterval);
                 energySpace = Math.max(energySpace, energySpace - energySurplusMax);
 
                 // We have spare energy capacity and power check if we don't violate energy max for any future imports
                 k = pastInterval;
                 while (k < powerSetpoints.length && energySpace > 0 && energySpace >= energySpaceMin) {
 
-                    double futureEnergySpace = energyLevelMaxs[k] - energyLevelCalculator.apply(k);
+                    double futureEnergySpace = energyLevelMaxs[k] - energyLevelCalculator.applyAsDouble(k);
                     energySpace = Math.min(energySpace, futureEnergySpace);
-                    if (energySpace <= 0) {
+                    if (finest && energySpace <= 0) {
                         LOG.finest("Earlier import opportunity would violate future energy max level: interval=" + j + ", futureInterval=" + k);
                     }
                     k++;
@@ -643,8 +747,11 @@ public class EnergyOptimiser {
                 if (impPowerCapacity > 0 && impPowerCapacity > pastCostAndPower[1]) {
                     // We can import in the optimum range
                     energySurplus += (impPowerCapacity * intervalSize);
-                    pastAndFutureIntervalPowerDeltas.add(new Pair<>(pastInterval, impPowerCapacity));
-                    LOG.finest("Earlier import opportunity identified: interval=" + pastInterval + ", power=" + impPowerCapacity);
+                    deltaIntervals[deltaCount] = pastInterval;
+                    deltas[deltaCount++] = impPowerCapacity;
+                    if (finest) {
+                        LOG.finest("Earlier import opportunity identified: interval=" + pastInterval + ", power=" + impPowerCapacity);
+                    }
                 }
 
                 j++;
@@ -655,12 +762,16 @@ public class EnergyOptimiser {
         if (energySurplus > 0 && energySurplus >= energySurplusMin) {
 
             // Adjust past interval set points as required
-            pastAndFutureIntervalPowerDeltas.forEach(intervalAndDelta -> powerSetpoints[intervalAndDelta.key] += intervalAndDelta.value);
+            for (int i = 0; i < deltaCount; i++) {
+                powerSetpoints[deltaIntervals[i]] += deltas[i];
+            }
 
             energySurplusMax = Math.min(energySurplusMax, energySurplus);
             powerCapacity = Math.max(expPowerMax - powerSetpoints[interval], -1d * (energySurplusMax / intervalSize));
             powerSetpoints[interval] = powerSetpoints[interval] + powerCapacity;
-            LOG.finest("Applied export earning opportunity: interval=" + interval + ", set point=" + powerSetpoints[interval] + " (delta: " + powerCapacity + ")");
+            if (finest) {
+                LOG.finest("Applied export earning opportunity: interval=" + interval + ", set point=" + powerSetpoints[interval] + " (delta: " + powerCapacity + ")");
+            }
         }
     }
 
@@ -670,9 +781,22 @@ public class EnergyOptimiser {
      * determine whether there are export opportunities for earning/saving rather than using the grid.
      */
     public BiFunction<Integer, Double, double[]> getExportOptimiser(double[] powerNets, double[] powerNetLimits, double[] tariffImports, double[] tariffExports, double assetExportCost) {
+        CostAndPowerOptimiser exportOptimiser = getExportCostAndPowerOptimiser(powerNets, powerNetLimits, tariffImports, tariffExports, assetExportCost);
 
-        // Power max should be negative as this is export
         return (interval, powerMax) -> {
+            double[] costAndPower = new double[3];
+            exportOptimiser.apply(interval, 0d, powerMax, costAndPower);
+            return costAndPower;
+        };
+    }
+
+    /**
+     * Primitive form of {@link #getExportOptimiser}.
+     */
+    public CostAndPowerOptimiser getExportCostAndPowerOptimiser(double[] powerNets, double[] powerNetLimits, double[] tariffImports, double[] tariffExports, double assetExportCost) {
+
+        // Power max should be negative as this is export
+        return (interval, powerMin, powerMax, costAndPower) -> {
             double powerNet = powerNets[interval];
             double powerNetLimit = powerNetLimits[interval];
             double tariffImport = tariffImports[interval];
@@ -681,17 +805,20 @@ public class EnergyOptimiser {
 
             if (powerMax >= 0) {
                 // No capacity to export
-                return new double[]{Double.MAX_VALUE, 0d, 0d};
+                setCostAndPower(costAndPower, Double.MAX_VALUE, 0d, 0d);
+                return;
             }
 
             if (powerNet <= 0) {
                 // Already net exporting so tariff will not change if we export more
-                return new double[]{tariffExport + assetExportCost, powerMax, 0d};
+                setCostAndPower(costAndPower, tariffExport + assetExportCost, powerMax, 0d);
+                return;
             }
 
             if (powerNet + powerMax > 0d) {
                 // Can't make tariff flip (we're reducing import hence the -1d)
-                return new double[]{(-1d * tariffImport) + assetExportCost, powerMax, 0d};
+                setCostAndPower(costAndPower, (-1d * tariffImport) + assetExportCost, powerMax, 0d);
+                return;
             }
 
             // We can flip tariffs if we export enough power
@@ -714,7 +841,7 @@ public class EnergyOptimiser {
             // Normalise the cost
             cost = cost / (-1d * powerEnd);
 
-            return new double[]{cost, powerEnd, powerStart};
+            setCostAndPower(costAndPower, cost, powerEnd, powerStart);
         };
     }
 
@@ -727,29 +854,45 @@ public class EnergyOptimiser {
      * This is used to determine the best times and power values for importing energy to meet the requirements.
      */
     public BiFunction<Integer, double[], double[]> getImportOptimiser(double[] powerNets, double[] powerNetLimits, double[] tariffImports, double[] tariffExports, double assetImportCost) {
+        CostAndPowerOptimiser importOptimiser = getImportCostAndPowerOptimiser(powerNets, powerNetLimits, tariffImports, tariffExports, assetImportCost);
 
         return (interval, powerRequiredMinMax) -> {
+            double[] costAndPower = new double[3];
+            importOptimiser.apply(interval, powerRequiredMinMax[0], powerRequiredMinMax[1], costAndPower);
+            return costAndPower;
+        };
+    }
+
+    /**
+     * Primitive form of {@link #getImportOptimiser}.
+     */
+    public CostAndPowerOptimiser getImportCostAndPowerOptimiser(double[] powerNets, double[] powerNetLimits, double[] tariffImports, double[] tariffExports, double assetImportCost) {
+
+        return (interval, powerRequiredMin, powerRequiredMax, costAndPower) -> {
 
             double powerNet = powerNets[interval];
             double powerNetLimit = powerNetLimits[interval];
             double tariffImport = tariffImports[interval];
             double tariffExport = tariffExports[interval];
-            double powerMin = powerRequiredMinMax[0];
-            double powerMax = Math.min(powerRequiredMinMax[1], powerNetLimit - powerNet);
+            double powerMin = powerRequiredMin;
+            double powerMax = Math.min(powerRequiredMax, powerNetLimit - powerNet);
 
             if (powerMax <= 0d) {
                 // No capacity to import
-                return new double[]{Double.MAX_VALUE, 0d, 0d};
+                setCostAndPower(costAndPower, Double.MAX_VALUE, 0d, 0d);
+                return;
             }
 
             if (powerNet >= 0d) {
                 // Already net importing so tariff will not change if we import more
-                return new double[]{tariffImport + assetImportCost, powerMin, powerMax};
+                setCostAndPower(costAndPower, tariffImport + assetImportCost, powerMin, powerMax);
+                return;
             }
 
             if (powerNet + powerMax < 0d) {
                 // Can't make tariff flip (we're reducing import hence the -1d)
-                return new double[]{(-1d * tariffExport) + assetImportCost, powerMin, powerMax};
+                setCostAndPower(costAndPower, (-1d * tariffExport) + assetImportCost, powerMin, powerMax);
+                return;
             }
 
             // We can flip tariffs if we take enough power
@@ -780,7 +923,83 @@ public class EnergyOptimiser {
             // Normalise the cost
             cost = cost / powerEnd;
 
-            return new double[]{cost, powerStart, powerEnd};
+            setCostAndPower(costAndPower, cost, powerStart, powerEnd);
         };
     }
+
+    /**
+     * Calculates the import cost and power band of each interval for the supplied power import max; the returned
+     * array is a buffer owned by this optimiser so it is overwritten by the next call.
+     */
+    public double[][] getImportCostAndPower(CostAndPowerOptimiser importOptimiser, double powerImportMax) {
+        for (int i = 0; i < importCostAndPowerBuffer.length; i++) {
+            importOptimiser.apply(i, 0d, powerImportMax, importCostAndPowerBuffer[i]);
+        }
+        return importCostAndPowerBuffer;
+    }
+
+    /**
+     * Calculates the export cost and power band of each interval for the supplied power export max; the returned
+     * array is a buffer owned by this optimiser so it is overwritten by the next call.
+     */
+    public double[][] getExportCostAndPower(CostAndPowerOptimiser exportOptimiser, double powerExportMax) {
+        for (int i = 0; i < exportCostAndPowerBuffer.length; i++) {
+            exportOptimiser.apply(i, 0d, powerExportMax, exportCostAndPowerBuffer[i]);
+        }
+        return exportCostAndPowerBuffer;
+    }
+
+    protected static void setCostAndPower(double[] costAndPower, double cost, double powerMin, double powerMax) {
+        costAndPower[0] = cost;
+        costAndPower[1] = powerMin;
+        costAndPower[2] = powerMax;
+    }
+
+    /**
+     * Stable sort of the first count intervals by the cost (index 0) of their cost and power values; this gives the
+     * same order as sorting with {@link Comparator#comparingDouble} but without boxing. Insertion sort is used as the
+     * interval count is small.
+     */
+    protected static void sortByCost(int[] intervals, int count, double[][] costAndPowers) {
+        for (int i = 1; i < count; i++) {
+            int interval = intervals[i];
+            double cost = costAndPowers[interval][0];
+            int j = i - 1;
+            while (j >= 0 && Double.compare(costAndPowers[intervals[j]][0], cost) > 0) {
+                intervals[j + 1] = intervals[j];
+                j--;
+            }
+            intervals[j + 1] = interval;
+        }
+    }
+
+    /**
+     * Final step of compensated summation; returns the simple sum if the compensated sum is NaN due to infinite values
+     * of the same sign.
+     */
+    protected static double getCompensatedSum(double sum, double compensation, double simpleSum) {
+        double result = sum - compensation;
+        return Double.isNaN(result) && Double.isInfinite(simpleSum) ? simpleSum : result;
+    }
+
+    protected static int[] ensureCapacity(int[] buffer, int length) {
+        return buffer.length >= length ? buffer : new int[length];
+    }
+
+    protected static double[] ensureCapacity(double[] buffer, int length) {
+        return buffer.length >= length ? buffer : new double[length];
+    }
+
+    protected static double[][] ensureCapacity(double[][] buffer, int length) {
+        return buffer.length >= length ? buffer : new double[length][];
+    }
+
+    protected static IntToDoubleFunction toPrimitive(Function<Integer, Double> function) {
+        return function::apply;
+    }
+
+    protected static CostAndPowerOptimiser toPrimitive(BiFunction<Integer, double[], double[]> importOptimiser) {
+        return (interval, powerMin, powerMax, costAndPower) ->
+            System.arraycopy(importOptimiser.apply(interval, new double[]{powerMin, powerMax}), 0, costAndPower, 0, 3);
+    }
 }
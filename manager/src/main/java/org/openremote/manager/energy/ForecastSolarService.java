@@ -44,6 +44,7 @@ import java.util.logging.Logger;
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_TIME;
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
 import static org.openremote.container.util.MapAccess.getString;
 import static org.openremote.container.web.WebTargetBuilder.createClient;
@@ -100,7 +101,8 @@ public class ForecastSolarService extends RouteBuilder implements ContainerServi
                 .routeId("Persistence-ForecastSolar")
                 .filter(isPersistenceEventForEntityType(ElectricityProducerSolarAsset.class))
                 .filter(isNotForGateway(gatewayService))
-                .process(exchange -> processAssetChange((PersistenceEvent<ElectricityProducerSolarAsset>) exchange.getIn().getBody(PersistenceEvent.class)));
+                .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent ->
+                    processAssetChange((PersistenceEvent<ElectricityProducerSolarAsset>) persistenceEvent)));
     }
 
     @Override
@@ -37,6 +37,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
 import static org.openremote.container.util.MapAccess.getString;
 import static org.openremote.container.web.WebTargetBuilder.createClient;
@@ -131,7 +132,8 @@ public class ForecastWindService extends RouteBuilder implements ContainerServic
                 .routeId("Persistence-ForecastWind")
                 .filter(isPersistenceEventForEntityType(ElectricityProducerWindAsset.class))
                 .filter(isNotForGateway(gatewayService))
-                .process(exchange -> processAssetChange((PersistenceEvent<ElectricityProducerWindAsset>) exchange.getIn().getBody(PersistenceEvent.class)));
+                .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent ->
+                    processAssetChange((PersistenceEvent<ElectricityProducerWindAsset>) persistenceEvent)));
     }
 
     @Override
@@ -50,6 +50,7 @@ import java.io.IOException;
 import java.security.Principal;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.*;
@@ -355,6 +356,20 @@ public class ClientEventService extends RouteBuilder implements ContainerService
             })
             .to(ATTRIBUTE_EVENT_ROUTER_QUEUE)
             .stop()
+            // A batch of already authorised attribute events from an internal producer (e.g. MQTT handler); external
+            // clients cannot produce these as only SharedEvent bodies are accepted from them
+            .when(exchange -> isAttributeEventBatch(exchange.getIn().getBody()))
+            .process(exchange -> {
+                List<?> attributeEvents = exchange.getIn().getBody(List.class);
+                long timestamp = timerService.getCurrentTimeMillis();
+                for (Object attributeEvent : attributeEvents) {
+                    if (((AttributeEvent) attributeEvent).getTimestamp() <= 0) {
+                        ((AttributeEvent) attributeEvent).setTimestamp(timestamp);
+                    }
+                }
+            })
+            .to(ATTRIBUTE_EVENT_ROUTER_QUEUE)
+            .stop()
             .when(or(
                 header(SESSION_CLOSE),
                 header(SESSION_CLOSE_ERROR)
@@ -569,6 +584,10 @@ public class ClientEventService extends RouteBuilder implements ContainerService
         sessionInfo.closeRunnable.run();
     }
 
+    protected static boolean isAttributeEventBatch(Object body) {
+        return body instanceof List<?> list && !list.isEmpty() && list.get(0) instanceof AttributeEvent;
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     protected void passToInterceptors(Exchange exchange) {
         // Pass to each interceptor and stop if any interceptor marks the exchange as stop routing
@@ -24,6 +24,10 @@ import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.support.DefaultMessage;
 import org.openremote.container.timer.TimerService;
+import org.openremote.model.asset.AssetFilter;
+import org.openremote.model.asset.AssetInfo;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.event.Event;
 import org.openremote.model.event.TriggeredEventSubscription;
 import org.openremote.model.event.shared.CancelEventSubscription;
 import org.openremote.model.event.shared.EventSubscription;
@@ -33,6 +37,7 @@ import org.openremote.model.util.TextUtil;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,11 +49,20 @@ import static org.openremote.model.Constants.SESSION_KEY;
 public class EventSubscriptions {
 
     private static final Logger LOG = Logger.getLogger(EventSubscriptions.class.getName());
+    protected static final String ATTRIBUTE_EVENT_TYPE = Event.getEventType(AttributeEvent.class);
+    protected static final String NULL_KEY = "";
 
     final protected TimerService timerService;
     final protected ConcurrentMap<String, SessionSubscriptions> sessionSubscriptionIdMap = new ConcurrentHashMap<>();
+    final protected ConcurrentMap<String, SubscriptionIndex> eventTypeIndexMap = new ConcurrentHashMap<>();
 
     class SessionSubscriptions extends ConcurrentHashSet<SessionSubscription<?>> {
+        protected final String sessionKey;
+
+        SessionSubscriptions(String sessionKey) {
+            this.sessionKey = sessionKey;
+        }
+
         protected void createOrUpdate(EventSubscription<?> eventSubscription) {
 
             if (TextUtil.isNullOrEmpty(eventSubscription.getSubscriptionId())) {
@@ -57,31 +71,183 @@ public class EventSubscriptions {
                 cancelById(eventSubscription.getSubscriptionId());
             }
 
-            add(new SessionSubscription<>(timerService.getCurrentTimeMillis(), eventSubscription));
+            SessionSubscription<?> sessionSubscription = new SessionSubscription<>(sessionKey, timerService.getCurrentTimeMillis(), eventSubscription);
+            add(sessionSubscription);
+            eventTypeIndexMap.computeIfAbsent(sessionSubscription.eventType, type -> new SubscriptionIndex()).add(sessionSubscription);
         }
 
         protected void cancelByType(String eventType) {
-            removeIf(sessionSubscription -> sessionSubscription.subscriptionId == null && sessionSubscription.subscription.getEventType().equals(eventType));
+            cancelIf(sessionSubscription -> sessionSubscription.subscriptionId == null && sessionSubscription.eventType.equals(eventType));
         }
 
         protected void cancelById(String subscriptionId) {
-            removeIf(sessionSubscription -> sessionSubscription.subscription.getSubscriptionId().equals(subscriptionId));
+            cancelIf(sessionSubscription -> subscriptionId.equals(sessionSubscription.subscriptionId));
+        }
+
+        protected void cancelIf(Predicate<SessionSubscription<?>> predicate) {
+            for (SessionSubscription<?> sessionSubscription : this) {
+                if (predicate.test(sessionSubscription) && remove(sessionSubscription)) {
+                    unindex(sessionSubscription);
+                }
+            }
+        }
+
+        protected void cancelAll() {
+            for (SessionSubscription<?> sessionSubscription : this) {
+                if (remove(sessionSubscription)) {
+                    unindex(sessionSubscription);
+                }
+            }
         }
     }
 
     static class SessionSubscription<T extends SharedEvent> {
         long timestamp;
+        final String sessionKey;
+        final String eventType;
         final EventSubscription<T> subscription;
         final String subscriptionId;
+        // The values of the most selective asset filter field; null if the subscription isn't indexed
+        final String[] indexKeys;
+        final IndexField indexField;
 
-        public SessionSubscription(long timestamp, EventSubscription<T> subscription) {
+        public SessionSubscription(String sessionKey, long timestamp, EventSubscription<T> subscription) {
+            this.sessionKey = sessionKey;
             this.timestamp = timestamp;
             this.subscription = subscription;
             this.subscriptionId = subscription.getSubscriptionId();
+            this.eventType = subscription.getEventType();
+
+            String[] keys = null;
+            IndexField field = IndexField.NONE;
+
+            if (subscription.getFilter() instanceof AssetFilter<?> assetFilter) {
+                if (assetFilter.getAssetIds() != null && assetFilter.getAssetIds().length > 0) {
+                    field = IndexField.ASSET_ID;
+                    keys = assetFilter.getAssetIds();
+                } else if (assetFilter.getParentIds() != null && assetFilter.getParentIds().length > 0) {
+                    field = IndexField.PARENT_ID;
+                    keys = assetFilter.getParentIds();
+                } else if (assetFilter.getPath() != null && assetFilter.getPath().length > 0) {
+                    field = IndexField.PATH;
+                    keys = assetFilter.getPath();
+                } else if (ATTRIBUTE_EVENT_TYPE.equals(eventType) && assetFilter.getAttributeNames() != null && assetFilter.getAttributeNames().length > 0) {
+                    // Only attribute events are guaranteed to be rejected when the attribute name doesn't match
+                    field = IndexField.ATTRIBUTE_NAME;
+                    keys = assetFilter.getAttributeNames();
+                } else if (!TextUtil.isNullOrEmpty(assetFilter.getRealm())) {
+                    field = IndexField.REALM;
+                    keys = new String[] {assetFilter.getRealm()};
+                }
+            }
+
+            if (keys != null) {
+                keys = Arrays.stream(keys).map(key -> key == null ? NULL_KEY : key).distinct().toArray(String[]::new);
+            }
+
+            this.indexField = field;
+            this.indexKeys = keys;
         }
 
         public boolean matches(SharedEvent event) {
-            return subscription.getEventType().equals(event.getEventType());
+            return eventType.equals(event.getEventType());
+        }
+    }
+
+    /**
+     * The asset filter field a subscription is indexed on; the field is chosen so that an event can only pass the
+     * subscription's filter if the event's value for the field is one of the index keys.
+     */
+    enum IndexField {
+        NONE,
+        ASSET_ID,
+        PARENT_ID,
+        PATH,
+        ATTRIBUTE_NAME,
+        REALM
+    }
+
+    /**
+     * An inverted index of the subscriptions of a single event type so that only subscriptions that could possibly
+     * match an {@link AssetInfo} event need to have their filter applied; subscriptions without an
+     * {@link AssetFilter} (or with no indexable criteria) are always candidates.
+     */
+    static class SubscriptionIndex {
+        final Set<SessionSubscription<?>> unindexed = ConcurrentHashMap.newKeySet();
+        final Map<IndexField, ConcurrentMap<String, Set<SessionSubscription<?>>>> fieldIndexes = new EnumMap<>(IndexField.class);
+
+        SubscriptionIndex() {
+            for (IndexField field : IndexField.values()) {
+                if (field != IndexField.NONE) {
+                    fieldIndexes.put(field, new ConcurrentHashMap<>());
+                }
+            }
+        }
+
+        void add(SessionSubscription<?> sessionSubscription) {
+            if (sessionSubscription.indexField == IndexField.NONE) {
+                unindexed.add(sessionSubscription);
+                return;
+            }
+            ConcurrentMap<String, Set<SessionSubscription<?>>> index = fieldIndexes.get(sessionSubscription.indexField);
+            for (String key : sessionSubscription.indexKeys) {
+                index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(sessionSubscription);
+            }
+        }
+
+        void remove(SessionSubscription<?> sessionSubscription) {
+            if (sessionSubscription.indexField == IndexField.NONE) {
+                unindexed.remove(sessionSubscription);
+                return;
+            }
+            ConcurrentMap<String, Set<SessionSubscription<?>>> index = fieldIndexes.get(sessionSubscription.indexField);
+            for (String key : sessionSubscription.indexKeys) {
+                index.computeIfPresent(key, (k, subscriptions) -> {
+                    subscriptions.remove(sessionSubscription);
+                    return subscriptions.isEmpty() ? null : subscriptions;
+                });
+            }
+        }
+
+        /**
+         * Get the subscriptions whose filter could match the event; each subscription is returned at most once.
+         */
+        Collection<SessionSubscription<?>> getCandidates(SharedEvent event) {
+            if (!(event instanceof AssetInfo assetInfo)) {
+                return unindexed;
+            }
+
+            List<SessionSubscription<?>> candidates = new ArrayList<>(unindexed);
+            addCandidates(candidates, IndexField.ASSET_ID, assetInfo.getId());
+            addCandidates(candidates, IndexField.PARENT_ID, assetInfo.getParentId());
+            addCandidates(candidates, IndexField.REALM, assetInfo.getRealm());
+
+            if (event instanceof AttributeEvent attributeEvent) {
+                addCandidates(candidates, IndexField.ATTRIBUTE_NAME, attributeEvent.getName());
+            }
+
+            ConcurrentMap<String, Set<SessionSubscription<?>>> pathIndex = fieldIndexes.get(IndexField.PATH);
+            String[] path = !pathIndex.isEmpty() ? assetInfo.getPath() : null;
+            if (path != null && path.length > 0) {
+                // A subscription can be indexed under more than one element of the event path
+                Set<SessionSubscription<?>> pathCandidates = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (String pathElement : path) {
+                    Set<SessionSubscription<?>> subscriptions = pathElement != null ? pathIndex.get(pathElement) : null;
+                    if (subscriptions != null) {
+                        pathCandidates.addAll(subscriptions);
+                    }
+                }
+                candidates.addAll(pathCandidates);
+            }
+
+            return candidates;
+        }
+
+        protected void addCandidates(List<SessionSubscription<?>> candidates, IndexField field, String key) {
+            Set<SessionSubscription<?>> subscriptions = fieldIndexes.get(field).get(key == null ? NULL_KEY : key);
+            if (subscriptions != null) {
+                candidates.addAll(subscriptions);
+            }
         }
     }
 
@@ -89,46 +255,56 @@ public class EventSubscriptions {
         this.timerService = timerService;
     }
 
+    protected void unindex(SessionSubscription<?> sessionSubscription) {
+        SubscriptionIndex index = eventTypeIndexMap.get(sessionSubscription.eventType);
+        if (index != null) {
+            index.remove(sessionSubscription);
+        }
+    }
+
+    /**
+     * The subscriptions of a session are only changed inside a compute call on the session's map entry, this makes
+     * create, cancel and cancel all atomic per session so concurrent requests cannot lose a subscription or leave one
+     * in the index after the session has been removed.
+     */
     protected void createOrUpdate(String sessionKey, EventSubscription<?> subscription) {
         LOG.finest("Create/update subscription for session '" + sessionKey + "': " + subscription);
-        SessionSubscriptions sessionSubscriptions =
-            this.sessionSubscriptionIdMap.computeIfAbsent(sessionKey, k -> new SessionSubscriptions());
-        sessionSubscriptions.createOrUpdate(subscription);
+        this.sessionSubscriptionIdMap.compute(sessionKey, (key, sessionSubscriptions) -> {
+            if (sessionSubscriptions == null) {
+                sessionSubscriptions = new SessionSubscriptions(key);
+            }
+            sessionSubscriptions.createOrUpdate(subscription);
+            return sessionSubscriptions;
+        });
     }
 
     protected void cancel(String sessionKey, CancelEventSubscription subscription) {
-        if (!this.sessionSubscriptionIdMap.containsKey(sessionKey)) {
-            return;
-        }
         if (subscription.getEventType() == null && subscription.getSubscriptionId() == null) {
             return;
         }
         LOG.finest("Cancel subscription for session '" + sessionKey + "': " + subscription);
-        SessionSubscriptions sessionSubscriptions = this.sessionSubscriptionIdMap.get(sessionKey);
-
-        if (sessionSubscriptions == null) {
-            return;
-        }
-
-        if (!TextUtil.isNullOrEmpty(subscription.getSubscriptionId())) {
-            sessionSubscriptions.cancelById(subscription.getSubscriptionId());
-        } else {
-            sessionSubscriptions.cancelByType(subscription.getEventType());
-        }
-        if (sessionSubscriptions.isEmpty()) {
-            this.sessionSubscriptionIdMap.remove(sessionKey);
-        }
+        this.sessionSubscriptionIdMap.computeIfPresent(sessionKey, (key, sessionSubscriptions) -> {
+            if (!TextUtil.isNullOrEmpty(subscription.getSubscriptionId())) {
+                sessionSubscriptions.cancelById(subscription.getSubscriptionId());
+            } else {
+                sessionSubscriptions.cancelByType(subscription.getEventType());
+            }
+            return sessionSubscriptions.isEmpty() ? null : sessionSubscriptions;
+        });
     }
 
     protected void cancelAll(String sessionKey) {
-        if (this.sessionSubscriptionIdMap.containsKey(sessionKey)) {
+        this.sessionSubscriptionIdMap.computeIfPresent(sessionKey, (key, sessionSubscriptions) -> {
             LOG.finest("Cancelling all subscriptions for session: " + sessionKey);
-            this.sessionSubscriptionIdMap.remove(sessionKey);
-        }
+            sessionSubscriptions.cancelAll();
+            return null;
+        });
     }
 
     /**
-     * Used in {@link ClientEventService#PUBLISH_QUEUE}
+     * Used in {@link ClientEventService#PUBLISH_QUEUE}; only the subscriptions returned by the event type's
+     * {@link SubscriptionIndex} have their filter applied so the cost depends on the number of subscriptions that
+     * could match rather than the total number of subscriptions.
      */
     @SuppressWarnings({"unchecked", "unused"})
     public <T extends SharedEvent> List<Message> splitForSubscribers(Exchange exchange) {
@@ -138,39 +314,34 @@ public class EventSubscriptions {
         if (event == null)
             return messageList;
 
-        for (Map.Entry<String, SessionSubscriptions> entry : sessionSubscriptionIdMap.entrySet()) {
-            String sessionKey = entry.getKey();
-            SessionSubscriptions subscriptions = entry.getValue();
-
-            for (SessionSubscription<?> sessionSubscription : subscriptions) {
-
-                if (!sessionSubscription.matches(event))
-                    continue;
-
-                SessionSubscription<T> sessionSub = (SessionSubscription<T>) sessionSubscription;
-                T filteredEvent = sessionSub.subscription.getFilter() == null ? event : sessionSub.subscription.getFilter().apply(event);
-
-                if (filteredEvent != null) {
-                    LOG.finest("Creating message for subscribed session '" + sessionKey + "': " + filteredEvent);
-                    List<T> events = Collections.singletonList(filteredEvent);
-                    TriggeredEventSubscription<T> triggeredEventSubscription = new TriggeredEventSubscription<>(events, sessionSub.subscriptionId);
-
-                    if (sessionSub.subscription.isInternal()) {
-                        if (triggeredEventSubscription.getEvents() != null) {
-                            try {
-                                triggeredEventSubscription.getEvents().forEach(e ->
-                                        sessionSub.subscription.getInternalConsumer().accept(e));
-                            } catch (Exception e) {
-                                LOG.log(Level.WARNING, "Internal subscription consumer has thrown an exception: id=" + triggeredEventSubscription.getSubscriptionId(), e);
-                            }
-                        }
-                    } else {
-                        Message msg = new DefaultMessage(exchange.getContext());
-                        msg.setBody(triggeredEventSubscription); // Don't copy the event, use same reference
-                        msg.setHeaders(new HashMap<>(exchange.getIn().getHeaders())); // Copy headers
-                        msg.setHeader(SESSION_KEY, sessionKey);
-                        messageList.add(msg);
+        SubscriptionIndex index = eventTypeIndexMap.get(event.getEventType());
+
+        if (index == null)
+            return messageList;
+
+        for (SessionSubscription<?> sessionSubscription : index.getCandidates(event)) {
+            String sessionKey = sessionSubscription.sessionKey;
+            SessionSubscription<T> sessionSub = (SessionSubscription<T>) sessionSubscription;
+            T filteredEvent = sessionSub.subscription.getFilter() == null ? event : sessionSub.subscription.getFilter().apply(event);
+
+            if (filteredEvent != null) {
+                LOG.finest(() -> "Creating message for subscribed session '" + sessionKey + "': " + filteredEvent);
+
+                if (sessionSub.subscription.isInternal()) {
+                    // Internal consumers get the event directly, no need to wrap it
+                    try {
+                        sessionSub.subscription.getInternalConsumer().accept(filteredEvent);
+                    } catch (Exception e) {
+                        LOG.log(Level.WARNING, "Internal subscription consumer has thrown an exception: id=" + sessionSub.subscriptionId, e);
                     }
+                } else {
+                    TriggeredEventSubscription<T> triggeredEventSubscription = new TriggeredEventSubscription<>(Collections.singletonList(filteredEvent), sessionSub.subscriptionId);
+                    Message msg = new DefaultMessage(exchange.getContext());
+                    msg.setBody(triggeredEventSubscription); // Don't copy the event, use same reference
+                    // Only the session key is used downstream (the connection type is added by the splitter route)
+                    // so don't copy the inbound headers for every subscriber
+                    msg.setHeader(SESSION_KEY, sessionKey);
+                    messageList.add(msg);
                 }
             }
         }
@@ -19,6 +19,12 @@
  */
 package org.openremote.manager.gateway;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.netty.channel.ChannelHandler;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.http.client.utils.URIBuilder;
@@ -51,15 +57,25 @@ import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.ValueUtil;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
+import static org.openremote.container.util.MapAccess.getBoolean;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.util.MapAccess.getString;
 import static org.openremote.model.syslog.SyslogCategory.GATEWAY;
 
@@ -72,6 +88,34 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
     private static final Logger LOG = SyslogCategory.getLogger(GATEWAY, GatewayClientService.class.getName());
     public static final String CLIENT_EVENT_SESSION_PREFIX = GatewayClientService.class.getSimpleName() + ":";
     public static final String OR_GATEWAY_TUNNEL_LOCALHOST_REWRITE = "OR_GATEWAY_TUNNEL_LOCALHOST_REWRITE";
+    /**
+     * Batch window for outbound attribute events in milliseconds; a value of 0 disables batching (batching is only used
+     * when the central manager supports it)
+     */
+    public static final String OR_GATEWAY_EVENT_BATCH_MILLIS = "OR_GATEWAY_EVENT_BATCH_MILLIS";
+    public static final int OR_GATEWAY_EVENT_BATCH_MILLIS_DEFAULT = 0;
+    public static final String OR_GATEWAY_EVENT_BATCH_SIZE_MAX = "OR_GATEWAY_EVENT_BATCH_SIZE_MAX";
+    public static final int OR_GATEWAY_EVENT_BATCH_SIZE_MAX_DEFAULT = 500;
+    /**
+     * Only send the latest event for each attribute within a batch window
+     */
+    public static final String OR_GATEWAY_EVENT_BATCH_CONFLATE = "OR_GATEWAY_EVENT_BATCH_CONFLATE";
+    public static final String OR_GATEWAY_EVENT_BATCH_COMPRESS = "OR_GATEWAY_EVENT_BATCH_COMPRESS";
+    /**
+     * Size of the disk backed buffer used to store outbound attribute events whilst disconnected from the central
+     * manager; a value of 0 disables buffering and the maximum is 2047 (the limit of a single memory mapped file region)
+     */
+    public static final String OR_GATEWAY_BUFFER_SIZE_MB = "OR_GATEWAY_BUFFER_SIZE_MB";
+    public static final int OR_GATEWAY_BUFFER_SIZE_MB_DEFAULT = 0;
+    public static final String OR_GATEWAY_BUFFER_MAX_AGE_HOURS = "OR_GATEWAY_BUFFER_MAX_AGE_HOURS";
+    public static final int OR_GATEWAY_BUFFER_MAX_AGE_HOURS_DEFAULT = 168;
+    /**
+     * Maximum number of buffered events replayed per second after reconnecting
+     */
+    public static final String OR_GATEWAY_BUFFER_REPLAY_RATE = "OR_GATEWAY_BUFFER_REPLAY_RATE";
+    public static final int OR_GATEWAY_BUFFER_REPLAY_RATE_DEFAULT = 100;
+    public static final String EVENT_BUFFER_DIRECTORY = "gateway";
+    protected static final long EVENT_BUFFER_REPLAY_DELAY_MILLIS = 1000;
     protected AssetStorageService assetStorageService;
     protected AssetProcessingService assetProcessingService;
     protected PersistenceService persistenceService;
@@ -83,6 +127,18 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
     protected final Map<String, GatewayIOClient> clientRealmMap = new HashMap<>();
     protected GatewayTunnelFactory gatewayTunnelFactory;
     protected Map<String, Map<AttributeRef, Long>> clientAttributeTimestamps = new ConcurrentHashMap<>();
+    protected final Map<String, GatewayEventBatcher> eventBatcherRealmMap = new ConcurrentHashMap<>();
+    protected MeterRegistry meterRegistry;
+    protected int eventBatchMillis;
+    protected int eventBatchSizeMax;
+    protected boolean eventBatchConflate;
+    protected boolean eventBatchCompress;
+    protected final Map<String, GatewayEventBuffer> eventBufferRealmMap = new ConcurrentHashMap<>();
+    protected final Map<String, ScheduledFuture<?>> eventReplayRealmMap = new ConcurrentHashMap<>();
+    protected final Set<String> eventBatchingSupportedRealms = ConcurrentHashMap.newKeySet();
+    protected int eventBufferSizeMb;
+    protected int eventBufferMaxAgeHours;
+    protected int eventBufferReplayRate;
 
     @Override
     public void init(Container container) throws Exception {
@@ -93,6 +149,14 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
         clientEventService = container.getService(ClientEventService.class);
         timerService = container.getService(TimerService.class);
         identityService = container.getService(ManagerIdentityService.class);
+        meterRegistry = container.getMeterRegistry();
+        eventBatchMillis = getInteger(container.getConfig(), OR_GATEWAY_EVENT_BATCH_MILLIS, OR_GATEWAY_EVENT_BATCH_MILLIS_DEFAULT);
+        eventBatchSizeMax = getInteger(container.getConfig(), OR_GATEWAY_EVENT_BATCH_SIZE_MAX, OR_GATEWAY_EVENT_BATCH_SIZE_MAX_DEFAULT);
+        eventBatchConflate = getBoolean(container.getConfig(), OR_GATEWAY_EVENT_BATCH_CONFLATE, true);
+        eventBatchCompress = getBoolean(container.getConfig(), OR_GATEWAY_EVENT_BATCH_COMPRESS, true);
+        eventBufferSizeMb = getInteger(container.getConfig(), OR_GATEWAY_BUFFER_SIZE_MB, OR_GATEWAY_BUFFER_SIZE_MB_DEFAULT);
+        eventBufferMaxAgeHours = getInteger(container.getConfig(), OR_GATEWAY_BUFFER_MAX_AGE_HOURS, OR_GATEWAY_BUFFER_MAX_AGE_HOURS_DEFAULT);
+        eventBufferReplayRate = Math.max(1, getInteger(container.getConfig(), OR_GATEWAY_BUFFER_REPLAY_RATE, OR_GATEWAY_BUFFER_REPLAY_RATE_DEFAULT));
 
         String tunnelKeyFile = getString(container.getConfig(), GatewayService.OR_GATEWAY_TUNNEL_SSH_KEY_FILE, null);
         String localhostRewrite = getString(container.getConfig(), OR_GATEWAY_TUNNEL_LOCALHOST_REWRITE, null);
@@ -172,12 +236,10 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
         from(PERSISTENCE_TOPIC)
             .routeId("Persistence-GatewayConnection")
             .filter(isPersistenceEventForEntityType(GatewayConnection.class))
-            .process(exchange -> {
-                @SuppressWarnings("unchecked")
-                PersistenceEvent<GatewayConnection> persistenceEvent = exchange.getIn().getBody(PersistenceEvent.class);
-                GatewayConnection connection = persistenceEvent.getEntity();
+            .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent -> {
+                GatewayConnection connection = (GatewayConnection) persistenceEvent.getEntity();
                 processConnectionChange(connection, persistenceEvent.getCause());
-            });
+            }));
     }
 
     synchronized protected void processConnectionChange(GatewayConnection connection, PersistenceEvent.Cause cause) {
@@ -207,6 +269,7 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
                     if (client != null) {
                         destroyGatewayClient(connection, client);
                     }
+                    deleteEventBuffer(connection);
                     break;
             }
         }
@@ -260,12 +323,27 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
                 assetEvent ->
                     sendCentralManagerMessage(connection.getLocalRealm(), messageToString(SharedEvent.MESSAGE_PREFIX, assetEvent)));
 
+            if (eventBatchMillis > 0) {
+                eventBatcherRealmMap.put(connection.getLocalRealm(), new GatewayEventBatcher(
+                    connection.getLocalRealm(),
+                    eventBatchMillis,
+                    eventBatchSizeMax,
+                    eventBatchConflate,
+                    eventBatchCompress,
+                    executorService,
+                    meterRegistry,
+                    message -> sendCentralManagerMessage(connection.getLocalRealm(), message)));
+            }
+
+            if (eventBufferSizeMb > 0) {
+                createEventBuffer(connection);
+            }
+
             clientEventService.addInternalSubscription(
                 getClientSessionKey(connection)+"Attribute",
                 AttributeEvent.class,
                 getOutboundAttribueEventFilter(connection),
-                attributeEvent ->
-                    sendCentralManagerMessage(connection.getLocalRealm(), messageToString(SharedEvent.MESSAGE_PREFIX, attributeEvent)));
+                attributeEvent -> onOutboundAttributeEvent(connection, attributeEvent));
 
             client.connect();
             return client;
@@ -378,11 +456,155 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
         if (connection != null) {
             clientEventService.cancelInternalSubscription(getClientSessionKey(connection)+"Asset");
             clientEventService.cancelInternalSubscription(getClientSessionKey(connection)+"Attribute");
+            GatewayEventBatcher eventBatcher = eventBatcherRealmMap.remove(connection.getLocalRealm());
+            if (eventBatcher != null) {
+                eventBatcher.setEnabled(false);
+            }
+            stopEventReplay(connection);
+            eventBatchingSupportedRealms.remove(connection.getLocalRealm());
+            GatewayEventBuffer eventBuffer = eventBufferRealmMap.remove(connection.getLocalRealm());
+            if (eventBuffer != null) {
+                eventBuffer.close();
+            }
+        }
+    }
+
+    protected void onOutboundAttributeEvent(GatewayConnection connection, AttributeEvent attributeEvent) {
+        String realm = connection.getLocalRealm();
+        GatewayEventBuffer eventBuffer = eventBufferRealmMap.get(realm);
+
+        if (eventBuffer != null && !attributeEvent.isDeleted() && !isClientConnected(realm)) {
+            eventBuffer.append(attributeEvent);
+            return;
+        }
+
+        GatewayEventBatcher eventBatcher = eventBatcherRealmMap.get(realm);
+
+        if (eventBatcher != null) {
+            eventBatcher.send(attributeEvent);
+        } else {
+            sendCentralManagerMessage(realm, messageToString(SharedEvent.MESSAGE_PREFIX, attributeEvent));
+        }
+    }
+
+    protected boolean isClientConnected(String realm) {
+        GatewayIOClient client;
+
+        synchronized (clientRealmMap) {
+            client = clientRealmMap.get(realm);
+        }
+
+        return client != null && client.getConnectionStatus() == ConnectionStatus.CONNECTED;
+    }
+
+    protected Path getEventBufferPath(GatewayConnection connection) {
+        return persistenceService.resolvePath(EVENT_BUFFER_DIRECTORY).resolve(connection.getLocalRealm() + ".buffer");
+    }
+
+    protected void createEventBuffer(GatewayConnection connection) {
+        Path path = getEventBufferPath(connection);
+        try {
+            eventBufferRealmMap.put(connection.getLocalRealm(), new GatewayEventBuffer(
+                connection.getLocalRealm(),
+                path,
+                eventBufferSizeMb * 1024L * 1024L,
+                TimeUnit.HOURS.toMillis(eventBufferMaxAgeHours),
+                meterRegistry));
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to create gateway event buffer so events will not be buffered whilst disconnected: " + path, e);
+        }
+    }
+
+    protected void deleteEventBuffer(GatewayConnection connection) {
+        Path path = getEventBufferPath(connection);
+        try {
+            Files.deleteIfExists(path);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to delete gateway event buffer: " + path, e);
+        }
+    }
+
+    /**
+     * Replay buffered events at a rate of {@link #OR_GATEWAY_BUFFER_REPLAY_RATE} events per second; events are sent
+     * as replay batches when the central manager supports them otherwise as individual events (which an older central
+     * manager will treat as outdated if they are older than the current attribute value).
+     */
+    protected void startEventReplay(GatewayConnection connection) {
+        GatewayEventBuffer eventBuffer = eventBufferRealmMap.get(connection.getLocalRealm());
+
+        if (eventBuffer == null || eventBuffer.isEmpty()) {
+            return;
+        }
+
+        stopEventReplay(connection);
+        LOG.info("Replaying " + eventBuffer.size() + " buffered attribute event(s): " + connection);
+        eventReplayRealmMap.put(connection.getLocalRealm(), executorService.scheduleAtFixedRate(
+            () -> replayBufferedEvents(connection, eventBuffer),
+            EVENT_BUFFER_REPLAY_DELAY_MILLIS,
+            1000,
+            TimeUnit.MILLISECONDS));
+    }
+
+    protected void stopEventReplay(GatewayConnection connection) {
+        ScheduledFuture<?> replayFuture = eventReplayRealmMap.remove(connection.getLocalRealm());
+        if (replayFuture != null) {
+            replayFuture.cancel(false);
+        }
+    }
+
+    protected void replayBufferedEvents(GatewayConnection connection, GatewayEventBuffer eventBuffer) {
+        String realm = connection.getLocalRealm();
+
+        try {
+            if (!isClientConnected(realm)) {
+                stopEventReplay(connection);
+                return;
+            }
+
+            List<AttributeEvent> events = eventBuffer.peek(eventBufferReplayRate, timerService.getCurrentTimeMillis());
+
+            if (events.isEmpty()) {
+                eventBuffer.commit();
+                stopEventReplay(connection);
+                LOG.info("Buffered attribute event replay completed: " + connection);
+                return;
+            }
+
+            boolean sent;
+
+            if (eventBatchingSupportedRealms.contains(realm)) {
+                List<Object[]> tuples = events.stream().map(GatewayEventBatcher::toTuple).collect(Collectors.toList());
+                sent = sendCentralManagerMessage(realm, messageToString(SharedEvent.MESSAGE_PREFIX, GatewayEventBatcher.createBatchEvent(tuples, eventBatchCompress, true)));
+            } else {
+                sent = events.stream().allMatch(event -> sendCentralManagerMessage(realm, messageToString(SharedEvent.MESSAGE_PREFIX, event)));
+            }
+
+            // Only remove the events from the buffer once they have been handed to a connected client, anything
+            // already sent before a failure is resent and treated as outdated by the central manager
+            if (sent) {
+                eventBuffer.commit();
+            } else {
+                eventBuffer.rollback();
+            }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to replay buffered attribute events: " + connection, e);
+            eventBuffer.rollback();
         }
     }
 
     protected void onGatewayClientConnectionStatusChanged(GatewayConnection connection, ConnectionStatus connectionStatus) {
         LOG.info("Connection status change for gateway IO client '" + connectionStatus + "': " + connection);
+        if (connectionStatus != ConnectionStatus.CONNECTED) {
+            // Batching must be negotiated again when the connection is re-established
+            GatewayEventBatcher eventBatcher = eventBatcherRealmMap.get(connection.getLocalRealm());
+            if (eventBatcher != null) {
+                eventBatcher.setEnabled(false);
+            }
+            stopEventReplay(connection);
+            eventBatchingSupportedRealms.remove(connection.getLocalRealm());
+        } else {
+            startEventReplay(connection);
+        }
         clientEventService.publishEvent(new GatewayConnectionStatusEvent(timerService.getCurrentTimeMillis(), connection.getLocalRealm(), connectionStatus));
     }
 
@@ -408,18 +630,28 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
                     destroyGatewayClient(connection, clientRealmMap.get(connection.getLocalRealm()));
                     clientRealmMap.put(connection.getLocalRealm(), null);
                 }
-            } else if (event instanceof GatewayCapabilitiesRequestEvent) {
+            } else if (event instanceof GatewayCapabilitiesRequestEvent capabilitiesRequestEvent) {
                 LOG.fine("Central manager requested specifications / capabilities of the gateway.");
+                GatewayEventBatcher eventBatcher = eventBatcherRealmMap.get(connection.getLocalRealm());
+                boolean eventBatching = eventBatcher != null && capabilitiesRequestEvent.isEventBatchingSupported();
+                if (capabilitiesRequestEvent.isEventBatchingSupported()) {
+                    eventBatchingSupportedRealms.add(connection.getLocalRealm());
+                } else {
+                    eventBatchingSupportedRealms.remove(connection.getLocalRealm());
+                }
                 sendCentralManagerMessage(
                         connection.getLocalRealm(),
                         messageToString(
                                 EventRequestResponseWrapper.MESSAGE_PREFIX,
                                 new EventRequestResponseWrapper<>(
                                         messageId,
-                                        new GatewayCapabilitiesResponseEvent(gatewayTunnelFactory != null)
+                                        new GatewayCapabilitiesResponseEvent(gatewayTunnelFactory != null, eventBatching)
                                 )
                         )
                 );
+                if (eventBatcher != null) {
+                    eventBatcher.setEnabled(eventBatching);
+                }
             } else if (event instanceof GatewayTunnelStartRequestEvent gatewayTunnelStartRequestEvent) {
                 LOG.info("Start tunnel request received: " + gatewayTunnelStartRequestEvent);
                 String error = null;
@@ -500,7 +732,16 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
                 AssetQuery query = readAssets.getAssetQuery();
                 // Force realm to be the one that this client is associated with
                 query.realm(new RealmPredicate(connection.getLocalRealm()));
-                List<Asset<?>> assets = assetStorageService.findAll(readAssets.getAssetQuery());
+                // Central manager uses the gateway time of the response as the watermark for future delta syncs
+                long timestamp = timerService.getCurrentTimeMillis();
+
+                sendCentralManagerMessage(
+                    connection.getLocalRealm(),
+                    readAssetsResponseToString(messageId, readAssets.getAssetQuery(), timestamp));
+            } else if (event instanceof GatewayAssetSyncRequestEvent syncRequest) {
+                LOG.fine("Central manager requested delta sync of assets modified since: " + syncRequest.getModifiedSince());
+                long timestamp = timerService.getCurrentTimeMillis();
+                List<GatewayAssetSyncInfo> assetInfos = assetStorageService.findGatewayAssetSyncInfo(connection.getLocalRealm(), syncRequest.getModifiedSince());
 
                 sendCentralManagerMessage(
                     connection.getLocalRealm(),
@@ -508,22 +749,29 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
                         EventRequestResponseWrapper.MESSAGE_PREFIX,
                         new EventRequestResponseWrapper<>(
                             messageId,
-                            new AssetsEvent(assets)
+                            new GatewayAssetSyncResponseEvent(timestamp, assetInfos)
                         )));
             }
         }
     }
 
-    protected void sendCentralManagerMessage(String realm, String message) {
+    /**
+     * Send the message to the central manager; returns false if there is no client for the realm or it is not
+     * connected.
+     */
+    protected boolean sendCentralManagerMessage(String realm, String message) {
         GatewayIOClient client;
 
         synchronized (clientRealmMap) {
             client = clientRealmMap.get(realm);
         }
 
-        if (client != null) {
-            client.sendMessage(message);
+        if (client == null) {
+            return false;
         }
+
+        client.sendMessage(message);
+        return client.getConnectionStatus() == ConnectionStatus.CONNECTED;
     }
 
     protected String getClientSessionKey(GatewayConnection connection) {
@@ -540,6 +788,70 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
         return prefix + str;
     }
 
+    /**
+     * Serialise the {@link AssetsEvent} response to a {@link ReadAssetsEvent} with the assets streamed from the DB
+     * directly into the message, so the assets are never all held in memory alongside the message. The rest of the
+     * message is the normal serialised form of the {@link EventRequestResponseWrapper} so the central manager parses it
+     * as usual.
+     */
+    protected String readAssetsResponseToString(String messageId, AssetQuery query, long timestamp) {
+        AssetsEvent assetsEvent = new AssetsEvent(Collections.emptyList());
+        assetsEvent.setTimestamp(timestamp);
+        ObjectNode wrapperNode = ValueUtil.JSON.valueToTree(new EventRequestResponseWrapper<>(messageId, assetsEvent));
+        ObjectWriter writer = ValueUtil.JSON.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StringWriter stringWriter = new StringWriter();
+        boolean assetsWritten = false;
+
+        try (JsonGenerator generator = ValueUtil.JSON.getFactory().createGenerator(stringWriter)) {
+            generator.writeStartObject();
+            Iterator<Map.Entry<String, JsonNode>> wrapperFields = wrapperNode.fields();
+            while (wrapperFields.hasNext()) {
+                Map.Entry<String, JsonNode> wrapperField = wrapperFields.next();
+                generator.writeFieldName(wrapperField.getKey());
+
+                if (!"event".equals(wrapperField.getKey())) {
+                    writer.writeValue(generator, wrapperField.getValue());
+                    continue;
+                }
+
+                generator.writeStartObject();
+                Iterator<Map.Entry<String, JsonNode>> eventFields = wrapperField.getValue().fields();
+                while (eventFields.hasNext()) {
+                    Map.Entry<String, JsonNode> eventField = eventFields.next();
+                    generator.writeFieldName(eventField.getKey());
+
+                    if (!"assets".equals(eventField.getKey())) {
+                        writer.writeValue(generator, eventField.getValue());
+                        continue;
+                    }
+
+                    generator.writeStartArray();
+                    assetStorageService.streamAll(query, asset -> {
+                        try {
+                            writer.writeValue(generator, asset);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    generator.writeEndArray();
+                    assetsWritten = true;
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        } catch (IOException | UncheckedIOException e) {
+            LOG.log(Level.WARNING, "Failed to stream read assets response so loading all assets instead: messageId=" + messageId, e);
+        }
+
+        if (!assetsWritten) {
+            assetsEvent = new AssetsEvent(assetStorageService.findAll(query));
+            assetsEvent.setTimestamp(timestamp);
+            return messageToString(EventRequestResponseWrapper.MESSAGE_PREFIX, new EventRequestResponseWrapper<>(messageId, assetsEvent));
+        }
+
+        return EventRequestResponseWrapper.MESSAGE_PREFIX + stringWriter;
+    }
+
     /** GATEWAY RESOURCE METHODS */
     protected List<GatewayConnection> getConnections() {
         return new ArrayList<>(connectionRealmMap.values());
@@ -19,12 +19,21 @@
  */
 package org.openremote.manager.gateway;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import org.openremote.manager.asset.AssetProcessingService;
 import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.datapoint.AssetDatapointService;
 import org.openremote.model.asset.*;
 import org.openremote.model.asset.agent.ConnectionStatus;
 import org.openremote.model.asset.impl.GatewayAsset;
+import org.openremote.model.attribute.Attribute;
 import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.datapoint.ValueDatapoint;
 import org.openremote.model.event.shared.EventRequestResponseWrapper;
 import org.openremote.model.event.shared.SharedEvent;
 import org.openremote.model.gateway.*;
@@ -46,15 +55,34 @@ import java.util.stream.Stream;
 import static org.openremote.model.syslog.SyslogCategory.GATEWAY;
 
 /**
- * Handles all communication between a gateway and this manager instance
+ * Handles all communication between a gateway and this manager instance.
+ * <h2>Synchronisation</h2>
+ * On connect the gateway assets are synchronised; the first sync after this manager starts is a full sync (all asset
+ * IDs are requested followed by every asset in batches of {@link #SYNC_ASSET_BATCH_SIZE}). Up to
+ * {@link #SYNC_MAX_BATCHES_IN_FLIGHT} batch requests are outstanding at any time (once the first batch has been
+ * returned) and batches are merged in request order with a single bulk merge per batch. Subsequent syncs (i.e.
+ * after a reconnect) are delta syncs: a {@link GatewayAssetSyncRequestEvent} is sent with a gateway time watermark and
+ * the gateway returns the version of each asset and whether any attribute values changed since the watermark; only
+ * new/changed assets are then requested and missing assets are deleted. If the gateway does not respond to the delta
+ * sync request (older gateway version) or the watermark is unknown then a full sync is done.
  */
 public class GatewayConnector {
 
     private static final Logger LOG = SyslogCategory.getLogger(GATEWAY, GatewayConnector.class.getName());
     public static int MAX_SYNC_RETRIES = 5;
     public static int SYNC_ASSET_BATCH_SIZE = 20;
+    /**
+     * Maximum number of asset batch requests that can be outstanding during sync
+     */
+    public static int SYNC_MAX_BATCHES_IN_FLIGHT = 4;
+    public static final String METRIC_PREFIX = "or.gateway.sync";
     public static final String ASSET_READ_EVENT_NAME_INITIAL = "INITIAL";
     public static final String ASSET_READ_EVENT_NAME_BATCH = "BATCH";
+    public static final String ASSET_READ_EVENT_NAME_DELTA = "DELTA";
+    /**
+     * Delta sync watermarks are moved back by this amount to allow for events that were in flight at disconnect
+     */
+    public static long DELTA_SYNC_MARGIN_MILLIS = 60000;
     public static final long RESPONSE_TIMEOUT_MILLIS = 10000;
     protected static final Map<String, Pair<Function<String, String>, Function<String, String>>> ASSET_ID_MAPPERS = new HashMap<>();
     protected final String realm;
@@ -74,11 +102,37 @@ public class GatewayConnector {
     protected boolean initialSyncInProgress;
     protected ScheduledFuture<?> syncProcessorFuture;
     List<String> syncAssetIds;
-    int syncIndex;
+    List<String> syncRequestAssetIds;
+    Map<String, Integer> syncAssetLevels;
+    List<List<String>> syncBatches;
+    int syncNextBatch;
+    int syncMergeBatch;
+    int syncMergedAssetCount;
+    long syncBatchStartMillis;
+    final Map<Integer, Long> syncBatchesInFlight = new HashMap<>();
+    final Map<Integer, String> syncBatchMessageIds = new HashMap<>();
+    final Map<Integer, List<Asset<?>>> syncReceivedBatches = new HashMap<>();
     int syncErrors;
     String expectedSyncResponseName;
     protected boolean tunnellingSupported;
+    /**
+     * Version of each gateway asset (keyed by gateway asset ID) when it was last merged locally
+     */
+    protected final Map<String, Long> syncedAssetVersions = new ConcurrentHashMap<>();
+    /**
+     * Cleared if the gateway doesn't respond to a delta sync request (e.g. older gateway versions), reset on each
+     * connection so a temporarily slow gateway isn't limited to full syncs forever
+     */
+    protected boolean deltaSyncSupported = true;
+    protected long syncResponseTimestamp;
+    protected long syncWatermark;
+    protected long syncCompletedMillis;
+    protected volatile long lastGatewayEventTimestamp;
     protected final Map<Class<? extends SharedEvent>, BiConsumer<String, SharedEvent>> eventConsumerMap = new HashMap<>();
+    protected MeterRegistry meterRegistry;
+    protected Timer syncBatchTimer;
+    protected Counter syncAssetCounter;
+    protected Gauge syncProgressGauge;
 
     protected static List<Integer> ALPHA_NUMERIC_CHARACTERS = new ArrayList<>(62);
 
@@ -108,11 +162,22 @@ public class GatewayConnector {
         this.disabled = gateway.getDisabled().orElse(false);
         this.realm = gateway.getRealm();
         this.gatewayId = gateway.getId();
+        this.meterRegistry = gatewayService.meterRegistry;
+
+        if (meterRegistry != null) {
+            Tags tags = Tags.of("realm", realm, "gatewayId", gatewayId);
+            syncBatchTimer = meterRegistry.timer(METRIC_PREFIX + ".batch", tags);
+            syncAssetCounter = meterRegistry.counter(METRIC_PREFIX + ".assets", tags);
+            syncProgressGauge = Gauge.builder(METRIC_PREFIX + ".progress", this, GatewayConnector::getSyncProgress)
+                .tags(tags)
+                .register(meterRegistry);
+        }
 
         // Setup static inbound event handling
         synchronized(eventConsumerMap) {
             eventConsumerMap.put(AssetEvent.class, (msgId, e) -> onAssetEvent((AssetEvent) e));
             eventConsumerMap.put(AttributeEvent.class, (msgId, e) -> onAttributeEvent((AttributeEvent) e));
+            eventConsumerMap.put(GatewayAttributeEventBatchEvent.class, (msgId, e) -> onAttributeEventBatch((GatewayAttributeEventBatchEvent) e));
             eventConsumerMap.put(DeleteAssetsResponseEvent.class, (msgId, e) -> onAssetDeleteResponseEvent(msgId, (DeleteAssetsResponseEvent) e));
         }
         publishAttributeEvent(new AttributeEvent(gatewayId, GatewayAsset.STATUS, ConnectionStatus.DISCONNECTED));
@@ -150,8 +215,14 @@ public class GatewayConnector {
         cachedAssetEvents = new ArrayList<>();
         cachedAttributeEvents = new ArrayList<>();
         syncAssetIds = null;
-        syncIndex = 0;
+        syncRequestAssetIds = null;
+        syncAssetLevels = null;
+        syncBatches = null;
+        syncBatchesInFlight.clear();
+        syncBatchMessageIds.clear();
+        syncReceivedBatches.clear();
         syncErrors = 0;
+        deltaSyncSupported = true;
 
         publishAttributeEvent(new AttributeEvent(gatewayId, GatewayAsset.STATUS, ConnectionStatus.CONNECTED));
 
@@ -227,7 +298,7 @@ public class GatewayConnector {
         return CompletableFuture.supplyAsync(() -> {
                 sendMessageToGateway(new EventRequestResponseWrapper<>(
                     UniqueIdentifierGenerator.generateId(),
-                    new GatewayCapabilitiesRequestEvent()
+                    new GatewayCapabilitiesRequestEvent(true)
                 ));
 
                 // Wait for response indefinitely as timeout handled on CompletableFuture
@@ -391,8 +462,16 @@ public class GatewayConnector {
         if (initialSyncInProgress) {
             if (e instanceof AssetsEvent) {
                 onSyncAssetsResponse(messageId, (AssetsEvent) e);
+            } else if (e instanceof GatewayAssetSyncResponseEvent) {
+                onDeltaSyncResponse(messageId, (GatewayAssetSyncResponseEvent) e);
             } else if (e instanceof AttributeEvent) {
                 cachedAttributeEvents.add((AttributeEvent) e);
+            } else if (e instanceof GatewayAttributeEventBatchEvent) {
+                try {
+                    cachedAttributeEvents.addAll(GatewayEventBatcher.decode((GatewayAttributeEventBatchEvent) e));
+                } catch (Exception ex) {
+                    LOG.log(Level.WARNING, "Failed to decode gateway attribute event batch: " + e + ": " + this, ex);
+                }
             } else if (e instanceof AssetEvent) {
                 cachedAssetEvents.add((AssetEvent) e);
             }
@@ -415,6 +494,11 @@ public class GatewayConnector {
             return;
         }
 
+        if (isDeltaSyncPossible()) {
+            startDeltaSync();
+            return;
+        }
+
         expectedSyncResponseName = ASSET_READ_EVENT_NAME_INITIAL;
         sendMessageToGateway(new EventRequestResponseWrapper<>(
             ASSET_READ_EVENT_NAME_INITIAL,
@@ -422,6 +506,28 @@ public class GatewayConnector {
         syncProcessorFuture = executorService.schedule(this::onSyncAssetsTimeout, RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
     }
 
+    protected boolean isDeltaSyncPossible() {
+        return deltaSyncSupported && syncWatermark > 0 && !syncedAssetVersions.isEmpty();
+    }
+
+    /**
+     * Request the version and modified state of all gateway assets since the last known gateway time at which the
+     * assets were in sync
+     */
+    protected void startDeltaSync() {
+        // Use the latest gateway time we know about but never more than the estimated current gateway time as event
+        // timestamps can be set by devices
+        long estimatedGatewayTime = syncWatermark + (System.currentTimeMillis() - syncCompletedMillis);
+        long modifiedSince = Math.max(0L, Math.min(Math.max(syncWatermark, lastGatewayEventTimestamp), estimatedGatewayTime) - DELTA_SYNC_MARGIN_MILLIS);
+
+        LOG.fine("Starting gateway delta sync for changes since " + modifiedSince + ": " + this);
+        expectedSyncResponseName = ASSET_READ_EVENT_NAME_DELTA;
+        sendMessageToGateway(new EventRequestResponseWrapper<>(
+            ASSET_READ_EVENT_NAME_DELTA,
+            new GatewayAssetSyncRequestEvent(modifiedSince)));
+        syncProcessorFuture = executorService.schedule(this::onSyncAssetsTimeout, RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Called if a response isn't received from the gateway within {@link #RESPONSE_TIMEOUT_MILLIS}
      */
@@ -430,6 +536,13 @@ public class GatewayConnector {
             return;
         }
 
+        if (ASSET_READ_EVENT_NAME_DELTA.equals(expectedSyncResponseName)) {
+            LOG.info("Gateway delta sync timed out so falling back to full sync for this connection: " + this);
+            deltaSyncSupported = false;
+            startSync();
+            return;
+        }
+
         LOG.info("Gateway sync timeout occurred: " + this);
         syncErrors++;
 
@@ -437,10 +550,12 @@ public class GatewayConnector {
             return;
         }
 
-        if (syncAssetIds == null) {
+        if (syncBatches == null) {
             // Haven't received initial list of assets so retry
             startSync();
         } else {
+            // Re-send all outstanding batch requests
+            new ArrayList<>(syncBatchesInFlight.keySet()).forEach(this::requestAssetBatch);
             requestAssets();
         }
     }
@@ -456,7 +571,28 @@ public class GatewayConnector {
     }
 
     /**
-     * Request assets in batches of {@link #SYNC_ASSET_BATCH_SIZE} to avoid overloading the gateway
+     * Split the requested asset IDs into batches of {@link #SYNC_ASSET_BATCH_SIZE} and start requesting them
+     */
+    protected void startAssetBatchSync() {
+        syncBatches = new ArrayList<>();
+        for (int i = 0; i < syncRequestAssetIds.size(); i += SYNC_ASSET_BATCH_SIZE) {
+            syncBatches.add(new ArrayList<>(syncRequestAssetIds.subList(i, Math.min(i + SYNC_ASSET_BATCH_SIZE, syncRequestAssetIds.size()))));
+        }
+        syncNextBatch = 0;
+        syncMergeBatch = 0;
+        syncMergedAssetCount = 0;
+        syncBatchesInFlight.clear();
+        syncBatchMessageIds.clear();
+        syncReceivedBatches.clear();
+        syncBatchStartMillis = System.currentTimeMillis();
+        expectedSyncResponseName = ASSET_READ_EVENT_NAME_BATCH;
+        requestAssets();
+    }
+
+    /**
+     * Request asset batches keeping up to {@link #SYNC_MAX_BATCHES_IN_FLIGHT} requests outstanding so the gateway
+     * can prepare the next batch whilst the previous one is being merged; only one batch is requested until the
+     * gateway has returned the first batch so an unresponsive gateway isn't sent a burst of requests.
      */
     protected void requestAssets() {
 
@@ -464,20 +600,56 @@ public class GatewayConnector {
             return;
         }
 
-        String[] requestAssetIds = syncAssetIds.stream().skip(syncIndex).limit(SYNC_ASSET_BATCH_SIZE).toArray(String[]::new);
-        expectedSyncResponseName = ASSET_READ_EVENT_NAME_BATCH + syncIndex;
+        int maxInFlight = syncMergeBatch == 0 && syncReceivedBatches.isEmpty() ? 1 : Math.max(1, SYNC_MAX_BATCHES_IN_FLIGHT);
 
-        LOG.fine("Synchronising gateway assets " + syncIndex+1 + "-" + syncIndex + requestAssetIds.length + " of " + syncAssetIds.size() + ": " + this);
+        while (syncBatchesInFlight.size() < maxInFlight && syncNextBatch < syncBatches.size()) {
+            requestAssetBatch(syncNextBatch++);
+        }
+
+        scheduleSyncTimeout();
+    }
+
+    /**
+     * The message ID of a batch request is the offset of the batch within the requested assets (excluding assets that
+     * have been deleted since the sync started)
+     */
+    protected void requestAssetBatch(int batchIndex) {
+        List<String> requestAssetIds = syncBatches.get(batchIndex);
+        int offset = 0;
+        for (int i = 0; i < batchIndex; i++) {
+            offset += syncBatches.get(i).size();
+        }
+        String messageId = ASSET_READ_EVENT_NAME_BATCH + offset;
+
+        LOG.fine("Synchronising gateway assets " + (offset + 1) + "-" + (offset + requestAssetIds.size()) + " of " + syncRequestAssetIds.size() + ": " + this);
+        syncBatchesInFlight.put(batchIndex, System.nanoTime());
+        syncBatchMessageIds.put(batchIndex, messageId);
         sendMessageToGateway(
             new EventRequestResponseWrapper<>(
-                expectedSyncResponseName,
+                messageId,
                 new ReadAssetsEvent(
                     new AssetQuery()
-                        .ids(requestAssetIds)
+                        .ids(requestAssetIds.toArray(String[]::new))
                 )
             )
         );
-        syncProcessorFuture = executorService.schedule(this::requestAssets, RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    protected void scheduleSyncTimeout() {
+        if (syncProcessorFuture != null) {
+            syncProcessorFuture.cancel(false);
+        }
+        syncProcessorFuture = executorService.schedule(this::onSyncAssetsTimeout, RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    protected Integer getSyncBatchIndex(String messageId) {
+        if (messageId == null) {
+            return null;
+        }
+        return syncBatchesInFlight.keySet().stream()
+            .filter(batchIndex -> messageId.equalsIgnoreCase(syncBatchMessageIds.get(batchIndex)))
+            .findFirst()
+            .orElse(null);
     }
 
     synchronized protected void onSyncAssetsResponse(String messageId, AssetsEvent e) {
@@ -485,147 +657,254 @@ public class GatewayConnector {
             return;
         }
 
+        if (ASSET_READ_EVENT_NAME_BATCH.equals(expectedSyncResponseName)) {
+            onSyncAssetBatchResponse(messageId, e);
+            return;
+        }
+
         if (!expectedSyncResponseName.equalsIgnoreCase(messageId)) {
-            LOG.info("Unexpected response from gateway so ignoring (expected=" + expectedSyncResponseName + ", actual =" + messageId + "): " + this);
+            LOG.info("Unexpected response from gateway so ignoring (expected=" + expectedSyncResponseName + ", actual=" + messageId + "): " + this);
             return;
         }
 
-        syncProcessorFuture.cancel(true);
+        syncProcessorFuture.cancel(false);
         syncProcessorFuture = null;
-        boolean isInitialResponse = ASSET_READ_EVENT_NAME_INITIAL.equalsIgnoreCase(messageId);
 
-        if (isInitialResponse) {
+        // Put assets in hierarchical order
+        Map<String, String> gatewayAssetIdParentIdMap = e.getAssets() == null ? Collections.emptyMap() : e.getAssets().stream()
+            .collect(HashMap::new, (m, v) -> m.put(v.getId(), v.getParentId()), HashMap::putAll);
 
-            // Put assets in hierarchical order
-            Map<String, String> gatewayAssetIdParentIdMap = e.getAssets() == null ? Collections.emptyMap() : e.getAssets().stream()
-                .collect(HashMap::new, (m, v) -> m.put(v.getId(), v.getParentId()), HashMap::putAll);
+        syncAssetLevels = getAssetLevels(gatewayAssetIdParentIdMap);
+        syncAssetIds = getHierarchicalAssetIds(syncAssetLevels);
+        syncRequestAssetIds = new ArrayList<>(syncAssetIds);
+        syncResponseTimestamp = e.getTimestamp();
 
-            ToIntFunction<Asset<?>> assetLevelExtractor = asset -> {
-                int level = 0;
-                String parentId = asset.getParentId();
-                while (parentId != null) {
-                    level++;
-                    parentId = gatewayAssetIdParentIdMap.get(parentId);
-                }
-                return level;
-            };
-
-            syncAssetIds =  e.getAssets() == null ? Collections.emptyList() : e.getAssets()
-                .stream()
-                .sorted(Comparator.comparingInt(assetLevelExtractor))
-                .map(Asset::getId)
-                .collect(Collectors.toList());
+        if (syncAssetIds.isEmpty()) {
+            deleteObsoleteLocalAssets();
+            onInitialSyncComplete();
+            return;
+        }
 
-            if (syncAssetIds.isEmpty()) {
-                deleteObsoleteLocalAssets();
-                onInitialSyncComplete();
-                return;
-            }
+        startAssetBatchSync();
+    }
 
-            requestAssets();
+    protected void onSyncAssetBatchResponse(String messageId, AssetsEvent e) {
+        Integer batchIndex = getSyncBatchIndex(messageId);
 
-        } else {
+        if (batchIndex == null || !syncBatchesInFlight.containsKey(batchIndex)) {
+            LOG.info("Unexpected response from gateway so ignoring (expected=" + ASSET_READ_EVENT_NAME_BATCH + "N, actual=" + messageId + "): " + this);
+            return;
+        }
 
-            List<String> requestedAssetIds = syncAssetIds.stream().skip(syncIndex).limit(SYNC_ASSET_BATCH_SIZE).collect(Collectors.toList());
-            List<Asset<?>> returnedAssets = e.getAssets() == null ? Collections.emptyList() : e.getAssets();
+        long requestNanos = syncBatchesInFlight.remove(batchIndex);
+        syncBatchMessageIds.remove(batchIndex);
+        if (syncBatchTimer != null) {
+            syncBatchTimer.record(System.nanoTime() - requestNanos, TimeUnit.NANOSECONDS);
+        }
 
-            // Remove any assets that have been deleted since requested
-            cachedAssetEvents.removeIf(
-                assetEvent -> {
-                    boolean remove = requestedAssetIds.stream().anyMatch(id -> id.equals(assetEvent.getId()) && assetEvent.getCause() == AssetEvent.Cause.DELETE);
-                    if (remove) {
-                        syncAssetIds.remove(assetEvent.getId());
-                        requestedAssetIds.remove(assetEvent.getId());
-                    }
-                    return remove;
-                });
+        List<String> requestedAssetIds = syncBatches.get(batchIndex);
+        List<Asset<?>> returnedAssets = e.getAssets() == null ? Collections.emptyList() : e.getAssets();
+
+        // Remove any assets that have been deleted since requested
+        cachedAssetEvents.removeIf(
+            assetEvent -> {
+                boolean remove = assetEvent.getCause() == AssetEvent.Cause.DELETE && requestedAssetIds.contains(assetEvent.getId());
+                if (remove) {
+                    syncAssetIds.remove(assetEvent.getId());
+                    syncRequestAssetIds.remove(assetEvent.getId());
+                    requestedAssetIds.remove(assetEvent.getId());
+                }
+                return remove;
+            });
 
-            if (returnedAssets.size() != requestedAssetIds.size() || !returnedAssets.stream().allMatch(asset -> requestedAssetIds.contains(asset.getId()))) {
-                LOG.warning("Retrieved gateway asset batch count or ID mismatch, attempting to re-send the request: " + this);
-                syncErrors++;
-                requestAssets();
-                return;
+        if (returnedAssets.size() != requestedAssetIds.size() || !returnedAssets.stream().allMatch(asset -> requestedAssetIds.contains(asset.getId()))) {
+            LOG.warning("Retrieved gateway asset batch count or ID mismatch, attempting to re-send the request: " + this);
+            syncErrors++;
+            if (!syncAborted()) {
+                requestAssetBatch(batchIndex);
+                scheduleSyncTimeout();
             }
+            return;
+        }
 
-            // Returned asset order may not match request order so re-order
-            returnedAssets = returnedAssets.stream()
-                .sorted(Comparator.comparingInt(a -> syncAssetIds.indexOf(a.getId())))
-                .collect(Collectors.toList());
-
-            // Merge returned assets ensuring the latest version of each is merged
-            returnedAssets.stream()
-                .map(returnedAsset -> {
-                    final AtomicReference<Asset<?>> latestAssetVersion = new AtomicReference<>(returnedAsset);
-                    cachedAssetEvents.removeIf(
-                        assetEvent -> {
-                            boolean remove = assetEvent.getId().equals(returnedAsset.getId()) && (assetEvent.getCause() == AssetEvent.Cause.UPDATE || assetEvent.getCause() == AssetEvent.Cause.READ);
-                            if (remove && assetEvent.getAsset().getVersion() > latestAssetVersion.get().getVersion()) {
-                                latestAssetVersion.set(assetEvent.getAsset());
-                            }
-                            return remove;
-                        });
-                    return latestAssetVersion.get();
-                }).forEach(this::saveAssetLocally);
-
-
-            // Request next batch or move on
-            syncIndex += requestedAssetIds.size();
-            if (syncIndex >= syncAssetIds.size()) {
-                LOG.info("All requested gateway assets retrieved: " + this);
-
-                Set<String> refreshAssets = new HashSet<>();
-
-                cachedAssetEvents.forEach(
+        // Returned asset order may not match request order so re-order and ensure the latest version of each is used
+        List<Asset<?>> latestAssets = returnedAssets.stream()
+            .sorted(Comparator.comparingInt(a -> requestedAssetIds.indexOf(a.getId())))
+            .map(returnedAsset -> {
+                final AtomicReference<Asset<?>> latestAssetVersion = new AtomicReference<>(returnedAsset);
+                cachedAssetEvents.removeIf(
                     assetEvent -> {
-                        if (assetEvent.getCause() == AssetEvent.Cause.DELETE) {
-                            syncAssetIds.remove(assetEvent.getId());
-                        } else if (assetEvent.getCause() == AssetEvent.Cause.CREATE) {
-                            syncAssetIds.add(assetEvent.getId());
-                            try {
-                                saveAssetLocally(assetEvent.getAsset());
-                            } catch (Exception ex) {
-                                LOG.log(Level.SEVERE, "Failed to add new gateway asset (Asset=" + assetEvent.getAsset() + "): " + this, ex);
-                            }
-                        } else {
-                            refreshAssets.add(assetEvent.getId());
+                        boolean remove = assetEvent.getId().equals(returnedAsset.getId()) && (assetEvent.getCause() == AssetEvent.Cause.UPDATE || assetEvent.getCause() == AssetEvent.Cause.READ);
+                        if (remove && assetEvent.getAsset().getVersion() > latestAssetVersion.get().getVersion()) {
+                            latestAssetVersion.set(assetEvent.getAsset());
                         }
-                    }
-                );
+                        return remove;
+                    });
+                return latestAssetVersion.get();
+            })
+            .collect(Collectors.toList());
+
+        syncReceivedBatches.put(batchIndex, latestAssets);
 
-                deleteObsoleteLocalAssets();
-                onInitialSyncComplete();
+        // Keep the pipeline full before merging so the gateway isn't waiting on the merge
+        requestAssets();
 
-                // Refresh attributes that have changed
-                cachedAttributeEvents.forEach(attributeEvent -> {
-                    String assetId = attributeEvent.getId();
-                    if (!refreshAssets.contains(assetId)) {
-                        LOG.info("1 or more gateway asset attribute values have changed so requesting the asset again (Asset<?> ID=" + assetId + ": " + this);
-                        refreshAssets.add(assetId);
+        // Batches are merged in request order so parents are always merged before their children
+        while (syncReceivedBatches.containsKey(syncMergeBatch)) {
+            mergeSyncedAssets(syncReceivedBatches.remove(syncMergeBatch));
+            syncMergeBatch++;
+        }
+
+        if (syncMergeBatch < syncBatches.size()) {
+            return;
+        }
+
+        if (syncProcessorFuture != null) {
+            syncProcessorFuture.cancel(false);
+            syncProcessorFuture = null;
+        }
+
+        long durationMillis = Math.max(1L, System.currentTimeMillis() - syncBatchStartMillis);
+        LOG.info("All requested gateway assets retrieved: count=" + syncMergedAssetCount + ", duration=" + durationMillis + "ms, rate=" + (syncMergedAssetCount * 1000L / durationMillis) + " assets/s: " + this);
+
+        Set<String> refreshAssets = new HashSet<>();
+
+        cachedAssetEvents.forEach(
+            assetEvent -> {
+                if (assetEvent.getCause() == AssetEvent.Cause.DELETE) {
+                    syncAssetIds.remove(assetEvent.getId());
+                } else if (assetEvent.getCause() == AssetEvent.Cause.CREATE) {
+                    syncAssetIds.add(assetEvent.getId());
+                    try {
+                        saveAssetLocally(assetEvent.getAsset());
+                    } catch (Exception ex) {
+                        LOG.log(Level.SEVERE, "Failed to add new gateway asset (Asset=" + assetEvent.getAsset() + "): " + this, ex);
                     }
-                });
+                } else {
+                    refreshAssets.add(assetEvent.getId());
+                }
+            }
+        );
 
-                // Refresh assets that have changed
-                refreshAssets.forEach(id -> sendMessageToGateway(new ReadAssetEvent(id)));
-            } else {
-                requestAssets();
+        deleteObsoleteLocalAssets();
+        onInitialSyncComplete();
+
+        // Refresh attributes that have changed
+        cachedAttributeEvents.forEach(attributeEvent -> {
+            String assetId = attributeEvent.getId();
+            if (!refreshAssets.contains(assetId)) {
+                LOG.info("1 or more gateway asset attribute values have changed so requesting the asset again (Asset<?> ID=" + assetId + ": " + this);
+                refreshAssets.add(assetId);
             }
+        });
+
+        // Refresh assets that have changed
+        refreshAssets.forEach(id -> sendMessageToGateway(new ReadAssetEvent(id)));
+    }
+
+    /**
+     * Merge the supplied batch of gateway assets with a single bulk merge (new assets are inserted using JDBC batching)
+     */
+    protected void mergeSyncedAssets(List<Asset<?>> assets) {
+        saveAssetsLocally(assets);
+        syncMergedAssetCount += assets.size();
+
+        if (syncAssetCounter != null) {
+            syncAssetCounter.increment(assets.size());
         }
     }
 
-    protected void deleteObsoleteLocalAssets() {
+    synchronized protected void onDeltaSyncResponse(String messageId, GatewayAssetSyncResponseEvent e) {
+        if (!isConnected()) {
+            return;
+        }
+
+        if (!expectedSyncResponseName.equalsIgnoreCase(messageId)) {
+            LOG.info("Unexpected response from gateway so ignoring (expected=" + expectedSyncResponseName + ", actual =" + messageId + "): " + this);
+            return;
+        }
+
+        syncProcessorFuture.cancel(true);
+        syncProcessorFuture = null;
+
+        List<GatewayAssetSyncInfo> assetInfos = e.getAssets() == null ? Collections.emptyList() : e.getAssets();
+        Map<String, String> gatewayAssetIdParentIdMap = assetInfos.stream()
+            .collect(HashMap::new, (m, v) -> m.put(v.getId(), v.getParentId()), HashMap::putAll);
+        // Assets that have been removed locally must also be retrieved again
+        Set<String> localGatewayAssetIds = getLocalGatewayAssetIds();
+        Set<String> changedAssetIds = assetInfos.stream()
+            .filter(info -> info.isModified()
+                || !localGatewayAssetIds.contains(info.getId())
+                || !Objects.equals(syncedAssetVersions.get(info.getId()), info.getVersion()))
+            .map(GatewayAssetSyncInfo::getId)
+            .collect(Collectors.toSet());
+
+        syncAssetLevels = getAssetLevels(gatewayAssetIdParentIdMap);
+        syncAssetIds = getHierarchicalAssetIds(syncAssetLevels);
+        syncRequestAssetIds = syncAssetIds.stream().filter(changedAssetIds::contains).collect(Collectors.toList());
+        syncResponseTimestamp = e.getTimestamp();
+
+        LOG.info("Gateway delta sync requires " + syncRequestAssetIds.size() + " of " + syncAssetIds.size() + " asset(s) to be retrieved: " + this);
+
+        if (syncRequestAssetIds.isEmpty()) {
+            deleteObsoleteLocalAssets();
+            onInitialSyncComplete();
+            return;
+        }
 
-        // Find obsolete local assets
-        List<Asset<?>> localAssets = assetStorageService.findAll(
+        startAssetBatchSync();
+    }
+
+    /**
+     * Get the hierarchy level of each asset of the supplied asset ID to parent ID map (assets whose parent is not in
+     * the map are at level 0)
+     */
+    protected static Map<String, Integer> getAssetLevels(Map<String, String> assetIdParentIdMap) {
+        Map<String, Integer> assetLevels = new HashMap<>(assetIdParentIdMap.size());
+        assetIdParentIdMap.keySet().forEach(assetId -> {
+            int level = 0;
+            String parentId = assetIdParentIdMap.get(assetId);
+            while (parentId != null) {
+                level++;
+                parentId = assetIdParentIdMap.get(parentId);
+            }
+            assetLevels.put(assetId, level);
+        });
+        return assetLevels;
+    }
+
+    /**
+     * Get the asset IDs of the supplied asset level map ordered by hierarchy level so parents are always merged before
+     * their children
+     */
+    protected static List<String> getHierarchicalAssetIds(Map<String, Integer> assetLevels) {
+        return assetLevels.keySet()
+            .stream()
+            .sorted(Comparator.comparingInt(assetLevels::get))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the gateway asset IDs (i.e. outbound mapped) of the local descendants of this gateway
+     */
+    protected Set<String> getLocalGatewayAssetIds() {
+        return assetStorageService.findAll(
             new AssetQuery()
                 .select(new AssetQuery.Select().excludeAttributes())
                 .recursive(true)
                 .parents(gatewayId)
-        );
+        ).stream()
+            .map(asset -> mapAssetId(gatewayId, asset.getId(), true))
+            .collect(Collectors.toSet());
+    }
 
-        // Delete obsolete assets
-        List<String> obsoleteLocalAssetIds = localAssets.stream()
-            .map(Asset::getId)
-            .filter(id -> !syncAssetIds.contains(mapAssetId(gatewayId, id, true)))
+    protected void deleteObsoleteLocalAssets() {
+
+        // Find and delete obsolete local assets
+        Set<String> gatewayAssetIds = new HashSet<>(syncAssetIds);
+        List<String> obsoleteLocalAssetIds = getLocalGatewayAssetIds().stream()
+            .filter(id -> !gatewayAssetIds.contains(id))
+            .map(id -> mapAssetId(gatewayId, id, false))
             .toList();
 
         if (!obsoleteLocalAssetIds.isEmpty()) {
@@ -638,6 +917,10 @@ public class GatewayConnector {
 
     protected void onInitialSyncComplete() {
         initialSyncInProgress = false;
+        // Older gateways don't supply a timestamp in which case delta sync isn't possible
+        syncWatermark = syncResponseTimestamp;
+        syncCompletedMillis = System.currentTimeMillis();
+        lastGatewayEventTimestamp = 0L;
         cachedAssetEvents.clear();
         cachedAttributeEvents.clear();
 
@@ -646,6 +929,9 @@ public class GatewayConnector {
                 LOG.warning("An error occurred whilst getting the gateway capabilities, assuming no support: " + this);
             }
             tunnellingSupported = response != null && response.isTunnelingSupported();
+            if (response != null && response.isEventBatching()) {
+                LOG.fine("Gateway will send batched attribute events: " + this);
+            }
             publishAttributeEvent(new AttributeEvent(gatewayId, GatewayAsset.TUNNELING_SUPPORTED, tunnellingSupported));
         });
     }
@@ -810,22 +1096,135 @@ public class GatewayConnector {
     }
 
     protected void onAttributeEvent(AttributeEvent e) {
+        if (e.getTimestamp() > lastGatewayEventTimestamp) {
+            lastGatewayEventTimestamp = e.getTimestamp();
+        }
         // Just push the event through the processing chain
         publishAttributeEvent(new AttributeEvent(mapAssetId(gatewayId, e.getId(), false), e.getName(), e.getValue().orElse(null), e.getTimestamp()));
     }
 
+    protected void onAttributeEventBatch(GatewayAttributeEventBatchEvent e) {
+        List<AttributeEvent> events;
+        try {
+            events = GatewayEventBatcher.decode(e);
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, "Failed to decode gateway attribute event batch: " + e + ": " + this, ex);
+            return;
+        }
+
+        if (e.isReplay()) {
+            onReplayedAttributeEvents(events);
+        } else {
+            events.forEach(this::onAttributeEvent);
+        }
+    }
+
+    /**
+     * Replayed events were buffered by the gateway whilst it was disconnected so they are usually older than the
+     * current attribute values and would be discarded as outdated; so store them directly as data points (where the
+     * attribute stores data points) and only push the latest event of each attribute through the processing chain.
+     */
+    protected void onReplayedAttributeEvents(List<AttributeEvent> events) {
+        LOG.fine("Processing " + events.size() + " replayed attribute event(s): " + this);
+        Map<AttributeRef, List<AttributeEvent>> attributeEvents = events.stream()
+            .collect(Collectors.groupingBy(AttributeEvent::getRef, LinkedHashMap::new, Collectors.toList()));
+        Map<String, Asset<?>> assets = assetStorageService.findAll(
+            new AssetQuery().ids(attributeEvents.keySet().stream()
+                .map(ref -> mapAssetId(gatewayId, ref.getId(), false))
+                .distinct()
+                .toArray(String[]::new))
+        ).stream().collect(Collectors.toMap(Asset::getId, asset -> asset));
+
+        attributeEvents.forEach((ref, refEvents) -> {
+            String assetId = mapAssetId(gatewayId, ref.getId(), false);
+            Asset<?> asset = assets.get(assetId);
+            Attribute<?> attribute = asset != null ? asset.getAttribute(ref.getName()).orElse(null) : null;
+
+            if (attribute != null && AssetDatapointService.attributeIsStoreDatapoint(attribute)) {
+                // Events without a timestamp (i.e. tuples with a null timestamp) can't be stored as data points
+                List<ValueDatapoint<?>> datapoints = refEvents.stream()
+                    .filter(ev -> ev.getValue().isPresent() && ev.getTimestamp() > 0)
+                    .<ValueDatapoint<?>>map(ev -> new ValueDatapoint<>(ev.getTimestamp(), ev.getValue().get()))
+                    .collect(Collectors.toList());
+                try {
+                    gatewayService.assetDatapointService.upsertValues(assetId, ref.getName(), datapoints);
+                } catch (Exception ex) {
+                    LOG.log(Level.WARNING, "Failed to store replayed data points for attribute: " + new AttributeRef(assetId, ref.getName()) + ": " + this, ex);
+                }
+            }
+
+            // Latest event wins, an event without a timestamp sorts first (getTimestamp returns 0 rather than null)
+            refEvents.stream()
+                .max(Comparator.comparingLong(AttributeEvent::getTimestamp))
+                .ifPresent(this::onAttributeEvent);
+        });
+    }
+
     protected <T extends Asset<?>> T saveAssetLocally(T asset) {
+        String assetId = asset.getId();
+        long version = asset.getVersion();
+        T mergedAsset = assetStorageService.merge(toLocalAsset(asset), true, true, null);
+        syncedAssetVersions.put(assetId, version);
+        return mergedAsset;
+    }
+
+    /**
+     * Merge the supplied assets in a single transaction, see {@link AssetStorageService#bulkMerge}
+     */
+    protected void saveAssetsLocally(List<Asset<?>> assets) {
+        if (assets.size() == 1) {
+            saveAssetLocally(assets.get(0));
+            return;
+        }
+
+        Map<String, Long> assetVersions = new HashMap<>(assets.size());
+        List<Asset<?>> localAssets = assets.stream()
+            .map(asset -> {
+                assetVersions.put(asset.getId(), asset.getVersion());
+                return toLocalAsset(asset);
+            })
+            .collect(Collectors.toList());
+        assetStorageService.merge(localAssets, true, true, null);
+        syncedAssetVersions.putAll(assetVersions);
+    }
+
+    protected <T extends Asset<?>> T toLocalAsset(T asset) {
         String assetId = asset.getId();
         asset.setId(mapAssetId(gatewayId, assetId, false));
         asset.setParentId(asset.getParentId() != null ? mapAssetId(gatewayId, asset.getParentId(), false) : gatewayId);
         asset.setRealm(realm);
         LOG.fine("Creating/updating gateway asset: Asset ID=" + assetId + ", Asset ID Mapped=" + asset.getId() + ": " + this);
-        return assetStorageService.merge(asset, true, true, null);
+        return asset;
+    }
+
+    /**
+     * Get the fraction of assets merged during the current sync (1 when no sync is in progress)
+     */
+    protected double getSyncProgress() {
+        if (!initialSyncInProgress) {
+            return 1d;
+        }
+        if (syncBatches == null || syncRequestAssetIds == null || syncRequestAssetIds.isEmpty()) {
+            return 0d;
+        }
+        return Math.min(1d, (double) syncMergedAssetCount / syncRequestAssetIds.size());
+    }
+
+    protected void removeMetrics() {
+        if (meterRegistry != null) {
+            meterRegistry.remove(syncBatchTimer);
+            meterRegistry.remove(syncAssetCounter);
+            meterRegistry.remove(syncProgressGauge);
+        }
     }
 
     protected boolean deleteAssetsLocally(List<String> assetIds) {
         LOG.fine("Removing gateway asset: Asset IDs=" + Arrays.toString(assetIds.toArray()) + ": " + this);
-        return assetStorageService.delete(assetIds, true);
+        boolean deleted = assetStorageService.delete(assetIds, true);
+        if (deleted) {
+            assetIds.forEach(id -> syncedAssetVersions.remove(mapAssetId(gatewayId, id, true)));
+        }
+        return deleted;
     }
 
     @Override
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.gateway;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.event.shared.SharedEvent;
+import org.openremote.model.gateway.GatewayAttributeEventBatchEvent;
+import org.openremote.model.syslog.SyslogCategory;
+import org.openremote.model.util.ValueUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.openremote.model.syslog.SyslogCategory.GATEWAY;
+
+/**
+ * Collects outbound {@link AttributeEvent}s of a gateway connection and sends them to the central manager as
+ * {@link GatewayAttributeEventBatchEvent}s; a batch is sent when the batch window has elapsed since the first pending
+ * event or when the maximum batch size is reached. When conflation is enabled then only the latest event for each
+ * {@link AttributeRef} within a batch window is sent. Deleted attribute events are never batched; pending events are
+ * sent first so ordering is preserved.
+ */
+public class GatewayEventBatcher {
+
+    private static final Logger LOG = SyslogCategory.getLogger(GATEWAY, GatewayEventBatcher.class.getName());
+    public static final String METRIC_PREFIX = "or.gateway.client.events";
+    /**
+     * Maximum size of decompressed event data accepted from a gateway; a batch of
+     * {@link GatewayClientService#OR_GATEWAY_EVENT_BATCH_SIZE_MAX_DEFAULT} events is typically well under 1MB so this
+     * only rejects malicious or corrupt payloads (i.e. decompression bombs).
+     */
+    public static int MAX_DECOMPRESSED_BYTES = 32 * 1024 * 1024;
+    protected final long windowMillis;
+    protected final int maxBatchSize;
+    protected final boolean conflate;
+    protected final boolean compress;
+    protected final ScheduledExecutorService executorService;
+    protected final Consumer<String> messageConsumer;
+    protected final List<AttributeEvent> pendingEvents = new ArrayList<>();
+    protected final Map<AttributeRef, Integer> pendingIndexes = new HashMap<>();
+    protected ScheduledFuture<?> flushFuture;
+    protected boolean enabled;
+    protected Counter sentCounter;
+    protected Counter conflatedCounter;
+    protected DistributionSummary batchBytesSummary;
+
+    public GatewayEventBatcher(String realm,
+                               long windowMillis,
+                               int maxBatchSize,
+                               boolean conflate,
+                               boolean compress,
+                               ScheduledExecutorService executorService,
+                               MeterRegistry meterRegistry,
+                               Consumer<String> messageConsumer) {
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.conflate = conflate;
+        this.compress = compress;
+        this.executorService = executorService;
+        this.messageConsumer = messageConsumer;
+
+        if (meterRegistry != null) {
+            Tags tags = Tags.of("realm", realm);
+            sentCounter = meterRegistry.counter(METRIC_PREFIX + ".sent", tags);
+            conflatedCounter = meterRegistry.counter(METRIC_PREFIX + ".conflated", tags);
+            batchBytesSummary = meterRegistry.summary(METRIC_PREFIX + ".batch.bytes", tags);
+        }
+    }
+
+    /**
+     * Enable/disable batching; batching should only be enabled once the central manager has indicated support and
+     * must be disabled when the connection is lost as support must be negotiated again on reconnect.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        if (!enabled) {
+            flush();
+        }
+        this.enabled = enabled;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void send(AttributeEvent event) {
+        if (!enabled || event.isDeleted()) {
+            flush();
+            messageConsumer.accept(SharedEvent.MESSAGE_PREFIX + ValueUtil.asJSON(event).orElse("null"));
+            return;
+        }
+
+        Integer index = conflate ? pendingIndexes.get(event.getRef()) : null;
+
+        if (index != null) {
+            // Keep the position of the original event but only send the newest value
+            if (event.getTimestamp() >= pendingEvents.get(index).getTimestamp()) {
+                pendingEvents.set(index, event);
+            }
+            if (conflatedCounter != null) {
+                conflatedCounter.increment();
+            }
+            return;
+        }
+
+        if (conflate) {
+            pendingIndexes.put(event.getRef(), pendingEvents.size());
+        }
+        pendingEvents.add(event);
+
+        if (pendingEvents.size() >= maxBatchSize) {
+            flush();
+        } else if (flushFuture == null) {
+            flushFuture = executorService.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void flush() {
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+
+        if (pendingEvents.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> tuples = new ArrayList<>(pendingEvents.size());
+        for (AttributeEvent event : pendingEvents) {
+            tuples.add(toTuple(event));
+        }
+        pendingEvents.clear();
+        pendingIndexes.clear();
+
+        try {
+            GatewayAttributeEventBatchEvent batchEvent = createBatchEvent(tuples, compress, false);
+            String message = SharedEvent.MESSAGE_PREFIX + ValueUtil.asJSON(batchEvent).orElse("null");
+            messageConsumer.accept(message);
+
+            if (sentCounter != null) {
+                sentCounter.increment(tuples.size());
+                batchBytesSummary.record(message.length());
+            }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to send gateway attribute event batch of size: " + tuples.size(), e);
+        }
+    }
+
+    public static Object[] toTuple(AttributeEvent event) {
+        return new Object[] {event.getId(), event.getName(), event.getValue().orElse(null), event.getTimestamp()};
+    }
+
+    public static GatewayAttributeEventBatchEvent createBatchEvent(List<Object[]> tuples, boolean compress, boolean replay) {
+        long timestamp = 0L;
+        for (Object[] tuple : tuples) {
+            if (tuple[3] instanceof Number) {
+                timestamp = Math.max(timestamp, ((Number) tuple[3]).longValue());
+            }
+        }
+        return compress
+            ? new GatewayAttributeEventBatchEvent(timestamp, null, compress(ValueUtil.asJSON(tuples).orElse("[]")), replay)
+            : new GatewayAttributeEventBatchEvent(timestamp, tuples, null, replay);
+    }
+
+    /**
+     * Decode the events contained in the supplied batch into {@link AttributeEvent}s
+     */
+    public static List<AttributeEvent> decode(GatewayAttributeEventBatchEvent batchEvent) {
+        List<Object[]> tuples = batchEvent.getEvents();
+
+        if (batchEvent.getCompressedEvents() != null) {
+            tuples = ValueUtil.parse(decompress(batchEvent.getCompressedEvents()), Object[][].class)
+                .map(Arrays::asList)
+                .orElse(null);
+        }
+
+        if (tuples == null) {
+            return Collections.emptyList();
+        }
+
+        List<AttributeEvent> events = new ArrayList<>(tuples.size());
+        for (Object[] tuple : tuples) {
+            AttributeEvent event = fromTuple(tuple);
+            if (event == null) {
+                LOG.fine("Invalid gateway attribute event batch tuple so ignoring: " + Arrays.toString(tuple));
+                continue;
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    public static AttributeEvent fromTuple(Object[] tuple) {
+        if (tuple == null || tuple.length < 4 || !(tuple[0] instanceof String) || !(tuple[1] instanceof String)) {
+            return null;
+        }
+        Long timestamp = tuple[3] instanceof Number ? ((Number) tuple[3]).longValue() : null;
+        return new AttributeEvent((String) tuple[0], (String) tuple[1], tuple[2], timestamp);
+    }
+
+    protected static String compress(String str) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(str.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                outputStream.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    protected static String decompress(String str) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(Base64.getDecoder().decode(str));
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed gateway event data");
+                }
+                if (outputStream.size() + count > MAX_DECOMPRESSED_BYTES) {
+                    throw new IllegalArgumentException("Compressed gateway event data exceeds maximum decompressed size of " + MAX_DECOMPRESSED_BYTES + " bytes");
+                }
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid compressed gateway event data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
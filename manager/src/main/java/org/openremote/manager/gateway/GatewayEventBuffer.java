@@ -0,0 +1,332 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.gateway;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.syslog.SyslogCategory;
+import org.openremote.model.util.ValueUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.model.syslog.SyslogCategory.GATEWAY;
+
+/**
+ * A bounded, disk backed FIFO of outbound {@link AttributeEvent}s used to store events whilst the gateway is
+ * disconnected from the central manager so they can be replayed (with their original timestamps) on reconnect.
+ * <p>
+ * The buffer is a memory mapped append log of fixed size; the header holds the read and write positions so the
+ * buffer survives restarts. Each record is {@code [int length][long timestamp][UTF-8 JSON tuple]} where the tuple is
+ * {@code [assetId, attributeName, value, timestamp]}. When the log reaches the end of the file the unread records are
+ * compacted to the start; if there still isn't room then the oldest records are dropped. Records older than the
+ * maximum age are discarded when read.
+ * <p>
+ * Records are read with {@link #peek} and only removed once {@link #commit} is called so a failed replay can be
+ * retried.
+ */
+public class GatewayEventBuffer implements Closeable {
+
+    private static final Logger LOG = SyslogCategory.getLogger(GATEWAY, GatewayEventBuffer.class.getName());
+    public static final String METRIC_PREFIX = "or.gateway.client.buffer";
+    protected static final int MAGIC = 0x4F524742;
+    protected static final int HEADER_SIZE = 4 + 8 + 8;
+    protected static final int RECORD_HEADER_SIZE = 4 + 8;
+    protected static final int COMPACT_CHUNK_SIZE = 64 * 1024;
+    protected final Path file;
+    protected final long capacity;
+    protected final long maxAgeMillis;
+    protected FileChannel channel;
+    protected MappedByteBuffer buffer;
+    protected long readPosition;
+    protected long writePosition;
+    protected long peekPosition;
+    protected int recordCount;
+    protected int peekCount;
+    protected MeterRegistry meterRegistry;
+    protected List<Meter> meters = new ArrayList<>();
+    protected Counter droppedCounter;
+    protected Counter expiredCounter;
+    protected byte[] compactChunk;
+
+    public GatewayEventBuffer(String realm, Path file, long capacity, long maxAgeMillis, MeterRegistry meterRegistry) throws IOException {
+        if (capacity <= HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Gateway event buffer capacity is too small: " + capacity);
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            // A single mapped region is limited to 2GB
+            throw new IllegalArgumentException("Gateway event buffer capacity is too large: " + capacity);
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.maxAgeMillis = maxAgeMillis;
+        this.meterRegistry = meterRegistry;
+
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() != capacity) {
+            // Buffer size has been changed so existing contents cannot be trusted
+            channel.truncate(0);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        load();
+
+        if (meterRegistry != null) {
+            Tags tags = Tags.of("realm", realm);
+            meters.add(Gauge.builder(METRIC_PREFIX + ".events", this, GatewayEventBuffer::size).tags(tags).register(meterRegistry));
+            meters.add(Gauge.builder(METRIC_PREFIX + ".bytes", this, GatewayEventBuffer::getUsedBytes).tags(tags).register(meterRegistry));
+            droppedCounter = meterRegistry.counter(METRIC_PREFIX + ".dropped", tags);
+            expiredCounter = meterRegistry.counter(METRIC_PREFIX + ".expired", tags);
+            meters.add(droppedCounter);
+            meters.add(expiredCounter);
+        }
+    }
+
+    protected void load() {
+        readPosition = buffer.getInt(0) == MAGIC ? buffer.getLong(4) : -1;
+        writePosition = buffer.getInt(0) == MAGIC ? buffer.getLong(12) : -1;
+
+        if (readPosition < HEADER_SIZE || writePosition < readPosition || writePosition > capacity) {
+            readPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+            buffer.putInt(0, MAGIC);
+            writeHeader();
+        }
+
+        // Count records and check integrity, anything after a corrupt record is discarded
+        recordCount = 0;
+        long position = readPosition;
+        while (position < writePosition) {
+            int length = buffer.getInt((int) position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > writePosition) {
+                LOG.warning("Gateway event buffer is corrupt so discarding " + (writePosition - position) + " bytes: " + file);
+                writePosition = position;
+                writeHeader();
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+            recordCount++;
+        }
+
+        peekPosition = readPosition;
+        peekCount = 0;
+
+        if (recordCount > 0) {
+            LOG.info("Gateway event buffer contains " + recordCount + " event(s) from a previous run: " + file);
+        }
+    }
+
+    /**
+     * Append the event to the buffer dropping the oldest events if there isn't enough room
+     */
+    public synchronized void append(AttributeEvent event) {
+        if (buffer == null) {
+            return;
+        }
+
+        byte[] bytes = ValueUtil.asJSON(GatewayEventBatcher.toTuple(event)).orElse("null").getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER_SIZE + bytes.length;
+
+        if (recordSize > capacity - HEADER_SIZE) {
+            LOG.info("Attribute event is too large for the gateway event buffer so dropping it: " + event.getRef());
+            if (droppedCounter != null) {
+                droppedCounter.increment();
+            }
+            return;
+        }
+
+        if (writePosition + recordSize > capacity) {
+            compact();
+            while (writePosition + recordSize > capacity && recordCount > 0) {
+                dropOldest();
+            }
+            compact();
+        }
+
+        int position = (int) writePosition;
+        buffer.putInt(position, bytes.length);
+        buffer.putLong(position + 4, event.getTimestamp());
+        buffer.put(position + RECORD_HEADER_SIZE, bytes);
+        writePosition += recordSize;
+        recordCount++;
+        writeHeader();
+    }
+
+    /**
+     * Read up to the specified number of events from the head of the buffer without removing them; expired events are
+     * removed. Calling this again without calling {@link #commit} returns the subsequent events.
+     */
+    public synchronized List<AttributeEvent> peek(int maxEvents, long currentTimeMillis) {
+        List<AttributeEvent> events = new ArrayList<>(Math.min(maxEvents, recordCount));
+
+        if (buffer == null) {
+            return events;
+        }
+
+        while (events.size() < maxEvents && peekPosition < writePosition) {
+            int position = (int) peekPosition;
+            int length = buffer.getInt(position);
+            long timestamp = buffer.getLong(position + 4);
+            peekPosition += RECORD_HEADER_SIZE + length;
+            peekCount++;
+
+            if (maxAgeMillis > 0 && timestamp < currentTimeMillis - maxAgeMillis) {
+                if (expiredCounter != null) {
+                    expiredCounter.increment();
+                }
+                continue;
+            }
+
+            byte[] bytes = new byte[length];
+            buffer.get(position + RECORD_HEADER_SIZE, bytes);
+            AttributeEvent event = ValueUtil.parse(new String(bytes, StandardCharsets.UTF_8), Object[].class)
+                .map(GatewayEventBatcher::fromTuple)
+                .orElse(null);
+
+            if (event != null) {
+                events.add(event);
+            }
+        }
+
+        return events;
+    }
+
+    /**
+     * Remove all events returned by {@link #peek} since the last commit
+     */
+    public synchronized void commit() {
+        readPosition = peekPosition;
+        recordCount -= peekCount;
+        peekCount = 0;
+
+        if (readPosition == writePosition) {
+            readPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+            peekPosition = HEADER_SIZE;
+        }
+
+        writeHeader();
+    }
+
+    /**
+     * Discard events returned by {@link #peek} since the last commit so they will be returned again
+     */
+    public synchronized void rollback() {
+        peekPosition = readPosition;
+        peekCount = 0;
+    }
+
+    public synchronized int size() {
+        return recordCount;
+    }
+
+    public synchronized long getUsedBytes() {
+        return writePosition - readPosition;
+    }
+
+    public synchronized boolean isEmpty() {
+        return recordCount == 0;
+    }
+
+    protected void dropOldest() {
+        boolean peeked = readPosition < peekPosition;
+        int length = buffer.getInt((int) readPosition);
+        readPosition += RECORD_HEADER_SIZE + length;
+        recordCount--;
+        if (droppedCounter != null) {
+            droppedCounter.increment();
+        }
+        if (peeked) {
+            peekCount--;
+        } else {
+            peekPosition = readPosition;
+        }
+    }
+
+    /**
+     * Move unread records to the start of the log; the records are copied in place in chunks from the start as the
+     * destination is always before the source
+     */
+    protected void compact() {
+        if (readPosition == HEADER_SIZE) {
+            return;
+        }
+        int length = (int) (writePosition - readPosition);
+        if (compactChunk == null) {
+            compactChunk = new byte[COMPACT_CHUNK_SIZE];
+        }
+        for (int copied = 0; copied < length; copied += COMPACT_CHUNK_SIZE) {
+            int chunkLength = Math.min(COMPACT_CHUNK_SIZE, length - copied);
+            buffer.get((int) readPosition + copied, compactChunk, 0, chunkLength);
+            buffer.put(HEADER_SIZE + copied, compactChunk, 0, chunkLength);
+        }
+        peekPosition -= readPosition - HEADER_SIZE;
+        readPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE + length;
+        writeHeader();
+    }
+
+    protected void writeHeader() {
+        buffer.putLong(4, readPosition);
+        buffer.putLong(12, writePosition);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (meterRegistry != null) {
+            meters.forEach(meterRegistry::remove);
+            meters.clear();
+        }
+
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Failed to close gateway event buffer: " + file, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "file=" + file +
+            ", capacity=" + capacity +
+            ", events=" + recordCount +
+            '}';
+    }
+}
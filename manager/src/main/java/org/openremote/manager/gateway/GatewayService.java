@@ -19,6 +19,7 @@
  */
 package org.openremote.manager.gateway;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityManager;
 import org.apache.camel.Exchange;
 import org.apache.camel.Predicate;
@@ -28,6 +29,7 @@ import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetProcessingException;
 import org.openremote.manager.asset.AssetProcessingService;
 import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.datapoint.AssetDatapointService;
 import org.openremote.manager.event.AttributeEventInterceptor;
 import org.openremote.manager.event.ClientEventService;
 import org.openremote.manager.rules.RulesService;
@@ -67,6 +69,7 @@ import java.util.stream.Collectors;
 
 import static org.apache.camel.builder.PredicateBuilder.or;
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
 import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.util.MapAccess.getString;
@@ -104,6 +107,8 @@ public class GatewayService extends RouteBuilder implements ContainerService {
     protected RulesService rulesService;
     protected ScheduledExecutorService executorService;
     protected TimerService timerService;
+    protected MeterRegistry meterRegistry;
+    protected AssetDatapointService assetDatapointService;
     protected String tunnelSSHHostname;
     protected String tunnelHostname;
     protected int tunnelSSHPort;
@@ -121,44 +126,50 @@ public class GatewayService extends RouteBuilder implements ContainerService {
     protected Map<String, GatewayTunnelInfo> tunnelInfos = new ConcurrentHashMap<>();
     protected AtomicInteger pendingTunnelCounter = new AtomicInteger();
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Filters out {@link PersistenceEvent}s for a gateway or its descendants; when the exchange is a batch of events
+     * (see {@link org.openremote.container.persistence.PersistenceService#publishPersistenceEvents}) the body is
+     * replaced with the events that aren't for a gateway and the exchange only matches if there are any.
+     */
     public static Predicate isNotForGateway(GatewayService gatewayService) {
         return exchange -> {
-            if (isPersistenceEventForEntityType(Asset.class).matches(exchange)) {
-                PersistenceEvent<Asset<?>> persistenceEvent = (PersistenceEvent<Asset<?>>)exchange.getIn().getBody(PersistenceEvent.class);
-                Asset<?> asset = persistenceEvent.getEntity();
-
-                // Check if asset parent is a gateway or a gateway descendant, if so ignore it
-                // Need to look at parent as this asset may not have been acknowledged by the gateway service yet
-                return gatewayService.getLocallyRegisteredGatewayId(asset.getId(), asset.getParentId()) == null;
+            if (!(exchange.getIn().getBody() instanceof List<?>)) {
+                return getPersistenceEvents(exchange).stream().allMatch(persistenceEvent -> isNotForGateway(gatewayService, persistenceEvent));
             }
-            if (isPersistenceEventForEntityType(Realm.class).matches(exchange)) {
-                PersistenceEvent<Realm> persistenceEvent = (PersistenceEvent<Realm>)exchange.getIn().getBody(PersistenceEvent.class);
-                Realm realm = persistenceEvent.getEntity();
+            List<PersistenceEvent<?>> persistenceEvents = getPersistenceEvents(exchange).stream()
+                .filter(persistenceEvent -> isNotForGateway(gatewayService, persistenceEvent))
+                .toList();
+            exchange.getIn().setBody(persistenceEvents);
+            return !persistenceEvents.isEmpty();
+        };
+    }
 
-                if (persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE) {
-                    // Ruleset won't exist in storage so check cache
-                    return gatewayService.realmIds.remove(realm.getId());
-                }
-                Realm localRealm = gatewayService.identityProvider.getRealm(realm.getName());
-                if (localRealm != null && localRealm.getId().equals(realm.getId())) {
-                    gatewayService.realmIds.add(realm.getId());
-                    return true;
-                }
-                return false;
+    protected static boolean isNotForGateway(GatewayService gatewayService, PersistenceEvent<?> persistenceEvent) {
+        if (persistenceEvent.getEntity() instanceof Asset<?> asset) {
+            // Check if asset parent is a gateway or a gateway descendant, if so ignore it
+            // Need to look at parent as this asset may not have been acknowledged by the gateway service yet
+            return gatewayService.getLocallyRegisteredGatewayId(asset.getId(), asset.getParentId()) == null;
+        }
+        if (persistenceEvent.getEntity() instanceof Realm realm) {
+            if (persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE) {
+                // Ruleset won't exist in storage so check cache
+                return gatewayService.realmIds.remove(realm.getId());
             }
-            if (isPersistenceEventForEntityType(Ruleset.class).matches(exchange)) {
-                PersistenceEvent<Ruleset> persistenceEvent = (PersistenceEvent<Ruleset>)exchange.getIn().getBody(PersistenceEvent.class);
-                Ruleset ruleset = persistenceEvent.getEntity();
-
-                if (persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE) {
-                    // Ruleset won't exist in storage so need to check engines
-                    return gatewayService.rulesService.isRulesetKnown(ruleset);
-                }
-                return gatewayService.rulesetStorageService.find(ruleset.getClass(), ruleset.getId()) != null;
+            Realm localRealm = gatewayService.identityProvider.getRealm(realm.getName());
+            if (localRealm != null && localRealm.getId().equals(realm.getId())) {
+                gatewayService.realmIds.add(realm.getId());
+                return true;
             }
-            return true;
-        };
+            return false;
+        }
+        if (persistenceEvent.getEntity() instanceof Ruleset ruleset) {
+            if (persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE) {
+                // Ruleset won't exist in storage so need to check engines
+                return gatewayService.rulesService.isRulesetKnown(ruleset);
+            }
+            return gatewayService.rulesetStorageService.find(ruleset.getClass(), ruleset.getId()) != null;
+        }
+        return true;
     }
 
     protected static boolean isGatewayClientId(String clientId) {
@@ -184,6 +195,8 @@ public class GatewayService extends RouteBuilder implements ContainerService {
         rulesetStorageService = container.getService(RulesetStorageService.class);
         rulesService = container.getService(RulesService.class);
         timerService = container.getService(TimerService.class);
+        meterRegistry = container.getMeterRegistry();
+        assetDatapointService = container.getService(AssetDatapointService.class);
 
         container.getService(ManagerWebService.class).addApiSingleton(
                 new GatewayServiceResourceImpl(timerService, identityService, this, assetStorageService)
@@ -287,6 +300,7 @@ public class GatewayService extends RouteBuilder implements ContainerService {
         tunnelInfos.clear();
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public void configure() throws Exception {
 
@@ -294,44 +308,45 @@ public class GatewayService extends RouteBuilder implements ContainerService {
             from(PERSISTENCE_TOPIC)
                 .routeId("Persistence-GatewayAsset")
                 .filter(isPersistenceEventForEntityType(Asset.class))
-                .process(exchange -> {
-                    @SuppressWarnings("unchecked")
-                    PersistenceEvent<Asset<?>> persistenceEvent = exchange.getIn().getBody(PersistenceEvent.class);
-                    Asset<?> eventAsset = persistenceEvent.getEntity();
+                .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent ->
+                    onAssetPersistenceEvent((PersistenceEvent<Asset<?>>) persistenceEvent)));
+        }
+    }
 
-                    if (!(eventAsset instanceof GatewayAsset) && gatewayConnectorMap.isEmpty()) {
-                        return;
-                    }
+    protected void onAssetPersistenceEvent(PersistenceEvent<Asset<?>> persistenceEvent) {
+        Asset<?> eventAsset = persistenceEvent.getEntity();
 
-                    // Only gateways locally registered to this manager are of interest or gateway descendant assets
-                    if (eventAsset instanceof GatewayAsset
-                        && (isLocallyRegisteredGateway(eventAsset.getId()) || getLocallyRegisteredGatewayId(eventAsset.getId(), eventAsset.getParentId()) == null)) {
+        if (!(eventAsset instanceof GatewayAsset) && gatewayConnectorMap.isEmpty()) {
+            return;
+        }
 
-                        if (persistenceEvent.getCause() != PersistenceEvent.Cause.DELETE) {
-                            eventAsset = assetStorageService.find(eventAsset.getId(), true);
-                            if (eventAsset == null) {
-                                return;
-                            }
-                        }
+        // Only gateways locally registered to this manager are of interest or gateway descendant assets
+        if (eventAsset instanceof GatewayAsset
+            && (isLocallyRegisteredGateway(eventAsset.getId()) || getLocallyRegisteredGatewayId(eventAsset.getId(), eventAsset.getParentId()) == null)) {
 
-                        processGatewayChange((GatewayAsset)eventAsset, persistenceEvent);
+            if (persistenceEvent.getCause() != PersistenceEvent.Cause.DELETE) {
+                eventAsset = assetStorageService.find(eventAsset.getId(), true);
+                if (eventAsset == null) {
+                    return;
+                }
+            }
 
-                    } else {
+            processGatewayChange((GatewayAsset)eventAsset, persistenceEvent);
 
-                        String gatewayId = getLocallyRegisteredGatewayId(eventAsset.getId(), eventAsset.getParentId());
-                        if (gatewayId != null) {
+        } else {
 
-                            if (persistenceEvent.getCause() != PersistenceEvent.Cause.DELETE) {
-                                eventAsset = assetStorageService.find(eventAsset.getId(), true);
-                                if (eventAsset == null) {
-                                    return;
-                                }
-                            }
+            String gatewayId = getLocallyRegisteredGatewayId(eventAsset.getId(), eventAsset.getParentId());
+            if (gatewayId != null) {
 
-                            processGatewayChildAssetChange(gatewayId, eventAsset, persistenceEvent);
-                        }
+                if (persistenceEvent.getCause() != PersistenceEvent.Cause.DELETE) {
+                    eventAsset = assetStorageService.find(eventAsset.getId(), true);
+                    if (eventAsset == null) {
+                        return;
                     }
-                });
+                }
+
+                processGatewayChildAssetChange(gatewayId, eventAsset, persistenceEvent);
+            }
         }
     }
 
@@ -769,6 +784,7 @@ public class GatewayService extends RouteBuilder implements ContainerService {
 
                 if (connector != null) {
                     connector.disconnect();
+                    connector.removeMetrics();
                 }
 
                 removeGatewayServiceUser(gateway);
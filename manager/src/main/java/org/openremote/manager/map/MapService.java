@@ -42,6 +42,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.*;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -167,6 +169,15 @@ public class MapService implements ContainerService {
         return ContainerService.DEFAULT_PRIORITY;
     }
 
+    /**
+     * Only reads local files and registers handlers/resources during init and start so doesn't need to wait for other
+     * services.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getStartupDependencies() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void init(Container container) throws Exception {
 
@@ -19,6 +19,8 @@
  */
 package org.openremote.manager.mqtt;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.activemq.artemis.core.config.impl.SecurityConfiguration;
 import org.apache.activemq.artemis.core.security.CheckType;
 import org.apache.activemq.artemis.core.security.Role;
@@ -37,6 +39,8 @@ import javax.security.auth.Subject;
 import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,6 +54,12 @@ import static org.openremote.model.syslog.SyslogCategory.API;
  * dynamic {@link org.keycloak.adapters.KeycloakDeployment} resolver.
  *
  * Unfortunately lots of private methods and fields in super class.
+ * <p>
+ * Artemis' own authorization cache cannot be used (see {@link MQTTBrokerService#init}) so successful authorisation
+ * decisions are cached here per connection (keyed on the raw address) to avoid topic parsing and handler dispatch for
+ * every message from high rate publishers; only grants are cached so a denied topic that later becomes accessible is
+ * not affected. The {@link MQTTBrokerService} invalidates a connection's entries when it disconnects, re-authenticates,
+ * or when the user, its asset links or its realm change; entries also expire after a fixed period.
  */
 public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
 
@@ -57,6 +67,7 @@ public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
     protected AuthorisationService authorisationService;
     protected MQTTBrokerService brokerService;
     protected Function<String, KeycloakDeployment> deploymentResolver;
+    protected Cache<Object, ConnectionGrants> authorizationCache;
 
     // Duplicate fields due to being private in super class
     protected String certificateConfigName;
@@ -65,13 +76,32 @@ public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
     protected SecurityConfiguration certificateConfig;
     protected ActiveMQServer server;
 
+    /**
+     * Addresses a connection has been authorised to publish and subscribe to
+     */
+    protected static class ConnectionGrants {
+        protected final Set<String> publish = ConcurrentHashMap.newKeySet();
+        protected final Set<String> subscribe = ConcurrentHashMap.newKeySet();
+    }
+
     public ActiveMQORSecurityManager(AuthorisationService authorisationService, MQTTBrokerService brokerService, Function<String, KeycloakDeployment> deploymentResolver, String configurationName, SecurityConfiguration configuration) {
+        this(authorisationService, brokerService, deploymentResolver, configurationName, configuration, MQTTBrokerService.MQTT_AUTHORIZATION_CACHE_SIZE_DEFAULT, MQTTBrokerService.MQTT_AUTHORIZATION_CACHE_EXPIRY_MILLIS_DEFAULT);
+    }
+
+    public ActiveMQORSecurityManager(AuthorisationService authorisationService, MQTTBrokerService brokerService, Function<String, KeycloakDeployment> deploymentResolver, String configurationName, SecurityConfiguration configuration, int authorizationCacheSize, long authorizationCacheExpiryMillis) {
         super(configurationName, configuration);
         this.authorisationService = authorisationService;
         this.brokerService = brokerService;
         this.deploymentResolver = deploymentResolver;
         this.configName = configurationName;
         this.config = configuration;
+
+        if (authorizationCacheSize > 0) {
+            authorizationCache = CacheBuilder.newBuilder()
+                .maximumSize(authorizationCacheSize)
+                .expireAfterWrite(authorizationCacheExpiryMillis, TimeUnit.MILLISECONDS)
+                .build();
+        }
     }
 
     @Override
@@ -136,11 +166,16 @@ public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
     public boolean authorize(Subject subject, Set<Role> roles, CheckType checkType, String address) {
 
         return switch (checkType) {
-            case SEND -> verifyRights(subject, address, true);
+            case SEND -> verifyRightsCached(subject, address, true);
             case CONSUME -> {
+                // Address is of the form {address}::{queue}; queue is {clientId}.{address} or {group}.{address} for a
+                // shared subscription
                 int index = address.indexOf("::");
+                String queueName = address.substring(index + 2);
                 address = address.substring(0, index);
-                yield verifyRights(subject, address, false);
+                RemotingConnection connection = RemotingConnectionPrincipal.getRemotingConnectionFromSubject(subject);
+                String sharedGroup = MQTTBrokerService.getSharedSubscriptionGroup(connection, address, queueName);
+                yield verifyRightsCached(subject, sharedGroup != null ? Topic.toSharedTopic(sharedGroup, address) : address, false);
             }
             case CREATE_ADDRESS, DELETE_ADDRESS, CREATE_DURABLE_QUEUE, DELETE_DURABLE_QUEUE, CREATE_NON_DURABLE_QUEUE, DELETE_NON_DURABLE_QUEUE ->
                 // All MQTT clients must be able to create addresses and queues (every session and subscription will create a queue within the topic address)
@@ -149,13 +184,74 @@ public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
         };
     }
 
+    protected boolean verifyRightsCached(Subject subject, String address, boolean isWrite) {
+        RemotingConnection connection = authorizationCache != null ? RemotingConnectionPrincipal.getRemotingConnectionFromSubject(subject) : null;
+
+        if (connection == null) {
+            return verifyRights(subject, address, isWrite);
+        }
+
+        Object connectionID = connection.getID();
+        ConnectionGrants grants = authorizationCache.getIfPresent(connectionID);
+
+        if (grants != null && (isWrite ? grants.publish : grants.subscribe).contains(address)) {
+            return true;
+        }
+
+        boolean result = verifyRights(subject, address, isWrite);
+
+        // Subject may have changed whilst verifying in which case the grant must not be cached
+        if (result && connection.getSubject() == subject) {
+            try {
+                grants = authorizationCache.get(connectionID, ConnectionGrants::new);
+                (isWrite ? grants.publish : grants.subscribe).add(address);
+            } catch (Exception e) {
+                LOG.log(Level.FINE, "Failed to cache authorisation decision: " + connectionToString(connection), e);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove any cached authorisation decisions for the specified connection
+     */
+    public void invalidateAuthorizationCache(RemotingConnection connection) {
+        if (authorizationCache != null && connection != null) {
+            authorizationCache.invalidate(connection.getID());
+        }
+    }
+
+    /**
+     * Remove cached authorisation decisions of every connection for addresses that reference the specified asset
+     */
+    public void invalidateAuthorizationCache(String assetId) {
+        if (authorizationCache != null && assetId != null) {
+            authorizationCache.asMap().values().forEach(grants -> {
+                grants.publish.removeIf(address -> address.contains(assetId));
+                grants.subscribe.removeIf(address -> address.contains(assetId));
+            });
+        }
+    }
+
+    /**
+     * Remove all cached authorisation decisions
+     */
+    public void invalidateAuthorizationCache() {
+        if (authorizationCache != null) {
+            authorizationCache.invalidateAll();
+        }
+    }
+
     @SuppressWarnings({"rawtypes", "unchecked"})
     protected boolean verifyRights(Subject subject, String address, boolean isWrite) {
         Topic topic;
 
         try {
-            // Get MQTT topic from address
-            topic = Topic.fromAddress(address, brokerService.getWildcardConfiguration());
+            // Get MQTT topic from address (shared subscription addresses are prefixed with the shared group)
+            topic = address.startsWith(Topic.SHARED_SUBSCRIPTION_PREFIX)
+                ? Topic.fromSharedAddress(address, brokerService.getWildcardConfiguration())
+                : Topic.fromAddress(address, brokerService.getWildcardConfiguration());
         } catch (IllegalArgumentException e) {
             LOG.log(Level.FINE, "Invalid topic provided by client '" + address, e);
             return false;
@@ -176,28 +272,24 @@ public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
             return false;
         }
 
-        if (isWrite && topic.hasWildcard()) {
+        if (isWrite && (topic.hasWildcard() || topic.isShared())) {
             return false;
         }
 
         // See if a custom handler wants to handle authorisation for this topic pub/sub
-        for (MQTTHandler handler : brokerService.getCustomHandlers()) {
-            if (handler.handlesTopic(topic)) {
-                LOG.finest("Passing topic to handler for " + (isWrite ? "pub" : "sub") + ": handler=" + handler.getName() + ", topic=" + topic + ", " + connectionToString(connection));
-                boolean result;
-
-                if (isWrite) {
-                    result = handler.checkCanPublish(connection, securityContext, topic);
-                } else {
-                    result = handler.checkCanSubscribe(connection, securityContext, topic);
-                }
-                if (result) {
-                    LOG.finest("Handler '" + handler.getName() + "' has authorised " + (isWrite ? "pub" : "sub") + ": topic=" + topic + ", " + connectionToString(connection));
-                } else {
-                    LOG.finest("Handler '" + handler.getName() + "' has not authorised " + (isWrite ? "pub" : "sub") + ": topic=" + topic + ", " + connectionToString(connection));
-                }
-                return result;
+        MQTTHandler handler = brokerService.getTopicHandler(topic);
+
+        if (handler != null) {
+            LOG.finest(() -> "Passing topic to handler for " + (isWrite ? "pub" : "sub") + ": handler=" + handler.getName() + ", topic=" + topic + ", " + connectionToString(connection));
+            boolean result;
+
+            if (isWrite) {
+                result = handler.checkCanPublish(connection, securityContext, topic);
+            } else {
+                result = handler.checkCanSubscribe(connection, securityContext, topic);
             }
+            LOG.finest(() -> "Handler '" + handler.getName() + "' has " + (result ? "" : "not ") + "authorised " + (isWrite ? "pub" : "sub") + ": topic=" + topic + ", " + connectionToString(connection));
+            return result;
         }
 
         LOG.info("Un-supported request " + (isWrite ? "pub" : "sub") + ": topic=" + topic + ", " + connectionToString(connection));
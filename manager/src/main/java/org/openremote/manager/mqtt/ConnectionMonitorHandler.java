@@ -56,6 +56,7 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
 import static org.openremote.manager.gateway.GatewayService.isNotForGateway;
 import static org.openremote.model.syslog.SyslogCategory.API;
@@ -96,8 +97,8 @@ public class ConnectionMonitorHandler extends MQTTHandler {
                         .routeId("Persistence-MQTTConnectedAttributes")
                         .filter(isPersistenceEventForEntityType(Asset.class))
                         .filter(isNotForGateway(gatewayService))
-                        .process(exchange -> {
-                            PersistenceEvent<Asset<?>> persistenceEvent = (PersistenceEvent<Asset<?>>)exchange.getIn().getBody(PersistenceEvent.class);
+                        .process(exchange -> getPersistenceEvents(exchange).forEach(event -> {
+                            PersistenceEvent<Asset<?>> persistenceEvent = (PersistenceEvent<Asset<?>>)event;
 
                             if (persistenceEvent.hasPropertyChanged("attributes")) {
                                 Asset<?> asset = persistenceEvent.getEntity();
@@ -120,7 +121,7 @@ public class ConnectionMonitorHandler extends MQTTHandler {
                                     addSessionAttributes(asset.getRealm(), connectedAttributes);
                                 }
                             }
-                        })
+                        }))
                         .end();
                 }
             }
@@ -212,6 +213,11 @@ public class ConnectionMonitorHandler extends MQTTHandler {
         return false;
     }
 
+    @Override
+    public Collection<String> getTopicPatterns() {
+        return Collections.emptyList();
+    }
+
     @Override
     protected Logger getLogger() {
         return LOG;
@@ -29,6 +29,7 @@ import org.apache.activemq.artemis.utils.collections.ConcurrentHashSet;
 import org.apache.camel.builder.RouteBuilder;
 import org.keycloak.KeycloakSecurityContext;
 import org.openremote.container.security.AuthContext;
+import org.openremote.container.security.keycloak.KeycloakIdentityProvider;
 import org.openremote.manager.event.ClientEventService;
 import org.openremote.model.Container;
 import org.openremote.model.PersistenceEvent;
@@ -47,13 +48,17 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 import static org.apache.camel.support.builder.PredicateBuilder.and;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.manager.asset.AssetProcessingService.ATTRIBUTE_EVENT_ROUTE_CONFIG_ID;
 import static org.openremote.manager.event.ClientEventService.*;
 import static org.openremote.manager.mqtt.MQTTBrokerService.getConnectionIDString;
@@ -63,6 +68,18 @@ import static org.openremote.model.syslog.SyslogCategory.API;
 /**
  * This handler uses the {@link ClientEventService} to publish and subscribe to asset and attribute events; converting
  * subscription topics into {@link AssetFilter}s to ensure only the correct events are returned for the subscription.
+ * <p>
+ * Attribute values can be written one at a time using {@value #ATTRIBUTE_VALUE_WRITE_TOPIC} or many at once using
+ * {@value #ATTRIBUTE_VALUES_WRITE_TOPIC} with a JSON array of {@code [assetId, attributeName, value, timestamp]}
+ * tuples as the payload (timestamp is optional). Written values are passed straight to the {@link ClientEventService};
+ * setting {@link #MQTT_PUBLISH_BATCH_MILLIS} to a positive value instead collects them per connection for up to that
+ * long (or until {@link #MQTT_PUBLISH_BATCH_SIZE} events are pending) and passes them on as a single batch, which
+ * trades latency for throughput with high rate publishers.
+ * <p>
+ * MQTT 5 shared subscriptions ({@code $share/{group}/{realm}/{group}/...}) are supported for asset and attribute
+ * topics; the client ID token of the topic must be the group name and all members of a group must be the same user.
+ * A single event subscription is created for the whole group (using a session of its own) so each event is only
+ * published once and the broker then delivers it to one of the members.
  */
 public class DefaultMQTTHandler extends MQTTHandler {
 
@@ -89,6 +106,12 @@ public class DefaultMQTTHandler extends MQTTHandler {
     public static final String ATTRIBUTE_TOPIC = "attribute";
     public static final String ATTRIBUTE_VALUE_TOPIC = "attributevalue";
     public static final String ATTRIBUTE_VALUE_WRITE_TOPIC = "writeattributevalue";
+    public static final String ATTRIBUTE_VALUES_WRITE_TOPIC = "writeattributevalues";
+    public static final String MQTT_PUBLISH_BATCH_MILLIS = "MQTT_PUBLISH_BATCH_MILLIS";
+    public static final int MQTT_PUBLISH_BATCH_MILLIS_DEFAULT = 0;
+    public static final String MQTT_PUBLISH_BATCH_SIZE = "MQTT_PUBLISH_BATCH_SIZE";
+    public static final int MQTT_PUBLISH_BATCH_SIZE_DEFAULT = 500;
+    public static final String SHARED_SUBSCRIPTION_SESSION_PREFIX = "mqtt-share:";
     private static final Logger LOG = SyslogCategory.getLogger(API, DefaultMQTTHandler.class);
     protected final ConcurrentMap<String, SubscriberInfo> connectionSubscriberInfoMap = new ConcurrentHashMap<>();
     // An authorisation cache for publishing
@@ -97,6 +120,38 @@ public class DefaultMQTTHandler extends MQTTHandler {
         .maximumSize(100000)
         .expireAfterWrite(300000, TimeUnit.MILLISECONDS)
         .build();
+    protected final ConcurrentMap<String, PublishBatch> connectionPublishBatchMap = new ConcurrentHashMap<>();
+    protected final Map<String, SharedSubscription> sharedSubscriptionMap = new HashMap<>();
+    protected ScheduledExecutorService executorService;
+    protected int publishBatchMillis;
+    protected int publishBatchSize;
+
+    /**
+     * Attribute events written by a connection that are waiting to be sent
+     */
+    protected static class PublishBatch {
+        protected Map<String, Object> headers;
+        protected String realm;
+        protected List<AttributeEvent> events = new ArrayList<>();
+        protected ScheduledFuture<?> flushFuture;
+        protected boolean removed;
+    }
+
+    /**
+     * A shared subscription group for a topic filter and the connections that are members of it
+     */
+    protected static class SharedSubscription {
+        protected final String key;
+        protected final String sessionKey;
+        protected final String userId;
+        protected final Set<String> connectionIDs = new HashSet<>();
+
+        protected SharedSubscription(String key, String userId) {
+            this.key = key;
+            this.sessionKey = SHARED_SUBSCRIPTION_SESSION_PREFIX + key;
+            this.userId = userId;
+        }
+    }
 
     @Override
     public int getPriority() {
@@ -107,6 +162,9 @@ public class DefaultMQTTHandler extends MQTTHandler {
     @Override
     public void init(Container container, Configuration serverConfiguration) throws Exception {
         super.init(container, serverConfiguration);
+        executorService = container.getExecutorService();
+        publishBatchMillis = getInteger(container.getConfig(), MQTT_PUBLISH_BATCH_MILLIS, MQTT_PUBLISH_BATCH_MILLIS_DEFAULT);
+        publishBatchSize = Math.max(1, getInteger(container.getConfig(), MQTT_PUBLISH_BATCH_SIZE, MQTT_PUBLISH_BATCH_SIZE_DEFAULT));
         messageBrokerService.getContext().addRoutes(new RouteBuilder() {
             @Override
             public void configure() throws Exception {
@@ -161,6 +219,7 @@ public class DefaultMQTTHandler extends MQTTHandler {
     @Override
     public void onDisconnect(RemotingConnection connection) {
         super.onDisconnect(connection);
+        flushPublishBatch(getConnectionIDString(connection));
 
         Map<String, Object> headers = prepareHeaders(null, connection);
         headers.put(SESSION_CLOSE, true);
@@ -170,11 +229,13 @@ public class DefaultMQTTHandler extends MQTTHandler {
             .asyncSend();
         connectionSubscriberInfoMap.remove(getConnectionIDString(connection));
         authorizationCache.invalidate(getConnectionIDString(connection));
+        removeSharedSubscriptionMember(getConnectionIDString(connection), null);
     }
 
     @Override
     public void onConnectionLost(RemotingConnection connection) {
         super.onConnectionLost(connection);
+        flushPublishBatch(getConnectionIDString(connection));
         Map<String, Object> headers = prepareHeaders(null, connection);
         headers.put(SESSION_CLOSE_ERROR, true);
         messageBrokerService.getFluentProducerTemplate()
@@ -182,11 +243,28 @@ public class DefaultMQTTHandler extends MQTTHandler {
             .to(CLIENT_INBOUND_QUEUE)
             .asyncSend();
         connectionSubscriberInfoMap.remove(getConnectionIDString(connection));
+        removeSharedSubscriptionMember(getConnectionIDString(connection), null);
     }
 
     @Override
     public boolean topicMatches(Topic topic) {
-        return isAttributeTopic(topic) || isAssetTopic(topic) || isAttributeValueWriteTopic(topic);
+        return isAttributeTopic(topic) || isAssetTopic(topic) || isAttributeValueWriteTopic(topic) || isAttributeValuesWriteTopic(topic);
+    }
+
+    @Override
+    public Collection<String> getTopicPatterns() {
+        return Arrays.asList(
+            "+/+/" + ASSET_TOPIC + "/#",
+            "+/+/" + ATTRIBUTE_TOPIC + "/#",
+            "+/+/" + ATTRIBUTE_VALUE_TOPIC + "/#",
+            "+/+/" + ATTRIBUTE_VALUE_WRITE_TOPIC + "/#",
+            "+/+/" + ATTRIBUTE_VALUES_WRITE_TOPIC
+        );
+    }
+
+    @Override
+    public boolean supportsSharedSubscriptions() {
+        return true;
     }
 
     @Override
@@ -289,6 +367,17 @@ public class DefaultMQTTHandler extends MQTTHandler {
             return false;
         }
 
+        if (topic.isShared()) {
+            SharedSubscription sharedSubscription;
+            synchronized (sharedSubscriptionMap) {
+                sharedSubscription = sharedSubscriptionMap.get(getSharedSubscriptionKey(topic));
+            }
+            if (sharedSubscription != null && !Objects.equals(sharedSubscription.userId, authContext.getUserId())) {
+                LOG.finest("Shared subscription group has members belonging to another user: topic=" + topic + ", group=" + topic.getSharedGroup() + ", subject=" + authContext);
+                return false;
+            }
+        }
+
         return true;
     }
 
@@ -309,7 +398,14 @@ public class DefaultMQTTHandler extends MQTTHandler {
             return false;
         }
 
-        if (isAttributeValueWriteTopic(topic)) {
+        if (isAttributeValuesWriteTopic(topic)) {
+            if (topic.getTokens().size() != 3) {
+                LOG.finer("Publish attribute values topic should be {realm}/{clientId}/writeattributevalues: topic=" + topic + ", connection=" + mqttBrokerService.connectionToString(connection));
+                return false;
+            }
+            // Each event in the payload is authorised when it is received
+            return true;
+        } else if (isAttributeValueWriteTopic(topic)) {
             if (topic.getTokens().size() != 5 || !Pattern.matches(ASSET_ID_REGEXP, topicTokenIndexToString(topic, 4))) {
                 LOG.finer("Publish attribute value topic should be {realm}/{clientId}/writeattributevalue/{attributeName}/{assetId}: topic=" + topic + ", connection=" + mqttBrokerService.connectionToString(connection));
                 return false;
@@ -318,18 +414,26 @@ public class DefaultMQTTHandler extends MQTTHandler {
             return false;
         }
 
+        // We don't know the value at this point so just use a null value for authorization (value type will be handled
+        // when the event is processed)
+        return canWriteAttributeValue(connection, authContext, topicRealm(topic), topic.getString(), buildAttributeEvent(topic.getTokens(), null));
+    }
+
+    /**
+     * Checks the write is authorised using the authorisation cache; the cache key is the equivalent
+     * {@value #ATTRIBUTE_VALUE_WRITE_TOPIC} topic so single and multi attribute writes share cache entries.
+     */
+    protected boolean canWriteAttributeValue(RemotingConnection connection, AuthContext authContext, String realm, String writeTopic, AttributeEvent attributeEvent) {
         String cacheKey = getConnectionIDString(connection);
 
         // Check cache
         ConcurrentHashSet<String> act = authorizationCache.getIfPresent(cacheKey);
-        if (act != null && act.contains(topic.getString())) {
+        if (act != null && act.contains(writeTopic)) {
             return true;
         }
 
-        // We don't know the value at this point so just use a null value for authorization (value type will be handled
-        // when the event is processed)
-        if (!clientEventService.authorizeEventWrite(topicRealm(topic), authContext, buildAttributeEvent(topic.getTokens(), null))) {
-            LOG.fine("Publish was not authorised for this user and topic: topic=" + topic + ", subject=" + authContext);
+        if (!clientEventService.authorizeEventWrite(realm, authContext, attributeEvent)) {
+            LOG.fine("Publish was not authorised for this user and topic: topic=" + writeTopic + ", subject=" + authContext);
             return false;
         }
 
@@ -344,7 +448,7 @@ public class DefaultMQTTHandler extends MQTTHandler {
                 authorizationCache.put(cacheKey, set);
             }
         }
-        set.add(topic.getString());
+        set.add(writeTopic);
 
         return true;
     }
@@ -353,6 +457,11 @@ public class DefaultMQTTHandler extends MQTTHandler {
     @Override
     public void onSubscribe(RemotingConnection connection, Topic topic) {
 
+        if (topic.isShared()) {
+            onSharedSubscribe(connection, topic);
+            return;
+        }
+
         boolean isAssetTopic = isAssetTopic(topic);
         String subscriptionId = topic.getString(); // Use topic as unique subscription ID
         AssetFilter filter = buildAssetFilter(topic);
@@ -379,21 +488,18 @@ public class DefaultMQTTHandler extends MQTTHandler {
             .asyncSend();
 
         // Track connection subscriptions for restricted user asset link changes (to determine if the client should be disconnected)
-        synchronized (connectionSubscriberInfoMap) {
-            connectionSubscriberInfoMap.compute(getConnectionIDString(connection), (connectionID, subscriberInfo) -> {
-                if (subscriberInfo == null) {
-                    return new SubscriberInfo(topic.getString(), eventConsumer);
-                } else {
-                    subscriberInfo.add(topic.getString(), eventConsumer);
-                    return subscriberInfo;
-                }
-            });
-        }
+        addSubscriberInfo(getConnectionIDString(connection), topic.getString(), eventConsumer);
     }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public void onUnsubscribe(RemotingConnection connection, Topic topic) {
+        if (topic.isShared()) {
+            removeSubscriberInfo(getConnectionIDString(connection), Topic.toSharedTopic(topic.getSharedGroup(), topic.getString()));
+            removeSharedSubscriptionMember(getConnectionIDString(connection), getSharedSubscriptionKey(topic));
+            return;
+        }
+
         String subscriptionId = topic.toString();
         boolean isAssetTopic = subscriptionId.startsWith(ASSET_TOPIC);
         Map<String, Object> headers = prepareHeaders(topicRealm(topic), connection);
@@ -406,9 +512,136 @@ public class DefaultMQTTHandler extends MQTTHandler {
             .asyncSend();
 
         // Track connection subscriptions for restricted user asset link changes (to determine if the client should be disconnected)
+        removeSubscriberInfo(getConnectionIDString(connection), topic.getString());
+    }
+
+    /**
+     * Adds the connection to the shared subscription group of the topic; the event subscription is only created when
+     * the first member joins.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected void onSharedSubscribe(RemotingConnection connection, Topic topic) {
+        String key = getSharedSubscriptionKey(topic);
+        String connectionID = getConnectionIDString(connection);
+        String userId = getAuthContextFromConnection(connection).map(AuthContext::getUserId).orElse(null);
+        SharedSubscription sharedSubscription;
+        boolean created = false;
+
+        synchronized (sharedSubscriptionMap) {
+            sharedSubscription = sharedSubscriptionMap.get(key);
+
+            if (sharedSubscription == null) {
+                sharedSubscription = new SharedSubscription(key, userId);
+                sharedSubscriptionMap.put(key, sharedSubscription);
+                created = true;
+            } else if (!Objects.equals(sharedSubscription.userId, userId)) {
+                sharedSubscription = null;
+            }
+
+            if (sharedSubscription != null) {
+                sharedSubscription.connectionIDs.add(connectionID);
+            }
+        }
+
+        if (sharedSubscription == null) {
+            // Another user joined the group between authorisation and now; the broker has already bound the connection
+            // to the shared queue so it must be disconnected
+            LOG.info("Shared subscription group has members belonging to another user so disconnecting: topic=" + topic + ", group=" + topic.getSharedGroup() + ", " + mqttBrokerService.connectionToString(connection));
+            mqttBrokerService.doForceDisconnect(connection);
+            return;
+        }
+
+        // Track connection subscriptions for restricted user asset link changes (to determine if the client should be disconnected)
+        addSubscriberInfo(connectionID, Topic.toSharedTopic(topic.getSharedGroup(), topic.getString()), null);
+
+        if (!created) {
+            return;
+        }
+
+        LOG.fine(() -> "Creating shared subscription: topic=" + topic + ", group=" + topic.getSharedGroup());
+        AssetFilter filter = buildAssetFilter(topic);
+
+        if (filter == null) {
+            LOG.info("Invalid event filter generated for topic '" + topic + "': " + connection);
+            return;
+        }
+
+        // Events are published to the topic filter and the broker delivers them to one member of the group
+        Consumer<SharedEvent> eventConsumer = getSubscriptionEventConsumer(connection, topic);
+        addSubscriberInfo(sharedSubscription.sessionKey, topic.getString(), eventConsumer);
+
+        Map<String, Object> headers = prepareSharedSubscriptionHeaders(topicRealm(topic), sharedSubscription.sessionKey);
+        headers.put(SESSION_OPEN, true);
+        messageBrokerService.getFluentProducerTemplate()
+            .withHeaders(headers)
+            .to(CLIENT_INBOUND_QUEUE)
+            .asyncSend();
+
+        EventSubscription subscription = new EventSubscription(
+            isAssetTopic(topic) ? AssetEvent.class : AttributeEvent.class,
+            filter,
+            topic.getString()
+        );
+
+        messageBrokerService.getFluentProducerTemplate()
+            .withHeaders(prepareSharedSubscriptionHeaders(topicRealm(topic), sharedSubscription.sessionKey))
+            .withBody(subscription)
+            .to(CLIENT_INBOUND_QUEUE)
+            .asyncSend();
+    }
+
+    /**
+     * Removes the connection from the specified shared subscription group (or all groups if key is null); the event
+     * subscription of a group is removed when the last member leaves.
+     */
+    protected void removeSharedSubscriptionMember(String connectionID, String key) {
+        List<SharedSubscription> emptySubscriptions = new ArrayList<>();
+
+        synchronized (sharedSubscriptionMap) {
+            if (sharedSubscriptionMap.isEmpty()) {
+                return;
+            }
+            sharedSubscriptionMap.values().removeIf(sharedSubscription -> {
+                if ((key == null || key.equals(sharedSubscription.key))
+                    && sharedSubscription.connectionIDs.remove(connectionID)
+                    && sharedSubscription.connectionIDs.isEmpty()) {
+                    emptySubscriptions.add(sharedSubscription);
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        for (SharedSubscription sharedSubscription : emptySubscriptions) {
+            LOG.fine(() -> "Removing shared subscription as it has no members: " + sharedSubscription.key);
+            connectionSubscriberInfoMap.remove(sharedSubscription.sessionKey);
+            // Closing the session cancels its event subscription
+            Map<String, Object> headers = prepareSharedSubscriptionHeaders(null, sharedSubscription.sessionKey);
+            headers.put(SESSION_CLOSE, true);
+            messageBrokerService.getFluentProducerTemplate()
+                .withHeaders(headers)
+                .to(CLIENT_INBOUND_QUEUE)
+                .asyncSend();
+        }
+    }
+
+    protected void addSubscriberInfo(String connectionID, String topic, Consumer<SharedEvent> eventConsumer) {
         synchronized (connectionSubscriberInfoMap) {
-            connectionSubscriberInfoMap.computeIfPresent(getConnectionIDString(connection), (connectionID, subscriberInfo) -> {
-                if (subscriberInfo.remove(topic.getString()) == 0) {
+            connectionSubscriberInfoMap.compute(connectionID, (id, subscriberInfo) -> {
+                if (subscriberInfo == null) {
+                    return new SubscriberInfo(topic, eventConsumer);
+                } else {
+                    subscriberInfo.add(topic, eventConsumer);
+                    return subscriberInfo;
+                }
+            });
+        }
+    }
+
+    protected void removeSubscriberInfo(String connectionID, String topic) {
+        synchronized (connectionSubscriberInfoMap) {
+            connectionSubscriberInfoMap.computeIfPresent(connectionID, (id, subscriberInfo) -> {
+                if (subscriberInfo.remove(topic) == 0) {
                     return null;
                 }
                 return subscriberInfo;
@@ -419,7 +652,8 @@ public class DefaultMQTTHandler extends MQTTHandler {
     @Override
     public Set<String> getPublishListenerTopics() {
         return Set.of(
-            TOKEN_SINGLE_LEVEL_WILDCARD + "/" + TOKEN_SINGLE_LEVEL_WILDCARD + "/" + ATTRIBUTE_VALUE_WRITE_TOPIC + "/" + TOKEN_MULTI_LEVEL_WILDCARD
+            TOKEN_SINGLE_LEVEL_WILDCARD + "/" + TOKEN_SINGLE_LEVEL_WILDCARD + "/" + ATTRIBUTE_VALUE_WRITE_TOPIC + "/" + TOKEN_MULTI_LEVEL_WILDCARD,
+            TOKEN_SINGLE_LEVEL_WILDCARD + "/" + TOKEN_SINGLE_LEVEL_WILDCARD + "/" + ATTRIBUTE_VALUES_WRITE_TOPIC
         );
     }
 
@@ -427,19 +661,136 @@ public class DefaultMQTTHandler extends MQTTHandler {
     public void onPublish(RemotingConnection connection, Topic topic, ByteBuf body) {
         List<String> topicTokens = topic.getTokens();
         String payloadContent = body.toString(StandardCharsets.UTF_8);
+
+        if (isAttributeValuesWriteTopic(topic)) {
+            onAttributeValuesPublish(connection, topic, payloadContent);
+            return;
+        }
+
         Object value = ValueUtil.parse(payloadContent).orElse(null);
         AttributeEvent attributeEvent = buildAttributeEvent(topicTokens, value);
-        Map<String, Object> headers = prepareHeaders(topicRealm(topic), connection);
         LOG.finer("Publishing to client inbound queue: " + attributeEvent);
-        messageBrokerService.getFluentProducerTemplate()
-            .withHeaders(headers)
-            .withBody(attributeEvent)
-            .to(CLIENT_INBOUND_QUEUE)
-            .asyncSend();
+        publishAttributeEvents(connection, topicRealm(topic), Collections.singletonList(attributeEvent));
+    }
+
+    protected void onAttributeValuesPublish(RemotingConnection connection, Topic topic, String payloadContent) {
+        Object[][] tuples = ValueUtil.parse(payloadContent, Object[][].class).orElse(null);
+
+        if (tuples == null || tuples.length == 0) {
+            LOG.fine("Publish attribute values payload must be a JSON array of [assetId, attributeName, value, timestamp] tuples: topic=" + topic + ", " + mqttBrokerService.connectionToString(connection));
+            return;
+        }
+
+        String realm = topicRealm(topic);
+        AuthContext authContext = getAuthContextFromSecurityContext(KeycloakIdentityProvider.getSecurityContext(connection.getSubject()));
+        String writeTopicPrefix = realm + Topic.SEPARATOR + topicClientID(topic) + Topic.SEPARATOR + ATTRIBUTE_VALUE_WRITE_TOPIC + Topic.SEPARATOR;
+        List<AttributeEvent> attributeEvents = new ArrayList<>(tuples.length);
+
+        for (Object[] tuple : tuples) {
+            if (tuple == null || tuple.length < 3 || !(tuple[0] instanceof String assetId) || !(tuple[1] instanceof String attributeName)) {
+                LOG.fine("Invalid attribute values tuple so ignoring: " + Arrays.toString(tuple) + ", " + mqttBrokerService.connectionToString(connection));
+                continue;
+            }
+            Long timestamp = tuple.length > 3 && tuple[3] instanceof Number number ? number.longValue() : null;
+            AttributeEvent attributeEvent = new AttributeEvent(assetId, attributeName, tuple[2], timestamp).setSource(DefaultMQTTHandler.class.getSimpleName());
+
+            // Value isn't used for authorisation so the same check as the single attribute write topic applies
+            if (canWriteAttributeValue(connection, authContext, realm, writeTopicPrefix + attributeName + Topic.SEPARATOR + assetId, attributeEvent)) {
+                attributeEvents.add(attributeEvent);
+            }
+        }
+
+        if (!attributeEvents.isEmpty()) {
+            LOG.finer(() -> "Publishing " + attributeEvents.size() + " attribute event(s) to client inbound queue: " + mqttBrokerService.connectionToString(connection));
+            publishAttributeEvents(connection, realm, attributeEvents);
+        }
+    }
+
+    /**
+     * Adds the events to the connection's pending batch; the batch is sent when it is full or when the batch window
+     * has elapsed. Events of a connection are always sent in the order they were received.
+     */
+    protected void publishAttributeEvents(RemotingConnection connection, String realm, List<AttributeEvent> attributeEvents) {
+        if (publishBatchMillis <= 0) {
+            sendAttributeEvents(prepareHeaders(realm, connection), attributeEvents);
+            return;
+        }
+
+        String connectionID = getConnectionIDString(connection);
+
+        while (true) {
+            PublishBatch batch = connectionPublishBatchMap.computeIfAbsent(connectionID, id -> new PublishBatch());
+
+            synchronized (batch) {
+                if (batch.removed) {
+                    // Batch was flushed and removed whilst waiting for the lock
+                    continue;
+                }
+
+                if (batch.realm != null && !batch.realm.equals(realm)) {
+                    // Headers are per realm
+                    sendAttributeEvents(batch.headers, batch.events);
+                    batch.events = new ArrayList<>();
+                }
+                if (batch.events.isEmpty()) {
+                    batch.realm = realm;
+                    batch.headers = prepareHeaders(realm, connection);
+                }
+
+                batch.events.addAll(attributeEvents);
+
+                if (batch.events.size() >= publishBatchSize) {
+                    flushPublishBatch(connectionID, batch);
+                } else if (batch.flushFuture == null) {
+                    batch.flushFuture = executorService.schedule(() -> flushPublishBatch(connectionID, batch), publishBatchMillis, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+    }
+
+    protected void flushPublishBatch(String connectionID) {
+        PublishBatch batch = connectionPublishBatchMap.get(connectionID);
+        if (batch != null) {
+            flushPublishBatch(connectionID, batch);
+        }
+    }
+
+    protected void flushPublishBatch(String connectionID, PublishBatch batch) {
+        synchronized (batch) {
+            if (batch.removed) {
+                return;
+            }
+            if (batch.flushFuture != null) {
+                batch.flushFuture.cancel(false);
+            }
+            // Send before removing so a new batch for this connection cannot overtake this one
+            sendAttributeEvents(batch.headers, batch.events);
+            batch.removed = true;
+            connectionPublishBatchMap.remove(connectionID, batch);
+        }
+    }
+
+    protected void sendAttributeEvents(Map<String, Object> headers, List<AttributeEvent> attributeEvents) {
+        if (attributeEvents.isEmpty()) {
+            return;
+        }
+        try {
+            messageBrokerService.getFluentProducerTemplate()
+                .withHeaders(headers)
+                .withBody(attributeEvents.size() == 1 ? attributeEvents.get(0) : attributeEvents)
+                .to(CLIENT_INBOUND_QUEUE)
+                .asyncSend();
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to send " + attributeEvents.size() + " attribute event(s) to client inbound queue", e);
+        }
     }
 
     @Override
     public void onUserAssetLinksChanged(RemotingConnection connection, List<PersistenceEvent<UserAssetLink>> changes) {
+        // Cached publish authorisations may no longer be valid
+        authorizationCache.invalidate(getConnectionIDString(connection));
+
         if (connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))) {
             if (changes.stream().allMatch(pe -> pe.getCause() == PersistenceEvent.Cause.CREATE)) {
                 // Do nothing if only links have been added
@@ -599,10 +950,26 @@ public class DefaultMQTTHandler extends MQTTHandler {
         return ATTRIBUTE_VALUE_WRITE_TOPIC.equalsIgnoreCase(topicTokenIndexToString(topic, 2));
     }
 
+    protected static boolean isAttributeValuesWriteTopic(Topic topic) {
+        return ATTRIBUTE_VALUES_WRITE_TOPIC.equalsIgnoreCase(topicTokenIndexToString(topic, 2));
+    }
+
     protected static boolean isAssetTopic(Topic topic) {
         return ASSET_TOPIC.equalsIgnoreCase(topicTokenIndexToString(topic, 2));
     }
 
+    protected static String getSharedSubscriptionKey(Topic topic) {
+        return topic.getSharedGroup() + "/" + topic.getString();
+    }
+
+    protected static Map<String, Object> prepareSharedSubscriptionHeaders(String requestRealm, String sessionKey) {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put(SESSION_KEY, sessionKey);
+        headers.put(HEADER_CONNECTION_TYPE, ClientEventService.HEADER_CONNECTION_TYPE_MQTT);
+        headers.put(REALM_PARAM_NAME, requestRealm);
+        return headers;
+    }
+
     protected static Map<String, Object> prepareHeaders(String requestRealm, RemotingConnection connection) {
         Map<String, Object> headers = new HashMap<>();
         headers.put(SESSION_KEY, getConnectionIDString(connection));
@@ -68,11 +68,17 @@ import org.openremote.model.Constants;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
 import org.openremote.model.PersistenceEvent;
+import org.openremote.model.asset.Asset;
 import org.openremote.model.asset.UserAssetLink;
+import org.openremote.model.attribute.Attribute;
+import org.openremote.model.attribute.AttributeMap;
+import org.openremote.model.security.Realm;
 import org.openremote.model.security.User;
 import org.openremote.model.util.Debouncer;
 import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.UniqueIdentifierGenerator;
+import org.openremote.model.value.MetaItemDescriptor;
+import org.openremote.model.value.MetaItemType;
 
 import javax.security.auth.Subject;
 import javax.security.auth.login.AppConfigurationEntry;
@@ -87,6 +93,7 @@ import java.util.stream.Collectors;
 import static java.lang.System.Logger.Level.*;
 import static java.util.stream.StreamSupport.stream;
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.util.MapAccess.getString;
 import static org.openremote.model.Constants.KEYCLOAK_CLIENT_ID;
@@ -99,7 +106,12 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
     public static final int PRIORITY = MED_PRIORITY;
     public static final String MQTT_SERVER_LISTEN_HOST = "MQTT_SERVER_LISTEN_HOST";
     public static final String MQTT_SERVER_LISTEN_PORT = "MQTT_SERVER_LISTEN_PORT";
+    public static final String MQTT_AUTHORIZATION_CACHE_SIZE = "MQTT_AUTHORIZATION_CACHE_SIZE";
+    public static final int MQTT_AUTHORIZATION_CACHE_SIZE_DEFAULT = 100000;
+    public static final String MQTT_AUTHORIZATION_CACHE_EXPIRY_MILLIS = "MQTT_AUTHORIZATION_CACHE_EXPIRY_MILLIS";
+    public static final int MQTT_AUTHORIZATION_CACHE_EXPIRY_MILLIS_DEFAULT = 300000;
     public static final String ANONYMOUS_USERNAME = "anonymous";
+    protected static final List<MetaItemDescriptor<Boolean>> ACCESS_META = List.of(MetaItemType.ACCESS_PUBLIC_READ, MetaItemType.ACCESS_PUBLIC_WRITE, MetaItemType.ACCESS_RESTRICTED_READ, MetaItemType.ACCESS_RESTRICTED_WRITE);
     protected final WildcardConfiguration wildcardConfiguration = new WildcardConfiguration();
     protected static final System.Logger LOG = System.getLogger(MQTTBrokerService.class.getName() + "." + API.name());
 
@@ -112,6 +124,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
     protected TimerService timerService;
     protected AssetProcessingService assetProcessingService;
     protected List<MQTTHandler> customHandlers = new ArrayList<>();
+    protected MQTTHandlerTopicIndex handlerTopicIndex = new MQTTHandlerTopicIndex(Collections.emptyList());
     protected ConcurrentMap<String, RemotingConnection> clientIDConnectionMap = new ConcurrentHashMap<>();
     protected ConcurrentMap<String, RemotingConnection> connectionIDConnectionMap = new ConcurrentHashMap<>();
     protected ConcurrentMap<String, List<PersistenceEvent<UserAssetLink>>> userAssetLinkChangeMap = new ConcurrentHashMap<>();
@@ -121,6 +134,8 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
     protected boolean active;
     protected String host;
     protected int port;
+    protected int authorizationCacheSize;
+    protected int authorizationCacheExpiryMillis;
     protected Configuration serverConfiguration;
     protected EmbeddedActiveMQ server;
     protected ActiveMQORSecurityManager securityManager;
@@ -132,11 +147,22 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
         return PRIORITY;
     }
 
+    /**
+     * Needs the identity provider during init; the other services are only looked up during init and start and used
+     * once clients connect so the embedded broker can be started alongside them.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getStartupDependencies() {
+        return Collections.singletonList(ManagerIdentityService.class);
+    }
+
     @Override
     public void init(Container container) throws Exception {
         host = getString(container.getConfig(), MQTT_SERVER_LISTEN_HOST, "0.0.0.0");
         port = getInteger(container.getConfig(), MQTT_SERVER_LISTEN_PORT, 1883);
         int debounceMillis = getInteger(container.getConfig(), MQTT_FORCE_USER_DISCONNECT_DEBOUNCE_MILLIS, MQTT_FORCE_USER_DISCONNECT_DEBOUNCE_MILLIS_DEFAULT);
+        authorizationCacheSize = getInteger(container.getConfig(), MQTT_AUTHORIZATION_CACHE_SIZE, MQTT_AUTHORIZATION_CACHE_SIZE_DEFAULT);
+        authorizationCacheExpiryMillis = getInteger(container.getConfig(), MQTT_AUTHORIZATION_CACHE_EXPIRY_MILLIS, MQTT_AUTHORIZATION_CACHE_EXPIRY_MILLIS_DEFAULT);
         assetStorageService = container.getService(AssetStorageService.class);
         authorisationService = container.getService(AuthorisationService.class);
         clientEventService = container.getService(ClientEventService.class);
@@ -193,6 +219,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
         // TODO: Make auto provisioning clients disconnect and reconnect with credentials or pass through X.509 certificates for auth
         // Cannot use authentication or authorisation cache as auto provisioning MQTT clients will authenticate as anonymous and this is then baked into the created ServerSession and cannot be modified
         // so all anonymous sessions will use the same username/password for key lookups in the caches - Can possibly use caching if ActiveMQ makes changes and/or we move to using X.509 TLS with ActiveMQ
+        // Authorisation decisions are instead cached per connection by the ActiveMQORSecurityManager
         //config.setSecurityInvalidationInterval(600000); // Long cache as we force clear it when needed
         serverConfiguration.setAuthenticationCacheSize(0);
         serverConfiguration.setAuthorizationCacheSize(0);
@@ -201,6 +228,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
         this.customHandlers = stream(ServiceLoader.load(MQTTHandler.class).spliterator(), false)
                 .sorted(Comparator.comparingInt(MQTTHandler::getPriority))
                 .collect(Collectors.toList());
+        handlerTopicIndex = new MQTTHandlerTopicIndex(customHandlers);
 
         // Init each custom handler
         for (MQTTHandler handler : customHandlers) {
@@ -236,7 +264,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
                     new AppConfigurationEntry(PrincipalConversionLoginModule.class.getName(), AppConfigurationEntry.LoginModuleControlFlag.REQUISITE, Map.of(PrincipalConversionLoginModule.PRINCIPAL_CLASS_LIST, KeycloakPrincipal.class.getName()))
                 };
             }
-        });
+        }, authorizationCacheSize, authorizationCacheExpiryMillis);
 
         server.setSecurityManager(securityManager);
         server.start();
@@ -248,6 +276,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
                 boolean isSubscribe = notification.getType() == CoreNotificationType.CONSUMER_CREATED;
                 String sessionId = notification.getProperties().getSimpleStringProperty(ManagementHelper.HDR_SESSION_NAME).toString();
                 String topic = notification.getProperties().getSimpleStringProperty(ManagementHelper.HDR_ADDRESS).toString();
+                SimpleString queueName = notification.getProperties().getSimpleStringProperty(ManagementHelper.HDR_ROUTING_NAME);
                 ServerSession session = server.getActiveMQServer().getSessionByID(sessionId);
 
                 // Ignore internal subscriptions
@@ -256,10 +285,16 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
                     return;
                 }
 
+                String mqttTopic = MQTTUtil.getMqttTopicFromCoreAddress(topic, wildcardConfiguration);
+                String sharedGroup = queueName != null ? getSharedSubscriptionGroup(session.getRemotingConnection(), topic, queueName.toString()) : null;
+                if (sharedGroup != null) {
+                    mqttTopic = Topic.toSharedTopic(sharedGroup, mqttTopic);
+                }
+
                 if (isSubscribe) {
-                    onSubscribe(session.getRemotingConnection(), MQTTUtil.getMqttTopicFromCoreAddress(topic, wildcardConfiguration));
+                    onSubscribe(session.getRemotingConnection(), mqttTopic);
                 } else {
-                    onUnsubscribe(session.getRemotingConnection(), MQTTUtil.getMqttTopicFromCoreAddress(topic, wildcardConfiguration));
+                    onUnsubscribe(session.getRemotingConnection(), mqttTopic);
                 }
             }
         });
@@ -279,44 +314,59 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
         }
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void configure() throws Exception {
         from(PERSISTENCE_TOPIC)
                 .routeId("Persistence-UserAndAssetLink")
-                .filter(body().isInstanceOf(PersistenceEvent.class))
-                .process(exchange -> {
-                    PersistenceEvent<?> persistenceEvent = (PersistenceEvent<?>) exchange.getIn().getBody(PersistenceEvent.class);
-
-                    if (persistenceEvent.getEntity() instanceof User user) {
-
-                        if (!user.isServiceAccount()) {
-                            return;
-                        }
-
-                        boolean forceDisconnect = persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE;
-
-                        if (persistenceEvent.getCause() == PersistenceEvent.Cause.UPDATE) {
-                            // Force disconnect if certain properties have changed
-                            forceDisconnect = persistenceEvent.hasPropertyChanged("enabled")
-                                || persistenceEvent.hasPropertyChanged("username")
-                                || persistenceEvent.hasPropertyChanged("secret");
-                        }
-
-                        if (forceDisconnect) {
-                            LOG.log(TRACE, "User modified or deleted so force closing any sessions for this user: " + user);
-                            // Find existing connection for this user
-                            getUserConnections(user.getId()).forEach(this::doForceDisconnect);
-                        }
-
-                    } else if (persistenceEvent.getEntity() instanceof UserAssetLink userAssetLink) {
-                        String userID = userAssetLink.getId().getUserId();
-                        // Debounce force disconnect check of this user's sessions as there could be many asset links changing
-                        List<PersistenceEvent<UserAssetLink>> changedUserAssetLinks = userAssetLinkChangeMap.computeIfAbsent(userID, id -> Collections.synchronizedList(new ArrayList<>()));
-                        changedUserAssetLinks.add((PersistenceEvent<UserAssetLink>) persistenceEvent);
-                        userAssetDisconnectDebouncer.call(userID);
-                    }
-                });
+                .process(exchange -> getPersistenceEvents(exchange).forEach(this::onPersistenceEvent));
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void onPersistenceEvent(PersistenceEvent<?> persistenceEvent) {
+        if (persistenceEvent.getEntity() instanceof User user) {
+
+            if (securityManager != null) {
+                // Roles and realm of the user may have changed
+                getUserConnections(user.getId()).forEach(this::invalidateAuthorizationCache);
+            }
+
+            if (!user.isServiceAccount()) {
+                return;
+            }
+
+            boolean forceDisconnect = persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE;
+
+            if (persistenceEvent.getCause() == PersistenceEvent.Cause.UPDATE) {
+                // Force disconnect if certain properties have changed
+                forceDisconnect = persistenceEvent.hasPropertyChanged("enabled")
+                    || persistenceEvent.hasPropertyChanged("username")
+                    || persistenceEvent.hasPropertyChanged("secret");
+            }
+
+            if (forceDisconnect) {
+                LOG.log(TRACE, "User modified or deleted so force closing any sessions for this user: " + user);
+                // Find existing connection for this user
+                getUserConnections(user.getId()).forEach(this::doForceDisconnect);
+            }
+
+        } else if (persistenceEvent.getEntity() instanceof UserAssetLink userAssetLink) {
+            String userID = userAssetLink.getId().getUserId();
+            // Debounce force disconnect check of this user's sessions as there could be many asset links changing
+            List<PersistenceEvent<UserAssetLink>> changedUserAssetLinks = userAssetLinkChangeMap.computeIfAbsent(userID, id -> Collections.synchronizedList(new ArrayList<>()));
+            changedUserAssetLinks.add((PersistenceEvent<UserAssetLink>) persistenceEvent);
+            userAssetDisconnectDebouncer.call(userID);
+        } else if (persistenceEvent.getEntity() instanceof Asset<?> asset) {
+            if (securityManager != null && (persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE
+                || (persistenceEvent.getCause() == PersistenceEvent.Cause.UPDATE && hasAccessChanged((PersistenceEvent<Asset<?>>) persistenceEvent)))) {
+                LOG.log(TRACE, "Asset deleted or attribute access changed so clearing MQTT authorisation cache for asset: " + asset.getId());
+                securityManager.invalidateAuthorizationCache(asset.getId());
+            }
+        } else if (persistenceEvent.getEntity() instanceof Realm) {
+            LOG.log(TRACE, "Realm modified so clearing MQTT authorisation cache");
+            if (securityManager != null) {
+                securityManager.invalidateAuthorizationCache();
+            }
+        }
     }
 
     @Override
@@ -353,6 +403,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
                 // TODO: Force delete session (don't allow retained/durable sessions)
 
                 connectionIDConnectionMap.remove(getConnectionIDString(connection));
+                invalidateAuthorizationCache(connection);
 
                 if (connection.getClientID() != null) {
                     RemotingConnection remotingConnection = clientIDConnectionMap.remove(connection.getClientID());
@@ -405,29 +456,39 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
     public void afterDestroyConnection(RemotingConnection connection) throws ActiveMQException {
     }
 
+    /**
+     * Get the shared subscription group of an MQTT subscription queue; the broker names subscription queues
+     * {@code {clientId}.{address}} and shared subscription queues {@code {group}.{address}} so any queue of the address
+     * that isn't named after the connection's client ID is a shared subscription. Returns null if the queue is not a
+     * shared subscription queue.
+     */
+    public static String getSharedSubscriptionGroup(RemotingConnection connection, String address, String queueName) {
+        if (connection == null || queueName == null || !queueName.endsWith("." + address)) {
+            return null;
+        }
+        String prefix = queueName.substring(0, queueName.length() - address.length() - 1);
+        return prefix.isEmpty() || prefix.equals(connection.getClientID()) ? null : prefix;
+    }
+
     public void onSubscribe(RemotingConnection connection, String topicStr) {
         Topic topic = Topic.parse(topicStr);
+        MQTTHandler handler = getTopicHandler(topic);
 
-        for (MQTTHandler handler : getCustomHandlers()) {
-            if (handler.handlesTopic(topic)) {
-                String connectionStr = LOG.isLoggable(DEBUG) ? connectionToString(connection) : null;
-                LOG.log(DEBUG, "Client subscribed '" + topicStr + "': " + connectionStr);
-                handler.onSubscribe(connection, topic);
-                break;
-            }
+        if (handler != null) {
+            String connectionStr = LOG.isLoggable(DEBUG) ? connectionToString(connection) : null;
+            LOG.log(DEBUG, "Client subscribed '" + topicStr + "': " + connectionStr);
+            handler.onSubscribe(connection, topic);
         }
     }
 
     public void onUnsubscribe(RemotingConnection connection, String topicStr) {
         Topic topic = Topic.parse(topicStr);
+        MQTTHandler handler = getTopicHandler(topic);
 
-        for (MQTTHandler handler : getCustomHandlers()) {
-            if (handler.handlesTopic(topic)) {
-                String connectionStr = LOG.isLoggable(DEBUG) ? connectionToString(connection) : null;
-                LOG.log(DEBUG, "Client unsubscribed '" + topicStr + "': " + connectionStr);
-                handler.onUnsubscribe(connection, topic);
-                break;
-            }
+        if (handler != null) {
+            String connectionStr = LOG.isLoggable(DEBUG) ? connectionToString(connection) : null;
+            LOG.log(DEBUG, "Client unsubscribed '" + topicStr + "': " + connectionStr);
+            handler.onUnsubscribe(connection, topic);
         }
     }
 
@@ -435,6 +496,63 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
         return customHandlers;
     }
 
+    /**
+     * Get the first custom handler (in priority order) that handles the specified topic or null if no handler does
+     */
+    public MQTTHandler getTopicHandler(Topic topic) {
+        for (MQTTHandler handler : handlerTopicIndex.getCandidates(topic)) {
+            if (handler.handlesTopic(topic)) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove any cached authorisation decisions for the specified connection; should be called whenever something
+     * that affects what the connection is allowed to publish or subscribe to changes.
+     */
+    public void invalidateAuthorizationCache(RemotingConnection connection) {
+        if (securityManager != null) {
+            securityManager.invalidateAuthorizationCache(connection);
+        }
+    }
+
+    /**
+     * Check whether any of the attribute access meta items that publish and subscribe grants depend on have been
+     * added, removed or changed by an asset update.
+     */
+    protected static boolean hasAccessChanged(PersistenceEvent<Asset<?>> persistenceEvent) {
+        if (!persistenceEvent.hasPropertyChanged("attributes")) {
+            return false;
+        }
+
+        AttributeMap oldAttributes = persistenceEvent.getPreviousState("attributes");
+        AttributeMap newAttributes = persistenceEvent.getCurrentState("attributes");
+        Set<String> attributeNames = new HashSet<>();
+        if (oldAttributes != null) {
+            attributeNames.addAll(oldAttributes.keySet());
+        }
+        if (newAttributes != null) {
+            attributeNames.addAll(newAttributes.keySet());
+        }
+
+        for (String attributeName : attributeNames) {
+            Attribute<?> oldAttribute = oldAttributes != null ? oldAttributes.get(attributeName).orElse(null) : null;
+            Attribute<?> newAttribute = newAttributes != null ? newAttributes.get(attributeName).orElse(null) : null;
+
+            for (MetaItemDescriptor<Boolean> accessMeta : ACCESS_META) {
+                boolean oldAccess = oldAttribute != null && oldAttribute.getMetaValue(accessMeta).orElse(false);
+                boolean newAccess = newAttribute != null && newAttribute.getMetaValue(accessMeta).orElse(false);
+                if (oldAccess != newAccess) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
     public void processUserAssetLinkChange(String userID, List<PersistenceEvent<UserAssetLink>> changes) {
         if (TextUtil.isNullOrEmpty(userID)) {
             return;
@@ -444,6 +562,8 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
         Set<RemotingConnection> userConnections = getUserConnections(userID);
         Subject subject = userConnections.stream().filter(connection -> connection.getSubject() != null).findFirst().map(RemotingConnection::getSubject).orElse(null);
 
+        userConnections.forEach(this::invalidateAuthorizationCache);
+
         // Only notify handlers if subject is a restricted user
         if (subject != null && KeycloakIdentityProvider.getSecurityContext(subject).getToken().getRealmAccess().isUserInRole(Constants.RESTRICTED_USER_REALM_ROLE)) {
             LOG.log(TRACE, "User asset links modified for connected restricted user so passing to handlers to decide what to do: user=" + subject);
@@ -475,6 +595,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
     protected void doForceDisconnect(RemotingConnection connection) {
         LOG.log(DEBUG, "Force disconnecting client connection: " + connectionToString(connection));
         connection.disconnect(false);
+        invalidateAuthorizationCache(connection);
         ((SecurityStoreImpl)server.getActiveMQServer().getSecurityStore()).invalidateAuthorizationCache();
     }
 
@@ -552,6 +673,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
     }
 
     protected void notifyConnectionAuthenticated(RemotingConnection connection) {
+        invalidateAuthorizationCache(connection);
         if (connection.getSubject() != null) {
             // Notify handlers that connection authenticated
             LOG.log(DEBUG, "Client connection authenticated: " + connectionToString(connection));
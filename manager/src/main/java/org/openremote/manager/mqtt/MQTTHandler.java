@@ -45,6 +45,7 @@ import org.openremote.model.asset.UserAssetLink;
 import org.openremote.model.util.ValueUtil;
 
 import javax.security.auth.Subject;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -211,14 +212,19 @@ public abstract class MQTTHandler {
 
     /**
      * Checks that authenticated session and topic realm matches the authenticated user and also that topic client ID
-     * matches the connection client ID.
+     * matches the connection client ID; for shared subscriptions the topic client ID must instead match the shared
+     * group name as the members of a group have different client IDs.
      */
     public boolean checkCanSubscribe(RemotingConnection connection, KeycloakSecurityContext securityContext, Topic topic) {
         if (securityContext == null) {
             getLogger().finest("Anonymous connection subscriptions not supported by this handler, topic=" + topic + ", " + MQTTBrokerService.connectionToString(connection));
             return false;
         }
-        if (!topicRealmAllowed(securityContext, topic) || !topicClientIdMatches(connection, topic)) {
+        if (topic.isShared() && !supportsSharedSubscriptions()) {
+            getLogger().finest("Shared subscriptions not supported by this handler, topic=" + topic + ", " + MQTTBrokerService.connectionToString(connection));
+            return false;
+        }
+        if (!topicRealmAllowed(securityContext, topic) || !(topic.isShared() ? topicSharedGroupMatches(topic) : topicClientIdMatches(connection, topic))) {
             getLogger().finest("Topic realm and client ID tokens must match the connection, topic=" + topic + ", " + MQTTBrokerService.connectionToString(connection));
             return false;
         }
@@ -271,6 +277,24 @@ public abstract class MQTTHandler {
      */
     protected abstract boolean topicMatches(Topic topic);
 
+    /**
+     * Gets the MQTT topic patterns (which can contain wildcards) that {@link #handlesTopic} can possibly return true for;
+     * these are used by the {@link MQTTBrokerService} to index handlers so it doesn't have to ask every handler about
+     * every topic. Returning null (the default) means this handler will be asked about every topic.
+     */
+    public Collection<String> getTopicPatterns() {
+        return null;
+    }
+
+    /**
+     * Indicates if this handler supports MQTT 5 shared subscriptions ({@code $share/{group}/{filter}}); when it does
+     * {@link #onSubscribe} and {@link #onUnsubscribe} will be called for each member of the group and the handler is
+     * responsible for only publishing each message once for the whole group.
+     */
+    public boolean supportsSharedSubscriptions() {
+        return false;
+    }
+
     protected abstract Logger getLogger();
 
     /**
@@ -322,6 +346,10 @@ public abstract class MQTTHandler {
         return connection != null && Objects.equals(connection.getClientID(), topicTokenIndexToString(topic, 1));
     }
 
+    public static boolean topicSharedGroupMatches(Topic topic) {
+        return topic.isShared() && Objects.equals(topic.getSharedGroup(), topicTokenIndexToString(topic, 1));
+    }
+
     public static boolean topicTokenCountGreaterThan(Topic topic, int size) {
         return topic.getTokens() != null && topic.getTokens().size() > size;
     }
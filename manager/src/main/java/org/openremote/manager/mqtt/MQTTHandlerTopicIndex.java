@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.mqtt;
+
+import java.util.*;
+
+/**
+ * A prefix trie over the {@link MQTTHandler#getTopicPatterns} of the registered handlers used to quickly find the
+ * handlers that could handle a given {@link Topic} without calling {@link MQTTHandler#handlesTopic} on every handler.
+ * Pattern tokens are matched case-insensitively and {@link Topic#SINGLE_LEVEL_TOKEN}/{@link Topic#MULTI_LEVEL_TOKEN}
+ * tokens in a pattern have the usual MQTT meaning; handlers that don't declare any patterns are candidates for every
+ * topic. The result is only a candidate list (in handler order) so callers must still call
+ * {@link MQTTHandler#handlesTopic}.
+ */
+public class MQTTHandlerTopicIndex {
+
+    protected static class Node {
+        protected final Map<String, Node> children = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        protected Node singleLevelChild;
+        protected final BitSet handlers = new BitSet();
+        protected final BitSet multiLevelHandlers = new BitSet();
+    }
+
+    protected final List<MQTTHandler> handlers;
+    protected final Node root = new Node();
+    protected final BitSet unindexedHandlers = new BitSet();
+
+    public MQTTHandlerTopicIndex(List<MQTTHandler> handlers) {
+        this.handlers = new ArrayList<>(handlers);
+
+        for (int i = 0; i < this.handlers.size(); i++) {
+            Collection<String> patterns = this.handlers.get(i).getTopicPatterns();
+            if (patterns == null) {
+                unindexedHandlers.set(i);
+                continue;
+            }
+            for (String pattern : patterns) {
+                add(Topic.parse(pattern).getTokens(), i);
+            }
+        }
+    }
+
+    protected void add(List<String> tokens, int handlerIndex) {
+        Node node = root;
+        for (String token : tokens) {
+            if (Topic.MULTI_LEVEL_TOKEN.equals(token)) {
+                node.multiLevelHandlers.set(handlerIndex);
+                return;
+            }
+            if (Topic.SINGLE_LEVEL_TOKEN.equals(token)) {
+                if (node.singleLevelChild == null) {
+                    node.singleLevelChild = new Node();
+                }
+                node = node.singleLevelChild;
+            } else {
+                node = node.children.computeIfAbsent(token, t -> new Node());
+            }
+        }
+        node.handlers.set(handlerIndex);
+    }
+
+    /**
+     * Get the handlers that could handle the specified topic in handler order.
+     */
+    public List<MQTTHandler> getCandidates(Topic topic) {
+        BitSet matches = (BitSet) unindexedHandlers.clone();
+        collect(root, topic.getTokens(), 0, matches);
+
+        if (matches.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<MQTTHandler> candidates = new ArrayList<>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            candidates.add(handlers.get(i));
+        }
+        return candidates;
+    }
+
+    protected static void collect(Node node, List<String> tokens, int index, BitSet matches) {
+        // A multi level wildcard also matches the parent level
+        matches.or(node.multiLevelHandlers);
+
+        if (index == tokens.size()) {
+            matches.or(node.handlers);
+            return;
+        }
+
+        Node child = node.children.get(tokens.get(index));
+        if (child != null) {
+            collect(child, tokens, index + 1, matches);
+        }
+        if (node.singleLevelChild != null) {
+            collect(node.singleLevelChild, tokens, index + 1, matches);
+        }
+    }
+}
@@ -27,37 +27,78 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * A parsed MQTT topic; MQTT 5 shared subscription topic filters ({@code $share/{group}/{filter}}) are supported in which
+ * case the {@link #getSharedGroup} is set and the tokens and string representation only cover the filter part.
+ */
 public class Topic {
 
     public static final String SEPARATOR = "/";
     public static final String SINGLE_LEVEL_TOKEN = "+";
     public static final String MULTI_LEVEL_TOKEN = "#";
+    public static final String SHARED_SUBSCRIPTION_PREFIX = "$share/";
     public static final Topic EMPTY_TOPIC = new Topic(SEPARATOR, Collections.emptyList());
 
     protected String topic;
     protected List<String> tokens;
+    protected String sharedGroup;
 
     public static Topic fromAddress(String address, WildcardConfiguration wildcardConfiguration) throws IllegalArgumentException {
         return Topic.parse(MQTTUtil.getMqttTopicFromCoreAddress(address, wildcardConfiguration));
     }
 
+    /**
+     * Parse a shared subscription address of the form {@code $share/{group}/{coreAddress}}
+     */
+    public static Topic fromSharedAddress(String address, WildcardConfiguration wildcardConfiguration) throws IllegalArgumentException {
+        int groupEnd = address.indexOf(SEPARATOR, SHARED_SUBSCRIPTION_PREFIX.length());
+        if (groupEnd < 0) {
+            throw new IllegalArgumentException("Shared subscription address must be of the form $share/{group}/{address}");
+        }
+        return Topic.parse(address.substring(0, groupEnd + 1) + MQTTUtil.getMqttTopicFromCoreAddress(address.substring(groupEnd + 1), wildcardConfiguration));
+    }
+
     public static Topic parse(String topic) throws IllegalArgumentException {
         if (TextUtil.isNullOrEmpty(topic) || SEPARATOR.equals(topic)) {
             return EMPTY_TOPIC;
         }
 
+        String sharedGroup = null;
+
+        if (topic.startsWith(SHARED_SUBSCRIPTION_PREFIX)) {
+            int groupEnd = topic.indexOf(SEPARATOR, SHARED_SUBSCRIPTION_PREFIX.length());
+            sharedGroup = groupEnd > 0 ? topic.substring(SHARED_SUBSCRIPTION_PREFIX.length(), groupEnd) : null;
+
+            if (TextUtil.isNullOrEmpty(sharedGroup) || sharedGroup.contains(SINGLE_LEVEL_TOKEN) || sharedGroup.contains(MULTI_LEVEL_TOKEN) || groupEnd == topic.length() - 1) {
+                throw new IllegalArgumentException("Shared subscription topic must be of the form $share/{group}/{filter}");
+            }
+            topic = topic.substring(groupEnd + 1);
+        }
+
         int multiLevelPos = topic.indexOf(MULTI_LEVEL_TOKEN);
         if (multiLevelPos >= 0 && multiLevelPos < topic.length() - 1) {
             throw new IllegalArgumentException("Multilevel wildcard token must be at the end of the topic");
         }
 
         List<String> tokens = Arrays.asList(topic.split(SEPARATOR));
-        return new Topic(topic, tokens);
+        return new Topic(topic, tokens, sharedGroup);
     }
 
     protected Topic(String topic, List<String> tokens) {
+        this(topic, tokens, null);
+    }
+
+    protected Topic(String topic, List<String> tokens, String sharedGroup) {
         this.topic = topic;
         this.tokens = tokens;
+        this.sharedGroup = sharedGroup;
+    }
+
+    /**
+     * Get a shared subscription topic for the specified group and topic filter
+     */
+    public static String toSharedTopic(String sharedGroup, String topic) {
+        return SHARED_SUBSCRIPTION_PREFIX + sharedGroup + SEPARATOR + topic;
     }
 
     public String getString() {
@@ -72,6 +113,17 @@ public class Topic {
         return tokens;
     }
 
+    /**
+     * Get the shared subscription group name or null if this isn't a shared subscription topic
+     */
+    public String getSharedGroup() {
+        return sharedGroup;
+    }
+
+    public boolean isShared() {
+        return sharedGroup != null;
+    }
+
     @Override
     public String toString() {
         return topic;
@@ -59,6 +59,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
 import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.model.Constants.RESTRICTED_USER_REALM_ROLE;
@@ -85,8 +86,8 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
             from(PERSISTENCE_TOPIC)
                 .routeId("Persistence-ProvisioningConfig")
                 .filter(isPersistenceEventForEntityType(ProvisioningConfig.class))
-                .process(exchange -> {
-                    PersistenceEvent<ProvisioningConfig<?,?>> persistenceEvent = (PersistenceEvent<ProvisioningConfig<?,?>>)exchange.getIn().getBody(PersistenceEvent.class);
+                .process(exchange -> getPersistenceEvents(exchange).forEach(event -> {
+                    PersistenceEvent<ProvisioningConfig<?,?>> persistenceEvent = (PersistenceEvent<ProvisioningConfig<?,?>>)event;
 
                     boolean forceDisconnect = persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE;
 
@@ -100,7 +101,7 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
                         LOG.fine("Provisioning config modified or deleted so forcing connected clients to disconnect: " + persistenceEvent.getEntity());
                         mqttHandler.forceClientDisconnects(persistenceEvent.getEntity().getId());
                     }
-                });
+                }));
         }
     }
 
@@ -193,6 +194,14 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
             && (isRequestTopic(topic) || isResponseTopic(topic));
     }
 
+    @Override
+    public Collection<String> getTopicPatterns() {
+        return Arrays.asList(
+            PROVISIONING_TOKEN + "/+/" + REQUEST_TOKEN,
+            PROVISIONING_TOKEN + "/+/" + RESPONSE_TOKEN
+        );
+    }
+
     @Override
     protected Logger getLogger() {
         return LOG;
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.notification;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * In memory registry of console assets and their push notification tokens along with the users linked to each
+ * console; this allows push notification targets to be resolved without querying console assets on the send path.
+ * <p>
+ * Every known console is held (with or without a token) so that console asset targets can be identified, but only
+ * consoles with a token are returned by the realm and user lookups. Token updates older than the current token are
+ * ignored as updates can arrive from both persistence events and attribute events.
+ * <p>
+ * A user link can arrive before the console itself (e.g. when a console is created and linked to a user in the same
+ * transaction) so links to unknown assets are held for {@link #PENDING_USER_LINK_EXPIRY_MILLIS} and applied if the
+ * console is added within that time.
+ */
+public class ConsoleTokenRegistry {
+
+    protected static class ConsoleEntry {
+        protected final String realm;
+        protected String token;
+        protected long tokenTimestamp;
+        protected final Set<String> userIds = new HashSet<>();
+
+        protected ConsoleEntry(String realm) {
+            this.realm = realm;
+        }
+    }
+
+    protected static class PendingUserLinks {
+        protected final long timestamp;
+        protected final Set<String> userIds = new HashSet<>();
+
+        protected PendingUserLinks(long timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+
+    public static long PENDING_USER_LINK_EXPIRY_MILLIS = 60000;
+
+    protected final LongSupplier clock;
+    protected final Map<String, ConsoleEntry> consoles = new HashMap<>();
+    // In insertion order so expired entries are at the head
+    protected final LinkedHashMap<String, PendingUserLinks> pendingUserLinks = new LinkedHashMap<>();
+    protected final Map<String, Set<String>> realmConsoleIds = new HashMap<>();
+    protected final Map<String, Set<String>> userConsoleIds = new HashMap<>();
+
+    public ConsoleTokenRegistry() {
+        this(System::currentTimeMillis);
+    }
+
+    public ConsoleTokenRegistry(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Add or update the console; returns the previous token or null if there wasn't one or the update is outdated.
+     */
+    public synchronized String putConsole(String consoleId, String realm, String token, long tokenTimestamp) {
+        ConsoleEntry entry = consoles.get(consoleId);
+
+        if (entry == null) {
+            entry = new ConsoleEntry(realm);
+            consoles.put(consoleId, entry);
+            removeExpiredUserLinks();
+            PendingUserLinks pending = pendingUserLinks.remove(consoleId);
+            if (pending != null) {
+                pending.userIds.forEach(userId -> addUserLink(userId, consoleId));
+            }
+        }
+
+        if (tokenTimestamp < entry.tokenTimestamp) {
+            return null;
+        }
+
+        String previousToken = entry.token;
+        entry.token = token;
+        entry.tokenTimestamp = tokenTimestamp;
+
+        if (token != null) {
+            realmConsoleIds.computeIfAbsent(entry.realm, r -> new HashSet<>()).add(consoleId);
+        } else {
+            removeFromIndex(realmConsoleIds, entry.realm, consoleId);
+        }
+
+        return previousToken;
+    }
+
+    /**
+     * Update the token of a known console; returns false if the console is not known.
+     */
+    public synchronized boolean updateToken(String consoleId, String token, long tokenTimestamp) {
+        ConsoleEntry entry = consoles.get(consoleId);
+        if (entry == null) {
+            return false;
+        }
+        putConsole(consoleId, entry.realm, token, tokenTimestamp);
+        return true;
+    }
+
+    /**
+     * Remove the console and its user links; returns the console's token if it had one.
+     */
+    public synchronized String removeConsole(String consoleId) {
+        pendingUserLinks.remove(consoleId);
+        ConsoleEntry entry = consoles.remove(consoleId);
+        if (entry == null) {
+            return null;
+        }
+        removeFromIndex(realmConsoleIds, entry.realm, consoleId);
+        entry.userIds.forEach(userId -> removeFromIndex(userConsoleIds, userId, consoleId));
+        return entry.token;
+    }
+
+    /**
+     * Link the user to the console; links to assets that aren't known consoles are held until the console is added or
+     * the link expires.
+     */
+    public synchronized void addUserLink(String userId, String consoleId) {
+        ConsoleEntry entry = consoles.get(consoleId);
+        if (entry == null) {
+            removeExpiredUserLinks();
+            pendingUserLinks.computeIfAbsent(consoleId, id -> new PendingUserLinks(clock.getAsLong())).userIds.add(userId);
+            return;
+        }
+        entry.userIds.add(userId);
+        userConsoleIds.computeIfAbsent(userId, id -> new HashSet<>()).add(consoleId);
+    }
+
+    public synchronized void removeUserLink(String userId, String consoleId) {
+        PendingUserLinks pending = pendingUserLinks.get(consoleId);
+        if (pending != null) {
+            pending.userIds.remove(userId);
+            if (pending.userIds.isEmpty()) {
+                pendingUserLinks.remove(consoleId);
+            }
+        }
+        ConsoleEntry entry = consoles.get(consoleId);
+        if (entry != null) {
+            entry.userIds.remove(userId);
+        }
+        removeFromIndex(userConsoleIds, userId, consoleId);
+    }
+
+    public synchronized boolean isConsole(String consoleId) {
+        return consoles.containsKey(consoleId);
+    }
+
+    public synchronized String getToken(String consoleId) {
+        ConsoleEntry entry = consoles.get(consoleId);
+        return entry != null ? entry.token : null;
+    }
+
+    /**
+     * Get the IDs of consoles with a token in the specified realm
+     */
+    public synchronized List<String> getRealmConsoleIds(String realm) {
+        return new ArrayList<>(realmConsoleIds.getOrDefault(realm, Collections.emptySet()));
+    }
+
+    /**
+     * Get the IDs of consoles with a token that are linked to any of the specified users
+     */
+    public synchronized List<String> getUserConsoleIds(Collection<String> userIds) {
+        Set<String> consoleIds = new LinkedHashSet<>();
+        for (String userId : userIds) {
+            for (String consoleId : userConsoleIds.getOrDefault(userId, Collections.emptySet())) {
+                if (consoles.get(consoleId).token != null) {
+                    consoleIds.add(consoleId);
+                }
+            }
+        }
+        return new ArrayList<>(consoleIds);
+    }
+
+    /**
+     * Get the IDs of the users linked to the specified console
+     */
+    public synchronized Set<String> getConsoleUserIds(String consoleId) {
+        ConsoleEntry entry = consoles.get(consoleId);
+        return entry != null ? new HashSet<>(entry.userIds) : Collections.emptySet();
+    }
+
+    public synchronized int size() {
+        return consoles.size();
+    }
+
+    public synchronized void clear() {
+        consoles.clear();
+        pendingUserLinks.clear();
+        realmConsoleIds.clear();
+        userConsoleIds.clear();
+    }
+
+    protected void removeExpiredUserLinks() {
+        long expiry = clock.getAsLong() - PENDING_USER_LINK_EXPIRY_MILLIS;
+        Iterator<PendingUserLinks> it = pendingUserLinks.values().iterator();
+        while (it.hasNext() && it.next().timestamp < expiry) {
+            it.remove();
+        }
+    }
+
+    protected static void removeFromIndex(Map<String, Set<String>> index, String key, String consoleId) {
+        Set<String> consoleIds = index.get(key);
+        if (consoleIds != null) {
+            consoleIds.remove(consoleId);
+            if (consoleIds.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+}
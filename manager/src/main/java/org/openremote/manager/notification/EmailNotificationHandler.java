@@ -33,6 +33,7 @@ import org.openremote.model.auth.UsernamePassword;
 import org.openremote.model.notification.AbstractNotificationMessage;
 import org.openremote.model.notification.EmailNotificationMessage;
 import org.openremote.model.notification.Notification;
+import org.openremote.model.notification.NotificationSendResult;
 import org.openremote.model.query.UserQuery;
 import org.openremote.model.query.filter.RealmPredicate;
 import org.openremote.model.query.filter.StringPredicate;
@@ -55,6 +56,8 @@ public class EmailNotificationHandler implements NotificationHandler {
     protected String defaultFrom;
     protected Session mailSession;
     protected Transport mailTransport;
+    // The transport is a single SMTP connection so it cannot be used concurrently
+    protected final Object mailTransportLock = new Object();
     protected Map<String, String> headers;
     protected ManagerIdentityService managerIdentityService;
     protected AssetStorageService assetStorageService;
@@ -393,11 +396,31 @@ public class EmailNotificationHandler implements NotificationHandler {
         sendMessage(email);
     }
 
+    /**
+     * Sends the batch over the same SMTP connection; concurrent batches wait for the connection.
+     */
+    @Override
+    public List<NotificationSendResult> sendMessages(List<Long> ids, Notification.Source source, String sourceId, List<Notification.Target> targets, List<AbstractNotificationMessage> messages) {
+        synchronized (mailTransportLock) {
+            return NotificationHandler.super.sendMessages(ids, source, sourceId, targets, messages);
+        }
+    }
+
+    /**
+     * Messaging failures other than rejected addresses are connection/server failures which are worth retrying.
+     */
+    @Override
+    public boolean isRetryableFailure(Exception e) {
+        return e instanceof MessagingException && !(e instanceof SendFailedException);
+    }
+
     protected void sendMessage(Message email) throws Exception {
-        if (!mailTransport.isConnected()) {
-            mailTransport.connect();
+        synchronized (mailTransportLock) {
+            if (!mailTransport.isConnected()) {
+                mailTransport.connect();
+            }
+            mailTransport.sendMessage(email, email.getAllRecipients());
         }
-        mailTransport.sendMessage(email, email.getAllRecipients());
     }
 
     protected void buildEmail(long id, EmailNotificationMessage emailNotificationMessage, MimeMessage email) throws Exception {
@@ -26,6 +26,7 @@ import org.openremote.model.notification.AbstractNotificationMessage;
 import org.openremote.model.notification.Notification;
 import org.openremote.model.notification.NotificationSendResult;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -77,4 +78,35 @@ public interface NotificationHandler extends ContainerService {
      * by calling {@link NotificationService#setNotificationDelivered} or {@link NotificationService#setNotificationAcknowleged}
      */
     void sendMessage(long id, Notification.Source source, String sourceId, Notification.Target target, AbstractNotificationMessage message) throws Exception;
+
+    /**
+     * Send the {@link AbstractNotificationMessage}s to the targets; the IDs and messages correspond with the targets and
+     * a result must be returned for each target in the same order. Each target has its own copy of the message which
+     * the handler may modify whilst sending (e.g. to set the device token), the {@link NotificationService} stores it
+     * with the sent notification afterwards. Handlers that can send many messages more efficiently than one at a time
+     * (e.g. by reusing a connection or using a batch API) should override this; the default implementation calls
+     * {@link #sendMessage} for each target. This can be called concurrently for different batches of targets.
+     */
+    default List<NotificationSendResult> sendMessages(List<Long> ids, Notification.Source source, String sourceId, List<Notification.Target> targets, List<AbstractNotificationMessage> messages) {
+        List<NotificationSendResult> results = new ArrayList<>(targets.size());
+
+        for (int i = 0; i < targets.size(); i++) {
+            try {
+                sendMessage(ids.get(i), source, sourceId, targets.get(i), messages.get(i));
+                results.add(NotificationSendResult.success());
+            } catch (Exception e) {
+                results.add(NotificationSendResult.failure(e.getMessage(), isRetryableFailure(e)));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Indicates if the exception thrown when sending a message is transient (e.g. a connection failure) so the send
+     * should be retried.
+     */
+    default boolean isRetryableFailure(Exception e) {
+        return false;
+    }
 }
@@ -22,6 +22,7 @@ package org.openremote.manager.notification;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import org.apache.camel.builder.RouteBuilder;
+import org.openremote.container.concurrent.ContainerExecutor;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.persistence.PersistenceService;
 import org.openremote.container.security.AuthContext;
@@ -33,6 +34,7 @@ import org.openremote.model.Constants;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
 import org.openremote.model.asset.Asset;
+import org.openremote.model.notification.AbstractNotificationMessage;
 import org.openremote.model.notification.Notification;
 import org.openremote.model.notification.NotificationSendResult;
 import org.openremote.model.notification.RepeatFrequency;
@@ -42,10 +44,16 @@ import org.openremote.model.query.filter.StringPredicate;
 import org.openremote.model.security.User;
 import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.TimeUtil;
+import org.openremote.model.util.ValueUtil;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
@@ -55,6 +63,7 @@ import java.util.stream.IntStream;
 
 import static java.time.temporal.ChronoUnit.*;
 import static java.util.Map.entry;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.manager.notification.NotificationProcessingException.Reason.*;
 import static org.openremote.model.notification.Notification.HEADER_SOURCE;
 import static org.openremote.model.notification.Notification.Source.*;
@@ -62,6 +71,15 @@ import static org.openremote.model.notification.Notification.Source.*;
 public class NotificationService extends RouteBuilder implements ContainerService {
 
     public static final String NOTIFICATION_QUEUE = "seda://NotificationQueue?waitForTaskToComplete=IfReplyExpected&timeout=10000&purgeWhenStopping=true&discardIfNoConsumers=false&size=25000";
+    public static final String OR_NOTIFICATION_DELIVERY_THREADS = "OR_NOTIFICATION_DELIVERY_THREADS";
+    public static final int OR_NOTIFICATION_DELIVERY_THREADS_DEFAULT = 4;
+    public static final String OR_NOTIFICATION_DELIVERY_BATCH_SIZE = "OR_NOTIFICATION_DELIVERY_BATCH_SIZE";
+    public static final int OR_NOTIFICATION_DELIVERY_BATCH_SIZE_DEFAULT = 100;
+    public static final String OR_NOTIFICATION_DELIVERY_ATTEMPTS = "OR_NOTIFICATION_DELIVERY_ATTEMPTS";
+    public static final int OR_NOTIFICATION_DELIVERY_ATTEMPTS_DEFAULT = 3;
+    public static final String OR_NOTIFICATION_RETRY_DELAY_MILLIS = "OR_NOTIFICATION_RETRY_DELAY_MILLIS";
+    public static final int OR_NOTIFICATION_RETRY_DELAY_MILLIS_DEFAULT = 5000;
+    protected static final int DELIVERY_QUEUE_CAPACITY = 1000;
     private static final Logger LOG = Logger.getLogger(NotificationService.class.getName());
     protected TimerService timerService;
     protected PersistenceService persistenceService;
@@ -69,6 +87,35 @@ public class NotificationService extends RouteBuilder implements ContainerServic
     protected ManagerIdentityService identityService;
     protected MessageBrokerService messageBrokerService;
     protected Map<String, NotificationHandler> notificationHandlerMap = new HashMap<>();
+    protected ScheduledExecutorService executorService;
+    protected ContainerExecutor deliveryExecutor;
+    protected int deliveryBatchSize;
+    protected int deliveryAttempts;
+    protected long retryDelayMillis;
+
+    /**
+     * A batch of targets of a notification that are delivered together; each target has its own copy of the message as
+     * handlers are allowed to modify it whilst sending and the modified message is stored with the sent notification.
+     */
+    protected static class DeliveryBatch {
+        protected final NotificationHandler handler;
+        protected final Notification.Source source;
+        protected final String sourceId;
+        protected final List<AbstractNotificationMessage> messages;
+        protected final List<Notification.Target> targets;
+        protected final List<SentNotification> sentNotifications;
+        protected int attempts;
+
+        protected DeliveryBatch(NotificationHandler handler, Notification.Source source, String sourceId, List<AbstractNotificationMessage> messages, List<Notification.Target> targets, List<SentNotification> sentNotifications, int attempts) {
+            this.handler = handler;
+            this.source = source;
+            this.sourceId = sourceId;
+            this.messages = messages;
+            this.targets = targets;
+            this.sentNotifications = sentNotifications;
+            this.attempts = attempts;
+        }
+    }
 
     @Override
     public int getPriority() {
@@ -82,8 +129,17 @@ public class NotificationService extends RouteBuilder implements ContainerServic
         this.assetStorageService = container.getService(AssetStorageService.class);
         this.identityService = container.getService(ManagerIdentityService.class);
         this.messageBrokerService = container.getService(MessageBrokerService.class);
+        this.executorService = container.getExecutorService();
         container.getService(MessageBrokerService.class).getContext().addRoutes(this);
 
+        int deliveryThreads = Math.max(1, getInteger(container.getConfig(), OR_NOTIFICATION_DELIVERY_THREADS, OR_NOTIFICATION_DELIVERY_THREADS_DEFAULT));
+        deliveryBatchSize = Math.max(1, getInteger(container.getConfig(), OR_NOTIFICATION_DELIVERY_BATCH_SIZE, OR_NOTIFICATION_DELIVERY_BATCH_SIZE_DEFAULT));
+        deliveryAttempts = Math.max(1, getInteger(container.getConfig(), OR_NOTIFICATION_DELIVERY_ATTEMPTS, OR_NOTIFICATION_DELIVERY_ATTEMPTS_DEFAULT));
+        retryDelayMillis = Math.max(0, getInteger(container.getConfig(), OR_NOTIFICATION_RETRY_DELAY_MILLIS, OR_NOTIFICATION_RETRY_DELAY_MILLIS_DEFAULT));
+        // Callers run deliveries themselves when the queue is full which throttles the notification queue
+        deliveryExecutor = new ContainerExecutor("Notification delivery", deliveryThreads, deliveryThreads, 60, DELIVERY_QUEUE_CAPACITY, new ThreadPoolExecutor.CallerRunsPolicy());
+        deliveryExecutor.allowCoreThreadTimeOut(true);
+
         container.getServices(NotificationHandler.class).forEach(notificationHandler ->
                 notificationHandlerMap.put(notificationHandler.getTypeName(), notificationHandler));
 
@@ -102,7 +158,9 @@ public class NotificationService extends RouteBuilder implements ContainerServic
 
     @Override
     public void stop(Container container) throws Exception {
-
+        if (deliveryExecutor != null) {
+            deliveryExecutor.shutdownNow();
+        }
     }
 
     @Override
@@ -197,67 +255,28 @@ public class NotificationService extends RouteBuilder implements ContainerServic
                             .collect(Collectors.toList());
                     }
 
-                    // Send message to each applicable target
-                    AtomicReference<Exception> error = new AtomicReference<>();
-
-                    // As we can have multiple targets in a single exchange we'll track the first exception that occurs
-                    mappedTargetsList.forEach(
-                        target -> {
-                            Exception notificationError = persistenceService.doReturningTransaction(em -> {
-
-                                // commit the notification first to get the ID
-                                SentNotification sentNotification = new SentNotification()
-                                    .setName(notification.getName())
-                                    .setType(notification.getMessage().getType())
-                                    .setSource(source)
-                                    .setSourceId(sourceId.get())
-                                    .setTarget(target.getType())
-                                    .setTargetId(target.getId())
-                                    .setMessage(notification.getMessage())
-                                    .setSentOn(Date.from(timerService.getNow()));
-
-                                sentNotification = em.merge(sentNotification);
-                                long id = sentNotification.getId();
-
-                                try {
-                                    handler.sendMessage(
-                                        id,
-                                        source,
-                                        sourceId.get(),
-                                        target,
-                                        notification.getMessage());
-
-                                    NotificationSendResult result = NotificationSendResult.success();
-                                    LOG.fine("Notification sent '" + id + "': " + target);
-
-                                    // Merge the sent notification again with the message included just in case the handler modified the message
-                                    sentNotification.setMessage(notification.getMessage());
-
-                                } catch (Exception e) {
-                                    NotificationProcessingException notificationProcessingException;
-                                    if (e instanceof NotificationProcessingException) {
-                                        notificationProcessingException = (NotificationProcessingException) e;
-                                    } else {
-                                        notificationProcessingException = new NotificationProcessingException(SEND_FAILURE, e.getMessage());
-                                    }
-                                    LOG.warning("Notification failed '" + id + "': " + target + ", reason=" + notificationProcessingException);
-                                    sentNotification.setError(TextUtil.isNullOrEmpty(notificationProcessingException.getMessage()) ? "Unknown error" : notificationProcessingException.getMessage());
-                                    return notificationProcessingException;
-                                } finally {
-                                    em.merge(sentNotification);
-                                }
-                                return null;
-                            });
-
-                            if (notificationError != null && error.get() == null) {
-                                error.set(notificationError);
-                            }
+                    // Persist all sent notifications up front (to get the IDs) and then deliver them in batches
+                    List<SentNotification> sentNotifications = persistSentNotifications(notification, source, sourceId.get(), mappedTargetsList);
+                    List<CompletableFuture<Exception>> deliveries = deliver(handler, source, sourceId.get(), notification.getMessage(), mappedTargetsList, sentNotifications);
+
+                    if (!exchange.getPattern().isOutCapable()) {
+                        // Nobody is waiting for the outcome so don't hold up the queue
+                        return;
+                    }
+
+                    // Wait for the first delivery attempt; as we can have multiple targets in a single exchange we'll
+                    // report the first permanent failure (targets waiting to be retried are not failures)
+                    Exception error = null;
+                    for (CompletableFuture<Exception> delivery : deliveries) {
+                        Exception notificationError = delivery.join();
+                        if (notificationError != null && error == null) {
+                            error = notificationError;
                         }
-                    );
+                    }
 
-                    exchange.getMessage().setBody(error.get() == null);
-                    if (error.get() != null) {
-                        throw error.get();
+                    exchange.getMessage().setBody(error == null);
+                    if (error != null) {
+                        throw error;
                     }
                 })
             .onException(Exception.class)
@@ -269,6 +288,167 @@ public class NotificationService extends RouteBuilder implements ContainerServic
             });
     }
 
+    protected List<SentNotification> persistSentNotifications(Notification notification, Notification.Source source, String sourceId, List<Notification.Target> targets) {
+        return persistenceService.doReturningTransaction(em -> {
+            Date sentOn = Date.from(timerService.getNow());
+            List<SentNotification> sentNotifications = new ArrayList<>(targets.size());
+
+            for (Notification.Target target : targets) {
+                SentNotification sentNotification = new SentNotification()
+                    .setName(notification.getName())
+                    .setType(notification.getMessage().getType())
+                    .setSource(source)
+                    .setSourceId(sourceId)
+                    .setTarget(target.getType())
+                    .setTargetId(target.getId())
+                    .setMessage(notification.getMessage())
+                    .setSentOn(sentOn);
+                em.persist(sentNotification);
+                sentNotifications.add(sentNotification);
+            }
+
+            return sentNotifications;
+        });
+    }
+
+    /**
+     * Splits the targets into batches and submits them for delivery; each future completes once the first delivery
+     * attempt of the batch has been made with the first permanent failure of the batch (or null).
+     */
+    protected List<CompletableFuture<Exception>> deliver(NotificationHandler handler, Notification.Source source, String sourceId, AbstractNotificationMessage message, List<Notification.Target> targets, List<SentNotification> sentNotifications) {
+        List<CompletableFuture<Exception>> deliveries = new ArrayList<>();
+
+        for (int i = 0; i < targets.size(); i += deliveryBatchSize) {
+            int end = Math.min(targets.size(), i + deliveryBatchSize);
+            List<AbstractNotificationMessage> messages = new ArrayList<>(end - i);
+            for (int j = i; j < end; j++) {
+                messages.add(ValueUtil.clone(message));
+            }
+            DeliveryBatch batch = new DeliveryBatch(
+                handler,
+                source,
+                sourceId,
+                messages,
+                new ArrayList<>(targets.subList(i, end)),
+                new ArrayList<>(sentNotifications.subList(i, end)),
+                0);
+            CompletableFuture<Exception> delivery = new CompletableFuture<>();
+            deliveries.add(delivery);
+
+            try {
+                deliveryExecutor.execute(() -> delivery.complete(deliverBatch(batch)));
+            } catch (RejectedExecutionException e) {
+                // Executor has been shutdown
+                delivery.complete(new NotificationProcessingException(SEND_FAILURE, "Notification delivery is not available"));
+            }
+        }
+
+        return deliveries;
+    }
+
+    /**
+     * Makes a delivery attempt for the batch and records the outcome of each target; targets that failed with a
+     * retryable failure are scheduled for another attempt (with exponential backoff) until the maximum number of
+     * attempts is reached at which point they become dead letters.
+     */
+    protected Exception deliverBatch(DeliveryBatch batch) {
+        batch.attempts++;
+        List<Long> ids = batch.sentNotifications.stream().map(SentNotification::getId).toList();
+        List<NotificationSendResult> results;
+
+        try {
+            results = batch.handler.sendMessages(ids, batch.source, batch.sourceId, batch.targets, batch.messages);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Notification handler failed to send batch: handler=" + batch.handler.getTypeName(), e);
+            results = Collections.nCopies(batch.targets.size(), NotificationSendResult.failure(e.getMessage(), batch.handler.isRetryableFailure(e)));
+        }
+
+        Exception error = null;
+        List<Notification.Target> retryTargets = new ArrayList<>();
+        List<AbstractNotificationMessage> retryMessages = new ArrayList<>();
+        List<SentNotification> retrySentNotifications = new ArrayList<>();
+
+        for (int i = 0; i < batch.targets.size(); i++) {
+            Notification.Target target = batch.targets.get(i);
+            SentNotification sentNotification = batch.sentNotifications.get(i);
+            NotificationSendResult result = i < results.size() && results.get(i) != null ? results.get(i) : NotificationSendResult.failure("No send result returned by handler");
+            sentNotification.setDeliveryAttempts(batch.attempts);
+            // Keep any changes the handler made to the message (e.g. the push token that was used)
+            sentNotification.setMessage(batch.messages.get(i));
+
+            if (result.isSuccess()) {
+                LOG.fine("Notification sent '" + sentNotification.getId() + "': " + target);
+                sentNotification.setError(null);
+                continue;
+            }
+
+            String errorMessage = TextUtil.isNullOrEmpty(result.getMessage()) ? "Unknown error" : result.getMessage();
+            sentNotification.setError(errorMessage);
+
+            if (result.isRetryable() && batch.attempts < deliveryAttempts) {
+                LOG.info("Notification failed '" + sentNotification.getId() + "' so will retry: " + target + ", attempt=" + batch.attempts + ", reason=" + errorMessage);
+                retryTargets.add(target);
+                retryMessages.add(batch.messages.get(i));
+                retrySentNotifications.add(sentNotification);
+            } else {
+                LOG.warning("Notification failed '" + sentNotification.getId() + "': " + target + ", attempts=" + batch.attempts + ", reason=" + errorMessage);
+                sentNotification.setDeadLetter(true);
+                if (error == null) {
+                    error = new NotificationProcessingException(SEND_FAILURE, errorMessage);
+                }
+            }
+        }
+
+        try {
+            updateSentNotifications(batch.sentNotifications);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to update sent notifications", e);
+        }
+
+        if (!retryTargets.isEmpty()) {
+            DeliveryBatch retryBatch = new DeliveryBatch(batch.handler, batch.source, batch.sourceId, retryMessages, retryTargets, retrySentNotifications, batch.attempts);
+            long delay = retryDelayMillis * (1L << Math.min(batch.attempts - 1, 16));
+            try {
+                executorService.schedule(() -> {
+                    try {
+                        deliveryExecutor.execute(() -> deliverBatch(retryBatch));
+                    } catch (RejectedExecutionException e) {
+                        LOG.fine("Notification delivery is not available so cannot retry");
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                LOG.fine("Notification delivery is not available so cannot retry");
+            }
+        }
+
+        return error;
+    }
+
+    /**
+     * Writes the delivery outcome and message of the sent notifications; rows with the same outcome and message are
+     * updated together.
+     */
+    protected void updateSentNotifications(List<SentNotification> sentNotifications) {
+        Map<List<Object>, List<SentNotification>> outcomeSentNotifications = new LinkedHashMap<>();
+        for (SentNotification sentNotification : sentNotifications) {
+            outcomeSentNotifications.computeIfAbsent(
+                Arrays.asList(sentNotification.getError(), sentNotification.getDeliveryAttempts(), sentNotification.isDeadLetter(), ValueUtil.asJSON(sentNotification.getMessage()).orElse(null)),
+                outcome -> new ArrayList<>()
+            ).add(sentNotification);
+        }
+
+        persistenceService.doTransaction(em -> outcomeSentNotifications.values().forEach(outcomeNotifications -> {
+            SentNotification outcome = outcomeNotifications.get(0);
+            Query query = em.createQuery("UPDATE SentNotification SET error=:error, deliveryAttempts=:deliveryAttempts, deadLetter=:deadLetter, message=:message WHERE id IN :ids");
+            query.setParameter("error", outcome.getError());
+            query.setParameter("deliveryAttempts", outcome.getDeliveryAttempts());
+            query.setParameter("deadLetter", outcome.isDeadLetter());
+            query.setParameter("message", outcome.getMessage());
+            query.setParameter("ids", outcomeNotifications.stream().map(SentNotification::getId).toList());
+            query.executeUpdate();
+        }));
+    }
+
     public boolean sendNotification(Notification notification) {
         return sendNotification(notification, INTERNAL, "");
     }
@@ -22,6 +22,7 @@ package org.openremote.manager.notification;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.firebase.ErrorCode;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.messaging.*;
@@ -29,16 +30,22 @@ import org.apache.camel.builder.RouteBuilder;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.persistence.PersistenceService;
 import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.event.ClientEventService;
 import org.openremote.manager.gateway.GatewayService;
 import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
 import org.openremote.model.PersistenceEvent;
-import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.AssetFilter;
+import org.openremote.model.asset.UserAssetLink;
 import org.openremote.model.asset.impl.ConsoleAsset;
+import org.openremote.model.attribute.Attribute;
+import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.console.ConsoleProvider;
+import org.openremote.model.console.ConsoleProviders;
 import org.openremote.model.notification.AbstractNotificationMessage;
 import org.openremote.model.notification.Notification;
+import org.openremote.model.notification.NotificationSendResult;
 import org.openremote.model.notification.PushNotificationMessage;
 import org.openremote.model.query.AssetQuery;
 import org.openremote.model.query.UserQuery;
@@ -52,7 +59,7 @@ import java.lang.reflect.Array;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -68,12 +75,15 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
     public static final int CONNECT_TIMEOUT_MILLIS = 3000;
     public static final int READ_TIMEOUT_MILLIS = 3000;
     public static final String FCM_PROVIDER_NAME = "fcm";
+    // Maximum number of messages FCM accepts in a single batch request
+    public static final int FCM_BATCH_SIZE_MAX = 500;
+    protected static final int USER_ASSET_LINK_LOAD_BATCH_SIZE = 1000;
 
     protected ManagerIdentityService managerIdentityService;
     protected AssetStorageService assetStorageService;
     protected GatewayService gatewayService;
     protected boolean valid;
-    protected Map<String, String> consoleFCMTokenMap = new ConcurrentHashMap<>();
+    protected final ConsoleTokenRegistry consoleRegistry = new ConsoleTokenRegistry();
     protected Set<String> fcmTokenBlacklist = Collections.synchronizedSet(new HashSet<>());
 
     @Override
@@ -86,6 +96,12 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
         this.assetStorageService = container.getService(AssetStorageService.class);
         this.gatewayService = container.getService(GatewayService.class);
         container.getService(MessageBrokerService.class).getContext().addRoutes(this);
+        container.getService(ClientEventService.class).addInternalSubscription(
+            AttributeEvent.class,
+            new AssetFilter<AttributeEvent>()
+                .setAssetClasses(Collections.singletonList(ConsoleAsset.class))
+                .setAttributeNames(ConsoleAsset.CONSOLE_PROVIDERS.getName()),
+            this::onConsoleProvidersAttributeEvent);
 
         String firebaseConfigFilePath = container.getConfig().get(OR_FIREBASE_CONFIG_FILE);
 
@@ -121,21 +137,25 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
             return;
         }
 
-        // Not using Collectors.toMap as there is a quirk in there which means null values aren't supported!
-        consoleFCMTokenMap = new HashMap<>();
-
-        // Find all console assets that use this adapter
+        // Load all console assets (including those without a token so console asset targets can be identified) and
+        // the users linked to them, the registry is then maintained from persistence and attribute events
+        List<String> consoleIds = new ArrayList<>();
         assetStorageService.findAll(
             new AssetQuery()
                 .select(new AssetQuery.Select().attributes(ConsoleAsset.CONSOLE_PROVIDERS.getName()))
-                .types(ConsoleAsset.class)
-                .attributes(
-                    new AttributePredicate(ConsoleAsset.CONSOLE_PROVIDERS, new ValueEmptyPredicate().negate(true), false, new NameValuePredicate.Path(PushNotificationMessage.TYPE, "data", "token"))
-                ))
-            .stream()
-            .map(asset -> (ConsoleAsset) asset)
-            .filter(PushNotificationHandler::isLinkedToFcmProvider)
-            .forEach(asset -> consoleFCMTokenMap.put(asset.getId(), getFcmToken(asset).orElse(null)));
+                .types(ConsoleAsset.class))
+            .forEach(asset -> {
+                ConsoleAsset consoleAsset = (ConsoleAsset) asset;
+                consoleRegistry.putConsole(consoleAsset.getId(), consoleAsset.getRealm(), getFcmToken(consoleAsset).orElse(null), getConsoleProvidersTimestamp(consoleAsset));
+                consoleIds.add(consoleAsset.getId());
+            });
+
+        for (int i = 0; i < consoleIds.size(); i += USER_ASSET_LINK_LOAD_BATCH_SIZE) {
+            assetStorageService.findUserAssetLinks(null, null, consoleIds.subList(i, Math.min(consoleIds.size(), i + USER_ASSET_LINK_LOAD_BATCH_SIZE)))
+                .forEach(userAssetLink -> consoleRegistry.addUserLink(userAssetLink.getId().getUserId(), userAssetLink.getId().getAssetId()));
+        }
+
+        LOG.fine("Loaded push notification console registry: consoles=" + consoleRegistry.size());
     }
 
     @Override
@@ -145,17 +165,22 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
 
     @Override
     public void configure() throws Exception {
-        // If any console asset was modified in the database, detect push provider changes
+        // If any console asset or user asset link was modified in the database, update the console registry; both
+        // are handled by the same route so a console is always registered before its user links
         from(PersistenceService.PERSISTENCE_TOPIC)
             .routeId("Persistence-PushNotificationConsoleAsset")
-            .filter(PersistenceService.isPersistenceEventForEntityType(ConsoleAsset.class))
+            .filter(exchange -> PersistenceService.isPersistenceEventForEntityType(ConsoleAsset.class).matches(exchange)
+                || PersistenceService.isPersistenceEventForEntityType(UserAssetLink.class).matches(exchange))
             .filter(isNotForGateway(gatewayService))
-            .process(exchange -> {
-                @SuppressWarnings("unchecked")
-                PersistenceEvent<ConsoleAsset> persistenceEvent = (PersistenceEvent<ConsoleAsset>)exchange.getIn().getBody(PersistenceEvent.class);
-                final ConsoleAsset asset = persistenceEvent.getEntity();
-                processConsoleAssetChange(asset, persistenceEvent);
-            });
+            .process(exchange -> PersistenceService.getPersistenceEvents(exchange).forEach(persistenceEvent -> {
+                if (persistenceEvent.getEntity() instanceof UserAssetLink userAssetLink) {
+                    processUserAssetLinkChange(userAssetLink, persistenceEvent.getCause());
+                } else {
+                    @SuppressWarnings("unchecked")
+                    PersistenceEvent<ConsoleAsset> consoleAssetEvent = (PersistenceEvent<ConsoleAsset>) persistenceEvent;
+                    processConsoleAssetChange(consoleAssetEvent.getEntity(), consoleAssetEvent);
+                }
+            }));
     }
 
     @Override
@@ -194,97 +219,65 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
         if (targets != null) {
 
             // Filter out console targets
-            String[] assetTargets = targets.stream().filter(target -> target.getType() == Notification.TargetType.ASSET)
-                    .map(Notification.Target::getId).toArray(String[]::new);
-
-            if (assetTargets.length > 0) {
-                List<String> consoleAssets = assetStorageService.findAll(new AssetQuery().ids(assetTargets)
-                        .select(new AssetQuery.Select().excludeAttributes()).types(ConsoleAsset.class))
-                    .stream().map(Asset::getId).toList();
-
-                if (!consoleAssets.isEmpty()) {
-                    targets = targets.stream()
-                        .filter(target -> {
-                            boolean isConsoleAsset = consoleAssets.contains(target.getId());
-                            if (isConsoleAsset) {
-                                // Don't filter out consoles without FCM here so we can record the failure in the actual send
-                                mappedTargets.add(new Notification.Target(Notification.TargetType.ASSET, target.getId()));
-                            }
-                            return !isConsoleAsset;
-                        }).collect(Collectors.toList());
-                }
-            }
+            targets = targets.stream()
+                .filter(target -> {
+                    boolean isConsoleAsset = target.getType() == Notification.TargetType.ASSET && consoleRegistry.isConsole(target.getId());
+                    if (isConsoleAsset) {
+                        // Don't filter out consoles without FCM here so we can record the failure in the actual send
+                        mappedTargets.add(new Notification.Target(Notification.TargetType.ASSET, target.getId()));
+                    }
+                    return !isConsoleAsset;
+                }).collect(Collectors.toList());
 
             targets.forEach(target -> {
 
                 Notification.TargetType targetType = target.getType();
                 String targetId = target.getId();
-                AssetQuery assetQuery = new AssetQuery()
-                    .select(new AssetQuery.Select().excludeAttributes())
-                    .types(ConsoleAsset.class)
-                    .attributes(new AttributePredicate(ConsoleAsset.CONSOLE_PROVIDERS, new ValueEmptyPredicate().negate(true), false, new NameValuePredicate.Path(PushNotificationMessage.TYPE, "data", "token")));
-
-                switch (targetType) {
+                List<String> consoleAssetIds = switch (targetType) {
                     case REALM ->
                         // Any console assets in the target realm
-                        assetQuery.realm(new RealmPredicate(targetId));
+                        filterPushNotificationsDisabled(consoleRegistry.getRealmConsoleIds(targetId), new UserQuery().realm(new RealmPredicate(targetId)));
                     case USER ->
                         // Any console assets linked to the target user
-                        assetQuery.userIds(targetId);
-                    case ASSET ->
+                        consoleRegistry.getUserConsoleIds(Collections.singletonList(targetId));
+                    case ASSET -> {
                         // Any users linked to this asset and then their linked console assets
-                        assetQuery.userIds(
+                        List<String> consoleIds = consoleRegistry.getUserConsoleIds(
                             assetStorageService.findUserAssetLinks(null, null, targetId)
                                 .stream()
                                 .map(ual -> ual.getId().getUserId())
-                                .collect(Collectors.toSet())
-                                .toArray(String[]::new));
-                }
-
-                List<String> consoleAssetIds = assetStorageService.findAll(assetQuery).stream().map(Asset::getId).distinct().toList();
-
-                if (!consoleAssetIds.isEmpty()) {
-                    // Special handling if target type is user (don't need to find all linked users)
-                    if (targetType == Notification.TargetType.USER) {
-                        if (Arrays.stream(managerIdentityService.getIdentityProvider().queryUsers(
-                            // Exclude service accounts, system accounts and accounts with disabled push notifications
-                            new UserQuery().ids(targetId).serviceUsers(false).attributes(
-                                new UserQuery.AttributeValuePredicate(true, new StringPredicate(User.SYSTEM_ACCOUNT_ATTRIBUTE)),
-                                new UserQuery.AttributeValuePredicate(true, new StringPredicate(PUSH_NOTIFICATIONS_DISABLED_ATTRIBUTE), new StringPredicate("true"))
-                            )))
-                            .allMatch(User::isSystemAccount)) {
-                            consoleAssetIds = Collections.emptyList();
-                        }
-                    } else {
-
-                        consoleAssetIds = consoleAssetIds.stream()
-                            .filter(consoleId -> {
-
-                                //  Check there are no regular users with disabled push notifications linked to this console
-                                // TODO: This should be handled by the console provider on the console itself
-                                long count = Arrays.stream(managerIdentityService.getIdentityProvider().queryUsers(
-                                        // Exclude service accounts, system accounts and accounts with disabled email notifications
-                                        new UserQuery()
-                                            .assets(consoleId)
-                                            .serviceUsers(false).attributes(
-                                                new UserQuery.AttributeValuePredicate(true, new StringPredicate(User.SYSTEM_ACCOUNT_ATTRIBUTE)),
-                                                new UserQuery.AttributeValuePredicate(false, new StringPredicate(PUSH_NOTIFICATIONS_DISABLED_ATTRIBUTE), new StringPredicate("true"))
-                                            )
-                                    )).count();
-                                return count == 0;
-                            }).collect(Collectors.toList());
+                                .collect(Collectors.toSet()));
+                        yield filterPushNotificationsDisabled(consoleIds, new UserQuery().ids(
+                            consoleIds.stream()
+                                .flatMap(consoleId -> consoleRegistry.getConsoleUserIds(consoleId).stream())
+                                .distinct()
+                                .toArray(String[]::new)));
+                    }
+                    default -> Collections.emptyList();
+                };
+
+                // Special handling if target type is user (don't need to find all linked users)
+                if (!consoleAssetIds.isEmpty() && targetType == Notification.TargetType.USER) {
+                    if (Arrays.stream(managerIdentityService.getIdentityProvider().queryUsers(
+                        // Exclude service accounts, system accounts and accounts with disabled push notifications
+                        new UserQuery().ids(targetId).serviceUsers(false).attributes(
+                            new UserQuery.AttributeValuePredicate(true, new StringPredicate(User.SYSTEM_ACCOUNT_ATTRIBUTE)),
+                            new UserQuery.AttributeValuePredicate(true, new StringPredicate(PUSH_NOTIFICATIONS_DISABLED_ATTRIBUTE), new StringPredicate("true"))
+                        )))
+                        .allMatch(User::isSystemAccount)) {
+                        consoleAssetIds = Collections.emptyList();
                     }
                 }
 
                 if (consoleAssetIds.isEmpty()) {
                     LOG.fine("No console asset targets have been mapped");
                 } else {
-                    mappedTargets.addAll(
-                        consoleAssetIds
-                            .stream()
-                            .filter(id -> mappedTargets.stream().noneMatch(t -> t.getId().equals(id)))
-                            .map(id -> new Notification.Target(Notification.TargetType.ASSET, id))
-                            .toList());
+                    Set<String> mappedIds = mappedTargets.stream().map(Notification.Target::getId).collect(Collectors.toSet());
+                    consoleAssetIds
+                        .stream()
+                        .filter(mappedIds::add)
+                        .map(id -> new Notification.Target(Notification.TargetType.ASSET, id))
+                        .forEach(mappedTargets::add);
                 }
             });
         }
@@ -292,8 +285,89 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
         return mappedTargets;
     }
 
+    /**
+     * Remove consoles that are linked to a regular user with disabled push notifications; the supplied user query
+     * must match (at least) all users linked to the consoles so the disabled users can be found in a single query.
+     */
+    protected List<String> filterPushNotificationsDisabled(List<String> consoleIds, UserQuery userQuery) {
+        // TODO: This should be handled by the console provider on the console itself
+        if (consoleIds.isEmpty()) {
+            return consoleIds;
+        }
+
+        Set<String> disabledUserIds = Arrays.stream(managerIdentityService.getIdentityProvider().queryUsers(
+                // Exclude service accounts and system accounts
+                userQuery
+                    .serviceUsers(false)
+                    .attributes(
+                        new UserQuery.AttributeValuePredicate(true, new StringPredicate(User.SYSTEM_ACCOUNT_ATTRIBUTE)),
+                        new UserQuery.AttributeValuePredicate(false, new StringPredicate(PUSH_NOTIFICATIONS_DISABLED_ATTRIBUTE), new StringPredicate("true"))
+                    )))
+            .map(User::getId)
+            .collect(Collectors.toSet());
+
+        if (disabledUserIds.isEmpty()) {
+            return consoleIds;
+        }
+
+        return consoleIds.stream()
+            .filter(consoleId -> Collections.disjoint(consoleRegistry.getConsoleUserIds(consoleId), disabledUserIds))
+            .collect(Collectors.toList());
+    }
+
     @Override
     public void sendMessage(long id, Notification.Source source, String sourceId, Notification.Target target, AbstractNotificationMessage message) throws Exception {
+        sendMessage(createMessage(id, source, sourceId, target, message));
+    }
+
+    /**
+     * Builds the FCM messages for the targets and sends them using FCM batch requests.
+     */
+    @Override
+    public List<NotificationSendResult> sendMessages(List<Long> ids, Notification.Source source, String sourceId, List<Notification.Target> targets, List<AbstractNotificationMessage> messages) {
+        NotificationSendResult[] results = new NotificationSendResult[targets.size()];
+        List<Message> fcmMessages = new ArrayList<>(targets.size());
+        List<Integer> messageIndexes = new ArrayList<>(targets.size());
+
+        for (int i = 0; i < targets.size(); i++) {
+            try {
+                fcmMessages.add(createMessage(ids.get(i), source, sourceId, targets.get(i), messages.get(i)));
+                messageIndexes.add(i);
+            } catch (Exception e) {
+                results[i] = NotificationSendResult.failure(e.getMessage(), isRetryableFailure(e));
+            }
+        }
+
+        for (int i = 0; i < fcmMessages.size(); i += FCM_BATCH_SIZE_MAX) {
+            int end = Math.min(fcmMessages.size(), i + FCM_BATCH_SIZE_MAX);
+            List<NotificationSendResult> batchResults = sendFCMMessages(fcmMessages.subList(i, end));
+            for (int j = i; j < end; j++) {
+                results[messageIndexes.get(j)] = batchResults.get(j - i);
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * FCM server errors and quota errors are transient; anything else (e.g. an unregistered token) is not.
+     */
+    @Override
+    public boolean isRetryableFailure(Exception e) {
+        if (!(e instanceof FirebaseMessagingException messagingException)) {
+            return false;
+        }
+        MessagingErrorCode messagingErrorCode = messagingException.getMessagingErrorCode();
+        if (messagingErrorCode != null) {
+            return messagingErrorCode == MessagingErrorCode.UNAVAILABLE
+                || messagingErrorCode == MessagingErrorCode.INTERNAL
+                || messagingErrorCode == MessagingErrorCode.QUOTA_EXCEEDED;
+        }
+        ErrorCode errorCode = messagingException.getErrorCode();
+        return errorCode == ErrorCode.UNAVAILABLE || errorCode == ErrorCode.INTERNAL || errorCode == ErrorCode.DEADLINE_EXCEEDED;
+    }
+
+    protected Message createMessage(long id, Notification.Source source, String sourceId, Notification.Target target, AbstractNotificationMessage message) throws Exception {
 
         Notification.TargetType targetType = target.getType();
         String targetId = target.getId();
@@ -305,7 +379,7 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
         }
 
         // Check this asset has an FCM token (i.e. it is registered for push notifications)
-        String fcmToken = consoleFCMTokenMap.get(targetId);
+        String fcmToken = consoleRegistry.getToken(targetId);
 
         if (TextUtil.isNullOrEmpty(fcmToken)) {
             String msg = "No FCM token found for console: " + targetId;
@@ -332,7 +406,7 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
             // TODO: Decide how to handle conditions support (too much power for users to put anything in target)
         }
 
-        sendMessage(buildFCMMessage(id, pushMessage));
+        return buildFCMMessage(id, pushMessage);
     }
 
 //    public NotificationSendResult sendMessage(PushNotificationMessage.TargetType targetType, String fcmTarget, Message.Builder messageBuilder) {
@@ -368,6 +442,25 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
         FirebaseMessaging.getInstance().send(message);
     }
 
+    /**
+     * Send up to {@link #FCM_BATCH_SIZE_MAX} messages in a single FCM request; returns a result for each message.
+     */
+    public List<NotificationSendResult> sendFCMMessages(List<Message> messages) {
+        try {
+            BatchResponse batchResponse = FirebaseMessaging.getInstance().sendEach(messages);
+            List<NotificationSendResult> results = new ArrayList<>(messages.size());
+            for (SendResponse response : batchResponse.getResponses()) {
+                results.add(response.isSuccessful()
+                    ? NotificationSendResult.success()
+                    : NotificationSendResult.failure(response.getException().getMessage(), isRetryableFailure(response.getException())));
+            }
+            return results;
+        } catch (FirebaseMessagingException e) {
+            LOG.log(Level.INFO, "FCM batch request failed", e);
+            return Collections.nCopies(messages.size(), NotificationSendResult.failure(e.getMessage(), isRetryableFailure(e)));
+        }
+    }
+
     protected boolean isConsoleSubscribedToTopic(ConsoleAsset consoleAsset, String topic) {
         return consoleAsset.getConsoleProviders().flatMap(consoleProviders ->
             Optional.ofNullable(consoleProviders.get(PushNotificationMessage.TYPE))
@@ -468,32 +561,55 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
         return builder.build();
     }
 
-    protected static boolean isLinkedToFcmProvider(ConsoleAsset asset) {
-        return asset.getConsoleProviders().flatMap(consoleProviders ->
-            Optional.ofNullable(consoleProviders.get(PushNotificationMessage.TYPE))
-                .map(ConsoleProvider::getVersion)
-                .map(FCM_PROVIDER_NAME::equals))
-            .orElse(false);
+    protected static Optional<String> getFcmToken(ConsoleAsset asset) {
+        return asset.getConsoleProviders().flatMap(PushNotificationHandler::getFcmToken);
     }
 
-    protected static Optional<String> getFcmToken(ConsoleAsset asset) {
-        return asset.getConsoleProviders().flatMap(consoleProviders ->
-            Optional.ofNullable(consoleProviders.get(PushNotificationMessage.TYPE))
-                .map(ConsoleProvider::getData)
-                .map(data -> {
-                    Object token = data.get("token");
-                    return token instanceof String ? (String)token : null;
-                }));
+    protected static Optional<String> getFcmToken(ConsoleProviders consoleProviders) {
+        return Optional.ofNullable(consoleProviders.get(PushNotificationMessage.TYPE))
+            .filter(consoleProvider -> FCM_PROVIDER_NAME.equals(consoleProvider.getVersion()))
+            .map(ConsoleProvider::getData)
+            .map(data -> {
+                Object token = data.get("token");
+                return token instanceof String ? (String)token : null;
+            })
+            .filter(token -> !TextUtil.isNullOrEmpty(token));
+    }
+
+    protected static long getConsoleProvidersTimestamp(ConsoleAsset asset) {
+        return asset.getAttribute(ConsoleAsset.CONSOLE_PROVIDERS).flatMap(Attribute::getTimestamp).orElse(0L);
     }
 
     protected void processConsoleAssetChange(ConsoleAsset asset, PersistenceEvent<ConsoleAsset> persistenceEvent) {
-        String fcmToken = consoleFCMTokenMap.remove(asset.getId());
+        String fcmToken = persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE
+            ? consoleRegistry.removeConsole(asset.getId())
+            : consoleRegistry.putConsole(asset.getId(), asset.getRealm(), getFcmToken(asset).orElse(null), getConsoleProvidersTimestamp(asset));
+
         if (!TextUtil.isNullOrEmpty(fcmToken)) {
             fcmTokenBlacklist.remove(fcmToken);
         }
+    }
 
-        switch (persistenceEvent.getCause()) {
-            case CREATE, UPDATE -> getFcmToken(asset).ifPresent(token -> consoleFCMTokenMap.put(asset.getId(), token));
+    protected void processUserAssetLinkChange(UserAssetLink userAssetLink, PersistenceEvent.Cause cause) {
+        switch (cause) {
+            case CREATE -> consoleRegistry.addUserLink(userAssetLink.getId().getUserId(), userAssetLink.getId().getAssetId());
+            case DELETE -> consoleRegistry.removeUserLink(userAssetLink.getId().getUserId(), userAssetLink.getId().getAssetId());
+        }
+    }
+
+    /**
+     * Console provider attribute updates don't produce a persistence event so keep the registry up to date from the
+     * attribute events; only consoles already known to the registry are updated.
+     */
+    protected void onConsoleProvidersAttributeEvent(AttributeEvent event) {
+        String fcmToken = consoleRegistry.getToken(event.getId());
+        String newToken = event.isDeleted() ? null : ValueUtil.getValueCoerced(event.getValue().orElse(null), ConsoleProviders.class)
+            .flatMap(PushNotificationHandler::getFcmToken)
+            .orElse(null);
+
+        if (consoleRegistry.updateToken(event.getId(), newToken, event.getTimestamp())
+            && !TextUtil.isNullOrEmpty(fcmToken) && !fcmToken.equals(newToken)) {
+            fcmTokenBlacklist.remove(fcmToken);
         }
     }
 }
@@ -936,7 +936,8 @@ public class JsonRulesBuilder extends RulesBuilder {
                 webhookAction.target = webhooksFacade.buildTarget(webhook);
             }
 
-            return new RuleActionExecution(() -> webhooksFacade.send(webhook, webhookAction.mediaType, webhookAction.target), 0);
+            // Don't block rule execution waiting for the webhook server to respond
+            return new RuleActionExecution(() -> webhooksFacade.sendAsync(webhook, webhookAction.mediaType, webhookAction.target), 0);
         }
 
         if (ruleAction instanceof RuleActionAlarm alarmAction && (alarmAction.alarm != null)) {
@@ -355,8 +355,10 @@ public class RulesEngine<T extends Ruleset> {
         if (track) {
             facts.startTrackingLocationRules();
         } else {
+            // Always stop tracking as this also updates the geofences used for geofence enter/exit detection
+            List<AssetLocationPredicates> assetStateLocationPredicates = facts.stopTrackingLocationRules();
             if (assetLocationPredicatesConsumer != null) {
-                processLocationRules(facts.stopTrackingLocationRules());
+                processLocationRules(assetStateLocationPredicates);
             }
         }
     }
@@ -447,7 +449,7 @@ public class RulesEngine<T extends Ruleset> {
             return;
         }
 
-        if (trackLocationPredicates && assetLocationPredicatesConsumer != null) {
+        if (trackLocationPredicates) {
             facts.startTrackingLocationRules();
         }
 
@@ -535,6 +537,7 @@ public class RulesEngine<T extends Ruleset> {
 
     public synchronized void updateOrInsertAttributeInfo(AttributeInfo attributeInfo, boolean insert) {
         facts.putAssetState(attributeInfo);
+        facts.insertGeofenceEvents(rulesService.defaultEventExpiresMillis, attributeInfo);
         // Make sure location predicate tracking is activated before notifying the deployments otherwise they won't report location predicates
         trackLocationPredicates(trackLocationPredicates || (insert && attributeInfo.getName().equals(Asset.LOCATION.getName())));
         notifyAssetStatesChanged(new AssetStateChangeEvent(insert ? PersistenceEvent.Cause.CREATE : PersistenceEvent.Cause.UPDATE, attributeInfo));
@@ -25,6 +25,8 @@ import org.jeasy.rules.api.Rule;
 import org.jeasy.rules.api.RuleListener;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.rules.geofence.GeoGridIndex;
+import org.openremote.manager.rules.geofence.GeofenceTracker;
 import org.openremote.model.asset.Asset;
 import org.openremote.model.asset.AssetEvent;
 import org.openremote.model.attribute.AttributeEvent;
@@ -35,6 +37,7 @@ import org.openremote.model.query.filter.GeofencePredicate;
 import org.openremote.model.rules.Assets;
 import org.openremote.model.rules.RulesClock;
 import org.openremote.model.rules.TemporaryFact;
+import org.openremote.model.rules.geofence.GeofenceEvent;
 import org.openremote.model.util.TimeUtil;
 
 import java.time.Duration;
@@ -49,6 +52,7 @@ import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static org.openremote.model.query.filter.LocationAttributePredicate.getLocationPredicates;
+import static org.openremote.model.query.filter.LocationAttributePredicate.getRequiredLocationPredicates;
 
 public class RulesFacts extends Facts implements RuleListener {
 
@@ -70,6 +74,8 @@ public class RulesFacts extends Facts implements RuleListener {
     final protected Logger LOG;
     final protected Map<String, Collection<AttributeInfo>> assetIdIndex = new HashMap<>();
     final protected Map<String, Collection<AttributeInfo>> assetTypeIndex = new HashMap<>();
+    final protected GeoGridIndex<AttributeInfo> locationIndex = new GeoGridIndex<>();
+    final protected GeofenceTracker geofenceTracker = new GeofenceTracker();
     protected int triggerCount;
     protected boolean trackLocationRules;
     protected Map<String, Set<GeofencePredicate>> assetStateLocationPredicateMap = null;
@@ -97,6 +103,12 @@ public class RulesFacts extends Facts implements RuleListener {
         trackLocationRules = false;
         Map<String, Set<GeofencePredicate>> assetStateLocationPredicateMap = this.assetStateLocationPredicateMap;
         this.assetStateLocationPredicateMap = null;
+
+        // The geofences found whilst tracking are the geofences used by the rules so these are the ones to track
+        geofenceTracker.setGeofences(assetStateLocationPredicateMap == null ? null : assetStateLocationPredicateMap.values().stream()
+                .flatMap(Collection::stream)
+                .collect(Collectors.toSet()));
+
         return assetStateLocationPredicateMap == null ? null : assetStateLocationPredicateMap.entrySet().stream()
                 .map(assetStateSetEntry ->
                         new RulesEngine.AssetLocationPredicates(
@@ -217,6 +229,16 @@ public class RulesFacts extends Facts implements RuleListener {
         assetTypeIndex.get(assetState.getAssetType()).remove(assetState);
         assetTypeIndex.get(assetState.getAssetType()).add(assetState);
 
+        // Maintain spatial index of location asset states
+        if (Asset.LOCATION.getName().equals(assetState.getName())) {
+            double[] point = GeoGridIndex.getPoint(assetState.getValue().orElse(null));
+            if (point != null) {
+                locationIndex.putPoint(assetState, point[0], point[1]);
+            } else {
+                locationIndex.remove(assetState);
+            }
+        }
+
         return this;
     }
 
@@ -238,6 +260,32 @@ public class RulesFacts extends Facts implements RuleListener {
             assetTypeIndexCollection.remove(assetState);
         }
 
+        locationIndex.remove(assetState);
+
+        if (Asset.LOCATION.getName().equals(assetState.getName())) {
+            geofenceTracker.remove(assetState.getId());
+        }
+
+        return this;
+    }
+
+    /**
+     * Insert a temporary {@link GeofenceEvent} for each geofence (used by the rules) that the asset has entered or
+     * exited as a result of the supplied location asset state change; only the geofences near the location are
+     * evaluated.
+     */
+    public RulesFacts insertGeofenceEvents(long expiresMilliSeconds, AttributeInfo locationAssetState) {
+        if (!Asset.LOCATION.getName().equals(locationAssetState.getName())) {
+            return this;
+        }
+
+        for (GeofenceEvent geofenceEvent : geofenceTracker.update(locationAssetState.getId(), locationAssetState.getValue().orElse(null), locationAssetState.getTimestamp())) {
+            TemporaryFact<GeofenceEvent> fact = new TemporaryFact<>(geofenceEvent.getTimestamp(), expiresMilliSeconds, geofenceEvent);
+            if (LOG.isLoggable(Level.FINEST)) {
+                LOG.finest("Fact change (INSERT): " + fact + " - on: " + loggingContext);
+            }
+            getAnonymousFacts().add(fact);
+        }
         return this;
     }
 
@@ -431,6 +479,15 @@ public class RulesFacts extends Facts implements RuleListener {
         }
 
         Predicate<AttributeInfo> p = new AssetQueryPredicate(timerService, assetStorageService, assetQuery);
+
+        // Only location asset states within the geofence bounding box can match so use the spatial index
+        if (assetQuery.attributes != null) {
+            List<GeofencePredicate> requiredGeofences = getRequiredLocationPredicates(assetQuery.attributes);
+            if (!requiredGeofences.isEmpty()) {
+                return locationIndex.query(requiredGeofences.get(0).getBoundingBox()).stream().filter(p);
+            }
+        }
+
         return matchAssetState(p);
     }
 
@@ -622,6 +679,7 @@ public class RulesFacts extends Facts implements RuleListener {
                         if (assetTypeIndexCollection != null) {
                             assetTypeIndexCollection.remove(assetState);
                         }
+                        locationIndex.remove(assetState);
                     }
                     return invalid;
                 });
@@ -74,6 +74,7 @@ import java.util.stream.Stream;
 
 import static java.util.logging.Level.SEVERE;
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
 import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.util.MapAccess.getString;
@@ -250,10 +251,8 @@ public class RulesService extends RouteBuilder implements ContainerService {
             .routeId("Persistence-Ruleset")
             .filter(isPersistenceEventForEntityType(Ruleset.class))
             .filter(isNotForGateway(gatewayService))
-            .process(exchange -> {
-                PersistenceEvent<?> persistenceEvent = exchange.getIn().getBody(PersistenceEvent.class);
-                processRulesetChange((Ruleset) persistenceEvent.getEntity(), persistenceEvent.getCause());
-            });
+            .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent ->
+                processRulesetChange((Ruleset) persistenceEvent.getEntity(), persistenceEvent.getCause())));
 
         // If any realm was modified in the database then check its status and undeploy, deploy or update any
         // associated rulesets
@@ -261,21 +260,20 @@ public class RulesService extends RouteBuilder implements ContainerService {
             .routeId("Persistence-RulesRealm")
             .filter(isPersistenceEventForEntityType(Realm.class))
             .filter(isNotForGateway(gatewayService))
-            .process(exchange -> {
-                PersistenceEvent<?> persistenceEvent = exchange.getIn().getBody(PersistenceEvent.class);
+            .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent -> {
                 Realm realm = (Realm) persistenceEvent.getEntity();
                 processRealmChange(realm, persistenceEvent.getCause());
-            });
+            }));
 
         // If any asset was modified in the database, detect changed attributes
         from(PERSISTENCE_TOPIC)
             .routeId("Persistence-RulesAsset")
             .filter(isPersistenceEventForEntityType(Asset.class))
-            .process(exchange -> {
-                PersistenceEvent<Asset<?>> persistenceEvent = (PersistenceEvent<Asset<?>>) exchange.getIn().getBody(PersistenceEvent.class);
+            .process(exchange -> getPersistenceEvents(exchange).forEach(event -> {
+                PersistenceEvent<Asset<?>> persistenceEvent = (PersistenceEvent<Asset<?>>) event;
                 final Asset<?> eventAsset = persistenceEvent.getEntity();
                 processAssetChange(eventAsset, persistenceEvent);
-            });
+            }));
     }
 
     @Override
@@ -27,6 +27,7 @@ import org.openremote.model.webhook.Webhook;
 
 import jakarta.ws.rs.client.WebTarget;
 import jakarta.ws.rs.core.MediaType;
+import java.util.concurrent.CompletableFuture;
 
 public class WebhooksFacade<T extends Ruleset> extends Webhooks {
 
@@ -43,6 +44,11 @@ public class WebhooksFacade<T extends Ruleset> extends Webhooks {
         return webhookService.sendHttpRequest(webhook, mediaType, target);
     }
 
+    @Override
+    public CompletableFuture<Boolean> sendAsync(Webhook webhook, MediaType mediaType, WebTarget target) {
+        return webhookService.sendHttpRequestAsync(webhook, mediaType, target);
+    }
+
     @Override
     public WebTarget buildTarget(Webhook webhook) {
         return webhookService.buildWebTarget(webhook);
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.rules.geofence;
+
+import org.openremote.model.geo.GeoJSONPoint;
+import org.openremote.model.query.filter.GeofencePredicate;
+import org.openremote.model.util.ValueUtil;
+
+import java.util.*;
+
+/**
+ * A spatial index of bounding boxes (points are zero size boxes) using a uniform longitude/latitude grid; entries are
+ * stored in every grid cell they overlap so a query only has to look at the cells that overlap the query box rather
+ * than at every entry. Entries that would span too many cells (e.g. very large geofences) are held in a separate list
+ * that is always checked.
+ * <p>
+ * Queries return the entries whose bounding box overlaps the query box so callers must still apply the exact test
+ * (e.g. {@link GeofencePredicate#asPredicate}) to the candidates. This class is not thread safe.
+ */
+public class GeoGridIndex<K> {
+
+    public static final double DEFAULT_CELL_SIZE_DEGREES = 0.1d;
+    protected static final int MAX_CELLS_PER_ENTRY = 256;
+    protected final double cellSize;
+    protected final Map<K, double[]> entries = new HashMap<>();
+    protected final Map<Long, Set<K>> cells = new HashMap<>();
+    protected final Set<K> oversizeEntries = new HashSet<>();
+
+    public GeoGridIndex() {
+        this(DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    public GeoGridIndex(double cellSizeDegrees) {
+        if (cellSizeDegrees <= 0d) {
+            throw new IllegalArgumentException("Cell size must be greater than zero: " + cellSizeDegrees);
+        }
+        this.cellSize = cellSizeDegrees;
+    }
+
+    public void putPoint(K key, double lng, double lat) {
+        put(key, new double[]{lng, lat, lng, lat});
+    }
+
+    /**
+     * Add or replace the entry with the specified bounding box {@code [lngMin, latMin, lngMax, latMax]}
+     */
+    public void put(K key, double[] boundingBox) {
+        remove(key);
+
+        double[] box = normalise(boundingBox);
+        entries.put(key, box);
+
+        int xMin = cellX(box[0]), yMin = cellY(box[1]), xMax = cellX(box[2]), yMax = cellY(box[3]);
+
+        if ((long) (xMax - xMin + 1) * (yMax - yMin + 1) > MAX_CELLS_PER_ENTRY) {
+            oversizeEntries.add(key);
+            return;
+        }
+
+        for (int x = xMin; x <= xMax; x++) {
+            for (int y = yMin; y <= yMax; y++) {
+                cells.computeIfAbsent(cellKey(x, y), k -> new HashSet<>()).add(key);
+            }
+        }
+    }
+
+    public boolean remove(K key) {
+        double[] box = entries.remove(key);
+
+        if (box == null) {
+            return false;
+        }
+
+        if (oversizeEntries.remove(key)) {
+            return true;
+        }
+
+        int xMin = cellX(box[0]), yMin = cellY(box[1]), xMax = cellX(box[2]), yMax = cellY(box[3]);
+        for (int x = xMin; x <= xMax; x++) {
+            for (int y = yMin; y <= yMax; y++) {
+                Long cellKey = cellKey(x, y);
+                Set<K> cellEntries = cells.get(cellKey);
+                if (cellEntries != null) {
+                    cellEntries.remove(key);
+                    if (cellEntries.isEmpty()) {
+                        cells.remove(cellKey);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the entries whose bounding box overlaps the specified bounding box {@code [lngMin, latMin, lngMax, latMax]}
+     */
+    public Set<K> query(double[] boundingBox) {
+        double[] box = normalise(boundingBox);
+        Set<K> results = new HashSet<>();
+        int xMin = cellX(box[0]), yMin = cellY(box[1]), xMax = cellX(box[2]), yMax = cellY(box[3]);
+
+        if ((long) (xMax - xMin + 1) * (yMax - yMin + 1) > entries.size()) {
+            // Cheaper to check every entry
+            entries.forEach((key, entryBox) -> {
+                if (overlaps(entryBox, box)) {
+                    results.add(key);
+                }
+            });
+            return results;
+        }
+
+        for (int x = xMin; x <= xMax; x++) {
+            for (int y = yMin; y <= yMax; y++) {
+                Set<K> cellEntries = cells.get(cellKey(x, y));
+                if (cellEntries != null) {
+                    for (K key : cellEntries) {
+                        if (overlaps(entries.get(key), box)) {
+                            results.add(key);
+                        }
+                    }
+                }
+            }
+        }
+
+        for (K key : oversizeEntries) {
+            if (overlaps(entries.get(key), box)) {
+                results.add(key);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Get the entries whose bounding box contains the specified point
+     */
+    public Set<K> queryPoint(double lng, double lat) {
+        return query(new double[]{lng, lat, lng, lat});
+    }
+
+    public boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        cells.clear();
+        oversizeEntries.clear();
+    }
+
+    /**
+     * Extract the point from a GeoJSON point value as {@code [lng, lat]}; returns null if the value is not a valid
+     * point.
+     */
+    public static double[] getPoint(Object value) {
+        return ValueUtil.getValue(value, GeoJSONPoint.class)
+            .map(GeoJSONPoint::getCoordinates)
+            .filter(coordinate -> !Double.isNaN(coordinate.x) && !Double.isNaN(coordinate.y))
+            .map(coordinate -> new double[]{coordinate.x, coordinate.y})
+            .orElse(null);
+    }
+
+    protected static double[] normalise(double[] box) {
+        // Clamp to valid coordinates in the same way as the geofence predicates clamp the points they test
+        return new double[]{
+            clamp(Math.min(box[0], box[2]), 180d),
+            clamp(Math.min(box[1], box[3]), 90d),
+            clamp(Math.max(box[0], box[2]), 180d),
+            clamp(Math.max(box[1], box[3]), 90d)
+        };
+    }
+
+    protected static double clamp(double value, double limit) {
+        return Math.min(limit, Math.max(-limit, value));
+    }
+
+    protected static boolean overlaps(double[] box1, double[] box2) {
+        return box1[0] <= box2[2] && box1[2] >= box2[0] && box1[1] <= box2[3] && box1[3] >= box2[1];
+    }
+
+    protected int cellX(double lng) {
+        return (int) Math.floor((lng + 180d) / cellSize);
+    }
+
+    protected int cellY(double lat) {
+        return (int) Math.floor((lat + 90d) / cellSize);
+    }
+
+    protected static Long cellKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
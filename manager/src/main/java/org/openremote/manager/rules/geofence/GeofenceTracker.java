@@ -0,0 +1,154 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.rules.geofence;
+
+import org.openremote.model.query.filter.GeofencePredicate;
+import org.openremote.model.rules.geofence.GeofenceEvent;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Incrementally detects assets entering and exiting geofences; the geofences and the current asset locations are held
+ * in {@link GeoGridIndex}es so that a location update only evaluates the geofences near the new location and compares
+ * the result with the geofences the asset was previously inside (which are near the old location).
+ * <p>
+ * Negated geofences are ignored as entering a negated geofence is the same as exiting the non negated one. When the
+ * geofences change the asset membership of added geofences is initialised silently (no events are generated) so that
+ * deploying a ruleset doesn't produce an event for every asset already inside one of its geofences. This class is not
+ * thread safe.
+ */
+public class GeofenceTracker {
+
+    protected final GeoGridIndex<GeofencePredicate> geofenceIndex = new GeoGridIndex<>();
+    protected final GeoGridIndex<String> assetIndex = new GeoGridIndex<>();
+    protected final Map<GeofencePredicate, Predicate<Object>> geofencePredicates = new HashMap<>();
+    protected final Map<String, Object> assetLocations = new HashMap<>();
+    protected final Map<String, Set<GeofencePredicate>> assetGeofences = new HashMap<>();
+
+    /**
+     * Replace the tracked geofences
+     */
+    public void setGeofences(Collection<GeofencePredicate> geofences) {
+        Set<GeofencePredicate> newGeofences = new HashSet<>();
+        if (geofences != null) {
+            geofences.stream().filter(geofence -> !geofence.negated).forEach(newGeofences::add);
+        }
+
+        // Remove obsolete geofences
+        Iterator<GeofencePredicate> geofenceIterator = geofencePredicates.keySet().iterator();
+        while (geofenceIterator.hasNext()) {
+            GeofencePredicate geofence = geofenceIterator.next();
+            if (!newGeofences.contains(geofence)) {
+                geofenceIterator.remove();
+                geofenceIndex.remove(geofence);
+                assetGeofences.values().forEach(insideGeofences -> insideGeofences.remove(geofence));
+            }
+        }
+        assetGeofences.values().removeIf(Set::isEmpty);
+
+        // Add new geofences and initialise which assets are already inside them
+        for (GeofencePredicate geofence : newGeofences) {
+            if (geofencePredicates.containsKey(geofence)) {
+                continue;
+            }
+            double[] boundingBox = geofence.getBoundingBox();
+            Predicate<Object> predicate = geofence.asPredicate(System::currentTimeMillis);
+            geofencePredicates.put(geofence, predicate);
+            geofenceIndex.put(geofence, boundingBox);
+
+            for (String assetId : assetIndex.query(boundingBox)) {
+                if (predicate.test(assetLocations.get(assetId))) {
+                    assetGeofences.computeIfAbsent(assetId, id -> new HashSet<>()).add(geofence);
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the location of the asset and return an event for each geofence the asset has entered or exited
+     */
+    public List<GeofenceEvent> update(String assetId, Object location, long timestamp) {
+        double[] point = GeoGridIndex.getPoint(location);
+        Set<GeofencePredicate> previousGeofences = assetGeofences.getOrDefault(assetId, Collections.emptySet());
+        Set<GeofencePredicate> currentGeofences = new HashSet<>();
+
+        if (point != null) {
+            assetIndex.putPoint(assetId, point[0], point[1]);
+            assetLocations.put(assetId, location);
+            for (GeofencePredicate geofence : geofenceIndex.queryPoint(point[0], point[1])) {
+                if (geofencePredicates.get(geofence).test(location)) {
+                    currentGeofences.add(geofence);
+                }
+            }
+        } else {
+            assetIndex.remove(assetId);
+            assetLocations.remove(assetId);
+        }
+
+        if (currentGeofences.isEmpty()) {
+            assetGeofences.remove(assetId);
+        } else {
+            assetGeofences.put(assetId, currentGeofences);
+        }
+
+        if (previousGeofences.equals(currentGeofences)) {
+            return Collections.emptyList();
+        }
+
+        List<GeofenceEvent> events = new ArrayList<>();
+        for (GeofencePredicate geofence : previousGeofences) {
+            if (!currentGeofences.contains(geofence)) {
+                events.add(new GeofenceEvent(assetId, geofence, GeofenceEvent.Type.EXIT, timestamp));
+            }
+        }
+        for (GeofencePredicate geofence : currentGeofences) {
+            if (!previousGeofences.contains(geofence)) {
+                events.add(new GeofenceEvent(assetId, geofence, GeofenceEvent.Type.ENTER, timestamp));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Stop tracking the asset; no exit events are generated
+     */
+    public void remove(String assetId) {
+        assetIndex.remove(assetId);
+        assetLocations.remove(assetId);
+        assetGeofences.remove(assetId);
+    }
+
+    public Set<GeofencePredicate> getAssetGeofences(String assetId) {
+        return Collections.unmodifiableSet(assetGeofences.getOrDefault(assetId, Collections.emptySet()));
+    }
+
+    public int getGeofenceCount() {
+        return geofencePredicates.size();
+    }
+
+    public void clear() {
+        geofenceIndex.clear();
+        assetIndex.clear();
+        geofencePredicates.clear();
+        assetLocations.clear();
+        assetGeofences.clear();
+    }
+}
@@ -38,6 +38,7 @@ import org.openremote.model.query.AssetQuery;
 import org.openremote.model.query.filter.*;
 import org.openremote.model.rules.geofence.GeofenceDefinition;
 import org.openremote.model.syslog.SyslogCategory;
+import org.openremote.model.util.ValueUtil;
 
 import java.util.*;
 import java.util.concurrent.*;
@@ -47,6 +48,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
 import static org.openremote.manager.gateway.GatewayService.isNotForGateway;
 import static org.openremote.model.asset.AssetResource.Util.WRITE_ATTRIBUTE_HTTP_METHOD;
@@ -59,7 +61,15 @@ import static org.openremote.model.syslog.SyslogCategory.RULES;
  * <p>
  * This adapter utilises push notifications to notify assets when their geofences change; a data only (silent) push
  * notification is sent to affected consoles/assets. Consoles can also manually request their geofences (e.g. on
- * startup)
+ * startup).
+ * <p>
+ * The geofences last fetched by each console are remembered so that the notification can include just the changes
+ * as JSON arrays in the {@code geofencesAdded} ({@link GeofenceDefinition}s) and {@code geofencesRemoved} (geofence IDs)
+ * data fields; if the geofences fetched by the console are unknown or the changes are too large for a push
+ * notification then only the action is sent and the console must request all of its geofences. Push notifications can
+ * be lost so the changes are always relative to the last fetch (including any removal of a geofence that was added
+ * by an earlier notification) rather than to the last notification; consoles must therefore apply them idempotently
+ * (replace added geofences with the same ID and ignore unknown removed IDs).
  */
 public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements GeofenceAssetAdapter {
 
@@ -67,6 +77,10 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
     public static final String NAME = "ORConsole";
     public static int NOTIFY_ASSETS_DEBOUNCE_MILLIS = 60000;
     public static int NOTIFY_ASSETS_BATCH_MILLIS = 10000;
+    public static int NOTIFY_GEOFENCE_DELTA_MAX_LENGTH = 3000;
+    public static final String GEOFENCE_REFRESH_ACTION = "GEOFENCE_REFRESH";
+    public static final String GEOFENCES_ADDED_KEY = "geofencesAdded";
+    public static final String GEOFENCES_REMOVED_KEY = "geofencesRemoved";
     protected Map<String, RulesEngine.AssetLocationPredicates> assetLocationPredicatesMap = new HashMap<>();
     protected NotificationService notificationService;
     protected AssetStorageService assetStorageService;
@@ -74,6 +88,8 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
     protected ManagerIdentityService identityService;
     protected ScheduledExecutorService executorService;
     protected ConcurrentMap<String, String> consoleIdRealmMap = new ConcurrentHashMap<>();
+    protected ConcurrentMap<String, Map<String, GeofenceDefinition>> consoleGeofencesMap = new ConcurrentHashMap<>();
+    protected ConcurrentMap<String, Set<String>> consoleGeofencesNotifiedMap = new ConcurrentHashMap<>();
     protected ScheduledFuture<?> notifyAssetsScheduledFuture;
     protected final Set<String> notifyAssets = new HashSet<>();
 
@@ -119,11 +135,11 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
             .routeId("Persistence-GeofenceAdapterConsoleAsset")
             .filter(isPersistenceEventForEntityType(ConsoleAsset.class))
             .filter(isNotForGateway(gatewayService))
-            .process(exchange -> {
+            .process(exchange -> getPersistenceEvents(exchange).forEach(persistenceEvent -> {
                 @SuppressWarnings("unchecked")
-                PersistenceEvent<ConsoleAsset> persistenceEvent = (PersistenceEvent<ConsoleAsset>)exchange.getIn().getBody(PersistenceEvent.class);
-                processConsoleAssetChange(persistenceEvent);
-            });
+                PersistenceEvent<ConsoleAsset> consoleAssetEvent = (PersistenceEvent<ConsoleAsset>)persistenceEvent;
+                processConsoleAssetChange(consoleAssetEvent);
+            }));
     }
 
     @Override
@@ -198,6 +214,24 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
 
     @Override
     public GeofenceDefinition[] getAssetGeofences(String assetId) {
+        GeofenceDefinition[] geofences;
+
+        synchronized (notifyAssets) {
+            geofences = getGeofenceDefinitions(assetId);
+            if (geofences != null) {
+                // Remember what the console has so subsequent notifications can just contain the changes
+                consoleGeofencesMap.put(assetId, toGeofenceDefinitionMap(geofences));
+                consoleGeofencesNotifiedMap.remove(assetId);
+            }
+        }
+
+        if (geofences != null) {
+            LOG.finest("Request for console '" + assetId + "' geofences: " + geofences.length + " found");
+        }
+        return geofences;
+    }
+
+    protected GeofenceDefinition[] getGeofenceDefinitions(String assetId) {
         String realm = consoleIdRealmMap.get(assetId);
 
         if (realm == null) {
@@ -210,18 +244,20 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
 
         if (assetStateLocationPredicates == null) {
             // No geofences exist for this asset
-            LOG.finest("Request for console '" + assetId + "' geofences: 0 found");
             return new GeofenceDefinition[0];
         }
 
-        GeofenceDefinition[] geofences = assetStateLocationPredicates.getLocationPredicates().stream()
+        return assetStateLocationPredicates.getLocationPredicates().stream()
             .map(locationPredicate ->
                 locationPredicateToGeofenceDefinition(assetStateLocationPredicates.getAssetId(),
                     locationPredicate))
             .toArray(GeofenceDefinition[]::new);
+    }
 
-        LOG.finest("Request for console '" + assetId + "' geofences: " + geofences.length + " found");
-        return geofences;
+    protected static Map<String, GeofenceDefinition> toGeofenceDefinitionMap(GeofenceDefinition[] geofences) {
+        Map<String, GeofenceDefinition> geofenceMap = new LinkedHashMap<>();
+        Arrays.stream(geofences).forEach(geofence -> geofenceMap.put(geofence.getId(), geofence));
+        return geofenceMap;
     }
 
     protected GeofenceDefinition locationPredicateToGeofenceDefinition(String assetId, GeofencePredicate geofencePredicate) {
@@ -237,7 +273,8 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
     }
 
     /**
-     * Send a silent push notification to the console to get it to refresh its geofences
+     * Send a silent push notification to each console to get it to refresh its geofences; this must be called whilst
+     * holding the {@link #notifyAssets} lock
      */
     protected void notifyAssetGeofencesChanged(Set<String> assetIds) {
         if (assetIds == null) {
@@ -245,27 +282,77 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
         }
 
         List<String> ids = new ArrayList<>(assetIds);
-        Map<String, Object> data = new HashMap<>();
-        data.put("action", "GEOFENCE_REFRESH");
 
         // Break into batches of 10 sent every 10s to avoid consoles bombarding the backend
         int rows = (int)Math.ceil((((float)ids.size()) / 10));
         IntStream.range(0, rows)
             .forEach(i -> {
-                final List<Notification.Target> subTargets = ids.subList(10 * i, Math.min(10 + (10 * i), ids.size()))
-                    .stream()
-                    .map(id -> new Notification.Target(Notification.TargetType.ASSET, id))
-                    .collect(Collectors.toList());
-                final Notification notification = new Notification("GeofenceRefresh", new PushNotificationMessage().setData(data), null, null, null);
-                notification.setTargets(subTargets);
+                final List<String> batchIds = ids.subList(10 * i, Math.min(10 + (10 * i), ids.size()));
 
                 executorService.schedule(() -> {
-                    LOG.fine("Notifying consoles that geofences have changed: " + notification.getTargets());
-                    notificationService.sendNotification(notification);
+                    LOG.fine("Notifying consoles that geofences have changed: " + batchIds);
+                    List<Notification> batch;
+
+                    // Get the changes when sending so they are relative to what the console has fetched by then
+                    synchronized (notifyAssets) {
+                        batch = batchIds.stream()
+                            .map(id -> {
+                                Notification notification = new Notification("GeofenceRefresh", new PushNotificationMessage().setData(getGeofenceRefreshData(id)), null, null, null);
+                                notification.setTargets(new Notification.Target(Notification.TargetType.ASSET, id));
+                                return notification;
+                            })
+                            .collect(Collectors.toList());
+                    }
+
+                    batch.forEach(notificationService::sendNotification);
                 }, (long) i * NOTIFY_ASSETS_BATCH_MILLIS, TimeUnit.MILLISECONDS);
             });
     }
 
+    /**
+     * Get the geofence refresh notification data for the console; this contains the geofence changes since the
+     * geofences were last fetched by the console when these are known and small enough. The geofences fetched by the
+     * console are only updated when the console fetches them as there is no guarantee the notification is delivered;
+     * this must be called whilst holding the {@link #notifyAssets} lock.
+     */
+    protected Map<String, Object> getGeofenceRefreshData(String assetId) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("action", GEOFENCE_REFRESH_ACTION);
+
+        Map<String, GeofenceDefinition> fetchedGeofences = consoleGeofencesMap.get(assetId);
+        GeofenceDefinition[] geofences = getGeofenceDefinitions(assetId);
+
+        if (fetchedGeofences == null || geofences == null) {
+            return data;
+        }
+
+        // Geofences added by earlier notifications may also have to be removed
+        Set<String> notifiedGeofenceIds = consoleGeofencesNotifiedMap.getOrDefault(assetId, Collections.emptySet());
+        Set<String> previousGeofenceIds = new LinkedHashSet<>(fetchedGeofences.keySet());
+        previousGeofenceIds.addAll(notifiedGeofenceIds);
+
+        Map<String, GeofenceDefinition> currentGeofences = toGeofenceDefinitionMap(geofences);
+        List<GeofenceDefinition> added = currentGeofences.values().stream()
+            .filter(geofence -> !fetchedGeofences.containsKey(geofence.getId()))
+            .collect(Collectors.toList());
+        List<String> removed = previousGeofenceIds.stream()
+            .filter(id -> !currentGeofences.containsKey(id))
+            .collect(Collectors.toList());
+
+        String addedJson = ValueUtil.asJSON(added).orElse(null);
+        String removedJson = ValueUtil.asJSON(removed).orElse(null);
+
+        if (addedJson == null || removedJson == null || addedJson.length() + removedJson.length() > NOTIFY_GEOFENCE_DELTA_MAX_LENGTH) {
+            // Console will have to request all of its geofences
+            return data;
+        }
+
+        data.put(GEOFENCES_ADDED_KEY, addedJson);
+        data.put(GEOFENCES_REMOVED_KEY, removedJson);
+        added.forEach(geofence -> consoleGeofencesNotifiedMap.computeIfAbsent(assetId, id -> new HashSet<>()).add(geofence.getId()));
+        return data;
+    }
+
     protected void processConsoleAssetChange(PersistenceEvent<ConsoleAsset> persistenceEvent) {
         ConsoleAsset asset = persistenceEvent.getEntity();
 
@@ -278,11 +365,15 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
                     consoleIdRealmMap.put(asset.getId(), asset.getRealm());
                 } else {
                     consoleIdRealmMap.remove(asset.getId());
+                    consoleGeofencesMap.remove(asset.getId());
+                    consoleGeofencesNotifiedMap.remove(asset.getId());
                 }
                 break;
             case DELETE:
 
                 consoleIdRealmMap.remove(asset.getId());
+                consoleGeofencesMap.remove(asset.getId());
+                consoleGeofencesNotifiedMap.remove(asset.getId());
                 break;
         }
     }
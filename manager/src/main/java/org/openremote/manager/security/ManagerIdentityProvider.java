@@ -157,8 +157,14 @@ public interface ManagerIdentityProvider extends IdentityProvider {
             parameters.add(Arrays.asList(userQuery.assets));
         }
         if (userQuery.pathPredicate != null && userQuery.pathPredicate.path != null && userQuery.pathPredicate.path.length > 0) {
-            sb.append(" AND ?").append(parameters.size() + 1).append("\\:\\:text[] <@ get_asset_tree_path(ua.asset_id)");
-            parameters.add("{" + String.join(",", userQuery.pathPredicate.path) + "}");
+            // Linked asset must be a descendant of every path asset; anchor on each path asset's stored path so the
+            // PATH index can be used rather than building the tree path of every linked asset
+            sb.append(" AND EXISTS (SELECT 1 FROM ASSET UAA WHERE UAA.ID = ua.asset_id");
+            for (String pathAssetId : userQuery.pathPredicate.path) {
+                sb.append(" AND UAA.PATH <@ (SELECT PA.PATH FROM ASSET PA WHERE PA.ID = ?").append(parameters.size() + 1).append(")");
+                parameters.add(pathAssetId);
+            }
+            sb.append(")");
         }
         if (userQuery.ids != null && userQuery.ids.length > 0) {
             sb.append(" AND u.id IN (?").append(parameters.size() + 1).append(")");
@@ -19,12 +19,17 @@
  */
 package org.openremote.manager.security;
 
+import org.openremote.container.persistence.PersistenceService;
 import org.openremote.container.security.IdentityService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.mqtt.MQTTBrokerService;
+import org.openremote.manager.setup.KeycloakInitService;
 import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Locale;
 import java.util.logging.Logger;
 
@@ -36,6 +41,15 @@ public class ManagerIdentityService extends IdentityService {
 
     protected ManagerIdentityProvider identityProvider;
 
+    /**
+     * Needs Keycloak to be reachable and the storage directory (Keycloak) or the database (basic) of the persistence
+     * service; resources are only registered with the web service so it doesn't need to be initialised first.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getStartupDependencies() {
+        return Arrays.asList(KeycloakInitService.class, PersistenceService.class);
+    }
+
     @Override
     public void init(Container container) throws Exception {
         super.init(container);
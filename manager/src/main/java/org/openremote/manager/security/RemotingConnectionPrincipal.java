@@ -46,11 +46,15 @@ public class RemotingConnectionPrincipal implements Principal {
     }
 
     public static RemotingConnection getRemotingConnectionFromSubject(Subject subject) {
-        return subject != null ? subject.getPrincipals()
-            .stream()
-            .filter(p -> p instanceof RemotingConnectionPrincipal)
-            .findFirst()
-            .map(p -> ((RemotingConnectionPrincipal)p).getRemotingConnection())
-            .orElse(null) : null;
+        if (subject == null) {
+            return null;
+        }
+        // Called for every MQTT publish so avoid streams
+        for (Principal principal : subject.getPrincipals()) {
+            if (principal instanceof RemotingConnectionPrincipal remotingConnectionPrincipal) {
+                return remotingConnectionPrincipal.getRemotingConnection();
+            }
+        }
+        return null;
     }
 }
@@ -33,6 +33,8 @@ import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
 import org.openremote.model.util.TextUtil;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
@@ -81,6 +83,14 @@ public class KeycloakInitService implements ContainerService {
         return PRIORITY;
     }
 
+    /**
+     * Only waits for the Keycloak server so doesn't need to wait for other services.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getStartupDependencies() {
+        return Collections.emptyList();
+    }
+
     public static void waitForKeycloak(Container container) {
         UriBuilder keycloakServiceUri =
             UriBuilder.fromPath("/")
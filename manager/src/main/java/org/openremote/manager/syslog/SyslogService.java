@@ -75,6 +75,15 @@ public class SyslogService extends Handler implements ContainerService {
         return ContainerService.DEFAULT_PRIORITY;
     }
 
+    /**
+     * Only registers an authorizer and a resource during init and schedules its own tasks during start so doesn't
+     * need to wait for other services.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getStartupDependencies() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void init(Container container) throws Exception {
         executorService = container.getExecutorService();
@@ -215,7 +224,7 @@ public class SyslogService extends Handler implements ContainerService {
         Date toDate = Date.from(to);
         AtomicLong count = new AtomicLong();
 
-        List<SyslogEvent> events = persistenceService.doReturningTransaction(em -> {
+        List<SyslogEvent> events = persistenceService.doReturningReadOnlyTransaction(em -> {
             StringBuilder sb = new StringBuilder("from SyslogEvent e where e.timestamp >= :from and e.timestamp <= :to");
             if (level != null) {
                 sb.append(" and e.level >= :level");
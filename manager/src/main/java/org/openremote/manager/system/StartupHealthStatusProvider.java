@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.system;
+
+import org.openremote.model.Container;
+import org.openremote.model.system.HealthStatusProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exposes the per service init/start timeline of the last container startup.
+ */
+public class StartupHealthStatusProvider implements HealthStatusProvider {
+
+    public static final String NAME = "startup";
+    protected Container container;
+
+    @Override
+    public void init(Container container) throws Exception {
+        this.container = container;
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+
+    }
+
+    @Override
+    public String getHealthStatusName() {
+        return NAME;
+    }
+
+    @Override
+    public Object getHealthStatus() {
+        Map<String, Object> objectValue = new HashMap<>();
+
+        if (!(container instanceof org.openremote.container.Container runtimeContainer)) {
+            return objectValue;
+        }
+
+        objectValue.put("startupMillis", runtimeContainer.getStartupMillis());
+        objectValue.put("timeline", runtimeContainer.getStartupTimeline());
+        return objectValue;
+    }
+}
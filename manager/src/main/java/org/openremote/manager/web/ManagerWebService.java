@@ -53,6 +53,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -98,8 +99,8 @@ public class ManagerWebService extends WebService {
     protected boolean initialised;
     protected Path builtInAppDocRoot;
     protected Path customAppDocRoot;
-    protected Collection<Class<?>> apiClasses = new HashSet<>();
-    protected Collection<Object> apiSingletons = new HashSet<>();
+    protected Collection<Class<?>> apiClasses = Collections.synchronizedSet(new HashSet<>());
+    protected Collection<Object> apiSingletons = Collections.synchronizedSet(new HashSet<>());
 
     /**
      * Start web service after other services.
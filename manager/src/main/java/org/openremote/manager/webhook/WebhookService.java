@@ -29,38 +29,70 @@ import org.apache.camel.builder.RouteBuilder;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
 import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
+import org.openremote.container.web.HttpRequestExecutor;
 import org.openremote.container.web.WebTargetBuilder;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
 import org.openremote.model.webhook.Webhook;
 
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import static org.openremote.container.util.MapAccess.getInteger;
 
+/**
+ * Sends {@link Webhook} requests; all webhook targets share a single pooled client and requests are executed
+ * asynchronously by a {@link HttpRequestExecutor} so slow webhook servers do not block the caller (e.g. rules
+ * engines).
+ */
 public class WebhookService extends RouteBuilder implements ContainerService {
 
     private static final Logger LOG = Logger.getLogger(WebhookService.class.getName());
     protected ResteasyClientBuilder clientBuilder;
+    protected ResteasyClient client;
+    protected HttpRequestExecutor requestExecutor;
 
     public static final String WEBHOOK_CONNECT_TIMEOUT = "WEBHOOK_CONNECT_TIMEOUT";
     public static final int WEBHOOK_CONNECT_TIMEOUT_DEFAULT = 2000;
     public static final String WEBHOOK_REQUEST_TIMEOUT = "WEBHOOK_REQUEST_TIMEOUT";
     public static final int WEBHOOK_REQUEST_TIMEOUT_DEFAULT = 10000;
+    public static final String WEBHOOK_MAX_REQUESTS_PER_HOST = "WEBHOOK_MAX_REQUESTS_PER_HOST";
+    public static final int WEBHOOK_MAX_REQUESTS_PER_HOST_DEFAULT = HttpRequestExecutor.DEFAULT_MAX_REQUESTS_PER_HOST;
+    public static final String WEBHOOK_MAX_QUEUED_REQUESTS_PER_HOST = "WEBHOOK_MAX_QUEUED_REQUESTS_PER_HOST";
+    public static final int WEBHOOK_MAX_QUEUED_REQUESTS_PER_HOST_DEFAULT = HttpRequestExecutor.DEFAULT_MAX_QUEUED_REQUESTS_PER_HOST;
+    public static final String WEBHOOK_THREADS_MAX = "WEBHOOK_THREADS_MAX";
+    public static final int WEBHOOK_THREADS_MAX_DEFAULT = HttpRequestExecutor.DEFAULT_MAX_THREADS;
 
     @Override
     public void init(Container container) throws Exception {
+        int requestTimeout = getInteger(container.getConfig(), WEBHOOK_REQUEST_TIMEOUT, WEBHOOK_REQUEST_TIMEOUT_DEFAULT);
+        int maxRequestsPerHost = getInteger(container.getConfig(), WEBHOOK_MAX_REQUESTS_PER_HOST, WEBHOOK_MAX_REQUESTS_PER_HOST_DEFAULT);
+
         this.clientBuilder = new ResteasyClientBuilderImpl()
+                .connectionPoolSize(maxRequestsPerHost * 2)
+                .maxPooledPerRoute(maxRequestsPerHost)
                 .connectTimeout(
                         getInteger(container.getConfig(), WEBHOOK_CONNECT_TIMEOUT, WEBHOOK_CONNECT_TIMEOUT_DEFAULT),
                         TimeUnit.MILLISECONDS
                 )
                 .readTimeout(
-                        getInteger(container.getConfig(), WEBHOOK_REQUEST_TIMEOUT, WEBHOOK_REQUEST_TIMEOUT_DEFAULT),
+                        requestTimeout,
                         TimeUnit.MILLISECONDS
                 );
+
+        this.requestExecutor = new HttpRequestExecutor(
+                "WebhookRequests",
+                getInteger(container.getConfig(), WEBHOOK_THREADS_MAX, WEBHOOK_THREADS_MAX_DEFAULT),
+                maxRequestsPerHost,
+                getInteger(container.getConfig(), WEBHOOK_MAX_QUEUED_REQUESTS_PER_HOST, WEBHOOK_MAX_QUEUED_REQUESTS_PER_HOST_DEFAULT),
+                // Allow for connection checkout and connect on top of the read timeout
+                requestTimeout * 2L,
+                HttpRequestExecutor.DEFAULT_CIRCUIT_FAILURE_THRESHOLD,
+                HttpRequestExecutor.DEFAULT_CIRCUIT_OPEN_MILLIS,
+                container.getMeterRegistry()
+        );
     }
 
     @Override
@@ -75,29 +107,52 @@ public class WebhookService extends RouteBuilder implements ContainerService {
 
     @Override
     public void stop(Container container) throws Exception {
-        // empty
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
+        synchronized (this) {
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+        }
     }
 
-
+    /**
+     * Blocking variant of {@link #sendHttpRequestAsync}.
+     */
     public boolean sendHttpRequest(Webhook webhook, MediaType mediaType, WebTarget target) {
+        return sendHttpRequestAsync(webhook, mediaType, target).join();
+    }
 
-        try (Response response = this.buildRequest(webhook, target, mediaType)) {
-            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
-                LOG.warning("Webhook request responded with error " + response.getStatus() + ": " + response.getStatusInfo().getReasonPhrase());
-            } else {
-                LOG.info("Webhook request executed successfully with response status " + response.getStatus());
-                return true;
-            }
-        } catch (Exception e) {
-            LOG.warning(e.getMessage());
-        }
-        return false;
+    /**
+     * Send the webhook request; the returned future completes with true if the server responded with a successful
+     * status code, otherwise false (it never completes exceptionally).
+     */
+    public CompletableFuture<Boolean> sendHttpRequestAsync(Webhook webhook, MediaType mediaType, WebTarget target) {
+        return requestExecutor.submit(target.getUri(), () -> this.buildRequest(webhook, target, mediaType))
+            .handle((response, e) -> {
+                if (e != null) {
+                    LOG.warning("Webhook request failed: " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+                    return false;
+                }
+                try (response) {
+                    if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                        LOG.warning("Webhook request responded with error " + response.getStatus() + ": " + response.getStatusInfo().getReasonPhrase());
+                    } else {
+                        LOG.info("Webhook request executed successfully with response status " + response.getStatus());
+                        return true;
+                    }
+                } catch (Exception ex) {
+                    LOG.warning(ex.getMessage());
+                }
+                return false;
+            });
     }
 
     public WebTarget buildWebTarget(Webhook webhook) {
 
-        ResteasyClient client = this.clientBuilder.build();
-        WebTargetBuilder builder = new WebTargetBuilder(client, URI.create(webhook.getUrl()));
+        WebTargetBuilder builder = new WebTargetBuilder(getClient(), URI.create(webhook.getUrl()));
 
         // Authentication
         if (webhook.getUsernamePassword() != null) {
@@ -108,6 +163,17 @@ public class WebhookService extends RouteBuilder implements ContainerService {
         return builder.build();
     }
 
+    /**
+     * The client is created on first use so that it is shared by all webhook targets (each client owns a connection
+     * pool).
+     */
+    protected synchronized ResteasyClient getClient() {
+        if (client == null) {
+            client = clientBuilder.build();
+        }
+        return client;
+    }
+
     private Response buildRequest(Webhook webhook, WebTarget target, MediaType mediaType) throws ProcessingException {
         Invocation.Builder request = target.request();
         if (webhook.getHeaders() != null) {
@@ -0,0 +1,11 @@
+create table FORECAST_MODEL_STATE (
+  ENTITY_ID      varchar(36)                not null,
+  ATTRIBUTE_NAME varchar(255)               not null,
+  TYPE           varchar(255)               not null,
+  STATE          jsonb                      not null,
+  TIMESTAMP      timestamp                  not null,
+  primary key (ENTITY_ID, ATTRIBUTE_NAME)
+);
+
+alter table FORECAST_MODEL_STATE
+  add foreign key (ENTITY_ID) references ASSET (ID) on delete cascade;
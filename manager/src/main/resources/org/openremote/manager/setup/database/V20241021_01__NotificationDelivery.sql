@@ -0,0 +1,3 @@
+ALTER TABLE NOTIFICATION
+    ADD DELIVERY_ATTEMPTS integer not null default 0,
+    ADD DEAD_LETTER boolean not null default false;
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+  Spatial index of the asset location point used to pre-filter geofence predicates; the expression must match
+  AssetStorageService.LOCATION_POINT_SQL for the index to be used.
+ */
+CREATE INDEX IF NOT EXISTS ASSET_LOCATION_POINT_IDX ON ASSET USING GIST ((CASE WHEN jsonb_typeof(ATTRIBUTES #> '{location,value,coordinates,0}') = 'number'
+    AND jsonb_typeof(ATTRIBUTES #> '{location,value,coordinates,1}') = 'number'
+    THEN ST_MakePoint((ATTRIBUTES #>> '{location,value,coordinates,0}')::float8, (ATTRIBUTES #>> '{location,value,coordinates,1}')::float8) END));
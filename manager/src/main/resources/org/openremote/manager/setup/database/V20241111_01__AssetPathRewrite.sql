@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+  Rewrite the paths of all descendants of a moved asset with a single set based update; the BEFORE trigger only sets
+  the path of the moved asset itself. The trigger only fires on updates of PARENT_ID so the descendant updates (which
+  only set PATH) do not fire it again.
+ */
+CREATE OR REPLACE FUNCTION update_asset_descendant_paths() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE ASSET SET PATH = NEW.PATH || subpath(PATH, nlevel(OLD.PATH))
+    WHERE PATH <@ OLD.PATH AND ID != NEW.ID;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER asset_descendant_path_tgr
+    AFTER UPDATE OF PARENT_ID ON ASSET
+    FOR EACH ROW
+    WHEN (OLD.PATH IS DISTINCT FROM NEW.PATH)
+    EXECUTE PROCEDURE update_asset_descendant_paths();
+
+/* Repair the paths of descendants of assets that were moved before this trigger existed */
+WITH RECURSIVE ASSET_TREE(ID, PATH) AS (
+    SELECT A.ID, A.ID::ltree FROM ASSET A WHERE A.PARENT_ID IS NULL
+    UNION ALL
+    SELECT A.ID, AT.PATH || A.ID::text FROM ASSET A JOIN ASSET_TREE AT ON A.PARENT_ID = AT.ID
+)
+UPDATE ASSET A SET PATH = AT.PATH FROM ASSET_TREE AT WHERE A.ID = AT.ID AND A.PATH IS DISTINCT FROM AT.PATH;
@@ -21,6 +21,8 @@ package org.openremote.model;
 
 import org.openremote.model.util.TsIgnore;
 
+import java.util.Collection;
+
 /**
  * The {@link Container} is a registry of services, the order of services in a container is important and is determined
  * by the {@link #getPriority} value; when starting the {@link Container} using the auto service discovery mechanism.
@@ -33,6 +35,12 @@ import org.openremote.model.util.TsIgnore;
  * <li>{@link #start} in registry insertion order</li>
  * </ol>
  * <p>
+ * A service can declare its {@link #getStartupDependencies}, in which case it is initialised and started as soon as
+ * those services have been rather than waiting for every service ahead of it in the registry; this only happens in
+ * parallel with other services when {@code OR_CONTAINER_STARTUP_THREADS} is greater than 1 (the default). All init
+ * calls complete before any start call.
+ * </p>
+ * <p>
  * Service shutdown lifecycle:
  * </p>
  * <ol>
@@ -55,6 +63,17 @@ public interface ContainerService {
         return DEFAULT_PRIORITY;
     }
 
+    /**
+     * Gets the services that must be initialized (and started) before this service is initialized (and started); a
+     * service only needs to be listed if it is used during {@link #init} or {@link #start}, services that are not
+     * present in the container are ignored. The default of <code>null</code> means this service depends on every
+     * service ahead of it in the registry, which is the sequential behaviour; an empty collection means it has no
+     * dependencies. Any service without declared dependencies also waits for every service ahead of it.
+     */
+    default Collection<Class<? extends ContainerService>> getStartupDependencies() {
+        return null;
+    }
+
     /**
      * All services are initialized in the order they have been added to the container (if container started with
      * explicit list of services) otherwise they are initialized in order of {@link #getPriority}.
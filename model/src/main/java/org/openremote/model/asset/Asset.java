@@ -227,7 +227,7 @@ import static org.openremote.model.Constants.PERSISTENCE_UNIQUE_ID_GENERATOR;
 @DynamicUpdate
 @TsIgnoreTypeParams
 @SuppressWarnings("unchecked")
-public abstract class Asset<T extends Asset<?>> implements IdentifiableEntity<T>, AssetInfo {
+public abstract class Asset<T extends Asset<?>> implements IdentifiableEntity<T>, AssetInfo, Cloneable {
 
     /**
      * The purpose of this is to provide {@link org.openremote.model.attribute.Attribute.AttributeDeserializer} access
@@ -605,6 +605,24 @@ public abstract class Asset<T extends Asset<?>> implements IdentifiableEntity<T>
         return (T) this;
     }
 
+    /**
+     * Create a deep copy of this asset; the attributes are copied with {@link AttributeMap#copy} so immutable values and
+     * descriptors are shared, this is much cheaper than {@link ValueUtil#clone} which serialises the whole asset.
+     */
+    @SuppressWarnings("unchecked")
+    public T copy() {
+        try {
+            Asset<?> copy = (Asset<?>) super.clone();
+            copy.createdOn = createdOn != null ? (Date) createdOn.clone() : null;
+            copy.path = path != null ? path.clone() : null;
+            copy.attributes = attributes != null ? attributes.copy() : null;
+            return (T) copy;
+        } catch (CloneNotSupportedException e) {
+            // Cannot happen as this class implements Cloneable
+            throw new IllegalStateException(e);
+        }
+    }
+
     @PostLoad
     protected void postLoadCallback() {
         if (attributes != null) {
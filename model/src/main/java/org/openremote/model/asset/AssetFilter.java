@@ -251,8 +251,15 @@ public class AssetFilter<T extends SharedEvent & AssetInfo> implements EventFilt
         }
 
         if (assetClasses != null && !assetClasses.isEmpty()) {
-            T finalEvent = event;
-            if (assetClasses.stream().noneMatch(ac -> ac.isAssignableFrom(finalEvent.getAssetClass()))) {
+            Class<?> eventAssetClass = event.getAssetClass();
+            boolean matched = false;
+            for (Class<? extends Asset> assetClass : assetClasses) {
+                if (assetClass.isAssignableFrom(eventAssetClass)) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
                 return null;
             }
         }
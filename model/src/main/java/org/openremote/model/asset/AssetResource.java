@@ -268,6 +268,23 @@ public interface AssetResource {
     @Operation(operationId = "createAsset", summary = "Create an asset")
     Asset<?> create(@BeanParam RequestParams requestParams, Asset<?> asset);
 
+    /**
+     * Creates or updates many assets in one transaction, use this rather than {@link #create} when provisioning large
+     * numbers of assets. A parent can be included in the same request as its children and identifiers can be
+     * provided so children can reference them; if any asset is invalid then no assets are stored. Regular users can
+     * only merge assets in their authenticated realm, the superuser can merge assets in other (all) realms. A 403
+     * status is returned if a regular user tries to merge an asset in a realm different than its authenticated realm,
+     * or if the user is restricted. A 400 status is returned if an asset fails validation. The stored assets are
+     * returned in request order.
+     */
+    @POST
+    @Path("bulk")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    @RolesAllowed({Constants.WRITE_ASSETS_ROLE})
+    @Operation(operationId = "bulkMergeAssets", summary = "Create or update many assets")
+    Asset<?>[] bulkMerge(@BeanParam RequestParams requestParams, Asset<?>[] assets);
+
     /**
      * Deletes an asset. Regular users can only delete assets in their authenticated realm, the superuser can delete
      * assets in other (all) realms. A 403 status is returned if a regular user tries to delete an asset in a realm
@@ -295,6 +312,20 @@ public interface AssetResource {
     @Operation(operationId = "queryAssets", summary = "Retrieve assets using a query")
     Asset<?>[] queryAssets(@BeanParam RequestParams requestParams, AssetQuery query);
 
+    /**
+     * Same as {@link #queryAssets} but the JSON array of assets is streamed from a DB cursor as it is written so the
+     * server does not have to hold the whole result in memory; use this for large results (e.g. exporting a realm).
+     */
+    @POST
+    @Path("query/stream")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    @Operation(operationId = "streamAssets", summary = "Retrieve assets using a query with the result streamed", responses = {
+        @ApiResponse(description = "The matching assets",
+            content = @Content(mediaType = "application/json",
+                schema = @Schema(implementation = Asset[].class)))})
+    Response streamAssets(@BeanParam RequestParams requestParams, AssetQuery query);
+
     /**
      * Change parent for a set of asset
      */
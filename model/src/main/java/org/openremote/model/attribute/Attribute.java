@@ -458,6 +458,22 @@ public class Attribute<T> extends AbstractNameValueHolder<T> implements MetaHold
         return comparator.compare(this, that) == 0;
     }
 
+    /**
+     * Create a deep copy of this attribute; the type is shared, the value is copied with {@link ValueUtil#copyValue}
+     * (so immutable values are shared) and the meta is copied with {@link MetaMap#copy}. This is much cheaper than
+     * {@link ValueUtil#clone} which serialises the whole object graph.
+     */
+    public Attribute<T> copy() {
+        Attribute<T> copy = new Attribute<>();
+        copy.name = name;
+        copy.type = type;
+        copy.timestamp = timestamp;
+        copy.value = ValueUtil.copyValue(value);
+        copy.valueStr = valueStr;
+        copy.meta = meta != null ? meta.copy() : null;
+        return copy;
+    }
+
     public Attribute<T> shallowClone() {
         Attribute<T> cloned = new Attribute<>();
         cloned.name = name;
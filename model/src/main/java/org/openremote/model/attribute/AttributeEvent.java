@@ -126,7 +126,15 @@ public class AttributeEvent extends SharedEvent implements AttributeInfo {
     }
 
     public AttributeEvent(AssetInfo asset, Attribute<?> attribute, Object source, Object value, Long valueTimestamp, Object oldValue, Long oldValueTimestamp) {
-        this(new AttributeRef(asset.getId(), attribute.getName()),value, valueTimestamp);
+        this(new AttributeRef(asset.getId(), attribute.getName()), asset, attribute, source, value, valueTimestamp, oldValue, oldValueTimestamp);
+    }
+
+    /**
+     * Create an enriched event re-using an existing {@link AttributeRef} (which must reference the supplied asset and
+     * attribute); the asset path, meta etc. are shared by reference and not copied.
+     */
+    public AttributeEvent(AttributeRef ref, AssetInfo asset, Attribute<?> attribute, Object source, Object value, Long valueTimestamp, Object oldValue, Long oldValueTimestamp) {
+        this(ref, value, valueTimestamp);
 
         this.oldValue = oldValue;
         this.oldValueTimestamp = oldValueTimestamp;
@@ -49,6 +49,13 @@ public class AttributeMap extends NamedMap<Attribute<?>> {
         super.remove(nameHolder);
     }
 
+    /**
+     * Create a deep copy of this map, see {@link Attribute#copy}
+     */
+    public AttributeMap copy() {
+        return copyInto(new AttributeMap(), Attribute::copy);
+    }
+
     public <S> Attribute<S> getOrCreate(AttributeDescriptor<S> attributeDescriptor) {
         return get(attributeDescriptor).orElseGet(() -> {
             Attribute<S> attr = new Attribute<>(attributeDescriptor);
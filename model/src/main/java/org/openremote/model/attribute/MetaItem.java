@@ -23,6 +23,7 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.openremote.model.util.ValueUtil;
 import org.openremote.model.value.AbstractNameValueHolder;
 import org.openremote.model.value.MetaItemDescriptor;
 import org.openremote.model.value.ValueDescriptor;
@@ -55,6 +56,18 @@ public class MetaItem<T> extends AbstractNameValueHolder<T> {
     MetaItem() {
     }
 
+    /**
+     * Create a deep copy of this meta item; the type is shared and the value is copied with {@link ValueUtil#copyValue}
+     */
+    public MetaItem<T> copy() {
+        MetaItem<T> copy = new MetaItem<>();
+        copy.name = name;
+        copy.type = type;
+        copy.value = ValueUtil.copyValue(value);
+        copy.valueStr = valueStr;
+        return copy;
+    }
+
     public MetaItem(String name) {
         this(name, null);
     }
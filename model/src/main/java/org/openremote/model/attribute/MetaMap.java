@@ -118,6 +118,13 @@ public class MetaMap extends NamedMap<MetaItem<?>> {
         super.remove(nameHolder.getName());
     }
 
+    /**
+     * Create a deep copy of this map, see {@link MetaItem#copy}
+     */
+    public MetaMap copy() {
+        return copyInto(new MetaMap(), MetaItem::copy);
+    }
+
     public <S> MetaItem<S> getOrCreate(MetaItemDescriptor<S> metaDescriptor) {
         MetaItem<S> metaItem = get(metaDescriptor).orElse(new MetaItem<>(metaDescriptor));
         addOrReplace(metaItem);
@@ -30,6 +30,7 @@ import java.io.Serializable;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 /**
@@ -154,4 +155,14 @@ public class NamedMap<T extends AbstractNameValueHolder<?>> extends ForwardingMa
     public void removeIf(Predicate<? super T> filter) {
         values().removeIf(filter);
     }
+
+    /**
+     * Copy the items of this map into the supplied empty map using the supplied item copier; the items are added to the
+     * delegate directly as names are already known to match.
+     */
+    protected <U extends NamedMap<T>> U copyInto(U target, UnaryOperator<T> itemCopier) {
+        target.delegate = new HashMap<>(Math.max((int) (delegate.size() / .75f) + 1, 16));
+        delegate.forEach((name, item) -> target.delegate.put(name, item != null ? itemCopier.apply(item) : null));
+        return target;
+    }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.gateway;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Minimal details of a gateway asset used for delta synchronisation; the modified flag indicates that one or more
+ * attribute values of the asset have changed since the time requested in the {@link GatewayAssetSyncRequestEvent}.
+ */
+public class GatewayAssetSyncInfo {
+
+    protected String id;
+    protected String parentId;
+    protected long version;
+    protected boolean modified;
+
+    @JsonCreator
+    public GatewayAssetSyncInfo(@JsonProperty("id") String id,
+                                @JsonProperty("parentId") String parentId,
+                                @JsonProperty("version") long version,
+                                @JsonProperty("modified") boolean modified) {
+        this.id = id;
+        this.parentId = parentId;
+        this.version = version;
+        this.modified = modified;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "id='" + id + '\'' +
+            ", parentId='" + parentId + '\'' +
+            ", version=" + version +
+            ", modified=" + modified +
+            '}';
+    }
+}
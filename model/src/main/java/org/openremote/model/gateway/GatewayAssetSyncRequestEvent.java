@@ -0,0 +1,51 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.gateway;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.openremote.model.event.shared.SharedEvent;
+
+/**
+ * Sent by the central manager to a gateway at the start of a delta synchronisation; the gateway responds with a
+ * {@link GatewayAssetSyncResponseEvent} listing all of its assets with their version and whether any attribute has
+ * been modified since the specified gateway time.
+ */
+public class GatewayAssetSyncRequestEvent extends SharedEvent {
+
+    public static final String TYPE = "gateway-asset-sync-request";
+    protected long modifiedSince;
+
+    @JsonCreator
+    public GatewayAssetSyncRequestEvent(@JsonProperty("modifiedSince") long modifiedSince) {
+        this.modifiedSince = modifiedSince;
+    }
+
+    public long getModifiedSince() {
+        return modifiedSince;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "modifiedSince=" + modifiedSince +
+            '}';
+    }
+}
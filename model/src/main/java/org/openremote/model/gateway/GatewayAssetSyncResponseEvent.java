@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.gateway;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.openremote.model.event.shared.SharedEvent;
+
+import java.util.List;
+
+/**
+ * This event is used in response to a {@link GatewayAssetSyncRequestEvent}; the timestamp is the gateway time at
+ * which the asset details were read.
+ */
+public class GatewayAssetSyncResponseEvent extends SharedEvent {
+
+    public static final String TYPE = "gateway-asset-sync-response";
+    protected List<GatewayAssetSyncInfo> assets;
+
+    @JsonCreator
+    public GatewayAssetSyncResponseEvent(@JsonProperty("timestamp") long timestamp, @JsonProperty("assets") List<GatewayAssetSyncInfo> assets) {
+        super(timestamp);
+        this.assets = assets;
+    }
+
+    public List<GatewayAssetSyncInfo> getAssets() {
+        return assets;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "timestamp=" + getTimestamp() +
+            ", assets=" + (assets == null ? "null" : assets.size()) +
+            '}';
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.gateway;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.openremote.model.event.shared.SharedEvent;
+
+import java.util.List;
+
+/**
+ * Carries multiple attribute events from a gateway to the central manager in a single message; this is only sent
+ * once the central manager has indicated support via {@link GatewayCapabilitiesRequestEvent#isEventBatchingSupported}.
+ * <p>
+ * Each event is encoded as a compact tuple of {@code [assetId, attributeName, value, timestamp]}; the tuples are either
+ * supplied directly in {@link #getEvents} or, when compression is enabled, as a base64 encoded deflated JSON array in
+ * {@link #getCompressedEvents}.
+ * <p>
+ * Batches flagged as {@link #isReplay} contain events that were buffered by the gateway whilst it was disconnected;
+ * these are historical values that should be stored as data points even if they are older than the current value.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GatewayAttributeEventBatchEvent extends SharedEvent {
+
+    public static final String TYPE = "gateway-attribute-event-batch";
+    protected List<Object[]> events;
+    protected String compressedEvents;
+    protected boolean replay;
+
+    @JsonCreator
+    public GatewayAttributeEventBatchEvent(@JsonProperty("timestamp") long timestamp, @JsonProperty("events") List<Object[]> events, @JsonProperty("compressedEvents") String compressedEvents, @JsonProperty("replay") boolean replay) {
+        super(timestamp);
+        this.events = events;
+        this.compressedEvents = compressedEvents;
+        this.replay = replay;
+    }
+
+    public List<Object[]> getEvents() {
+        return events;
+    }
+
+    public String getCompressedEvents() {
+        return compressedEvents;
+    }
+
+    public boolean isReplay() {
+        return replay;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "timestamp=" + getTimestamp() +
+            ", events=" + (events == null ? "null" : events.size()) +
+            ", compressed=" + (compressedEvents != null) +
+            ", replay=" + replay +
+            '}';
+    }
+}
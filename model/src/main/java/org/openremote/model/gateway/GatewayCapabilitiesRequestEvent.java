@@ -7,19 +7,29 @@ import org.openremote.model.event.shared.SharedEvent;
 import java.util.Date;
 
 /**
- * Request the gateway to return a {@link GatewayCapabilitiesResponseEvent}
+ * Request the gateway to return a {@link GatewayCapabilitiesResponseEvent}; the central manager indicates whether it
+ * accepts {@link GatewayAttributeEventBatchEvent}s so the gateway can switch to batched event transport.
  */
 public class GatewayCapabilitiesRequestEvent extends SharedEvent {
 
     public static final String TYPE = "gateway-capabilities-request";
+    protected boolean eventBatchingSupported;
 
     @JsonCreator
-    public GatewayCapabilitiesRequestEvent(@JsonProperty("timestamp") Date timestamp) {
+    public GatewayCapabilitiesRequestEvent(@JsonProperty("timestamp") Date timestamp, @JsonProperty("eventBatchingSupported") boolean eventBatchingSupported) {
         super(timestamp != null ? timestamp.getTime() : new Date().getTime());
+        this.eventBatchingSupported = eventBatchingSupported;
     }
 
     public GatewayCapabilitiesRequestEvent() {
 
     }
 
+    public GatewayCapabilitiesRequestEvent(boolean eventBatchingSupported) {
+        this.eventBatchingSupported = eventBatchingSupported;
+    }
+
+    public boolean isEventBatchingSupported() {
+        return eventBatchingSupported;
+    }
 }
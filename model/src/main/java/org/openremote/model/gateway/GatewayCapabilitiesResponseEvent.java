@@ -10,18 +10,32 @@ public class GatewayCapabilitiesResponseEvent extends SharedEvent {
 
     public static final String TYPE = "gateway-capabilities-response";
     protected final boolean tunnelingSupported;
+    protected final boolean eventBatching;
 
     @JsonCreator
-    public GatewayCapabilitiesResponseEvent(@JsonProperty("timestamp") Date timestamp, @JsonProperty("tunnelingSupported") boolean tunnelingSupported) {
+    public GatewayCapabilitiesResponseEvent(@JsonProperty("timestamp") Date timestamp, @JsonProperty("tunnelingSupported") boolean tunnelingSupported, @JsonProperty("eventBatching") boolean eventBatching) {
         super(timestamp != null ? timestamp.getTime() : new Date().getTime());
         this.tunnelingSupported = tunnelingSupported;
+        this.eventBatching = eventBatching;
     }
 
     public GatewayCapabilitiesResponseEvent(final boolean tunnelingSupported) {
+        this(tunnelingSupported, false);
+    }
+
+    public GatewayCapabilitiesResponseEvent(final boolean tunnelingSupported, final boolean eventBatching) {
         this.tunnelingSupported = tunnelingSupported;
+        this.eventBatching = eventBatching;
     }
 
     public boolean isTunnelingSupported() {
         return tunnelingSupported;
     }
+
+    /**
+     * Indicates that the gateway will send attribute events as {@link GatewayAttributeEventBatchEvent}s
+     */
+    public boolean isEventBatching() {
+        return eventBatching;
+    }
 }
@@ -84,6 +84,15 @@ public class SentNotification {
     @Column(name = "ACKNOWLEDGEMENT")
     protected String acknowledgement;
 
+    @Column(name = "DELIVERY_ATTEMPTS", nullable = false)
+    protected int deliveryAttempts;
+
+    /**
+     * Set when delivery has been abandoned (the send failed permanently or all delivery attempts failed)
+     */
+    @Column(name = "DEAD_LETTER", nullable = false)
+    protected boolean deadLetter;
+
     public Long getId() {
         return id;
     }
@@ -201,6 +210,24 @@ public class SentNotification {
         return this;
     }
 
+    public int getDeliveryAttempts() {
+        return deliveryAttempts;
+    }
+
+    public SentNotification setDeliveryAttempts(int deliveryAttempts) {
+        this.deliveryAttempts = deliveryAttempts;
+        return this;
+    }
+
+    public boolean isDeadLetter() {
+        return deadLetter;
+    }
+
+    public SentNotification setDeadLetter(boolean deadLetter) {
+        this.deadLetter = deadLetter;
+        return this;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
@@ -216,6 +243,8 @@ public class SentNotification {
             ", deliveredOn=" + deliveredOn +
             ", acknowledgedOn=" + acknowledgedOn +
             ", acknowledgement='" + acknowledgement + '\'' +
+            ", deliveryAttempts=" + deliveryAttempts +
+            ", deadLetter=" + deadLetter +
             '}';
     }
 }
@@ -28,6 +28,13 @@ public abstract class GeofencePredicate extends ValuePredicate {
     @JsonIgnore
     public abstract double[] getCentrePoint();
 
+    /**
+     * Get the bounding box of this geofence as {@code [lngMin, latMin, lngMax, latMax]} ignoring {@link #negated}; the
+     * bounding box can be larger than the geofence but never smaller so it can be used to pre-filter candidates.
+     */
+    @JsonIgnore
+    public abstract double[] getBoundingBox();
+
     public GeofencePredicate negate() {
         negated = !negated;
         return this;
@@ -51,4 +51,31 @@ public class LocationAttributePredicate extends AttributePredicate {
 
         return geofences;
     }
+
+    /**
+     * Get the geofence predicates that any match must satisfy; these are the non negated geofence predicates on the
+     * {@link Asset#LOCATION} attribute at the top level of an AND group.
+     */
+    public static List<GeofencePredicate> getRequiredLocationPredicates(LogicGroup<AttributePredicate> attributePredicates) {
+        List<GeofencePredicate> geofences = new ArrayList<>();
+
+        if (attributePredicates.operator == LogicGroup.Operator.OR) {
+            return geofences;
+        }
+
+        attributePredicates.getItems().stream()
+                .filter(attributePredicate -> !attributePredicate.negated
+                        && (attributePredicate.path == null || attributePredicate.path.getPaths().length == 0)
+                        && attributePredicate.name != null
+                        && !attributePredicate.name.negate
+                        && attributePredicate.name.caseSensitive
+                        && attributePredicate.name.match == AssetQuery.Match.EXACT
+                        && Asset.LOCATION.getName().equals(attributePredicate.name.value)
+                        && attributePredicate.value instanceof GeofencePredicate
+                        && !((GeofencePredicate) attributePredicate.value).negated)
+                .map(attributePredicate -> (GeofencePredicate) attributePredicate.value)
+                .forEach(geofences::add);
+
+        return geofences;
+    }
 }
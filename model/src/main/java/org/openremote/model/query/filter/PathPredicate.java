@@ -21,9 +21,15 @@ package org.openremote.model.query.filter;
 
 import java.util.Arrays;
 
+/**
+ * Matches assets whose path contains the specified path i.e. the asset identified by the last path element and its
+ * descendants; the optional {@link #maxDepth} limits the descendants to those no more than the specified number of
+ * levels below that asset (0 means only the asset itself).
+ */
 public class PathPredicate {
 
     public String[] path;
+    public Integer maxDepth;
 
     public PathPredicate() {
     }
@@ -37,6 +43,11 @@ public class PathPredicate {
         return this;
     }
 
+    public PathPredicate maxDepth(Integer maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
     public boolean hasPath() {
         return path != null && path.length > 0;
     }
@@ -45,6 +56,7 @@ public class PathPredicate {
     public String toString() {
         return getClass().getSimpleName() + "{" +
             "path=" + Arrays.toString(path) +
+            ", maxDepth=" + maxDepth +
             '}';
     }
 }
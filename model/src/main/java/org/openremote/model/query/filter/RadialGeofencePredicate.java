@@ -41,6 +41,8 @@ import java.util.function.Supplier;
 public class RadialGeofencePredicate extends GeofencePredicate {
 
     public static final String name = "radial";
+    // Fewer metres than the shortest degree of latitude (and of longitude at the equator) so bounding boxes are never too small
+    protected static final double METRES_PER_DEGREE_MIN = 110000d;
     public int radius;
     public double lat;
     public double lng;
@@ -119,6 +121,26 @@ public class RadialGeofencePredicate extends GeofencePredicate {
         return new double[]{lng, lat};
     }
 
+    @Override
+    public double[] getBoundingBox() {
+        double latDelta = radius / METRES_PER_DEGREE_MIN;
+        double latMin = lat - latDelta;
+        double latMax = lat + latDelta;
+
+        if (latMin <= -90d || latMax >= 90d) {
+            // Includes a pole so covers all longitudes
+            return new double[]{-180d, Math.max(-90d, latMin), 180d, Math.min(90d, latMax)};
+        }
+
+        double lngDelta = latDelta / Math.cos(Math.toRadians(Math.max(Math.abs(latMin), Math.abs(latMax))));
+        if (lng - lngDelta < -180d || lng + lngDelta > 180d) {
+            // Crosses the antimeridian
+            return new double[]{-180d, latMin, 180d, latMax};
+        }
+
+        return new double[]{lng - lngDelta, latMin, lng + lngDelta, latMax};
+    }
+
     @Override
     public Predicate<Object> asPredicate(Supplier<Long> currentMillisSupplier) {
 
@@ -115,6 +115,11 @@ public class RectangularGeofencePredicate extends GeofencePredicate {
         return new double[]{x, y};
     }
 
+    @Override
+    public double[] getBoundingBox() {
+        return new double[]{Math.min(lngMin, lngMax), Math.min(latMin, latMax), Math.max(lngMin, lngMax), Math.max(latMin, latMax)};
+    }
+
     @Override
     public Predicate<Object> asPredicate(Supplier<Long> currentMillisSupplier) {
         return obj -> {
@@ -24,10 +24,23 @@ import org.openremote.model.webhook.Webhook;
 
 import jakarta.ws.rs.client.WebTarget;
 import jakarta.ws.rs.core.MediaType;
+import java.util.concurrent.CompletableFuture;
 
 @TsIgnore
 public abstract class Webhooks {
 
     public abstract boolean send(Webhook webhook, MediaType mediaType, WebTarget target);
+
+    /**
+     * Send the webhook without waiting for the response; by default this calls {@link #send} in the calling thread.
+     */
+    public CompletableFuture<Boolean> sendAsync(Webhook webhook, MediaType mediaType, WebTarget target) {
+        try {
+            return CompletableFuture.completedFuture(send(webhook, mediaType, target));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     public abstract WebTarget buildTarget(Webhook webhook);
 }
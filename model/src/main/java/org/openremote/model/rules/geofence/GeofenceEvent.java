@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.rules.geofence;
+
+import org.openremote.model.query.filter.GeofencePredicate;
+
+/**
+ * A rules fact that is inserted when the location of an asset enters or exits a geofence (i.e. a non negated
+ * {@link GeofencePredicate}) used by the rules of the engine; these are inserted as temporary facts so they expire
+ * in the same way as attribute events.
+ */
+public class GeofenceEvent {
+
+    public enum Type {
+        ENTER,
+        EXIT
+    }
+
+    protected String assetId;
+    protected GeofencePredicate geofence;
+    protected Type type;
+    protected long timestamp;
+
+    public GeofenceEvent(String assetId, GeofencePredicate geofence, Type type, long timestamp) {
+        this.assetId = assetId;
+        this.geofence = geofence;
+        this.type = type;
+        this.timestamp = timestamp;
+    }
+
+    public String getAssetId() {
+        return assetId;
+    }
+
+    public GeofencePredicate getGeofence() {
+        return geofence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isEnter() {
+        return type == Type.ENTER;
+    }
+
+    public boolean isExit() {
+        return type == Type.EXIT;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "assetId='" + assetId + '\'' +
+            ", geofence=" + geofence +
+            ", type=" + type +
+            ", timestamp=" + timestamp +
+            '}';
+    }
+}
@@ -54,6 +54,9 @@ import org.openremote.model.asset.agent.AgentLink;
 import org.openremote.model.asset.agent.Protocol;
 import org.openremote.model.asset.impl.UnknownAsset;
 import org.openremote.model.attribute.Attribute;
+import org.openremote.model.attribute.AttributeMap;
+import org.openremote.model.attribute.MetaItem;
+import org.openremote.model.attribute.MetaMap;
 import org.openremote.model.syslog.SyslogCategory;
 import org.openremote.model.value.*;
 import org.reflections.Reflections;
@@ -61,10 +64,16 @@ import org.reflections.scanners.SubTypesScanner;
 import org.reflections.util.ClasspathHelper;
 import org.reflections.util.ConfigurationBuilder;
 
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.lang.reflect.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -72,6 +81,7 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
@@ -149,6 +159,11 @@ public class ValueUtil {
         }
     }
 
+    /**
+     * Classpath resource generated at build time by {@code AssetModelIndexProcessor} listing the asset classes of a JAR;
+     * when present in the JAR of an {@link AssetModelProvider} it is used instead of scanning that JAR.
+     */
+    public static final String ASSET_MODEL_INDEX = "META-INF/openremote/asset-model.index";
     // Preload the Standard model provider so it takes priority over others
     public static Logger LOG = SyslogCategory.getLogger(MODEL_AND_VALUES, ValueUtil.class);
     public static ObjectMapper JSON = configureObjectMapper(new ObjectMapper());
@@ -541,6 +556,23 @@ public class ValueUtil {
             return null;
         }
 
+        // Model objects have explicit copy support which avoids a full serialisation round trip
+        if (object instanceof Asset<?> asset) {
+            return (T) asset.copy();
+        }
+        if (object instanceof Attribute<?> attribute) {
+            return (T) attribute.copy();
+        }
+        if (object instanceof AttributeMap attributeMap) {
+            return (T) attributeMap.copy();
+        }
+        if (object instanceof MetaMap metaMap) {
+            return (T) metaMap.copy();
+        }
+        if (object instanceof MetaItem<?> metaItem) {
+            return (T) metaItem.copy();
+        }
+
         if (object instanceof Serializable) {
             try {
                 return (T) SerializationHelper.clone((Serializable) object);
@@ -558,6 +590,58 @@ public class ValueUtil {
         return null;
     }
 
+    /**
+     * Copy an attribute/meta item value; immutable values are returned as is, {@link JsonNode}s and arrays are copied
+     * directly and anything else is copied using {@link #clone}.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T copyValue(T value) {
+        if (value == null || isImmutableValue(value)) {
+            return value;
+        }
+
+        if (value instanceof JsonNode jsonNode) {
+            return (T) jsonNode.deepCopy();
+        }
+
+        Class<?> valueClass = value.getClass();
+
+        if (valueClass.isArray()) {
+            if (valueClass.getComponentType().isPrimitive()) {
+                int length = Array.getLength(value);
+                Object copy = Array.newInstance(valueClass.getComponentType(), length);
+                System.arraycopy(value, 0, copy, 0, length);
+                return (T) copy;
+            }
+
+            Object[] copy = ((Object[]) value).clone();
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = copyValue(copy[i]);
+            }
+            return (T) copy;
+        }
+
+        return clone(value);
+    }
+
+    protected static boolean isImmutableValue(Object value) {
+        return value instanceof String
+            || value instanceof Boolean
+            || value instanceof Integer
+            || value instanceof Long
+            || value instanceof Double
+            || value instanceof Float
+            || value instanceof Short
+            || value instanceof Byte
+            || value instanceof Character
+            || value instanceof BigDecimal
+            || value instanceof BigInteger
+            || value instanceof Enum<?>
+            || value instanceof UUID
+            || value instanceof ZoneId
+            || value.getClass().getPackageName().equals("java.time");
+    }
+
     public static <T> TypeReference<Attribute<T>> getRef(Class<T> clazz) {
         return new TypeReference<Attribute<T>>() {};
     }
@@ -737,6 +821,8 @@ public class ValueUtil {
         valueDescriptors.clear();
 
         LOG.info("Initialising asset model...");
+        long startNanos = System.nanoTime();
+        long[] discoveryNanos = new long[1];
         Set<Class<? extends Asset<?>>> assetClasses = new TreeSet<>(new ClassHierarchyComparator());
         Map<String, List<NameHolder>> assetDescriptorsMap = new HashMap<>();
 
@@ -750,7 +836,9 @@ public class ValueUtil {
 
             if (assetModelProvider.useAutoScan()) {
 
+                long discoveryStartNanos = System.nanoTime();
                 Set<Class<? extends Asset<?>>> providerAssetClasses = getAssetClasses(assetModelProvider);
+                discoveryNanos[0] += System.nanoTime() - discoveryStartNanos;
                 LOG.fine("Found " + providerAssetClasses.size() + " asset class(es)");
 
                 providerAssetClasses.forEach(assetClass -> {
@@ -860,6 +948,9 @@ public class ValueUtil {
             }
         });
 
+        long descriptorsNanos = System.nanoTime() - startNanos - discoveryNanos[0];
+        long typeInfoStartNanos = System.nanoTime();
+
         // Build each asset info checking that no conflicts occur
         Map<String, List<NameHolder>> copy = new HashMap<>(assetDescriptorsMap);
         assetDescriptorsMap.forEach((name, descriptors) -> {
@@ -907,6 +998,9 @@ public class ValueUtil {
 //            throw new IllegalStateException("One or more value types do not implement java.io.Serializable: " + vds);
 //        }
 
+        long typeInfoNanos = System.nanoTime() - typeInfoStartNanos;
+        long finishStartNanos = System.nanoTime();
+
         // Call on finished on each provider
         assetModelProviders.forEach(AssetModelProvider::onAssetModelFinished);
 
@@ -919,6 +1013,16 @@ public class ValueUtil {
         JSON.registerSubtypes(agentLinkSubTypes);
 
         doSchemaInit();
+
+        LOG.info("Initialised asset model with " + assetInfoMap.size() + " asset type(s) in "
+            + toMillis(System.nanoTime() - startNanos) + "ms (asset class discovery=" + toMillis(discoveryNanos[0])
+            + "ms, descriptors=" + toMillis(descriptorsNanos)
+            + "ms, type info=" + toMillis(typeInfoNanos)
+            + "ms, finish and schema=" + toMillis(System.nanoTime() - finishStartNanos) + "ms)");
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
     }
 
     protected static void doSchemaInit() {
@@ -1125,8 +1229,22 @@ public class ValueUtil {
 
     protected static Set<Class<? extends Asset<?>>> getAssetClasses(AssetModelProvider assetModelProvider) {
 
-        Set<Class<? extends Asset<?>>> assetClasses;
+        Set<Class<? extends Asset<?>>> assetClasses = getIndexedAssetClasses(assetModelProvider);
+
+        if (assetClasses != null) {
+            LOG.fine("Loaded asset class count from index = " + assetClasses.size());
+            return assetClasses;
+        }
+
+        return scanAssetClasses(assetModelProvider);
+    }
 
+    /**
+     * Scan the JAR/directory containing the supplied {@link AssetModelProvider} for asset classes; this is the fallback
+     * when there is no {@link #ASSET_MODEL_INDEX} and must find the same classes as the index.
+     */
+    @SuppressWarnings("unchecked")
+    protected static Set<Class<? extends Asset<?>>> scanAssetClasses(AssetModelProvider assetModelProvider) {
         // Search for concrete asset classes in the same JAR as the provided AssetModelProvider
         Reflections reflections = new Reflections(new ConfigurationBuilder()
             .setUrls(ClasspathHelper.forClass(assetModelProvider.getClass()))
@@ -1136,7 +1254,7 @@ public class ValueUtil {
 
         LOG.fine("Scanning for Asset classes");
 
-        assetClasses = reflections.getSubTypesOf(Asset.class).stream()
+        Set<Class<? extends Asset<?>>> assetClasses = reflections.getSubTypesOf(Asset.class).stream()
             .map(assetClass -> (Class<? extends Asset<?>>)assetClass)
             .filter(assetClass -> assetClass.getAnnotation(ModelIgnore.class) == null)
             .collect(Collectors.toSet());
@@ -1146,6 +1264,52 @@ public class ValueUtil {
         return assetClasses;
     }
 
+    /**
+     * Load the asset classes listed in the {@link #ASSET_MODEL_INDEX} of the JAR/directory containing the supplied
+     * {@link AssetModelProvider}; returns null if there is no index so the caller can fall back to scanning.
+     */
+    @SuppressWarnings("unchecked")
+    protected static Set<Class<? extends Asset<?>>> getIndexedAssetClasses(AssetModelProvider assetModelProvider) {
+        ClassLoader classLoader = assetModelProvider.getClass().getClassLoader();
+
+        for (URL root : ClasspathHelper.forClass(assetModelProvider.getClass())) {
+            URL indexUrl;
+
+            try {
+                indexUrl = root.getPath().endsWith(".jar")
+                    ? new URL("jar:" + root.toExternalForm() + "!/" + ASSET_MODEL_INDEX)
+                    : new URL(root, ASSET_MODEL_INDEX);
+            } catch (IOException e) {
+                continue;
+            }
+
+            Set<Class<? extends Asset<?>>> assetClasses = new HashSet<>();
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(indexUrl.openStream(), StandardCharsets.UTF_8))) {
+                String className;
+                while ((className = reader.readLine()) != null) {
+                    className = className.trim();
+                    if (className.isEmpty()) {
+                        continue;
+                    }
+                    Class<?> assetClass = Class.forName(className, false, classLoader);
+                    if (Asset.class.isAssignableFrom(assetClass) && assetClass.getAnnotation(ModelIgnore.class) == null) {
+                        assetClasses.add((Class<? extends Asset<?>>) assetClass);
+                    }
+                }
+            } catch (FileNotFoundException e) {
+                continue;
+            } catch (IOException | ClassNotFoundException | LinkageError e) {
+                LOG.log(Level.WARNING, "Failed to load asset model index so falling back to scanning: " + indexUrl, e);
+                return null;
+            }
+
+            return assetClasses;
+        }
+
+        return null;
+    }
+
     /**
      * Extract public static field values that are of type {@link AssetDescriptor}, {@link AttributeDescriptor}, {@link MetaItemDescriptor} or {@link ValueDescriptor}.
      */
@@ -31,7 +31,8 @@ import java.io.Serializable;
     include = JsonTypeInfo.As.EXISTING_PROPERTY
 )
 @JsonSubTypes({
-    @JsonSubTypes.Type(ForecastConfigurationWeightedExponentialAverage.class)
+    @JsonSubTypes.Type(ForecastConfigurationWeightedExponentialAverage.class),
+    @JsonSubTypes.Type(ForecastConfigurationHoltWinters.class)
 })
 
 public abstract class ForecastConfiguration implements Serializable {
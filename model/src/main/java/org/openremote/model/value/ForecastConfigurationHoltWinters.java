@@ -0,0 +1,116 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.value;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import org.openremote.model.value.ForecastConfigurationWeightedExponentialAverage.ExtendedPeriodAndDuration;
+import org.openremote.model.value.ForecastConfigurationWeightedExponentialAverage.PeriodAndDurationConverter;
+
+import static org.openremote.model.value.ForecastConfigurationHoltWinters.TYPE;
+
+/**
+ * Additive Holt-Winters (triple exponential smoothing) forecast; the model is updated incrementally from attribute
+ * values which are aggregated per {@link #forecastPeriod} and the season consists of {@link #seasonLength} periods
+ * (e.g. a forecast period of 15 minutes and a season length of 96 gives a daily season).
+ */
+@JsonTypeName(TYPE)
+public class ForecastConfigurationHoltWinters extends ForecastConfiguration {
+
+    public static final String TYPE = "holtWinters";
+    public static final double DEFAULT_ALPHA = 0.5;
+    public static final double DEFAULT_BETA = 0.1;
+    public static final double DEFAULT_GAMMA = 0.3;
+
+    @NotNull
+    @JsonSerialize(using = ToStringSerializer.class)
+    @JsonDeserialize(converter = PeriodAndDurationConverter.class)
+    protected ExtendedPeriodAndDuration forecastPeriod;
+    @NotNull
+    @Positive
+    protected Integer forecastCount;
+    @NotNull
+    @Positive
+    protected Integer seasonLength;
+    @DecimalMin("0")
+    @DecimalMax("1")
+    protected Double alpha;
+    @DecimalMin("0")
+    @DecimalMax("1")
+    protected Double beta;
+    @DecimalMin("0")
+    @DecimalMax("1")
+    protected Double gamma;
+
+    @JsonCreator
+    public ForecastConfigurationHoltWinters(@JsonProperty("forecastPeriod") ExtendedPeriodAndDuration forecastPeriod, @JsonProperty("forecastCount") Integer forecastCount, @JsonProperty("seasonLength") Integer seasonLength, @JsonProperty("alpha") Double alpha, @JsonProperty("beta") Double beta, @JsonProperty("gamma") Double gamma) {
+        super(TYPE);
+        this.forecastPeriod = forecastPeriod;
+        this.forecastCount = forecastCount;
+        this.seasonLength = seasonLength;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.gamma = gamma;
+    }
+
+    @Override
+    public boolean isValid() {
+        return forecastCount != null && forecastCount > 0 &&
+               seasonLength != null && seasonLength > 0 &&
+               forecastPeriod != null && forecastPeriod.toMillis() > 0 &&
+               isValidFactor(alpha) && isValidFactor(beta) && isValidFactor(gamma);
+    }
+
+    protected static boolean isValidFactor(Double factor) {
+        return factor == null || (factor >= 0d && factor <= 1d);
+    }
+
+    public ExtendedPeriodAndDuration getForecastPeriod() {
+        return forecastPeriod;
+    }
+
+    public Integer getForecastCount() {
+        return forecastCount;
+    }
+
+    public Integer getSeasonLength() {
+        return seasonLength;
+    }
+
+    public double getAlpha() {
+        return alpha != null ? alpha : DEFAULT_ALPHA;
+    }
+
+    public double getBeta() {
+        return beta != null ? beta : DEFAULT_BETA;
+    }
+
+    public double getGamma() {
+        return gamma != null ? gamma : DEFAULT_GAMMA;
+    }
+}
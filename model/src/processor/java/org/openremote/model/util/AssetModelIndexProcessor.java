@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.util;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates an index of all {@code org.openremote.model.asset.Asset} sub types (including abstract and nested types)
+ * compiled in the current compilation unit; the index is written to {@link #ASSET_MODEL_INDEX} in the class output
+ * so it ends up in the same JAR as any {@code AssetModelProvider} in that module. At startup {@code ValueUtil} uses
+ * this index instead of scanning the classpath for asset classes.
+ * <p>
+ * This processor must not reference any model classes as it is compiled before the model itself; type names are used
+ * instead. It is registered with Gradle as an aggregating incremental processor as it writes a single index for all
+ * types of the compilation.
+ */
+@SupportedAnnotationTypes("*")
+public class AssetModelIndexProcessor extends AbstractProcessor {
+
+    /**
+     * Must match {@code ValueUtil.ASSET_MODEL_INDEX}
+     */
+    public static final String ASSET_MODEL_INDEX = "META-INF/openremote/asset-model.index";
+    protected static final String ASSET_TYPE_NAME = "org.openremote.model.asset.Asset";
+    protected final Set<String> assetClassNames = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement assetElement = processingEnv.getElementUtils().getTypeElement(ASSET_TYPE_NAME);
+
+        if (assetElement == null) {
+            // Asset model isn't on the classpath so nothing to index
+            return false;
+        }
+
+        TypeMirror assetType = processingEnv.getTypeUtils().erasure(assetElement.asType());
+
+        if (roundEnv.processingOver()) {
+            writeIndex();
+        } else {
+            for (TypeElement typeElement : ElementFilter.typesIn(roundEnv.getRootElements())) {
+                collect(typeElement, assetType);
+            }
+        }
+
+        // Never claim annotations as other processors may need them
+        return false;
+    }
+
+    protected void collect(TypeElement typeElement, TypeMirror assetType) {
+        if (typeElement.getKind() == ElementKind.CLASS
+            && processingEnv.getTypeUtils().isSubtype(processingEnv.getTypeUtils().erasure(typeElement.asType()), assetType)
+            && !typeElement.getQualifiedName().contentEquals(ASSET_TYPE_NAME)) {
+            assetClassNames.add(processingEnv.getElementUtils().getBinaryName(typeElement).toString());
+        }
+
+        for (Element enclosed : typeElement.getEnclosedElements()) {
+            if (enclosed instanceof TypeElement) {
+                collect((TypeElement) enclosed, assetType);
+            }
+        }
+    }
+
+    protected void writeIndex() {
+        if (assetClassNames.isEmpty()) {
+            return;
+        }
+
+        try {
+            FileObject fileObject = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ASSET_MODEL_INDEX);
+            try (Writer writer = fileObject.openWriter()) {
+                for (String assetClassName : assetClassNames) {
+                    writer.write(assetClassName);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Failed to write asset model index, asset classes will be found by classpath scanning at runtime: " + e.getMessage());
+        }
+    }
+}
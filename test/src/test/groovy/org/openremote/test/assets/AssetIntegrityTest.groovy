@@ -5,10 +5,14 @@ import jakarta.ws.rs.WebApplicationException
 import org.jboss.resteasy.api.validation.ViolationReport
 import org.openremote.model.util.UniqueIdentifierGenerator
 import org.openremote.manager.setup.SetupService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.model.asset.Asset
 import org.openremote.model.asset.AssetResource
 import org.openremote.model.asset.impl.RoomAsset
 import org.openremote.model.asset.impl.ThingAsset
 import org.openremote.model.attribute.Attribute
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.query.filter.PathPredicate
 import org.openremote.model.value.ValueType
 import org.openremote.setup.integration.KeycloakTestSetup
 import org.openremote.setup.integration.ManagerTestSetup
@@ -164,4 +168,111 @@ class AssetIntegrityTest extends Specification implements ManagerContainerTrait
         ex = thrown()
         ex.response.status == 400
     }
+
+    def "Bulk merge assets"() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def realm = keycloakTestSetup.realmBuilding.name
+
+        and: "an authenticated admin user"
+        def accessToken = authenticate(
+                container,
+                MASTER_REALM,
+                KEYCLOAK_CLIENT_ID,
+                MASTER_REALM_ADMIN_USER,
+                getString(container.getConfig(), OR_ADMIN_PASSWORD, OR_ADMIN_PASSWORD_DEFAULT)
+        ).token
+
+        and: "the asset resource"
+        def serverUri = serverUri(serverPort)
+        def assetResource = getClientApiTarget(serverUri, MASTER_REALM, accessToken).proxy(AssetResource.class)
+
+        and: "a large asset tree where the children are listed before their parents"
+        def sites = (1..100).collect {
+            new ThingAsset("Bulk Site " + it).setId(UniqueIdentifierGenerator.generateId()).setRealm(realm)
+        }
+        List<Asset<?>> assets = []
+        sites.each { site ->
+            (1..200).each {
+                assets << new ThingAsset("Bulk Device " + it)
+                    .setRealm(realm)
+                    .setParentId(site.id)
+                    .addOrReplaceAttributes(new Attribute<>("serial", ValueType.TEXT, site.name + "-" + it))
+            }
+        }
+        assets.addAll(sites)
+
+        when: "the assets are bulk merged"
+        def mergedAssets = assetStorageService.bulkMerge(assets, false, null)
+
+        then: "all assets should be stored and returned in request order"
+        mergedAssets.size() == 20100
+        mergedAssets.collect { it.id } == assets.collect { it.id }
+        mergedAssets.every { it.version == 0 && it.createdOn != null }
+
+        and: "the paths should have been set"
+        mergedAssets[0].path as List == [sites[0].id, assets[0].id]
+        mergedAssets[20000].path as List == [sites[0].id]
+        sites.every { assetStorageService.count(new AssetQuery().paths(new PathPredicate(it.id))) == 201 }
+
+        and: "the attributes should have been stored"
+        assetStorageService.find(assets[199].id, true).getAttribute("serial").flatMap { it.value }.orElse(null) == "Bulk Site 1-200"
+
+        when: "a batch containing an asset with a parent in another realm is bulk merged"
+        def invalidSite = new ThingAsset("Bulk Site Invalid").setId(UniqueIdentifierGenerator.generateId()).setRealm(realm)
+        assetStorageService.bulkMerge([
+            invalidSite,
+            new ThingAsset("Bulk Device Invalid").setRealm(keycloakTestSetup.realmMaster.name).setParentId(invalidSite.id)
+        ], false, null)
+
+        then: "the merge should fail and no assets should be stored"
+        thrown(IllegalStateException)
+        assetStorageService.find(invalidSite.id) == null
+
+        when: "a batch containing a cycle is bulk merged"
+        def cycleAsset1 = new ThingAsset("Bulk Cycle 1").setId(UniqueIdentifierGenerator.generateId()).setRealm(realm)
+        def cycleAsset2 = new ThingAsset("Bulk Cycle 2").setId(UniqueIdentifierGenerator.generateId()).setRealm(realm).setParentId(cycleAsset1.id)
+        cycleAsset1.setParentId(cycleAsset2.id)
+        assetStorageService.bulkMerge([cycleAsset1, cycleAsset2], false, null)
+
+        then: "the merge should fail"
+        thrown(IllegalStateException)
+        assetStorageService.find(cycleAsset1.id) == null
+
+        when: "an existing asset and a new asset are bulk merged over REST"
+        def site = mergedAssets[20000]
+        site.setName("Bulk Site 1 Renamed")
+        def result = assetResource.bulkMerge(null, [
+            site,
+            new ThingAsset("Bulk REST Device").setRealm(realm).setParentId(site.id)
+        ] as Asset<?>[])
+
+        then: "the existing asset should be updated and the new asset created"
+        result.length == 2
+        result[0].id == site.id
+        result[0].name == "Bulk Site 1 Renamed"
+        result[0].version == 1
+        result[1].path as List == [site.id, result[1].id]
+        assetStorageService.count(new AssetQuery().paths(new PathPredicate(site.id))) == 202
+
+        when: "an asset with an invalid attribute name is bulk merged over REST"
+        assetResource.bulkMerge(null, [
+            new ThingAsset("Bulk REST Invalid").setRealm(realm).addOrReplaceAttributes(new Attribute<>("illegal- Attribute:name&&&", ValueType.TEXT))
+        ] as Asset<?>[])
+
+        then: "the request should fail validation"
+        WebApplicationException ex = thrown()
+        ex.response.status == 400
+
+        cleanup: "the assets are removed"
+        if (result != null) {
+            assetStorageService.delete([result[1].id])
+        }
+        assets.findAll { it.parentId != null }.collate(1000).each { batch ->
+            assetStorageService.delete(batch.collect { it.id })
+        }
+        assetStorageService.delete(sites.collect { it.id })
+    }
 }
@@ -851,4 +851,73 @@ class AssetPermissionsTest extends Specification implements ManagerContainerTrai
         assert writeResults.find {it.ref.id == managerTestSetup.apartment1Id && it.ref.name == Asset.LOCATION.name}.failure == null
         assert writeResults.find {it.ref.id == managerTestSetup.apartment2LivingroomId && it.ref.name == Asset.LOCATION.name}.failure == AttributeWriteFailure.INSUFFICIENT_ACCESS
     }
+
+    def "Stream assets"() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+
+        and: "an authenticated admin user and an authenticated restricted test user"
+        def adminAccessToken = authenticate(
+                container,
+                MASTER_REALM,
+                KEYCLOAK_CLIENT_ID,
+                MASTER_REALM_ADMIN_USER,
+                getString(container.getConfig(), OR_ADMIN_PASSWORD, OR_ADMIN_PASSWORD_DEFAULT)
+        ).token
+        def restrictedAccessToken = authenticate(
+                container,
+                keycloakTestSetup.realmBuilding.name,
+                KEYCLOAK_CLIENT_ID,
+                "testuser3",
+                "testuser3"
+        ).token
+
+        and: "the asset resources"
+        def adminAssetResource = getClientApiTarget(serverUri(serverPort), MASTER_REALM, adminAccessToken).proxy(AssetResource.class)
+        def restrictedAssetResource = getClientApiTarget(serverUri(serverPort), keycloakTestSetup.realmBuilding.name, restrictedAccessToken).proxy(AssetResource.class)
+
+        when: "the assets of a realm are queried and streamed by the superuser"
+        def query = { new AssetQuery().realm(new RealmPredicate(keycloakTestSetup.realmBuilding.name)) }
+        def assets = adminAssetResource.queryAssets(null, query())
+        def response = adminAssetResource.streamAssets(null, query())
+        def streamedAssets = response.readEntity(Asset[].class)
+
+        then: "the streamed assets should match the queried assets"
+        response.status == 200
+        assets.length > 0
+        streamedAssets.collect { it.id } as Set == assets.collect { it.id } as Set
+        streamedAssets.length == assets.length
+        def livingroom = streamedAssets.find { it.id == managerTestSetup.apartment1LivingroomId }
+        livingroom.name == "Living Room 1"
+        livingroom.realm == keycloakTestSetup.realmBuilding.name
+        livingroom.attributes.size() == assets.find { it.id == managerTestSetup.apartment1LivingroomId }.attributes.size()
+
+        when: "no assets match the streamed query"
+        response = adminAssetResource.streamAssets(null, new AssetQuery().ids("doesNotExist"))
+
+        then: "an empty array should be returned"
+        response.status == 200
+        response.readEntity(Asset[].class).length == 0
+
+        when: "the restricted user streams the assets without a query"
+        assets = restrictedAssetResource.queryAssets(null, null)
+        response = restrictedAssetResource.streamAssets(null, null)
+        streamedAssets = response.readEntity(Asset[].class)
+
+        then: "only the linked assets should be returned with the same attributes"
+        response.status == 200
+        streamedAssets.length == 6
+        streamedAssets.collect { it.id } as Set == assets.collect { it.id } as Set
+        streamedAssets.every { streamedAsset ->
+            streamedAsset.attributes.keySet() == assets.find { it.id == streamedAsset.id }.attributes.keySet()
+        }
+
+        when: "the restricted user streams the assets of a foreign realm"
+        response = restrictedAssetResource.streamAssets(null, new AssetQuery().realm(new RealmPredicate(keycloakTestSetup.realmMaster.name)))
+
+        then: "access should be forbidden"
+        response.status == 403
+    }
 }
@@ -37,6 +37,7 @@ import static org.openremote.model.query.AssetQuery.OrderBy.Property.CREATED_ON
 import static org.openremote.model.query.AssetQuery.OrderBy.Property.NAME
 import static org.openremote.model.value.MetaItemType.*
 import static org.openremote.model.value.ValueType.CALENDAR_EVENT
+import static org.openremote.model.value.ValueType.NUMBER
 import static org.openremote.model.value.ValueType.TIMESTAMP_ISO8601
 
 class AssetQueryTest extends Specification implements ManagerContainerTrait {
@@ -801,6 +802,52 @@ class AssetQueryTest extends Specification implements ManagerContainerTrait {
         assets.find {it.id == managerTestSetup.smartOfficeId}.name == "Smart office"
     }
 
+    def "Location queries near the antimeridian and the poles"() {
+
+        given: "assets either side of the antimeridian, near the north pole and elsewhere"
+        def realm = keycloakTestSetup.realmMaster.name
+        def east = assetStorageService.merge(new ThingAsset("Antimeridian east").setRealm(realm).setLocation(new GeoJSONPoint(179.9995d, 10d)))
+        def west = assetStorageService.merge(new ThingAsset("Antimeridian west").setRealm(realm).setLocation(new GeoJSONPoint(-179.9995d, 10d)))
+        def pole1 = assetStorageService.merge(new ThingAsset("North pole 1").setRealm(realm).setLocation(new GeoJSONPoint(0d, 89.9995d)))
+        def pole2 = assetStorageService.merge(new ThingAsset("North pole 2").setRealm(realm).setLocation(new GeoJSONPoint(90d, 89.9995d)))
+        def other = assetStorageService.merge(new ThingAsset("Elsewhere").setRealm(realm).setLocation(new GeoJSONPoint(0d, 10d)))
+        def ids = [east, west, pole1, pole2, other].collect { it.id } as String[]
+        def names = { List<? extends GeofencePredicate> geofences, LogicGroup.Operator operator = LogicGroup.Operator.AND ->
+            assetStorageService.findAll(
+                new AssetQuery()
+                    .select(new Select().excludeAttributes())
+                    .ids(ids)
+                    .attributes(new LogicGroup<AttributePredicate>(operator, geofences.collect { new LocationAttributePredicate(it) } as List<AttributePredicate>))
+            ).collect { it.name } as Set
+        }
+
+        expect: "a radial geofence on the antimeridian to match assets on both sides"
+        names([new RadialGeofencePredicate(200, 10d, 180d)]) == ["Antimeridian east", "Antimeridian west"] as Set
+        names([new RadialGeofencePredicate(200, 10d, -180d)]) == ["Antimeridian east", "Antimeridian west"] as Set
+
+        and: "a radial geofence on the pole to match assets at any longitude"
+        names([new RadialGeofencePredicate(200, 90d, 0d)]) == ["North pole 1", "North pole 2"] as Set
+        names([new RadialGeofencePredicate(200, 89.999d, 45d)]) == ["North pole 1", "North pole 2"] as Set
+
+        and: "rectangular geofences at the edges of the coordinate range to match"
+        names([new RectangularGeofencePredicate(9.999d, 179.999d, 10.001d, 180d)]) == ["Antimeridian east"] as Set
+        names([new RectangularGeofencePredicate(89.999d, -180d, 90d, 180d)]) == ["North pole 1", "North pole 2"] as Set
+
+        and: "combined radial and rectangular geofences to all have to match"
+        names([new RadialGeofencePredicate(200, 10d, 180d), new RectangularGeofencePredicate(9.999d, -180d, 10.001d, -179.999d)]) == ["Antimeridian west"] as Set
+        names([new RadialGeofencePredicate(200, 90d, 0d), new RectangularGeofencePredicate(9.999d, -180d, 10.001d, -179.999d)]).isEmpty()
+
+        and: "either geofence to match in an OR group"
+        names([new RadialGeofencePredicate(200, 90d, 0d), new RectangularGeofencePredicate(9.999d, 179.999d, 10.001d, 180d)], LogicGroup.Operator.OR) == ["Antimeridian east", "North pole 1", "North pole 2"] as Set
+
+        and: "negated geofences to match assets outside of them"
+        names([new RadialGeofencePredicate(200, 90d, 0d).negate()]) == ["Antimeridian east", "Antimeridian west", "Elsewhere"] as Set
+        names([new RadialGeofencePredicate(200, 90d, 0d).negate(), new RectangularGeofencePredicate(9.999d, 179.999d, 10.001d, 180d)]) == ["Antimeridian east"] as Set
+
+        cleanup: "remove the assets"
+        assetStorageService.delete(ids as List<String>)
+    }
+
     def "Calendar queries"() {
         given: "polling conditions"
         def conditions = new PollingConditions(timeout: 10, delay: 0.2)
@@ -991,4 +1038,177 @@ class AssetQueryTest extends Specification implements ManagerContainerTrait {
         assets.size() == 1
         assets[0].id == lobby.id
     }
+
+    def "Query asset subtrees"() {
+
+        when: "an asset tree is created"
+        def site1 = assetStorageService.merge(new ThingAsset("Site 1").setRealm(keycloakTestSetup.realmMaster.name))
+        def site2 = assetStorageService.merge(new ThingAsset("Site 2").setRealm(keycloakTestSetup.realmMaster.name))
+        def area = assetStorageService.merge(new ThingAsset("Area").setRealm(keycloakTestSetup.realmMaster.name).setParent(site1))
+        def device1 = assetStorageService.merge(new ThingAsset("Device 1").setRealm(keycloakTestSetup.realmMaster.name).setParent(area))
+        def device2 = assetStorageService.merge(new ThingAsset("Device 2").setRealm(keycloakTestSetup.realmMaster.name).setParent(area))
+        def sensor = assetStorageService.merge(new ThingAsset("Sensor").setRealm(keycloakTestSetup.realmMaster.name).setParent(device1))
+
+        then: "subtree queries should be depth limited"
+        assetStorageService.findAll(new AssetQuery().select(new Select().excludeAttributes()).paths(new PathPredicate(site1.path))).size() == 5
+        assetStorageService.findAll(new AssetQuery().select(new Select().excludeAttributes()).paths(new PathPredicate(site1.path).maxDepth(0))).collect {it.id} == [site1.id]
+        assetStorageService.findAll(new AssetQuery().select(new Select().excludeAttributes()).paths(new PathPredicate(site1.path).maxDepth(2))).size() == 4
+        assetStorageService.findAll(new AssetQuery().select(new Select().excludeAttributes()).paths(new PathPredicate(area.id).maxDepth(1))).size() == 3
+
+        and: "a path that isn't a path of the asset should not match"
+        assetStorageService.findAll(new AssetQuery().select(new Select().excludeAttributes()).paths(new PathPredicate(site2.id, area.id))).isEmpty()
+
+        and: "subtrees should be countable"
+        assetStorageService.count(new AssetQuery().paths(new PathPredicate(site1.path))) == 5
+        assetStorageService.count(new AssetQuery().paths(new PathPredicate(site1.path).maxDepth(1))) == 2
+        assetStorageService.count(new AssetQuery().paths(new PathPredicate(site1.path)).names("Device 1", "Device 2")) == 2
+        assetStorageService.isDescendantAssets(area.id, [device1.id, sensor.id])
+        !assetStorageService.isDescendantAssets(device2.id, [sensor.id])
+
+        and: "the subtree query should be able to use the path index"
+        def preparedQuery = AssetStorageService.buildQuery(new AssetQuery().select(new Select().excludeAttributes()).paths(new PathPredicate(site1.path)), {System.currentTimeMillis()}).key
+        def plan = persistenceService.doReturningTransaction { em ->
+            em.createNativeQuery("set local enable_seqscan = off").executeUpdate()
+            def explainQuery = em.createNativeQuery("explain " + preparedQuery.querySql).unwrap(org.hibernate.query.Query.class)
+            preparedQuery.apply(em, explainQuery)
+            explainQuery.getResultList().join("\n")
+        }
+        plan.toLowerCase().contains("section_parent_path_idx")
+
+        when: "the area is moved to another site"
+        area.setParent(site2)
+        area = assetStorageService.merge(area)
+
+        then: "the paths of all descendants should be rewritten"
+        assetStorageService.find(sensor.id).path as List == [site2.id, area.id, device1.id, sensor.id]
+        assetStorageService.find(device2.id).path as List == [site2.id, area.id, device2.id]
+        assetStorageService.count(new AssetQuery().paths(new PathPredicate(site1.path))) == 1
+        assetStorageService.count(new AssetQuery().paths(new PathPredicate(site2.id))) == 5
+
+        cleanup: "the assets are removed"
+        assetStorageService.delete([sensor?.id, device1?.id, device2?.id].findAll {it != null})
+        assetStorageService.delete([area?.id].findAll {it != null})
+        assetStorageService.delete([site1?.id, site2?.id].findAll {it != null})
+    }
+
+    def "Stream asset query results"() {
+
+        when: "a realm query is executed both normally and streamed"
+        def query = new AssetQuery().realm(new RealmPredicate(keycloakTestSetup.realmBuilding.name))
+        def assets = assetStorageService.findAll(query)
+        def streamedAssets = []
+        def count = assetStorageService.streamAll(
+            new AssetQuery().realm(new RealmPredicate(keycloakTestSetup.realmBuilding.name)),
+            { streamedAssets << it })
+
+        then: "the same assets should be returned in the same order"
+        count == assets.size()
+        streamedAssets.collect { it.id } == assets.collect { it.id }
+        streamedAssets.find { it.id == managerTestSetup.apartment1LivingroomId }.getAttributes().size() == assets.find { it.id == managerTestSetup.apartment1LivingroomId }.getAttributes().size()
+
+        and: "an empty query should not return anything"
+        assetStorageService.streamAll(new AssetQuery().ids(), { throw new IllegalStateException() }) == 0
+    }
+
+    def "Asset queries with the same shape share cached SQL"() {
+
+        given: "an empty query cache"
+        // Other services query assets in the background so check cache entries by key rather than the cache statistics
+        def cache = assetStorageService.preparedQueryCache
+        cache.invalidateAll()
+
+        when: "a query by ID and name is executed"
+        def livingroomQuery = new AssetQuery()
+            .select(new Select().excludeAttributes())
+            .ids(managerTestSetup.apartment1LivingroomId)
+            .names(new StringPredicate(Match.EXACT, false, "living room 1"))
+        def assets = assetStorageService.findAll(livingroomQuery)
+        def livingroomKey = AssetStorageService.getQueryShapeKey(livingroomQuery)
+        def cached = cache.getIfPresent(livingroomKey)
+
+        then: "the query should be built and cached without its parameter values"
+        assets.size() == 1
+        assets[0].id == managerTestSetup.apartment1LivingroomId
+        cached != null
+        !livingroomKey.contains(managerTestSetup.apartment1LivingroomId)
+        !livingroomKey.contains("living room 1")
+
+        when: "a query with the same shape but different values is executed"
+        def kitchenQuery = new AssetQuery()
+            .select(new Select().excludeAttributes())
+            .ids(managerTestSetup.apartment1KitchenId, managerTestSetup.apartment1HallwayId)
+            .names(new StringPredicate(Match.EXACT, false, "kitchen 1"))
+        assets = assetStorageService.findAll(kitchenQuery)
+
+        then: "the cached SQL should be used with the values of the new query"
+        AssetStorageService.getQueryShapeKey(kitchenQuery) == livingroomKey
+        assetStorageService.getPreparedQuery(kitchenQuery).key.querySql.is(cached.key.querySql)
+        assets.size() == 1
+        assets[0].id == managerTestSetup.apartment1KitchenId
+
+        when: "the first query is modified after it was cached and executed again"
+        livingroomQuery.ids(managerTestSetup.apartment1HallwayId).names(new StringPredicate(Match.EXACT, false, "hallway 1"))
+        assets = assetStorageService.findAll(livingroomQuery)
+
+        then: "the modified values should be used"
+        assets.size() == 1
+        assets[0].id == managerTestSetup.apartment1HallwayId
+        cache.getIfPresent(livingroomKey).is(cached)
+
+        when: "a query with a different shape is executed"
+        def beginQuery = new AssetQuery()
+            .select(new Select().excludeAttributes())
+            .ids(managerTestSetup.apartment1LivingroomId)
+            .names(new StringPredicate(Match.BEGIN, false, "living"))
+        assets = assetStorageService.findAll(beginQuery)
+
+        then: "it should get its own cache entry"
+        AssetStorageService.getQueryShapeKey(beginQuery) != livingroomKey
+        cache.getIfPresent(AssetStorageService.getQueryShapeKey(beginQuery)) != null
+        !cache.getIfPresent(AssetStorageService.getQueryShapeKey(beginQuery)).key.querySql.is(cached.key.querySql)
+        assets.size() == 1
+        assets[0].id == managerTestSetup.apartment1LivingroomId
+
+        when: "assets with different attribute values exist"
+        def realm = keycloakTestSetup.realmMaster.name
+        def thing1 = assetStorageService.merge(new ThingAsset("Cache Thing 1").setRealm(realm).addAttributes(new Attribute<>("cacheTest", NUMBER, 1d)))
+        def thing2 = assetStorageService.merge(new ThingAsset("Cache Thing 2").setRealm(realm).addAttributes(new Attribute<>("cacheTest", NUMBER, 2d)))
+
+        and: "queries with attribute value predicates of the same shape are executed"
+        def thing1Query = new AssetQuery()
+            .select(new Select().excludeAttributes())
+            .realm(new RealmPredicate(realm))
+            .attributes(new AttributePredicate("cacheTest", new NumberPredicate(1d)))
+        def thing2Query = new AssetQuery()
+            .select(new Select().excludeAttributes())
+            .realm(new RealmPredicate(realm))
+            .attributes(new AttributePredicate("cacheTest", new NumberPredicate(2d)))
+        def thing1Assets = assetStorageService.findAll(thing1Query)
+        def thing2Assets = assetStorageService.findAll(thing2Query)
+
+        then: "they should share the cached SQL and return their own results"
+        AssetStorageService.getQueryShapeKey(thing1Query) == AssetStorageService.getQueryShapeKey(thing2Query)
+        cache.getIfPresent(AssetStorageService.getQueryShapeKey(thing1Query)) != null
+        thing1Assets.collect { it.id } == [thing1.id]
+        thing2Assets.collect { it.id } == [thing2.id]
+
+        and: "attribute names should remain part of the shape"
+        AssetStorageService.getQueryShapeKey(new AssetQuery().attributes(new AttributePredicate("cacheTest", new NumberPredicate(1d))))
+            != AssetStorageService.getQueryShapeKey(new AssetQuery().attributes(new AttributePredicate("otherCacheTest", new NumberPredicate(1d))))
+
+        when: "a query relative to the current time is executed"
+        def timeQuery = new AssetQuery()
+            .select(new Select().excludeAttributes())
+            .realm(new RealmPredicate(realm))
+            .attributeValue("openingDate", new DateTimePredicate(Operator.LESS_THAN, ZonedDateTime.now(ZoneOffset.UTC).format(ISO_ZONED_DATE_TIME)))
+        assetStorageService.findAll(timeQuery)
+
+        then: "it should not be cached"
+        cache.getIfPresent(AssetStorageService.getQueryShapeKey(timeQuery)) == null
+
+        cleanup: "the assets are removed"
+        if (thing1 != null && thing2 != null) {
+            assetStorageService.delete([thing1.id, thing2.id])
+        }
+    }
 }
@@ -2,7 +2,9 @@ package org.openremote.test.assets
 
 import org.openremote.container.timer.TimerService
 import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.asset.ForecastHistoryBucket
 import org.openremote.manager.asset.ForecastService
+import org.openremote.manager.asset.HoltWintersForecastModel
 import org.openremote.manager.datapoint.AssetDatapointService
 import org.openremote.manager.datapoint.AssetPredictedDatapointService
 import org.openremote.manager.setup.SetupService
@@ -13,6 +15,8 @@ import org.openremote.model.attribute.AttributeRef
 import org.openremote.model.attribute.MetaItem
 import org.openremote.model.datapoint.AssetPredictedDatapoint
 import org.openremote.model.datapoint.ValueDatapoint
+import org.openremote.model.value.ForecastConfiguration
+import org.openremote.model.value.ForecastConfigurationHoltWinters
 import org.openremote.model.value.ForecastConfigurationWeightedExponentialAverage
 import org.openremote.setup.integration.ManagerTestSetup
 import org.openremote.test.ManagerContainerTrait
@@ -266,13 +270,289 @@ class ForecastServiceTest extends Specification implements ManagerContainerTrait
         }
     }
 
+    def "Test forecasts of multiple attributes are loaded, calculated and stored together"() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+        managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
+        assetPredictedDatapointService = container.getService(AssetPredictedDatapointService.class)
+        assetStorageService = container.getService(AssetStorageService.class)
+        assetDatapointService = container.getService(AssetDatapointService.class)
+        forecastService = container.getService(ForecastService.class)
+        timerService = container.getService(TimerService.class)
+        def holtWintersConfig = new ForecastConfigurationHoltWinters(
+                new ForecastConfigurationWeightedExponentialAverage.ExtendedPeriodAndDuration("PT1H"),
+                4,
+                4,
+                null,
+                null,
+                null
+        )
+        def holtWintersValues = [10d, 20d, 30d, 40d, 12d, 22d, 32d, 42d]
+        double[][] otherHistoricalData = forecastHistoricalData.collect { hourData -> hourData.collect { it + 10d } as double[] } as double[][]
+
+        when: "the system time is stopped and set exactly on the next hour"
+        stopPseudoClock()
+        def now = Instant.ofEpochMilli(timerService.getCurrentTimeMillis())
+        now = now.truncatedTo(ChronoUnit.HOURS).plus(1, ChronoUnit.HOURS)
+        advancePseudoClock(now.toEpochMilli()-timerService.getCurrentTimeMillis(), MILLISECONDS, container)
+
+        and: "two weighted exponential average forecast assets and an asset without a forecast are added"
+        def forecastThingA = addForecastAsset(assetStorageService, managerTestSetup.realmEnergyName, forecastAttributeName, forecastConfig)
+        def forecastThingB = addForecastAsset(assetStorageService, managerTestSetup.realmEnergyName, forecastAttributeName, forecastConfig)
+        Asset<?> holtWintersThing = new ThingAsset("Holt-Winters Test Thing")
+        holtWintersThing.setRealm(managerTestSetup.realmEnergyName)
+        holtWintersThing.getAttributes().addOrReplace(new Attribute<>(forecastAttributeName, NUMBER))
+        holtWintersThing = assetStorageService.merge(holtWintersThing)
+        def attributeRefA = new AttributeRef(forecastThingA.id, forecastAttributeName)
+        def attributeRefB = new AttributeRef(forecastThingB.id, forecastAttributeName)
+        def holtWintersRef = new AttributeRef(holtWintersThing.id, forecastAttributeName)
+
+        then: "the forecast attributes should be registered at the forecast service"
+        conditions.eventually {
+            assert forecastService.forecastTaskManager.containsAttribute(attributeRefA)
+            assert forecastService.forecastTaskManager.containsAttribute(attributeRefB)
+        }
+
+        when: "the forecast service is stopped"
+        forecastService.forecastTaskManager.stop(3000)
+
+        and: "different historical data is added for each attribute"
+        insertHistoryTestDataToDb(attributeRefA, forecastHistoricalData, 2*3600000, forecastConfig)
+        insertHistoryTestDataToDb(attributeRefB, otherHistoricalData, 2*3600000, forecastConfig)
+        def holtWintersStart = timerService.currentTimeMillis - (holtWintersValues.size() - 1) * 3600000L
+        assetDatapointService.upsertValues(holtWintersRef.id, holtWintersRef.name, holtWintersValues.withIndex().collect { value, i ->
+            new ValueDatapoint<>(holtWintersStart + i * 3600000L, value)
+        })
+
+        and: "time has passed"
+        advancePseudoClock(
+                forecastConfig.forecastPeriod.toMillis(), MILLISECONDS, container
+        )
+
+        and: "a Holt-Winters forecast is added to the asset without a forecast"
+        holtWintersThing = assetStorageService.find(holtWintersThing.id)
+        holtWintersThing.getAttribute(forecastAttributeName).get().addOrReplaceMeta(new MetaItem<>(FORECAST, holtWintersConfig))
+        holtWintersThing = assetStorageService.merge(holtWintersThing)
+
+        then: "the forecast values of each attribute should be calculated from its own history"
+        conditions.eventually {
+            List<AssetPredictedDatapoint> predictedDatapointsA = assetPredictedDatapointService.getDatapoints(attributeRefA).sort {it.timestamp}
+            List<AssetPredictedDatapoint> predictedDatapointsB = assetPredictedDatapointService.getDatapoints(attributeRefB).sort {it.timestamp}
+            assert predictedDatapointsA.size() == forecastConfig.forecastCount
+            assert predictedDatapointsB.size() == forecastConfig.forecastCount
+            for (int i = 0; i < forecastConfig.forecastCount; i++) {
+                assert predictedDatapointsA[i].value == calculateForecast(forecastHistoricalData[i][0..forecastConfig.pastCount - 1]).get()
+                assert predictedDatapointsB[i].value == calculateForecast(otherHistoricalData[i][0..forecastConfig.pastCount - 1]).get()
+                assert predictedDatapointsA[i].timestamp == predictedDatapointsB[i].timestamp
+            }
+        }
+
+        and: "the Holt-Winters model should have been warmed up from the history"
+        conditions.eventually {
+            List<AssetPredictedDatapoint> predictedDatapoints = assetPredictedDatapointService.getDatapoints(holtWintersRef).sort {it.timestamp}
+            assert predictedDatapoints.size() == holtWintersConfig.forecastCount
+            // The value of the current hour is not complete yet so only the previous hours are part of the model
+            def expected = calculateHoltWintersForecast(
+                    holtWintersValues[0..-2],
+                    Math.floorDiv(holtWintersStart, 3600000L),
+                    holtWintersConfig,
+                    predictedDatapoints.collect { Math.floorDiv(it.timestamp, 3600000L) }
+            )
+            for (int i = 0; i < predictedDatapoints.size(); i++) {
+                assert Math.abs((predictedDatapoints[i].value as double) - expected[i]) < 1e-9
+            }
+        }
+
+        and: "the Holt-Winters model state should have been stored and can be restored into a new model"
+        conditions.eventually {
+            def restoredAttribute = new ForecastService.ForecastAttribute(holtWintersThing, holtWintersThing.getAttribute(forecastAttributeName).get())
+            def restoredModel = new HoltWintersForecastModel(Double.class, holtWintersConfig)
+            restoredAttribute.setModel(restoredModel)
+            forecastService.loadModelStates([(holtWintersRef): restoredAttribute])
+            assert restoredModel.getHistoryWindows(timerService.currentTimeMillis, [timerService.currentTimeMillis + 3600000L]).length == 0
+            assert restoredModel.getState() == forecastService.forecastTaskManager.getAttribute(holtWintersRef).getModel().getState()
+        }
+
+        when: "the predicted datapoints of multiple attributes are replaced together"
+        def replacementTimestamp = timerService.currentTimeMillis + 3600000L
+        assetPredictedDatapointService.replaceValues([
+                (attributeRefA): [new ValueDatapoint<>(replacementTimestamp, 100d)],
+                (attributeRefB): []
+        ])
+
+        then: "only the replacement datapoints should remain"
+        def replacedDatapointsA = assetPredictedDatapointService.getDatapoints(attributeRefA)
+        replacedDatapointsA.size() == 1
+        replacedDatapointsA[0].timestamp == replacementTimestamp
+        replacedDatapointsA[0].value == 100d
+        assetPredictedDatapointService.getDatapoints(attributeRefB).isEmpty()
+        assetPredictedDatapointService.getDatapoints(holtWintersRef).size() == holtWintersConfig.forecastCount
+
+        when: "the assets are deleted"
+        assetStorageService.delete([forecastThingA.id, forecastThingB.id, holtWintersThing.id])
+
+        then: "the attributes should be unregistered from the forecast service"
+        conditions.eventually {
+            assert !forecastService.forecastTaskManager.containsAttribute(attributeRefA)
+            assert !forecastService.forecastTaskManager.containsAttribute(attributeRefB)
+            assert !forecastService.forecastTaskManager.containsAttribute(holtWintersRef)
+        }
+    }
+
+    def "Test Holt-Winters model warms up once and only forecasts after a full season"() {
+        given: "a Holt-Winters model with an hourly forecast period and a season of four periods"
+        def config = new ForecastConfigurationHoltWinters(new ForecastConfigurationWeightedExponentialAverage.ExtendedPeriodAndDuration("PT1H"), 4, 4, null, null, null)
+        def period = config.forecastPeriod.toMillis()
+        def start = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli()
+        def values = [10d, 20d, 30d, 40d, 12d, 22d, 32d, 42d]
+        def now = start + period * values.size()
+        def forecastTimestamps = (1..config.forecastCount).collect { now + it * period }
+
+        when: "the history windows of a new model are requested"
+        def model = new HoltWintersForecastModel(Double.class, config)
+        def windows = model.getHistoryWindows(now, forecastTimestamps)
+
+        then: "the last two seasons of history should be requested"
+        windows.length == 1
+        windows[0][0] == now - period * config.seasonLength * 2
+        windows[0][1] == now
+
+        when: "the model is calculated with less than a season of history"
+        def shortModel = new HoltWintersForecastModel(Double.class, config)
+        def shortHistory = new ForecastHistoryBucket(windows[0][0], windows[0][1], false)
+        (0..2).each { shortHistory.add(start + it * period, values[it].toString()) }
+        def shortForecast = shortModel.calculate(now, forecastTimestamps, [shortHistory] as ForecastHistoryBucket[])
+
+        then: "no forecast should be produced and no more history should be requested"
+        shortForecast.isEmpty()
+        shortModel.getHistoryWindows(now, forecastTimestamps).length == 0
+
+        when: "the model is calculated with two seasons of history"
+        def history = new ForecastHistoryBucket(windows[0][0], windows[0][1], false)
+        values.eachWithIndex { value, i -> history.add(start + i * period, value.toString()) }
+        def forecast = model.calculate(now, forecastTimestamps, [history] as ForecastHistoryBucket[])
+
+        then: "the forecast should match the Holt-Winters equations for the completed periods"
+        def expected = calculateHoltWintersForecast(values[0..-2], Math.floorDiv(start, period), config, forecastTimestamps.collect { Math.floorDiv(it, period) })
+        forecast.size() == config.forecastCount
+        forecast*.timestamp == forecastTimestamps
+        (0..<forecast.size()).every { Math.abs((forecast[it].value as double) - expected[it]) < 1e-9 }
+
+        and: "no more history should be requested"
+        model.getHistoryWindows(now, forecastTimestamps).length == 0
+    }
+
+    def "Test Holt-Winters model aggregates values per period and fills missing periods"() {
+        given: "two initialised Holt-Winters models"
+        def config = new ForecastConfigurationHoltWinters(new ForecastConfigurationWeightedExponentialAverage.ExtendedPeriodAndDuration("PT1H"), 4, 4, null, null, null)
+        def period = config.forecastPeriod.toMillis()
+        def start = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli()
+        def now = start + period * 9
+        def forecastTimestamps = (1..config.forecastCount).collect { now + it * period }
+        def gapModel = new HoltWintersForecastModel(Double.class, config)
+        def filledModel = new HoltWintersForecastModel(Double.class, config)
+        gapModel.calculate(now, forecastTimestamps, new ForecastHistoryBucket[0])
+        filledModel.calculate(now, forecastTimestamps, new ForecastHistoryBucket[0])
+
+        when: "one model receives several values per period, misses three periods and receives a late value"
+        gapModel.update(start, 8d)
+        gapModel.update(start + period.intdiv(2), 12d)
+        gapModel.update(start + period, 20d)
+        gapModel.update(start + period * 2, 30d)
+        gapModel.update(start + period * 6, 14d)
+        gapModel.update(start + period, 1000d)
+        gapModel.update(start + period * 7, 24d)
+        gapModel.update(start + period * 8, 34d)
+
+        and: "the other model receives the mean of each period and the last value for the missing periods"
+        [10d, 20d, 30d, 30d, 30d, 30d, 14d, 24d, 34d].eachWithIndex { value, i -> filledModel.update(start + i * period, value) }
+
+        then: "both models should produce the same forecast"
+        def gapForecast = gapModel.calculate(now, forecastTimestamps, new ForecastHistoryBucket[0])
+        def filledForecast = filledModel.calculate(now, forecastTimestamps, new ForecastHistoryBucket[0])
+        def expected = calculateHoltWintersForecast([10d, 20d, 30d, 30d, 30d, 30d, 14d, 24d], Math.floorDiv(start, period), config, forecastTimestamps.collect { Math.floorDiv(it, period) })
+        gapForecast.size() == config.forecastCount
+        gapForecast*.value == filledForecast*.value
+        (0..<gapForecast.size()).every { Math.abs((gapForecast[it].value as double) - expected[it]) < 1e-9 }
+    }
+
+    def "Test Holt-Winters model state snapshot and restore"() {
+        given: "a Holt-Winters model warmed up from history"
+        def config = new ForecastConfigurationHoltWinters(new ForecastConfigurationWeightedExponentialAverage.ExtendedPeriodAndDuration("PT1H"), 4, 4, null, null, null)
+        def period = config.forecastPeriod.toMillis()
+        def start = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli()
+        def values = [10d, 20d, 30d, 40d, 12d, 22d, 32d, 42d]
+        def now = start + period * values.size()
+        def forecastTimestamps = (1..config.forecastCount).collect { now + it * period }
+        def model = new HoltWintersForecastModel(Double.class, config)
+        def history = new ForecastHistoryBucket(now - period * config.seasonLength * 2, now, false)
+        values.eachWithIndex { value, i -> history.add(start + i * period, value.toString()) }
+        def forecast = model.calculate(now, forecastTimestamps, [history] as ForecastHistoryBucket[])
+
+        when: "the state is restored into a new model with the same configuration"
+        def state = model.getState()
+        def restoredModel = new HoltWintersForecastModel(Double.class, config)
+        restoredModel.setState(state)
+
+        then: "the restored model should not need any history and produce the same forecast"
+        state != null
+        restoredModel.getHistoryWindows(now, forecastTimestamps).length == 0
+        restoredModel.calculate(now, forecastTimestamps, new ForecastHistoryBucket[0])*.value == forecast*.value
+
+        when: "both models are updated with the same values"
+        model.update(now, 50d)
+        model.update(now + period, 60d)
+        restoredModel.update(now, 50d)
+        restoredModel.update(now + period, 60d)
+
+        then: "they should still produce the same forecast"
+        restoredModel.calculate(now, forecastTimestamps, new ForecastHistoryBucket[0])*.value == model.calculate(now, forecastTimestamps, new ForecastHistoryBucket[0])*.value
+
+        when: "the state is restored into a model with a different season length"
+        def otherConfig = new ForecastConfigurationHoltWinters(new ForecastConfigurationWeightedExponentialAverage.ExtendedPeriodAndDuration("PT1H"), 4, 6, null, null, null)
+        def otherModel = new HoltWintersForecastModel(Double.class, otherConfig)
+        otherModel.setState(state)
+
+        and: "invalid state is restored into a model"
+        def invalidModel = new HoltWintersForecastModel(Double.class, config)
+        invalidModel.setState("not a model state")
+
+        then: "the state should be ignored and history requested"
+        otherModel.getHistoryWindows(now, forecastTimestamps).length == 1
+        invalidModel.getHistoryWindows(now, forecastTimestamps).length == 1
+    }
+
     private Optional<Double> calculateForecast(List<Double> values) {
         double R = values.size()
         double a = 2 / (R + 1)
         return values.stream().reduce((result, periodValue) -> (periodValue * a) + (result * (1 - a)))
     }
 
-    protected Asset<?>  addForecastAsset(AssetStorageService assetStorageService, String realm, String attributeName, ForecastConfigurationWeightedExponentialAverage config) {
+    /**
+     * Additive Holt-Winters forecast of consecutive period values starting at the specified period slot
+     */
+    private static List<Double> calculateHoltWintersForecast(List<Double> values, long firstSlot, ForecastConfigurationHoltWinters config, List<Long> forecastSlots) {
+        int seasonLength = config.seasonLength
+        double level = values[0]
+        double trend = 0d
+        double[] season = new double[seasonLength]
+
+        for (int i = 1; i < values.size(); i++) {
+            int seasonIndex = Math.floorMod(firstSlot + i, (long) seasonLength) as int
+            double previousLevel = level
+            level = config.alpha * (values[i] - season[seasonIndex]) + (1 - config.alpha) * (level + trend)
+            trend = config.beta * (level - previousLevel) + (1 - config.beta) * trend
+            season[seasonIndex] = config.gamma * (values[i] - level) + (1 - config.gamma) * season[seasonIndex]
+        }
+
+        long lastSlot = firstSlot + values.size() - 1
+        return forecastSlots.collect { slot ->
+            level + (slot - lastSlot) * trend + season[Math.floorMod(slot, (long) seasonLength) as int]
+        }
+    }
+
+    protected Asset<?>  addForecastAsset(AssetStorageService assetStorageService, String realm, String attributeName, ForecastConfiguration config) {
         Asset<?> thing = new ThingAsset("Forecast Test Thing")
         thing.setRealm(realm)
         thing.getAttributes().addOrReplace(
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.container
+
+import org.openremote.container.Container
+import org.openremote.container.concurrent.ContainerThreadFactory
+import org.openremote.container.message.MessageBrokerService
+import org.openremote.container.timer.TimerService
+import org.openremote.manager.mqtt.MQTTBrokerService
+import org.openremote.manager.persistence.ManagerPersistenceService
+import org.openremote.manager.security.ManagerIdentityService
+import org.openremote.manager.setup.KeycloakInitService
+import org.openremote.manager.syslog.SyslogService
+import org.openremote.model.ContainerService
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import static org.openremote.container.Container.OR_CONTAINER_STARTUP_THREADS_DEFAULT
+import static org.openremote.model.Container.OR_METRICS_ENABLED
+
+class ContainerStartupTest extends Specification implements ManagerContainerTrait {
+
+    static abstract class TestService implements ContainerService {
+        Collection<Class<? extends ContainerService>> dependencies
+
+        @Override
+        Collection<Class<? extends ContainerService>> getStartupDependencies() {
+            return dependencies
+        }
+
+        @Override
+        void init(org.openremote.model.Container container) throws Exception {
+        }
+
+        @Override
+        void start(org.openremote.model.Container container) throws Exception {
+        }
+
+        @Override
+        void stop(org.openremote.model.Container container) throws Exception {
+        }
+    }
+
+    static class ServiceA extends TestService {}
+    static class ServiceB extends TestService {}
+    static class ServiceC extends TestService {}
+    static class ServiceD extends TestService {}
+
+    @Shared
+    Container startupContainer
+
+    @Shared
+    ExecutorService executor
+
+    def setupSpec() {
+        // Creating a container replaces the shared scheduled executor so make sure no container is being reused
+        stopContainer()
+        startupContainer = new Container([(OR_METRICS_ENABLED): "false"], [])
+        executor = Executors.newFixedThreadPool(4, new ContainerThreadFactory("Container startup test"))
+    }
+
+    def cleanupSpec() {
+        executor?.shutdownNow()
+        Container.EXECUTOR_SERVICE?.shutdownNow()
+    }
+
+    def "Check parallel startup is enabled by default for the independent core services"() {
+
+        expect: "more than one startup thread by default"
+        OR_CONTAINER_STARTUP_THREADS_DEFAULT > 1
+
+        when: "the dependencies of the core services are resolved in registry order"
+        def syslog = new SyslogService()
+        def keycloakInit = new KeycloakInitService()
+        def persistence = new ManagerPersistenceService()
+        def identity = new ManagerIdentityService()
+        def timer = new TimerService()
+        def mqttBroker = new MQTTBrokerService()
+        def messageBroker = new MessageBrokerService()
+        ContainerService[] services = [syslog, keycloakInit, persistence, identity, timer, mqttBroker, messageBroker]
+        def dependencies = startupContainer.getStartupDependencies(services)
+        def ordered = Container.sortByDependencies(services, dependencies)
+
+        then: "waiting for keycloak and database migration should not depend on anything"
+        dependencies[syslog].isEmpty()
+        dependencies[keycloakInit].isEmpty()
+        dependencies[persistence].isEmpty()
+
+        and: "the identity service should only wait for them"
+        dependencies[identity] as Set == [keycloakInit, persistence] as Set
+
+        and: "the MQTT broker should only wait for the identity service"
+        dependencies[mqttBroker] as Set == [identity] as Set
+
+        and: "services that haven't declared dependencies should still wait for every service ahead of them"
+        dependencies[timer] as Set == [syslog, keycloakInit, persistence, identity] as Set
+        dependencies[messageBroker] as Set == [syslog, keycloakInit, persistence, identity, timer, mqttBroker] as Set
+        ordered == services as List
+    }
+
+    def "Check services are ordered after their dependencies"() {
+
+        given: "services where a declared dependency is later in the registry"
+        def a = new ServiceA(dependencies: [ServiceC])
+        def b = new ServiceB(dependencies: null)
+        def c = new ServiceC(dependencies: [])
+        def d = new ServiceD(dependencies: [ServiceA])
+        ContainerService[] services = [a, b, c, d]
+
+        when: "the dependencies are resolved and sorted"
+        def dependencies = startupContainer.getStartupDependencies(services)
+        def ordered = Container.sortByDependencies(services, dependencies)
+
+        then: "services without declared dependencies should wait for every service ahead of them"
+        dependencies[b] as Set == [a] as Set
+        dependencies[c].isEmpty()
+        dependencies[a] as Set == [c] as Set
+        dependencies[d] as Set == [a] as Set
+
+        and: "every service should come after its dependencies otherwise keeping registry order"
+        ordered == [c, a, b, d]
+    }
+
+    def "Check cyclic dependencies are rejected"() {
+
+        given: "services that depend on each other"
+        def a = new ServiceA(dependencies: [ServiceB])
+        def b = new ServiceB(dependencies: [ServiceC])
+        def c = new ServiceC(dependencies: [ServiceA])
+        ContainerService[] services = [a, b, c]
+
+        when: "the services are sorted"
+        Container.sortByDependencies(services, startupContainer.getStartupDependencies(services))
+
+        then: "the cycle should be reported"
+        def ex = thrown(IllegalStateException)
+        ex.message.contains("ServiceA -> ServiceB -> ServiceC -> ServiceA")
+    }
+
+    def "Check a phase runs sequentially on the calling thread without an executor"() {
+
+        given: "services with dependencies"
+        def a = new ServiceA(dependencies: [])
+        def b = new ServiceB(dependencies: [])
+        def c = new ServiceC(dependencies: [ServiceA, ServiceB])
+        ContainerService[] services = [a, b, c]
+        def dependencies = startupContainer.getStartupDependencies(services)
+        def ordered = Container.sortByDependencies(services, dependencies)
+        def threads = new ConcurrentLinkedQueue<String>()
+        def runOrder = new ConcurrentLinkedQueue<ContainerService>()
+
+        when: "the phase is run without an executor"
+        startupContainer.runPhase("init", ordered, dependencies, null, System.nanoTime(), { service ->
+            threads.add(Thread.currentThread().name)
+            runOrder.add(service)
+        })
+
+        then: "every service should run in order on the calling thread"
+        runOrder as List == ordered
+        threads.every { it == Thread.currentThread().name }
+    }
+
+    def "Check independent services run in parallel and dependants wait for them"() {
+
+        given: "two independent services and a service that depends on both"
+        def a = new ServiceA(dependencies: [])
+        def b = new ServiceB(dependencies: [])
+        def c = new ServiceC(dependencies: [ServiceA, ServiceB])
+        ContainerService[] services = [a, b, c]
+        def dependencies = startupContainer.getStartupDependencies(services)
+        def ordered = Container.sortByDependencies(services, dependencies)
+        def barrier = new CyclicBarrier(2)
+        def completed = new ConcurrentLinkedQueue<ContainerService>()
+        def dependenciesCompletedBeforeC = false
+
+        when: "the phase is run with an executor"
+        startupContainer.runPhase("start", ordered, dependencies, executor, System.nanoTime(), { service ->
+            if (service == c) {
+                dependenciesCompletedBeforeC = completed.containsAll([a, b])
+            } else {
+                // Only completes if both independent services are running at the same time
+                barrier.await(10, TimeUnit.SECONDS)
+            }
+            completed.add(service)
+        })
+
+        then: "the independent services should have run at the same time followed by the dependant"
+        completed.size() == 3
+        dependenciesCompletedBeforeC
+        completed.last() == c
+
+        and: "the timeline should contain each service"
+        startupContainer.startupTimeline.findAll { it.phase == "start" }.collect { it.service } as Set == [a, b, c].collect { it.class.name } as Set
+    }
+
+    def "Check the first failing service is reported and its dependants are not run"() {
+
+        given: "a failing service and a service that depends on it"
+        def a = new ServiceA(dependencies: [])
+        def b = new ServiceB(dependencies: [ServiceA])
+        ContainerService[] services = [a, b]
+        def dependencies = startupContainer.getStartupDependencies(services)
+        def ordered = Container.sortByDependencies(services, dependencies)
+        def run = new ConcurrentLinkedQueue<ContainerService>()
+
+        when: "the phase is run with an executor"
+        startupContainer.runPhase("init", ordered, dependencies, executor, System.nanoTime(), { service ->
+            run.add(service)
+            if (service == a) {
+                throw new IllegalArgumentException("Service A failed")
+            }
+        })
+
+        then: "the failure of the first service should be thrown"
+        def ex = thrown(IllegalArgumentException)
+        ex.message == "Service A failed"
+
+        and: "the dependant service should not have run"
+        run as List == [a]
+    }
+}
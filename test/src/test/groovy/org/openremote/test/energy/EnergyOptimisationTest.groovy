@@ -1,15 +1,34 @@
 package org.openremote.test.energy
 
+import org.openremote.container.timer.TimerService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.datapoint.AssetPredictedDatapointService
+import org.openremote.manager.energy.EnergyOptimisationService
+import org.openremote.manager.setup.SetupService
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.impl.ThingAsset
+import org.openremote.model.attribute.Attribute
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.datapoint.ValueDatapoint
+import org.openremote.model.datapoint.query.AssetDatapointIntervalQuery
 import org.openremote.model.util.UniqueIdentifierGenerator
 import org.openremote.manager.energy.EnergyOptimiser
 import org.openremote.model.util.Pair
+import org.openremote.setup.integration.ManagerTestSetup
+import org.openremote.test.ManagerContainerTrait
 import spock.lang.Specification
 
+import java.time.Instant
 import java.time.LocalDateTime
+import java.time.ZoneId
 import java.time.temporal.ChronoUnit
 import java.util.function.Function
+import java.util.function.IntToDoubleFunction
 import java.util.stream.IntStream
 
+import static org.openremote.model.value.MetaItemType.HAS_PREDICTED_DATA_POINTS
+import static org.openremote.model.value.ValueType.NUMBER
 import static spock.util.matcher.HamcrestMatchers.closeTo
 
 /*
@@ -32,7 +51,7 @@ import static spock.util.matcher.HamcrestMatchers.closeTo
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
-class EnergyOptimisationTest extends Specification {
+class EnergyOptimisationTest extends Specification implements ManagerContainerTrait {
 
     def gridId = UniqueIdentifierGenerator.generateId("grid")
     def intervalCount = 8
@@ -364,4 +383,220 @@ class EnergyOptimisationTest extends Specification {
         powerSetpoints[6] == -20d
         powerSetpoints[7] closeTo(-3.33333, 0.0001)
     }
+
+    def "Check primitive and boxed storage optimisation produce the same setpoints"() {
+
+        given: "deterministic input parameters"
+        int count = (int) (24d / size)
+        double powerImportMax = 7.3d
+        double powerExportMax = -11.7d
+        double[] gridPowerNets = new double[count]
+        double[] costImports = new double[count]
+        double[] costExports = new double[count]
+        double[] importLimits = new double[count]
+        double[] exportLimits = new double[count]
+        double[] energyLevelMins = new double[count]
+        double[] energyLevelMaxs = new double[count]
+        for (int i = 0; i < count; i++) {
+            gridPowerNets[i] = (((i * 5) % 9) - 4) * 3d
+            costImports[i] = (((i * 7) % 11) - 3) / 10d
+            costExports[i] = (((i * 3) % 7) - 4) / 10d
+        }
+        Arrays.fill(importLimits, 30d)
+        Arrays.fill(exportLimits, -30d)
+        Arrays.fill(energyLevelMins, 41.9d)
+        Arrays.fill(energyLevelMaxs, 171.3d)
+        energyLevelMins[(int) (count / 3)] = 149.1d
+
+        when: "the setpoints are calculated using the primitive functions and re-usable buffers"
+        def optimisation = new EnergyOptimiser(size, 1d)
+        double[] primitiveMins = Arrays.copyOf(energyLevelMins, count)
+        double[] primitiveSetpoints = new double[count]
+        IntToDoubleFunction primitiveImportMaxCalculator = {int interval -> interval == 0 && !connected ? 0d : powerImportMax}
+        IntToDoubleFunction primitiveExportMaxCalculator = {int interval -> interval == 0 && !connected ? 0d : powerExportMax}
+        optimisation.normaliseEnergyMinRequirements(primitiveMins, primitiveImportMaxCalculator, primitiveExportMaxCalculator, energyLevel)
+        def primitiveImportOptimiser = optimisation.getImportCostAndPowerOptimiser(gridPowerNets, importLimits, costImports, costExports, 0.01d)
+        def primitiveExportOptimiser = optimisation.getExportCostAndPowerOptimiser(gridPowerNets, exportLimits, costImports, costExports, 0.02d)
+        double[][] primitiveImport = optimisation.getImportCostAndPower(primitiveImportOptimiser, powerImportMax)
+        double[][] primitiveExport = optimisation.getExportCostAndPower(primitiveExportOptimiser, powerExportMax)
+        IntToDoubleFunction primitiveEnergyLevelCalculator = optimisation.getEnergyLevelCalculator(energyLevel, primitiveSetpoints)
+        optimisation.applyEnergyMinImports(primitiveImport, primitiveMins, primitiveSetpoints, primitiveEnergyLevelCalculator, primitiveImportOptimiser, primitiveImportMaxCalculator)
+        optimisation.applyEarningOpportunities(primitiveImport, primitiveExport, primitiveMins, energyLevelMaxs, primitiveSetpoints, primitiveEnergyLevelCalculator, primitiveImportMaxCalculator, primitiveExportMaxCalculator)
+
+        and: "the setpoints are calculated using the boxed functions with the same optimiser instance"
+        double[] boxedMins = Arrays.copyOf(energyLevelMins, count)
+        double[] boxedSetpoints = new double[count]
+        Function<Integer, Double> boxedImportMaxCalculator = {interval -> interval == 0 && !connected ? 0d : powerImportMax}
+        Function<Integer, Double> boxedExportMaxCalculator = {interval -> interval == 0 && !connected ? 0d : powerExportMax}
+        optimisation.normaliseEnergyMinRequirements(boxedMins, boxedImportMaxCalculator, boxedExportMaxCalculator, energyLevel)
+        def boxedImportOptimiser = optimisation.getImportOptimiser(gridPowerNets, importLimits, costImports, costExports, 0.01d)
+        def boxedExportOptimiser = optimisation.getExportOptimiser(gridPowerNets, exportLimits, costImports, costExports, 0.02d)
+        double[][] boxedImport = IntStream.range(0, count).mapToObj{boxedImportOptimiser.apply(it, [0d, powerImportMax] as double[])}.toArray({new double[it][1]})
+        double[][] boxedExport = IntStream.range(0, count).mapToObj{boxedExportOptimiser.apply(it, powerExportMax)}.toArray({new double[it][1]})
+        Function<Integer, Double> boxedEnergyLevelCalculator = {int interval ->
+            energyLevel + IntStream.range(0, interval).mapToDouble({j -> boxedSetpoints[j] * size}).sum()
+        }
+        optimisation.applyEnergyMinImports(boxedImport, boxedMins, boxedSetpoints, boxedEnergyLevelCalculator, boxedImportOptimiser, boxedImportMaxCalculator)
+        optimisation.applyEarningOpportunities(boxedImport, boxedExport, boxedMins, energyLevelMaxs, boxedSetpoints, boxedEnergyLevelCalculator, boxedImportMaxCalculator, boxedExportMaxCalculator)
+
+        then: "both should exactly match the setpoints calculated before the primitive functions were introduced"
+        primitiveSetpoints == expectedSetpoints as double[]
+        boxedSetpoints == expectedSetpoints as double[]
+        primitiveMins == boxedMins
+
+        where:
+        size  | connected | energyLevel | expectedSetpoints
+        1d    | true      | 63.7d       | [7.3d, 7.3d, 7.3d, 7.3d, 6.0d, 7.3d, 3.0d, 7.3d, 7.3d, 7.3d, -11.7d, 7.3d, -11.7d, 0.0d, -11.7d, -11.7d, 7.3d, -11.7d, 7.3d, 7.3d, 0.0d, -11.7d, -11.7d, -9.0d]
+        1d    | false     | 63.7d       | [0.0d, 7.3d, 7.3d, 7.3d, 6.0d, 7.3d, 3.0d, 7.3d, 7.3d, 7.3d, -11.7d, 7.3d, -11.7d, 0.0d, -11.7d, -11.7d, 7.3d, -11.7d, 7.3d, 7.3d, 0.0d, -11.7d, -11.7d, -9.0d]
+        3d    | true      | 63.7d       | [7.3d, 7.3d, 7.3d, 0.0d, 6.0d, 7.3d, 0.0d, -11.699999999999998d]
+        3d    | false     | 63.7d       | [7.3d, 7.3d, 7.3d, -11.699999999999998d, 6.0d, 7.3d, 0.0d, -11.699999999999998d]
+        1d    | true      | 20d         | [7.3d, 7.3d, 7.3d, 7.3d, 6.0d, 7.3d, 3.0d, 7.3d, 7.3d, 7.3d, 0.0d, 7.3d, -11.7d, 0.0d, -11.7d, -11.7d, 7.3d, -11.7d, 7.3d, 7.3d, 0.0d, -11.7d, -11.7d, -9.0d]
+        0.5d  | false     | 20d         | [0.0d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, -5.200000000000003d, 7.3d, 7.3d, 7.3d, 7.3d, -2.9000000000000057d, -9.0d, -7.3d, -11.7d, -11.7d, 7.3d, -11.7d, 7.3d, 7.3d, -7.3d, 7.3d, -11.7d, -11.7d, -11.7d, 7.3d, -3.0d, -11.7d, -6.0d, -11.7d, 7.3d, -11.7d, 7.3d, 7.3d, -11.7d, 0.0d, -11.7d]
+        0.25d | true      | 63.7d       | [7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.3d, 7.299999999999898d, 7.3d, 7.3d, 7.2999999999999545d, 7.2999999999999545d, -11.7d, -11.7d, -11.7d, -11.699999999999989d, -3.0d, -11.7d, -6.0d, -11.7d, 7.3d, -11.7d, -11.7d, 7.3d, -11.7d, 0.0d, -11.7d, -6.0d, -11.7d, -11.7d, 3.0d, 7.3d, 0.0d, -11.7d, 7.3d, -11.7d, -11.7d, 6.0d, -11.7d, 7.3d, -11.7d, 0.0d, -11.7d, -11.7d, 7.3d, 7.3d, 6.0d, -11.7d, 0.0d, -11.7d, 7.3d, 7.3d, -11.7d, 7.3d, -11.7d, 0.0d, 7.3d, -11.7d, 0.0d, -11.7d, 7.3d, -11.7d, 0.0d, -11.7d, -11.7d, -9.0d, -11.7d, 7.3d, -11.7d, 0.0d, -11.7d, -11.7d, 7.3d, -11.7d, -9.0d]
+        0.25d | false     | 150d        | [0.0d, 0.0d, 7.3d, -11.7d, 6.0d, 7.3d, 3.0d, -2.0d, 7.3d, 7.3d, 7.3d, 7.3d, -11.7d, 7.3d, -11.7d, 3.0d, 7.3d, -10.3d, 7.3d, 7.3d, 7.3d, -11.7d, -2.8999999999999773d, -9.0d, 0.0d, -11.7d, -11.7d, 7.3d, -11.7d, 7.3d, 7.3d, -11.7d, 0.0d, -11.7d, -11.7d, -11.7d, -11.7d, -3.0d, -11.7d, -6.0d, -11.7d, 7.3d, -11.7d, -11.7d, 7.3d, -11.7d, 0.0d, -11.7d, -6.0d, -11.7d, -11.7d, 3.0d, 7.3d, 0.0d, -11.7d, 7.3d, -11.7d, -11.7d, 6.0d, -11.7d, 7.3d, -11.7d, 0.0d, -11.7d, -11.7d, 7.3d, 7.3d, 6.0d, -11.7d, 0.0d, -11.7d, 7.3d, 7.3d, -11.7d, 7.3d, -11.7d, 0.0d, 7.3d, -11.7d, 0.0d, -11.7d, 7.3d, -11.7d, 0.0d, -11.7d, -11.7d, -9.0d, -11.7d, 7.3d, -11.7d, 0.0d, -11.7d, -11.7d, 7.3d, -11.7d, -9.0d]
+    }
+
+    def "Check batched optimisation inputs match the per attribute inputs"() {
+
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetPredictedDatapointService = container.getService(AssetPredictedDatapointService.class)
+        def optimisationService = container.getService(EnergyOptimisationService.class)
+        def timerService = container.getService(TimerService.class)
+        def inputIntervalSize = 1d
+        def inputIntervalCount = 24
+        def optimisationTime = Instant.ofEpochMilli(timerService.currentTimeMillis).truncatedTo(ChronoUnit.HOURS)
+        def optimisationDateTime = LocalDateTime.ofInstant(optimisationTime, ZoneId.systemDefault())
+
+        and: "two assets with attributes with and without predicted data points"
+        List<Asset<?>> assets = (1..2).collect { assetIndex ->
+            Asset<?> asset = new ThingAsset("Optimisation Input Test Thing " + assetIndex)
+            asset.setRealm(managerTestSetup.realmEnergyName)
+            asset.getAttributes().addOrReplace(
+                new Attribute<>("hourly", NUMBER, 1.5d * assetIndex).addMeta(new MetaItem<>(HAS_PREDICTED_DATA_POINTS)),
+                new Attribute<>("halfHourly", NUMBER, 2.5d * assetIndex).addMeta(new MetaItem<>(HAS_PREDICTED_DATA_POINTS)),
+                new Attribute<>("sparse", NUMBER).addMeta(new MetaItem<>(HAS_PREDICTED_DATA_POINTS)),
+                new Attribute<>("empty", NUMBER, 3.5d).addMeta(new MetaItem<>(HAS_PREDICTED_DATA_POINTS)),
+                new Attribute<>("current", NUMBER, 4.5d * assetIndex)
+            )
+            assetStorageService.merge(asset)
+        }
+
+        and: "predicted data points with gaps and different resolutions for the next 24hrs"
+        assets.eachWithIndex { asset, assetIndex ->
+            assetPredictedDatapointService.updateValues(asset.id, "hourly", (1..<inputIntervalCount)
+                .findAll { it < 5 || (it > 7 && it != 20) }
+                .collect { new ValueDatapoint<>(optimisationTime.plus(it, ChronoUnit.HOURS).toEpochMilli(), (it % 7) - 3d + assetIndex) })
+            assetPredictedDatapointService.updateValues(asset.id, "halfHourly", (2..<inputIntervalCount * 2)
+                .collect { new ValueDatapoint<>(optimisationTime.plus(it * 30, ChronoUnit.MINUTES).toEpochMilli(), (it % 5) * 1.25d - assetIndex) })
+            assetPredictedDatapointService.updateValues(asset.id, "sparse", [3, 11, 17]
+                .collect { new ValueDatapoint<>(optimisationTime.plus(it, ChronoUnit.HOURS).toEpochMilli(), it * 0.5d + assetIndex) })
+        }
+
+        when: "the inputs of all the attributes are loaded together"
+        assets = assets.collect { assetStorageService.find(it.id) }
+        Map<AttributeRef, Attribute<Double>> attributes = new LinkedHashMap<>()
+        assets.each { asset ->
+            ["hourly", "halfHourly", "sparse", "empty", "current"].each { name ->
+                attributes.put(new AttributeRef(asset.id, name), asset.getAttribute(name).orElse(null) as Attribute)
+            }
+            attributes.put(new AttributeRef(asset.id, "missing"), null)
+        }
+        def batchedValues = optimisationService.get24HAttributeValues(attributes, inputIntervalSize, inputIntervalCount, optimisationTime)
+
+        then: "the inputs should match the inputs loaded for each attribute individually"
+        batchedValues.keySet() == attributes.keySet()
+        attributes.each { ref, attribute ->
+            assert batchedValues.get(ref) == getBaseline24HAttributeValues(assetPredictedDatapointService, ref.id, attribute, inputIntervalSize, inputIntervalCount, optimisationTime)
+        }
+
+        and: "the batched predicted data points should match the individually queried predicted data points"
+        def predictedRefs = attributes.findAll { it.value != null && it.value.hasMeta(HAS_PREDICTED_DATA_POINTS) }.keySet()
+        def query = new AssetDatapointIntervalQuery(
+            optimisationDateTime,
+            optimisationDateTime.plus(24, ChronoUnit.HOURS).minus((long)(inputIntervalSize * 60), ChronoUnit.MINUTES),
+            (inputIntervalSize * 60) + " minutes",
+            AssetDatapointIntervalQuery.Formula.AVG,
+            true
+        )
+        def batchedDatapoints = assetPredictedDatapointService.queryDatapoints(predictedRefs, query)
+        predictedRefs.each { ref ->
+            def datapoints = assetPredictedDatapointService.queryDatapoints(ref.id, ref.name, query)
+            assert batchedDatapoints.get(ref)*.timestamp == datapoints*.timestamp
+            assert batchedDatapoints.get(ref)*.value == datapoints*.value
+        }
+
+        and: "the gaps should have been filled and the current value used for the first interval"
+        def hourlyValues = batchedValues.get(new AttributeRef(assets[0].id, "hourly"))
+        hourlyValues[0] == 1.5d
+        hourlyValues[6] == (((4 % 7) - 3d) + ((8 % 7) - 3d)) / 2
+        batchedValues.get(new AttributeRef(assets[1].id, "current"))[0] == 9d
+        batchedValues.get(new AttributeRef(assets[1].id, "current"))[1..-1].every { it == 0d }
+        batchedValues.get(new AttributeRef(assets[0].id, "missing")).every { it == 0d }
+
+        cleanup: "the assets are deleted"
+        if (assets != null) {
+            assetStorageService.delete(assets*.id)
+        }
+    }
+
+    /**
+     * The optimisation input loading of a single attribute as it was before the inputs were batched
+     */
+    private static double[] getBaseline24HAttributeValues(AssetPredictedDatapointService assetPredictedDatapointService, String assetId, Attribute<Double> attribute, double intervalSize, int intervalCount, Instant optimisationTime) {
+        double[] values = new double[intervalCount]
+
+        if (attribute == null) {
+            return values
+        }
+
+        if (attribute.hasMeta(HAS_PREDICTED_DATA_POINTS)) {
+            LocalDateTime timestamp = LocalDateTime.ofInstant(optimisationTime, ZoneId.systemDefault())
+            List<ValueDatapoint<?>> predictedData = assetPredictedDatapointService.queryDatapoints(
+                assetId,
+                attribute.name,
+                new AssetDatapointIntervalQuery(
+                    timestamp,
+                    timestamp.plus(24, ChronoUnit.HOURS).minus((long)(intervalSize * 60), ChronoUnit.MINUTES),
+                    (intervalSize * 60) + " minutes",
+                    AssetDatapointIntervalQuery.Formula.AVG,
+                    true
+                )
+            )
+            if (predictedData.size() == values.length) {
+                for (int i = 0; i < predictedData.size(); i++) {
+                    if (predictedData[i].value != null) {
+                        values[i] = predictedData[i].value as double
+                    } else {
+                        Double previous = null
+                        Double next = null
+                        int j = i-1
+                        while (previous == null && j >= 0) {
+                            previous = predictedData[j].value as Double
+                            j--
+                        }
+                        j = i+1
+                        while (next == null && j < predictedData.size()) {
+                            next = predictedData[j].value as Double
+                            j++
+                        }
+                        if (next == null) {
+                            next = previous
+                        }
+                        if (previous == null) {
+                            previous = next
+                        }
+                        if (next != null) {
+                            values[i] = (previous + next) / 2
+                        }
+                    }
+                }
+            }
+        }
+
+        values[0] = attribute.getValue().orElse(0d)
+        return values
+    }
 }
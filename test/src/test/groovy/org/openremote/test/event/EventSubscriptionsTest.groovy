@@ -0,0 +1,174 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.event
+
+import org.apache.camel.impl.DefaultCamelContext
+import org.apache.camel.support.DefaultExchange
+import org.openremote.container.timer.TimerService
+import org.openremote.manager.event.EventSubscriptions
+import org.openremote.model.asset.AssetFilter
+import org.openremote.model.asset.AssetInfo
+import org.openremote.model.asset.impl.ThingAsset
+import org.openremote.model.attribute.Attribute
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.event.shared.CancelEventSubscription
+import org.openremote.model.event.shared.EventSubscription
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import static org.openremote.model.Constants.SESSION_KEY
+import static org.openremote.model.value.ValueType.NUMBER
+
+class EventSubscriptionsTest extends Specification {
+
+    @Shared
+    def camelContext = new DefaultCamelContext()
+
+    def cleanupSpec() {
+        camelContext.stop()
+    }
+
+    static EventSubscriptions createEventSubscriptions() {
+        return new EventSubscriptions(new TimerService() {
+            @Override
+            long getCurrentTimeMillis() {
+                return System.currentTimeMillis()
+            }
+        })
+    }
+
+    static boolean isIndexEmpty(EventSubscriptions eventSubscriptions) {
+        eventSubscriptions.eventTypeIndexMap.values().every { index ->
+            index.unindexed.isEmpty() && index.fieldIndexes.values().every { it.isEmpty() }
+        }
+    }
+
+    def "Check the subscription index routes events to the same subscribers as applying every filter"() {
+
+        given: "subscriptions with random asset filters"
+        def random = new Random(4321)
+        def pick = { List<String> values -> values[random.nextInt(values.size())] }
+        def pickSome = { List<String> values -> (1..(1 + random.nextInt(2))).collect { pick(values) } as String[] }
+        def assetIds = (1..10).collect { "asset" + it }
+        def parentIds = [null, "parent1", "parent2", "parent3"]
+        def realms = ["master", "building", "smartcity"]
+        def attributeNames = ["temp", "humidity", "power"]
+        def eventSubscriptions = createEventSubscriptions()
+        def filters = [:]
+
+        (1..300).each { i ->
+            def filter = new AssetFilter<AttributeEvent>()
+            // Combine random criteria so subscriptions are indexed on different fields
+            if (random.nextInt(4) == 0) filter.setAssetIds(pickSome(assetIds))
+            if (random.nextInt(4) == 0) filter.setParentIds(pickSome(parentIds))
+            if (random.nextInt(4) == 0) filter.setPath(pickSome(assetIds + parentIds.findAll { it != null }))
+            if (random.nextInt(3) == 0) filter.setAttributeNames(pickSome(attributeNames))
+            if (random.nextInt(2) == 0) filter.setRealm(pick(realms))
+            def sessionKey = "session" + i
+            def subscription = random.nextInt(10) == 0
+                ? new EventSubscription<>(AttributeEvent.class)
+                : new EventSubscription<>(AttributeEvent.class, filter, "sub" + i)
+            filters[sessionKey] = subscription.filter
+            eventSubscriptions.createOrUpdate(sessionKey, subscription)
+        }
+
+        and: "some subscriptions are cancelled again"
+        (1..300).findAll { it % 7 == 0 }.each {
+            eventSubscriptions.cancel("session" + it, new CancelEventSubscription(AttributeEvent.class, "sub" + it))
+            eventSubscriptions.cancel("session" + it, new CancelEventSubscription(AttributeEvent.class))
+            filters.remove("session" + it)
+        }
+
+        when: "random events are routed and every remaining filter is applied to them"
+        def mismatches = (1..500).collect {
+            def assetId = pick(assetIds)
+            def parentId = pick(parentIds)
+            def realm = pick(realms)
+            def asset = [
+                getId        : { assetId },
+                getRealm     : { realm },
+                getParentId  : { parentId },
+                getPath      : { parentId != null ? [assetId, parentId] as String[] : [assetId] as String[] },
+                getAssetName : { assetId },
+                getAssetType : { ThingAsset.DESCRIPTOR.name },
+                getAssetClass: { ThingAsset },
+                getCreatedOn : { new Date() }
+            ] as AssetInfo
+            def event = new AttributeEvent(asset, new Attribute<>(pick(attributeNames), NUMBER), null, 1d, 1000L, 0d, 0L)
+            def exchange = new DefaultExchange(camelContext)
+            exchange.in.body = event
+
+            def routed = eventSubscriptions.splitForSubscribers(exchange).collect { it.getHeader(SESSION_KEY) } as Set
+            def expected = filters.findAll { sessionKey, filter -> filter == null || filter.apply(event) != null }.keySet()
+            routed == expected ? null : event
+        }.findAll { it != null }
+
+        then: "the same subscribers should be found"
+        mismatches.isEmpty()
+    }
+
+    def "Check concurrent subscribe and cancel requests of a session leave no subscriptions behind"() {
+
+        given: "subscriptions that are indexed on different fields"
+        def eventSubscriptions = createEventSubscriptions()
+        def executor = Executors.newFixedThreadPool(8)
+        def subscriptions = [
+            new EventSubscription<>(AttributeEvent.class, new AssetFilter<AttributeEvent>().setAssetIds("asset1"), "sub1"),
+            new EventSubscription<>(AttributeEvent.class, new AssetFilter<AttributeEvent>().setRealm("master"), "sub2"),
+            new EventSubscription<>(AttributeEvent.class)
+        ]
+
+        when: "subscriptions of the same sessions are created and cancelled concurrently"
+        def start = new CountDownLatch(1)
+        def futures = (1..8).collect { thread ->
+            executor.submit {
+                start.await()
+                def random = new Random(thread)
+                2000.times {
+                    def sessionKey = "session" + random.nextInt(5)
+                    def action = random.nextInt(3)
+                    if (action == 0) {
+                        eventSubscriptions.createOrUpdate(sessionKey, subscriptions[random.nextInt(subscriptions.size())])
+                    } else if (action == 1) {
+                        eventSubscriptions.cancel(sessionKey, new CancelEventSubscription(AttributeEvent.class, "sub1"))
+                    } else {
+                        eventSubscriptions.cancelAll(sessionKey)
+                    }
+                }
+            }
+        }
+        start.countDown()
+        futures.each { it.get(30, TimeUnit.SECONDS) }
+
+        and: "every session is cancelled"
+        (0..<5).each { eventSubscriptions.cancelAll("session" + it) }
+
+        then: "no sessions or indexed subscriptions should remain"
+        eventSubscriptions.sessionSubscriptionIdMap.isEmpty()
+        isIndexEmpty(eventSubscriptions)
+
+        cleanup:
+        executor?.shutdownNow()
+    }
+}
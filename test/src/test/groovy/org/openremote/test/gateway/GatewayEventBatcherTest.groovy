@@ -0,0 +1,52 @@
+package org.openremote.test.gateway
+
+import org.openremote.manager.gateway.GatewayEventBatcher
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.gateway.GatewayAttributeEventBatchEvent
+import spock.lang.Specification
+
+import java.util.zip.Deflater
+
+class GatewayEventBatcherTest extends Specification {
+
+    def "Compressed event batches should round trip"() {
+        given: "some attribute events"
+        def events = (1..100).collect { new AttributeEvent("asset" + it, "temperature", it * 1.5d, 1000L + it) }
+
+        when: "the events are encoded into a compressed batch and decoded"
+        def batch = GatewayEventBatcher.createBatchEvent(events.collect { GatewayEventBatcher.toTuple(it) }, true, false)
+        def decoded = GatewayEventBatcher.decode(batch)
+
+        then: "the decoded events should match"
+        batch.events == null
+        batch.compressedEvents != null
+        batch.timestamp == 1100L
+        decoded.size() == 100
+        decoded.collect { it.ref } == events.collect { it.ref }
+        decoded.collect { it.timestamp } == events.collect { it.timestamp }
+        decoded[9].value.orElse(null) == 15d
+    }
+
+    def "Compressed event data that exceeds the maximum decompressed size should be rejected"() {
+        given: "a small payload that inflates to more than the maximum size"
+        def deflater = new Deflater(Deflater.BEST_COMPRESSION)
+        deflater.setInput(new byte[GatewayEventBatcher.MAX_DECOMPRESSED_BYTES + 1])
+        deflater.finish()
+        def outputStream = new ByteArrayOutputStream()
+        def buffer = new byte[4096]
+        while (!deflater.finished()) {
+            outputStream.write(buffer, 0, deflater.deflate(buffer))
+        }
+        deflater.end()
+        def compressed = Base64.getEncoder().encodeToString(outputStream.toByteArray())
+
+        expect: "the payload is much smaller than the decompressed size"
+        compressed.length() < GatewayEventBatcher.MAX_DECOMPRESSED_BYTES / 100
+
+        when: "the batch is decoded"
+        GatewayEventBatcher.decode(new GatewayAttributeEventBatchEvent(0L, null, compressed, false))
+
+        then: "decoding should fail"
+        thrown(IllegalArgumentException)
+    }
+}
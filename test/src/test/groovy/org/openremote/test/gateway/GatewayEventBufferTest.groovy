@@ -0,0 +1,98 @@
+package org.openremote.test.gateway
+
+import org.openremote.manager.gateway.GatewayEventBatcher
+import org.openremote.manager.gateway.GatewayEventBuffer
+import org.openremote.model.attribute.AttributeEvent
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class GatewayEventBufferTest extends Specification {
+
+    def "Events should be returned in order across compactions and restarts"() {
+        given: "a small buffer"
+        def file = Files.createTempDirectory("gateway-buffer").resolve("events.bin")
+        def buffer = new GatewayEventBuffer("test", file, 4096, 0, null)
+        def next = 0
+        def expected = 0
+
+        when: "a backlog of events is appended"
+        50.times { buffer.append(new AttributeEvent("asset" + next, "value", next, 1000L + next++)) }
+
+        and: "events are appended and read in chunks so the log wraps and is compacted many times"
+        1000.times {
+            5.times { buffer.append(new AttributeEvent("asset" + next, "value", next, 1000L + next++)) }
+            def events = buffer.peek(5, 0)
+            buffer.commit()
+            events.each {
+                assert it.id == "asset" + expected
+                assert it.timestamp == 1000L + expected
+                expected++
+            }
+        }
+
+        then: "no events should have been dropped or reordered"
+        expected + buffer.size() == next
+        buffer.size() == 50
+
+        when: "the buffer is re-opened"
+        def remaining = buffer.size()
+        buffer.close()
+        buffer = new GatewayEventBuffer("test", file, 4096, 0, null)
+
+        then: "the unread events should still be available in order"
+        buffer.size() == remaining
+        buffer.peek(remaining, 0).collect { it.id } == (expected..<next).collect { "asset" + it }
+
+        cleanup:
+        buffer?.close()
+        Files.deleteIfExists(file)
+    }
+
+    def "The oldest events should be dropped when the buffer is full"() {
+        given: "a small buffer"
+        def file = Files.createTempDirectory("gateway-buffer").resolve("events.bin")
+        def buffer = new GatewayEventBuffer("test", file, 1024, 0, null)
+
+        when: "more events are appended than fit"
+        500.times { buffer.append(new AttributeEvent("asset" + it, "value", it, 1000L + it)) }
+        def events = buffer.peek(500, 0)
+
+        then: "only the newest events should remain"
+        events.size() > 0
+        events.size() < 500
+        events.last().id == "asset499"
+        events.collect { it.timestamp } == events.collect { it.timestamp }.sort()
+
+        cleanup:
+        buffer?.close()
+        Files.deleteIfExists(file)
+    }
+
+    def "Tuples without a timestamp should be decoded"() {
+        when: "a tuple with a null timestamp is decoded"
+        def event = GatewayEventBatcher.fromTuple(["asset1", "value", 10, null] as Object[])
+
+        then: "the event should have no timestamp"
+        event != null
+        event.timestamp == 0L
+        event.value.orElse(null) == 10
+
+        and: "events without a timestamp should sort before timestamped events"
+        [event, new AttributeEvent("asset1", "value", 11, 5L)].max { it.timestamp }.value.orElse(null) == 11
+    }
+
+    def "Buffer sizes beyond a single mapped region should be rejected rather than overflow"() {
+        given: "a buffer file path"
+        def file = Files.createTempDirectory("gateway-buffer").resolve("events.bin")
+
+        when: "a 4096MB buffer is created"
+        new GatewayEventBuffer("test", file, 4096 * 1024L * 1024L, 0, null)
+
+        then: "it should be rejected"
+        thrown(IllegalArgumentException)
+
+        cleanup:
+        Files.deleteIfExists(file)
+    }
+}
@@ -13,6 +13,7 @@ import org.openremote.manager.agent.AgentService
 import org.openremote.manager.asset.AssetProcessingService
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.event.ClientEventService
+import org.openremote.manager.event.EventTypeConverters
 import org.openremote.manager.gateway.GatewayClientService
 import org.openremote.manager.gateway.GatewayConnector
 import org.openremote.manager.gateway.GatewayService
@@ -1037,12 +1038,202 @@ class GatewayTest extends Specification implements ManagerContainerTrait {
         }
     }
 
+    def "Gateway asset sync with batch responses received out of order"() {
+
+        given: "the container environment is started"
+        def conditions = new PollingConditions(timeout: 15, delay: 0.2)
+        def container = startContainer(defaultConfig(), defaultServices())
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def gatewayService = container.getService(GatewayService.class)
+        def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
+
+        and: "a gateway asset hierarchy that spans several batches (5 buildings, 25 floors and 75 rooms)"
+        List<Asset> assets = []
+        IntStream.rangeClosed(1, 5).forEach { i ->
+            def building = new BuildingAsset("Sync Building $i").setId(UniqueIdentifierGenerator.generateId()).setRealm(MASTER_REALM)
+            building.path = (String[])[building.id]
+            assets.add(building)
+            IntStream.rangeClosed(1, 5).forEach { j ->
+                def floor = new ThingAsset("Sync Building $i Floor $j").setId(UniqueIdentifierGenerator.generateId()).setParentId(building.id).setRealm(MASTER_REALM)
+                floor.path = (String[])[floor.id, building.id]
+                assets.add(floor)
+                IntStream.rangeClosed(1, 3).forEach { k ->
+                    def room = new RoomAsset("Sync Building $i Floor $j Room $k").setId(UniqueIdentifierGenerator.generateId()).setParentId(floor.id).setRealm(MASTER_REALM)
+                    room.path = (String[])[room.id, floor.id, building.id]
+                    assets.add(room)
+                }
+            }
+        }
+        // Send children before parents to check the sync re-orders the assets
+        Collections.reverse(assets)
+
+        when: "a gateway is provisioned in this manager"
+        GatewayAsset gateway = assetStorageService.merge(new GatewayAsset("Test sync gateway")
+            .setRealm(managerTestSetup.realmBuildingName))
+
+        then: "the gateway credentials should have been created"
+        conditions.eventually {
+            gateway = assetStorageService.find(gateway.getId(), true) as GatewayAsset
+            assert !isNullOrEmpty(gateway.getClientId().orElse(""))
+            assert !isNullOrEmpty(gateway.getClientSecret().orElse(""))
+            assert gatewayService.gatewayConnectorMap.get(gateway.getId().toLowerCase(Locale.ROOT)) != null
+        }
+
+        when: "the gateway client connects"
+        List<String> clientReceivedMessages = []
+        def gatewayClient = new WebsocketIOClient<String>(
+            new URIBuilder("ws://127.0.0.1:$serverPort/websocket/events?Realm=$managerTestSetup.realmBuildingName").build(),
+            null,
+            new OAuthClientCredentialsGrant("http://127.0.0.1:$serverPort/auth/realms/$managerTestSetup.realmBuildingName/protocol/openid-connect/token",
+                gateway.getClientId().orElse(""),
+                gateway.getClientSecret().orElse(""),
+                null).setBasicAuthHeader(true))
+        gatewayClient.setEncoderDecoderProvider({
+            [new AbstractNettyIOClient.MessageToMessageDecoder<String>(String.class, gatewayClient)].toArray(new ChannelHandler[0])
+        })
+        gatewayClient.addMessageConsumer({
+            message -> clientReceivedMessages.add(message)
+        })
+        gatewayClient.connect()
+        Map<String, ReadAssetsEvent> batchRequests = [:]
+        def getBatchRequests = {
+            new ArrayList<>(clientReceivedMessages).findAll { it.startsWith(EventRequestResponseWrapper.MESSAGE_PREFIX) && it.contains("read-assets") }.collect {
+                ValueUtil.JSON.readValue(it.substring(EventRequestResponseWrapper.MESSAGE_PREFIX.length()), EventRequestResponseWrapper.class)
+            }.findAll { it.messageId.startsWith(GatewayConnector.ASSET_READ_EVENT_NAME_BATCH) }.collectEntries {
+                [(it.messageId): it.event as ReadAssetsEvent]
+            }
+        }
+        def sendBatch = { String messageId ->
+            def ids = batchRequests[messageId].assetQuery.ids as List
+            def reply = new EventRequestResponseWrapper(messageId, new AssetsEvent(assets.findAll { ids.contains(it.id) }))
+            gatewayClient.sendMessage(EventRequestResponseWrapper.MESSAGE_PREFIX + ValueUtil.asJSON(reply).get())
+        }
+        def getSyncedAssets = {
+            assetStorageService.findAll(new AssetQuery().select(new AssetQuery.Select().excludeAttributes()).parents(gateway.getId()).recursive(true))
+        }
+
+        then: "the manager should request the gateway assets"
+        conditions.eventually {
+            assert clientReceivedMessages.any { it.startsWith(EventRequestResponseWrapper.MESSAGE_PREFIX) && it.contains(GatewayConnector.ASSET_READ_EVENT_NAME_INITIAL) }
+        }
+
+        when: "the gateway replies with its assets"
+        def initialReply = new EventRequestResponseWrapper(GatewayConnector.ASSET_READ_EVENT_NAME_INITIAL, new AssetsEvent(assets))
+        gatewayClient.sendMessage(EventRequestResponseWrapper.MESSAGE_PREFIX + ValueUtil.asJSON(initialReply).get())
+
+        then: "only the first batch should be requested until the gateway has responded"
+        conditions.eventually {
+            batchRequests = getBatchRequests()
+            assert batchRequests.keySet() == [GatewayConnector.ASSET_READ_EVENT_NAME_BATCH + "0"] as Set
+        }
+
+        when: "the gateway returns the first batch"
+        sendBatch(GatewayConnector.ASSET_READ_EVENT_NAME_BATCH + "0")
+
+        then: "the first batch should be merged and the next batches requested concurrently"
+        conditions.eventually {
+            batchRequests = getBatchRequests()
+            assert batchRequests.size() == 1 + GatewayConnector.SYNC_MAX_BATCHES_IN_FLIGHT
+            assert getSyncedAssets().size() == GatewayConnector.SYNC_ASSET_BATCH_SIZE
+        }
+
+        when: "the gateway returns the outstanding batches in reverse order except the earliest"
+        def inFlightMessageIds = batchRequests.keySet().findAll { it != GatewayConnector.ASSET_READ_EVENT_NAME_BATCH + "0" }.sort { Integer.parseInt(it.substring(GatewayConnector.ASSET_READ_EVENT_NAME_BATCH.length())) }
+        inFlightMessageIds.drop(1).reverse().each { sendBatch(it) }
+
+        then: "the later batches should be held until the earlier batch has been merged"
+        conditions.eventually {
+            batchRequests = getBatchRequests()
+            assert batchRequests.size() == Math.ceil(assets.size() / GatewayConnector.SYNC_ASSET_BATCH_SIZE)
+        }
+        new PollingConditions(timeout: 2, initialDelay: 1).eventually {
+            assert getSyncedAssets().size() == GatewayConnector.SYNC_ASSET_BATCH_SIZE
+        }
+
+        when: "the gateway returns the earliest outstanding batch and the final batch"
+        sendBatch(inFlightMessageIds.first())
+        batchRequests.keySet().findAll { !inFlightMessageIds.contains(it) && it != GatewayConnector.ASSET_READ_EVENT_NAME_BATCH + "0" }.each { sendBatch(it) }
+
+        then: "the sync should complete with all assets in the correct hierarchy"
+        conditions.eventually {
+            def gatewayConnector = gatewayService.gatewayConnectorMap.get(gateway.getId().toLowerCase(Locale.ROOT))
+            assert !gatewayConnector.isInitialSyncInProgress()
+            def syncedAssets = getSyncedAssets()
+            assert syncedAssets.size() == assets.size()
+            assets.each { asset ->
+                def syncedAsset = syncedAssets.find { it.id == mapAssetId(gateway.getId(), asset.id, false) }
+                assert syncedAsset != null
+                assert syncedAsset.parentId == (asset.parentId != null ? mapAssetId(gateway.getId(), asset.parentId, false) : gateway.getId())
+            }
+        }
+
+        cleanup: "the gateway is removed"
+        if (gatewayClient != null) {
+            gatewayClient.disconnect()
+            gatewayClient.removeAllMessageConsumers()
+        }
+        if (gateway != null) {
+            assetStorageService.delete([gateway.id])
+        }
+    }
+
     /**
      * This test requires a manager instance with tunnelling configured, so is manual for now unfortunately.
      * Change the test url and key path to match the instance to connect to.
      * Recommended to run profile/dev-proxy.yml profile.
      */
     @Ignore
+    def "Verify the streamed read assets response is parsed by the central manager"() {
+
+        given: "the container environment is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def gatewayClientService = container.getService(GatewayClientService.class)
+        def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
+        def query = new AssetQuery().realm(new RealmPredicate(managerTestSetup.realmBuildingName)).recursive(true)
+        def expectedAssets = assetStorageService.findAll(query)
+
+        expect: "the realm to have some assets"
+        !expectedAssets.isEmpty()
+
+        when: "the read assets response is streamed"
+        def message = gatewayClientService.readAssetsResponseToString("readAssets", query, 1234L)
+
+        and: "it is parsed in the same way as the central manager parses gateway messages"
+        def wrapper = new EventTypeConverters().readRequestResponse(message, null)
+
+        then: "it should contain the wrapper fields and every asset"
+        message.startsWith(EventRequestResponseWrapper.MESSAGE_PREFIX)
+        wrapper.messageId == "readAssets"
+        wrapper.event instanceof AssetsEvent
+        def assetsEvent = wrapper.event as AssetsEvent
+        assetsEvent.timestamp == 1234L
+        assetsEvent.assets.collect { it.id } as Set == expectedAssets.collect { it.id } as Set
+        assetsEvent.assets.size() == expectedAssets.size()
+
+        and: "each asset should be the same as when serialised without streaming"
+        def expectedAssetTrees = expectedAssets.collectEntries { [(it.id): ValueUtil.JSON.valueToTree(it)] }
+        assetsEvent.assets.every { ValueUtil.JSON.valueToTree(it) == expectedAssetTrees[it.id] }
+
+        and: "the message should be the same as the non streamed message apart from the order of the assets"
+        def messageTree = ValueUtil.JSON.readTree(message.substring(EventRequestResponseWrapper.MESSAGE_PREFIX.length()))
+        def expectedEvent = new AssetsEvent(expectedAssets)
+        expectedEvent.timestamp = 1234L
+        def expectedTree = ValueUtil.JSON.valueToTree(new EventRequestResponseWrapper<>("readAssets", expectedEvent))
+        messageTree.fieldNames().collect() == expectedTree.fieldNames().collect()
+        messageTree.get("event").fieldNames().collect() == expectedTree.get("event").fieldNames().collect()
+        messageTree.get("event").get("assets").size() == expectedTree.get("event").get("assets").size()
+
+        when: "no assets match the query"
+        message = gatewayClientService.readAssetsResponseToString("readNoAssets", new AssetQuery().ids(UniqueIdentifierGenerator.generateId()), 5678L)
+        wrapper = new EventTypeConverters().readRequestResponse(message, null)
+
+        then: "an empty response should be parsed"
+        wrapper.messageId == "readNoAssets"
+        (wrapper.event as AssetsEvent).assets.isEmpty()
+        (wrapper.event as AssetsEvent).timestamp == 5678L
+    }
+
     def "Verify gateway tunnel factory"() {
         given: "an ssh private key and the URL of a manager instance with tunnelling configured"
         def keyPath = Paths.get(System.getProperty("user.home"), ".ssh", "test_key")
@@ -3,11 +3,13 @@ package org.openremote.test.model
 import com.fasterxml.jackson.databind.node.ObjectNode
 import jakarta.ws.rs.WebApplicationException
 import org.jboss.resteasy.api.validation.ViolationReport
+import org.openremote.agent.protocol.AgentModelProvider
 import org.openremote.agent.protocol.http.HTTPAgentLink
 import org.openremote.agent.protocol.simulator.SimulatorAgent
 import org.openremote.agent.protocol.velbus.VelbusTCPAgent
 import org.openremote.container.persistence.PersistenceService
 import org.openremote.container.timer.TimerService
+import org.openremote.model.StandardModelProvider
 import org.openremote.model.util.UniqueIdentifierGenerator
 import org.openremote.manager.asset.AssetModelService
 import org.openremote.manager.asset.AssetStorageService
@@ -29,6 +31,7 @@ import org.openremote.model.util.ValueUtil
 import org.openremote.model.value.*
 import org.openremote.model.value.impl.ColourRGB
 import org.openremote.setup.integration.ManagerTestSetup
+import org.openremote.setup.integration.model.TestAssetModelProvider
 import org.openremote.setup.integration.model.asset.ModelTestAsset
 import org.openremote.setup.integration.protocol.http.HTTPServerTestAgent
 import org.openremote.test.ManagerContainerTrait
@@ -77,6 +80,28 @@ class AssetModelTest extends Specification implements ManagerContainerTrait {
         assetModelResource = getClientApiTarget(serverUri(serverPort), MASTER_REALM).proxy(AssetModelResource.class)
     }
 
+    def "Check the build time asset model index matches a classpath scan"() {
+
+        when: "the asset classes of each auto scanned model provider are loaded from the index and by scanning"
+        def providers = ValueUtil.getModelProviders().findAll { it.useAutoScan() }
+        def indexed = providers.collectEntries { [(it.class), ValueUtil.getIndexedAssetClasses(it)] }
+        def scanned = providers.collectEntries { [(it.class), ValueUtil.scanAssetClasses(it)] }
+
+        then: "the model, agent and test setup should have an index"
+        indexed[StandardModelProvider.class] != null
+        indexed[AgentModelProvider.class] != null
+        indexed[TestAssetModelProvider.class] != null
+
+        and: "each index should contain the same asset classes as the scan"
+        providers.every { provider ->
+            def indexedClasses = indexed[provider.class]
+            indexedClasses == null || indexedClasses == scanned[provider.class]
+        }
+        indexed[StandardModelProvider.class].contains(ThingAsset.class)
+        indexed[AgentModelProvider.class].contains(SimulatorAgent.class)
+        indexed[TestAssetModelProvider.class].contains(ModelTestAsset.class)
+    }
+
     def "Check AttributeMap equality checking"() {
         given: "required services"
         def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
@@ -92,6 +117,56 @@ class AssetModelTest extends Specification implements ManagerContainerTrait {
         Objects.equals(attributes1, attributes2)
     }
 
+    def "Check asset copy is equal to but independent of the original"() {
+        given: "an asset with 50 attributes of various value types and meta"
+        def asset = new ThingAsset("Copy test asset")
+            .setRealm(MASTER_REALM)
+            .setId(UniqueIdentifierGenerator.generateId())
+        asset.createdOn = new Date()
+        (0..<10).each {
+            asset.getAttributes().addOrReplace(
+                new Attribute<>("number" + it, ValueType.NUMBER, it * 1.5d).addMeta(new MetaItem<>(MetaItemType.LABEL, "Number " + it)),
+                new Attribute<>("text" + it, ValueType.TEXT, "text" + it),
+                new Attribute<>("boolean" + it, ValueType.BOOLEAN, it % 2 == 0).addMeta(new MetaItem<>(MetaItemType.READ_ONLY, true)),
+                new Attribute<>("textArray" + it, ValueType.TEXT.asArray(), ["a" + it, "b" + it] as String[]),
+                new Attribute<>("json" + it, ValueType.JSON_OBJECT, ValueUtil.parse("{\"a\": {\"b\": " + it + "}}", ValueType.ObjectMap.class).orElseThrow())
+            )
+        }
+
+        when: "the asset is copied"
+        def copy = asset.copy()
+
+        then: "the copy should be equal to the original"
+        copy !== asset
+        copy.class == asset.class
+        copy.id == asset.id
+        copy.realm == asset.realm
+        copy.createdOn == asset.createdOn
+        copy.attributes.size() == asset.attributes.size()
+        copy.attributes.values().every { copyAttribute ->
+            def attribute = asset.getAttribute(copyAttribute.name).orElseThrow()
+            copyAttribute !== attribute && copyAttribute.deepEquals(attribute) && copyAttribute.type == attribute.type
+        }
+        ValueUtil.asJSON(copy).orElseThrow() == ValueUtil.asJSON(asset).orElseThrow()
+
+        and: "ValueUtil.clone should use the explicit copy"
+        ValueUtil.asJSON(ValueUtil.clone(asset)).orElseThrow() == ValueUtil.asJSON(asset).orElseThrow()
+
+        when: "mutable values and meta of the copy are modified"
+        copy.getAttribute("textArray0").orElseThrow().value.get()[0] = "changed"
+        ((ValueType.ObjectMap)copy.getAttribute("json0").orElseThrow().value.get()).put("c", 1)
+        copy.getAttribute("number0").orElseThrow().getMeta().addOrReplace(new MetaItem<>(MetaItemType.LABEL, "Changed"))
+        copy.getAttribute("text0").orElseThrow().setValue("changed")
+        copy.getAttributes().remove("boolean0")
+
+        then: "the original should be unchanged"
+        asset.getAttribute("textArray0").orElseThrow().value.get()[0] == "a0"
+        !((ValueType.ObjectMap)asset.getAttribute("json0").orElseThrow().value.get()).containsKey("c")
+        asset.getAttribute("number0").orElseThrow().getMetaValue(MetaItemType.LABEL).orElse(null) == "Number 0"
+        asset.getAttribute("text0").orElseThrow().value.orElse(null) == "text0"
+        asset.getAttributes().has("boolean0")
+    }
+
     def "Serialise/Deserialise asset and attribute events and test validation"() {
 
         given: "an authenticated admin user"
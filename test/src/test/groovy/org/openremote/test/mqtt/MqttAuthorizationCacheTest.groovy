@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.mqtt
+
+import org.apache.activemq.artemis.spi.core.protocol.RemotingConnection
+import org.openremote.manager.mqtt.ActiveMQORSecurityManager
+import org.openremote.manager.mqtt.MQTTBrokerService
+import org.openremote.manager.security.RemotingConnectionPrincipal
+import org.openremote.model.PersistenceEvent
+import org.openremote.model.asset.impl.ThingAsset
+import org.openremote.model.attribute.Attribute
+import org.openremote.model.attribute.AttributeMap
+import org.openremote.model.attribute.MetaItem
+import spock.lang.Specification
+
+import javax.security.auth.Subject
+
+import static org.openremote.model.value.MetaItemType.ACCESS_PUBLIC_WRITE
+import static org.openremote.model.value.MetaItemType.ACCESS_RESTRICTED_READ
+import static org.openremote.model.value.MetaItemType.READ_ONLY
+import static org.openremote.model.value.ValueType.NUMBER
+
+class MqttAuthorizationCacheTest extends Specification {
+
+    Subject subject(String connectionID) {
+        def subject = new Subject()
+        def connection = Stub(RemotingConnection) {
+            getID() >> connectionID
+            getSubject() >> subject
+        }
+        subject.principals.add(new RemotingConnectionPrincipal(connection))
+        return subject
+    }
+
+    def "Check cached grants are removed when an asset is invalidated"() {
+
+        given: "a security manager that counts authorisation checks"
+        def checks = 0
+        def securityManager = Spy(ActiveMQORSecurityManager, constructorArgs: [null, null, null, "test", null, 100, 60000L]) {
+            verifyRights(_, _, _) >> { checks++; true }
+        }
+        def subject1 = subject("connection1")
+        def subject2 = subject("connection2")
+        def asset1Address = "master.client1.writeattributevalue.temp.asset1AAAAAAAAAAAAAAAA"
+        def asset2Address = "master.client1.writeattributevalue.temp.asset2AAAAAAAAAAAAAAAA"
+
+        when: "the same addresses are authorised twice"
+        2.times {
+            securityManager.verifyRightsCached(subject1, asset1Address, true)
+            securityManager.verifyRightsCached(subject1, asset2Address, true)
+            securityManager.verifyRightsCached(subject2, asset1Address, false)
+        }
+
+        then: "the second round should be served from the cache"
+        checks == 3
+
+        when: "one of the assets is invalidated"
+        securityManager.invalidateAuthorizationCache("asset1AAAAAAAAAAAAAAAA")
+        securityManager.verifyRightsCached(subject1, asset1Address, true)
+        securityManager.verifyRightsCached(subject1, asset2Address, true)
+        securityManager.verifyRightsCached(subject2, asset1Address, false)
+
+        then: "only the grants of that asset should be checked again for every connection"
+        checks == 5
+
+        when: "a connection is invalidated"
+        securityManager.invalidateAuthorizationCache(subject1.principals.find { it instanceof RemotingConnectionPrincipal }.remotingConnection)
+        securityManager.verifyRightsCached(subject1, asset2Address, true)
+        securityManager.verifyRightsCached(subject2, asset1Address, false)
+
+        then: "only grants of that connection should be checked again"
+        checks == 6
+    }
+
+    def "Check denied requests are not cached"() {
+
+        given: "a security manager that denies requests"
+        def checks = 0
+        def securityManager = Spy(ActiveMQORSecurityManager, constructorArgs: [null, null, null, "test", null, 100, 60000L]) {
+            verifyRights(_, _, _) >> { checks++; false }
+        }
+        def subject = subject("connection1")
+
+        when: "the same address is authorised twice"
+        def results = (1..2).collect { securityManager.verifyRightsCached(subject, "master.client1.writeattributevalue.temp.asset1", true) }
+
+        then: "both should be checked and denied"
+        results == [false, false]
+        checks == 2
+    }
+
+    def "Check attribute access changes are detected"() {
+
+        given: "an asset with a publicly writable attribute"
+        def asset = new ThingAsset("Test")
+        def attributes = { Attribute<?>... attrs -> new AttributeMap(attrs as List) }
+        def publicWrite = new Attribute<>("temp", NUMBER).addMeta(new MetaItem<>(ACCESS_PUBLIC_WRITE, true))
+        def readOnly = new Attribute<>("temp", NUMBER).addMeta(new MetaItem<>(READ_ONLY, true))
+        def restrictedRead = new Attribute<>("other", NUMBER).addMeta(new MetaItem<>(ACCESS_RESTRICTED_READ, true))
+        def update = { AttributeMap previous, AttributeMap current ->
+            new PersistenceEvent<>(PersistenceEvent.Cause.UPDATE, asset, ["attributes"] as String[], [current] as Object[], [previous] as Object[])
+        }
+
+        expect: "changes to access meta to be detected"
+        MQTTBrokerService.hasAccessChanged(update(attributes(publicWrite), attributes(readOnly)))
+        MQTTBrokerService.hasAccessChanged(update(attributes(publicWrite), attributes()))
+        MQTTBrokerService.hasAccessChanged(update(attributes(), attributes(restrictedRead)))
+
+        and: "other changes to be ignored"
+        !MQTTBrokerService.hasAccessChanged(update(attributes(readOnly), attributes(readOnly, new Attribute<>("new", NUMBER))))
+        !MQTTBrokerService.hasAccessChanged(update(attributes(publicWrite), attributes(new Attribute<>("temp", NUMBER, 10d).addMeta(new MetaItem<>(ACCESS_PUBLIC_WRITE, true)))))
+        !MQTTBrokerService.hasAccessChanged(new PersistenceEvent<>(PersistenceEvent.Cause.UPDATE, asset, ["name"] as String[], ["New"] as Object[], ["Test"] as Object[]))
+    }
+}
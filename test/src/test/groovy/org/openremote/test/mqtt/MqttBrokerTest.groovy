@@ -2,8 +2,12 @@ package org.openremote.test.mqtt
 
 import com.hivemq.client.internal.mqtt.mqtt3.Mqtt3AsyncClientView
 import com.hivemq.client.internal.mqtt.mqtt3.Mqtt3ClientConfigView
+import com.hivemq.client.mqtt.MqttClient
 import com.hivemq.client.mqtt.MqttClientConfig
 import com.hivemq.client.mqtt.MqttClientConnectionConfig
+import com.hivemq.client.mqtt.datatypes.MqttQos
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish
 import io.netty.channel.socket.SocketChannel
 import org.openremote.agent.protocol.mqtt.MQTTLastWill
 import org.openremote.agent.protocol.mqtt.MQTTMessage
@@ -32,6 +36,10 @@ import org.openremote.setup.integration.ManagerTestSetup
 import spock.lang.Specification
 import spock.util.concurrent.PollingConditions
 
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
 import java.util.function.Consumer
 
 import static org.openremote.container.util.MapAccess.getInteger
@@ -240,6 +248,26 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         }
         receivedEvents.clear()
 
+        when: "a mqtt client publishes multiple attribute values in a single message"
+        topic = "${keycloakTestSetup.realmBuilding.name}/$mqttClientId/$DefaultMQTTHandler.ATTRIBUTE_VALUES_WRITE_TOPIC".toString()
+        payload = ValueUtil.asJSON([
+            [managerTestSetup.apartment1HallwayId, "motionSensor", 80],
+            [managerTestSetup.apartment1HallwayId, "lights", false],
+            [managerTestSetup.apartment1HallwayId, "doesNotExist", 1]
+        ]).orElse(null)
+        client.sendMessage(new MQTTMessage<String>(topic, payload))
+
+        then: "the values of the authorised attributes should be updated and the client should have received the events"
+        conditions.eventually {
+            def asset = assetStorageService.find(managerTestSetup.apartment1HallwayId)
+            assert asset.getAttribute("motionSensor").get().value.orElse(0) == 80d
+            assert !asset.getAttribute("lights").get().value.orElse(true)
+            assert receivedEvents.size() == 2
+            assert receivedEvents.every { it instanceof AttributeEvent && (it as AttributeEvent).id == managerTestSetup.apartment1HallwayId }
+            assert receivedEvents.collect { (it as AttributeEvent).name } as Set == ["motionSensor", "lights"] as Set
+        }
+        receivedEvents.clear()
+
         when: "a mqtt client unsubscribes from an asset"
         topic = "${keycloakTestSetup.realmBuilding.name}/$mqttClientId/$DefaultMQTTHandler.ATTRIBUTE_TOPIC/$MQTTHandler.TOKEN_SINGLE_LEVEL_WILDCARD/$managerTestSetup.apartment1HallwayId".toString()
         client.removeMessageConsumer(topic, eventConsumer)
@@ -691,4 +719,97 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
             newClient.disconnect()
         }
     }
+
+    def "Mqtt shared subscription test"() {
+        given: "the container environment is started"
+        def conditions = new PollingConditions(timeout: 15, initialDelay: 0.1, delay: 0.2)
+        def container = startContainer(defaultConfig(), defaultServices())
+        def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def mqttBrokerService = container.getService(MQTTBrokerService.class)
+        def agentService = container.getService(AgentService.class)
+        def defaultMQTTHandler = mqttBrokerService.getCustomHandlers().find { it instanceof DefaultMQTTHandler } as DefaultMQTTHandler
+        def username = keycloakTestSetup.realmBuilding.name + ":" + keycloakTestSetup.serviceUser.username
+        def password = keycloakTestSetup.serviceUser.secret
+        def mqttHost = getString(container.getConfig(), MQTT_SERVER_LISTEN_HOST, "0.0.0.0")
+        def mqttPort = getInteger(container.getConfig(), MQTT_SERVER_LISTEN_PORT, 1883)
+        def group = "sharedgroup"
+        def topic = "\$share/$group/${keycloakTestSetup.realmBuilding.name}/$group/$DefaultMQTTHandler.ATTRIBUTE_VALUE_TOPIC/motionSensor/$managerTestSetup.apartment1HallwayId".toString()
+        Map<String, List<String>> receivedValues = new ConcurrentHashMap<>()
+        List<Mqtt5AsyncClient> clients = (1..2).collect {
+            MqttClient.builder()
+                .useMqttVersion5()
+                .identifier(UniqueIdentifierGenerator.generateId())
+                .serverHost(mqttHost)
+                .serverPort(mqttPort)
+                .simpleAuth().username(username).password(password.getBytes(StandardCharsets.UTF_8)).applySimpleAuth()
+                .buildAsync()
+        }
+
+        when: "two MQTT 5 clients of the same user subscribe to the same shared subscription group"
+        clients.each { client ->
+            def clientId = client.config.clientIdentifier.get().toString()
+            receivedValues[clientId] = new CopyOnWriteArrayList<String>()
+            client.connect().get(10, TimeUnit.SECONDS)
+            client.subscribeWith()
+                .topicFilter(topic)
+                .qos(MqttQos.AT_LEAST_ONCE)
+                .callback({ Mqtt5Publish publish -> receivedValues[clientId].add(new String(publish.payloadAsBytes, StandardCharsets.UTF_8)) } as Consumer<Mqtt5Publish>)
+                .send()
+                .get(10, TimeUnit.SECONDS)
+        }
+
+        then: "a single shared subscription with both members should exist"
+        conditions.eventually {
+            synchronized (defaultMQTTHandler.sharedSubscriptionMap) {
+                assert defaultMQTTHandler.sharedSubscriptionMap.size() == 1
+                assert defaultMQTTHandler.sharedSubscriptionMap.values()[0].connectionIDs.size() == 2
+            }
+        }
+
+        when: "the subscribed attribute changes"
+        ((SimulatorProtocol)agentService.getProtocolInstance(managerTestSetup.apartment1ServiceAgentId)).updateSensor(new AttributeEvent(managerTestSetup.apartment1HallwayId, "motionSensor", 60))
+
+        then: "the value should be delivered to exactly one member of the group"
+        conditions.eventually {
+            assert receivedValues.values().sum { it.size() } == 1
+            assert receivedValues.values().flatten() == ["60"]
+        }
+        new PollingConditions(initialDelay: 1, delay: 1, timeout: 5).eventually {
+            assert receivedValues.values().sum { it.size() } == 1
+        }
+
+        when: "one member leaves the group and the attribute changes again"
+        receivedValues.values().each { it.clear() }
+        clients[0].disconnect().get(10, TimeUnit.SECONDS)
+        conditions.eventually {
+            synchronized (defaultMQTTHandler.sharedSubscriptionMap) {
+                assert defaultMQTTHandler.sharedSubscriptionMap.values()[0].connectionIDs.size() == 1
+            }
+        }
+        ((SimulatorProtocol)agentService.getProtocolInstance(managerTestSetup.apartment1ServiceAgentId)).updateSensor(new AttributeEvent(managerTestSetup.apartment1HallwayId, "motionSensor", 70))
+
+        then: "the remaining member should receive the value"
+        conditions.eventually {
+            assert receivedValues[clients[1].config.clientIdentifier.get().toString()] == ["70"]
+        }
+
+        when: "the last member leaves the group"
+        clients[1].disconnect().get(10, TimeUnit.SECONDS)
+
+        then: "the shared subscription should be removed"
+        conditions.eventually {
+            synchronized (defaultMQTTHandler.sharedSubscriptionMap) {
+                assert defaultMQTTHandler.sharedSubscriptionMap.isEmpty()
+            }
+            assert mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id).isEmpty()
+        }
+
+        cleanup: "disconnect the clients"
+        clients?.each { client ->
+            if (client.state.connected) {
+                client.disconnect()
+            }
+        }
+    }
 }
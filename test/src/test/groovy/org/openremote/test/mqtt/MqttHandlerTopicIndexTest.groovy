@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.mqtt
+
+import org.openremote.manager.mqtt.MQTTHandler
+import org.openremote.manager.mqtt.MQTTHandlerTopicIndex
+import org.openremote.manager.mqtt.Topic
+import spock.lang.Specification
+
+class MqttHandlerTopicIndexTest extends Specification {
+
+    /**
+     * Brute force MQTT topic filter matching used as the reference for the index
+     */
+    static boolean patternMatches(String pattern, Topic topic) {
+        def patternTokens = Topic.parse(pattern).tokens
+        def tokens = topic.tokens
+        for (int i = 0; i < patternTokens.size(); i++) {
+            def patternToken = patternTokens[i]
+            if (patternToken == Topic.MULTI_LEVEL_TOKEN) {
+                return true
+            }
+            if (i >= tokens.size()) {
+                return false
+            }
+            if (patternToken != Topic.SINGLE_LEVEL_TOKEN && !patternToken.equalsIgnoreCase(tokens[i])) {
+                return false
+            }
+        }
+        return patternTokens.size() == tokens.size()
+    }
+
+    MQTTHandler handler(Collection<String> patterns) {
+        Stub(MQTTHandler) {
+            getTopicPatterns() >> patterns
+        }
+    }
+
+    def "Check handlers are found by their topic patterns"() {
+
+        given: "handlers with literal, wildcard and no patterns"
+        def attributeHandler = handler(["+/+/attribute/+/#", "+/+/writeattributevalue/+/+"])
+        def assetHandler = handler(["+/+/asset/#"])
+        def exactHandler = handler(["master/client/operations/status"])
+        def catchAllHandler = handler(null)
+        def rootHandler = handler(["#"])
+        def index = new MQTTHandlerTopicIndex([attributeHandler, assetHandler, exactHandler, catchAllHandler, rootHandler])
+
+        expect: "the candidates to be returned in handler order"
+        index.getCandidates(Topic.parse("master/client/attribute/asset1/temp")) == [attributeHandler, catchAllHandler, rootHandler]
+        index.getCandidates(Topic.parse("master/client/writeattributevalue/temp/asset1")) == [attributeHandler, catchAllHandler, rootHandler]
+        index.getCandidates(Topic.parse("master/client/asset/asset1")) == [assetHandler, catchAllHandler, rootHandler]
+        index.getCandidates(Topic.parse("MASTER/Client/Operations/STATUS")) == [exactHandler, catchAllHandler, rootHandler]
+
+        and: "a multi level wildcard to also match the parent level"
+        index.getCandidates(Topic.parse("master/client/attribute/asset1")) == [attributeHandler, catchAllHandler, rootHandler]
+        index.getCandidates(Topic.parse("master/client/asset")) == [assetHandler, catchAllHandler, rootHandler]
+
+        and: "single level wildcards to only match a single level"
+        index.getCandidates(Topic.parse("master/client/writeattributevalue/temp")) == [catchAllHandler, rootHandler]
+        index.getCandidates(Topic.parse("master/client/writeattributevalue/temp/asset1/extra")) == [catchAllHandler, rootHandler]
+    }
+
+    def "Check an index without any patterns returns no candidates"() {
+
+        given: "an index of handlers that all declare patterns"
+        def index = new MQTTHandlerTopicIndex([handler(["a/b"]), handler(["a/+/c"])])
+
+        expect: "topics that don't match any pattern to have no candidates"
+        index.getCandidates(Topic.parse("b/a")).isEmpty()
+        index.getCandidates(Topic.parse("a/b/c/d")).isEmpty()
+        index.getCandidates(Topic.parse("a")).isEmpty()
+    }
+
+    def "Check the index returns the same handlers as matching every pattern"() {
+
+        given: "handlers with random patterns"
+        def random = new Random(1234)
+        def words = ["master", "client", "attribute", "asset", "a", "b"]
+        def randomToken = { boolean allowWildcard ->
+            def r = random.nextInt(10)
+            allowWildcard && r == 0 ? Topic.SINGLE_LEVEL_TOKEN : words[random.nextInt(words.size())]
+        }
+        def handlerPatterns = (1..30).collect {
+            (1..(1 + random.nextInt(3))).collect {
+                def levels = 1 + random.nextInt(5)
+                def tokens = (1..levels).collect { randomToken(true) }
+                if (random.nextInt(4) == 0) {
+                    tokens[levels - 1] = Topic.MULTI_LEVEL_TOKEN
+                }
+                tokens.join(Topic.SEPARATOR)
+            }
+        }
+        def handlers = handlerPatterns.collect { handler(it) }
+        def index = new MQTTHandlerTopicIndex(handlers)
+
+        when: "random topics are looked up in the index and matched against every pattern"
+        def mismatches = (1..2000).collect {
+            def topic = Topic.parse((1..(1 + random.nextInt(6))).collect { randomToken(false) }.join(Topic.SEPARATOR))
+            def expected = (0..<handlers.size()).findAll { i -> handlerPatterns[i].any { patternMatches(it, topic) } }.collect { handlers[it] }
+            index.getCandidates(topic) == expected ? null : topic
+        }.findAll { it != null }
+
+        then: "the candidates should always be the same"
+        mismatches.isEmpty()
+    }
+}
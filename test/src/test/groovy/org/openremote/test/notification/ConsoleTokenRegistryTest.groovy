@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.notification
+
+import org.openremote.manager.notification.ConsoleTokenRegistry
+import spock.lang.Specification
+
+class ConsoleTokenRegistryTest extends Specification {
+
+    def "Check consoles are indexed by realm and user only whilst they have a token"() {
+
+        given: "a registry with consoles in two realms"
+        def registry = new ConsoleTokenRegistry()
+        registry.putConsole("console1", "realm1", "token1", 1L)
+        registry.putConsole("console2", "realm1", null, 1L)
+        registry.putConsole("console3", "realm2", "token3", 1L)
+        registry.addUserLink("user1", "console1")
+        registry.addUserLink("user1", "console2")
+        registry.addUserLink("user2", "console3")
+        registry.addUserLink("user2", "console1")
+
+        expect: "only consoles with a token to be returned"
+        registry.size() == 3
+        registry.isConsole("console2")
+        registry.getRealmConsoleIds("realm1") == ["console1"]
+        registry.getRealmConsoleIds("realm2") == ["console3"]
+        registry.getUserConsoleIds(["user1"]) == ["console1"]
+        registry.getUserConsoleIds(["user1", "user2"]) as Set == ["console1", "console3"] as Set
+        registry.getConsoleUserIds("console1") == ["user1", "user2"] as Set
+
+        when: "a console gets a token and another loses its token"
+        registry.updateToken("console2", "token2", 2L)
+        registry.updateToken("console1", null, 2L)
+
+        then: "the realm and user lookups should follow"
+        registry.getRealmConsoleIds("realm1") == ["console2"]
+        registry.getUserConsoleIds(["user1"]) == ["console2"]
+        registry.getToken("console1") == null
+        registry.getToken("console2") == "token2"
+
+        when: "a user link is removed and a console is removed"
+        registry.removeUserLink("user1", "console2")
+        def removedToken = registry.removeConsole("console3")
+
+        then: "the console should no longer be found"
+        removedToken == "token3"
+        !registry.isConsole("console3")
+        registry.getUserConsoleIds(["user1", "user2"]).isEmpty()
+        registry.getRealmConsoleIds("realm2").isEmpty()
+        registry.getConsoleUserIds("console2").isEmpty()
+        registry.getConsoleUserIds("console1") == ["user2"] as Set
+    }
+
+    def "Check outdated token updates are ignored"() {
+
+        given: "a registered console"
+        def registry = new ConsoleTokenRegistry()
+        registry.putConsole("console1", "realm1", "token1", 10L)
+
+        when: "an older token update arrives"
+        def previousToken = registry.putConsole("console1", "realm1", "oldToken", 5L)
+
+        then: "the update should be ignored"
+        previousToken == null
+        registry.getToken("console1") == "token1"
+
+        when: "a newer token update arrives"
+        previousToken = registry.putConsole("console1", "realm1", "token2", 20L)
+
+        then: "the token should be updated"
+        previousToken == "token1"
+        registry.getToken("console1") == "token2"
+
+        and: "updating the token of an unknown console should be rejected"
+        !registry.updateToken("unknown", "token", 30L)
+        !registry.isConsole("unknown")
+    }
+
+    def "Check user links that arrive before the console are applied when the console is added"() {
+
+        given: "a registry with a controllable clock"
+        def now = 1000L
+        def registry = new ConsoleTokenRegistry({ now })
+
+        when: "links arrive before their consoles"
+        registry.addUserLink("user1", "console1")
+        registry.addUserLink("user2", "console1")
+        registry.addUserLink("user3", "console1")
+        registry.removeUserLink("user3", "console1")
+        registry.addUserLink("user1", "nonConsoleAsset")
+
+        then: "the assets should not be known consoles"
+        !registry.isConsole("console1")
+        registry.getUserConsoleIds(["user1", "user2"]).isEmpty()
+
+        when: "the console is added"
+        registry.putConsole("console1", "realm1", "token1", 1L)
+
+        then: "the pending links should be applied"
+        registry.getConsoleUserIds("console1") == ["user1", "user2"] as Set
+        registry.getUserConsoleIds(["user1"]) == ["console1"]
+
+        when: "a link arrives and the console is added after the pending links have expired"
+        registry.addUserLink("user1", "console2")
+        now += ConsoleTokenRegistry.PENDING_USER_LINK_EXPIRY_MILLIS + 1
+        registry.putConsole("console2", "realm1", "token2", 1L)
+
+        then: "the expired link should not be applied"
+        registry.getConsoleUserIds("console2").isEmpty()
+
+        and: "expired links to other assets should have been discarded"
+        registry.pendingUserLinks.isEmpty()
+    }
+}
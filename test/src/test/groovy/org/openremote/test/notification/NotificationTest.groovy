@@ -3,6 +3,7 @@ package org.openremote.test.notification
 
 import com.fasterxml.jackson.databind.node.TextNode
 import jakarta.mail.Message
+import jakarta.mail.MessagingException
 import jakarta.mail.internet.InternetAddress
 import jakarta.ws.rs.WebApplicationException
 import org.openremote.manager.asset.AssetProcessingService
@@ -35,6 +36,8 @@ import java.time.temporal.ChronoUnit
 import java.util.concurrent.TimeUnit
 
 import static org.openremote.container.util.MapAccess.getString
+import static org.openremote.manager.notification.NotificationService.OR_NOTIFICATION_DELIVERY_ATTEMPTS_DEFAULT
+import static org.openremote.manager.notification.NotificationService.OR_NOTIFICATION_RETRY_DELAY_MILLIS
 import static org.openremote.manager.security.ManagerIdentityProvider.OR_ADMIN_PASSWORD
 import static org.openremote.manager.security.ManagerIdentityProvider.OR_ADMIN_PASSWORD_DEFAULT
 import static org.openremote.model.Constants.*
@@ -64,7 +67,7 @@ class NotificationTest extends Specification implements ManagerContainerTrait {
         def throwPushHandlerException = false
         PushNotificationHandler mockPushNotificationHandler = Spy(pushNotificationHandler)
         mockPushNotificationHandler.isValid() >> true
-        mockPushNotificationHandler.sendMessage(_ as Long, _ as Notification.Source, _ as String, _ as Notification.Target, _ as AbstractNotificationMessage) >> {
+        mockPushNotificationHandler.createMessage(_ as Long, _ as Notification.Source, _ as String, _ as Notification.Target, _ as AbstractNotificationMessage) >> {
             id, source, sourceId, target, message ->
                 if (throwPushHandlerException) {
                     throw new Exception("Failed to send notification")
@@ -79,6 +82,9 @@ class NotificationTest extends Specification implements ManagerContainerTrait {
         mockPushNotificationHandler.sendMessage(_ as com.google.firebase.messaging.Message) >> {
             message -> return NotificationSendResult.success()
         }
+        mockPushNotificationHandler.sendFCMMessages(_ as List) >> {
+            List messages -> return messages.collect { NotificationSendResult.success() }
+        }
 
         notificationService.notificationHandlerMap.put(pushNotificationHandler.getTypeName(), mockPushNotificationHandler)
 
@@ -341,7 +347,7 @@ class NotificationTest extends Specification implements ManagerContainerTrait {
 
         then: "the cached FCM token should be removed from the handler"
         conditions.eventually {
-            assert pushNotificationHandler.consoleFCMTokenMap.get(testUser3Console1Asset.id) == null
+            assert pushNotificationHandler.consoleRegistry.getToken(testUser3Console1Asset.id) == null
         }
 
         when: "the admin user sends a notification to a user linked to the console without an FCM token"
@@ -386,6 +392,7 @@ class NotificationTest extends Specification implements ManagerContainerTrait {
                 pushMessage.getTitle() == "Test Action" &&
                         pushMessage.getBody() == "Click to cancel" &&
                         pushMessage.getAction() != null &&
+                        pushMessage.getTarget() == "23123213ad2313b0897efd" &&
                         n.deliveredOn == null &&
                         n.acknowledgedOn == null
             }
@@ -591,7 +598,7 @@ class NotificationTest extends Specification implements ManagerContainerTrait {
 
         given: "the container environment is started with the mock handler"
         def conditions = new PollingConditions(timeout: 10, delay: 0.2)
-        def container = startContainer(defaultConfig() << [(OR_EMAIL_X_HEADERS): "Test 1: Hello World 1\nTest2: Hello World 2"], defaultServices())
+        def container = startContainer(defaultConfig() << [(OR_EMAIL_X_HEADERS): "Test 1: Hello World 1\nTest2: Hello World 2", (OR_NOTIFICATION_RETRY_DELAY_MILLIS): "100"], defaultServices())
         def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
         def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
         def notificationService = container.getService(NotificationService.class)
@@ -604,9 +611,14 @@ class NotificationTest extends Specification implements ManagerContainerTrait {
         EmailNotificationHandler mockEmailNotificationHandler = Spy(emailNotificationHandler)
         mockEmailNotificationHandler.isValid() >> true
 
-        // Log email and assume sent to SMTP Server
+        // Log email and assume sent to SMTP Server unless the SMTP server should be unavailable
+        def smtpFailures = 0
         mockEmailNotificationHandler.sendMessage(_ as Message) >> {
             Message email ->
+                if (smtpFailures > 0) {
+                    smtpFailures--
+                    throw new MessagingException("Connection refused")
+                }
                 sentEmails << email
                 return NotificationSendResult.success()
         }
@@ -671,6 +683,40 @@ class NotificationTest extends Specification implements ManagerContainerTrait {
             assert sentEmails.any { it.getSubject() == "Test Custom" && it.getRecipients(Message.RecipientType.BCC).any{(it as InternetAddress).address == "custom4@openremote.local"}}
         }
 
+        when: "the SMTP server is unavailable for the first delivery attempt of an email"
+        sentEmails.clear()
+        smtpFailures = 1
+        ((EmailNotificationMessage)notification.message).subject = "Test Retry"
+        notification.setTargets([new Notification.Target(Notification.TargetType.CUSTOM, "retry@openremote.local")])
+        notificationService.sendNotification(notification)
+
+        then: "the email should be sent by the next delivery attempt"
+        conditions.eventually {
+            assert sentEmails.size() == 1
+            assert sentEmails[0].getSubject() == "Test Retry"
+            def sentNotification = notificationService.getNotifications(null, [EmailNotificationMessage.TYPE], null, null, null, null, null)
+                .find { (it.message as EmailNotificationMessage).subject == "Test Retry" }
+            assert sentNotification.deliveryAttempts == 2
+            assert sentNotification.error == null
+            assert !sentNotification.deadLetter
+        }
+
+        when: "the SMTP server is unavailable for all delivery attempts of an email"
+        sentEmails.clear()
+        smtpFailures = 100
+        ((EmailNotificationMessage)notification.message).subject = "Test Dead Letter"
+        notificationService.sendNotification(notification)
+
+        then: "the notification should become a dead letter once all delivery attempts have failed"
+        conditions.eventually {
+            def sentNotification = notificationService.getNotifications(null, [EmailNotificationMessage.TYPE], null, null, null, null, null)
+                .find { (it.message as EmailNotificationMessage).subject == "Test Dead Letter" }
+            assert sentNotification.deliveryAttempts == OR_NOTIFICATION_DELIVERY_ATTEMPTS_DEFAULT
+            assert sentNotification.error == "Connection refused"
+            assert sentNotification.deadLetter
+            assert sentEmails.isEmpty()
+        }
+
         cleanup: "the mock is removed"
         notificationService.notificationHandlerMap.put(emailNotificationHandler.getTypeName(), emailNotificationHandler)
     }
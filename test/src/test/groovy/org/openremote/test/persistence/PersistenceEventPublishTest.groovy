@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.persistence
+
+import org.apache.camel.builder.RouteBuilder
+import org.openremote.container.message.MessageBrokerService
+import org.openremote.container.persistence.PersistenceService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.event.ClientEventService
+import org.openremote.manager.mqtt.ActiveMQORSecurityManager
+import org.openremote.manager.mqtt.MQTTBrokerService
+import org.openremote.manager.setup.SetupService
+import org.openremote.model.PersistenceEvent
+import org.openremote.model.asset.AssetEvent
+import org.openremote.model.asset.impl.ThingAsset
+import org.openremote.model.util.UniqueIdentifierGenerator
+import org.openremote.setup.integration.KeycloakTestSetup
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+import static org.openremote.container.persistence.PersistenceService.HEADER_ENTITY_TYPE
+import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC
+import static org.openremote.container.persistence.PersistenceService.getPersistenceEvents
+
+class PersistenceEventPublishTest extends Specification implements ManagerContainerTrait {
+
+    def "Check bulk persistence events are published as coalesced batches that consumers handle"() {
+
+        given: "the container environment is started"
+        def conditions = new PollingConditions(timeout: 30, delay: 0.2)
+        def container = startContainer(defaultConfig(), defaultServices())
+        def persistenceService = container.getService(PersistenceService.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def clientEventService = container.getService(ClientEventService.class)
+        def mqttBrokerService = container.getService(MQTTBrokerService.class)
+        def messageBrokerService = container.getService(MessageBrokerService.class)
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def realm = keycloakTestSetup.realmBuilding.name
+
+        and: "the exchanges of the persistence topic are recorded"
+        List<Map> exchanges = new CopyOnWriteArrayList<>()
+        messageBrokerService.getContext().addRoutes(new RouteBuilder() {
+            @Override
+            void configure() throws Exception {
+                from(PERSISTENCE_TOPIC)
+                    .routeId("Persistence-PublishTest")
+                    .process { exchange ->
+                        exchanges.add([
+                            entityType: exchange.getIn().getHeader(HEADER_ENTITY_TYPE, Class.class),
+                            batch: exchange.getIn().getBody() instanceof List,
+                            events: getPersistenceEvents(exchange)
+                        ])
+                    }
+            }
+        })
+
+        and: "the MQTT authorisation cache invalidations are recorded"
+        def securityManager = mqttBrokerService.securityManager
+        List<String> invalidatedAssetIds = new CopyOnWriteArrayList<>()
+        mqttBrokerService.securityManager = Spy(ActiveMQORSecurityManager, constructorArgs: [null, null, null, "test", null, 100, 60000L]) {
+            invalidateAuthorizationCache(_ as String) >> { String assetId -> invalidatedAssetIds.add(assetId) }
+        }
+
+        and: "the asset events are recorded"
+        List<String> createdAssetIds = new CopyOnWriteArrayList<>()
+        def subscriptionId = clientEventService.addInternalSubscription(AssetEvent.class, null, { assetEvent ->
+            if (assetEvent.cause == AssetEvent.Cause.CREATE) {
+                createdAssetIds.add(assetEvent.id)
+            }
+        })
+
+        when: "more events than the persistence topic queue holds are published for two entity types"
+        def events = (1..30000).collect {
+            new PersistenceEvent<>(PersistenceEvent.Cause.CREATE, "Persistence event " + it, null, null, null)
+        }
+        events.addAll((1..10).collect {
+            new PersistenceEvent<>(PersistenceEvent.Cause.CREATE, it, null, null, null)
+        })
+        persistenceService.publishPersistenceEvents(events, 1000)
+
+        then: "one batch per chunk and entity type should be published and no event should be dropped"
+        conditions.eventually {
+            assert exchanges.count { it.entityType == String.class } == 30
+            assert exchanges.count { it.entityType == Integer.class } == 1
+            assert exchanges.every { it.batch }
+            assert exchanges.findAll { it.entityType == String.class }.collectMany { it.events } == events.subList(0, 30000)
+            assert exchanges.find { it.entityType == Integer.class }.events == events.subList(30000, 30010)
+        }
+
+        when: "a batch of asset delete events is published"
+        exchanges.clear()
+        def deletedAssets = (1..3).collect {
+            new ThingAsset("Deleted Thing " + it).setId(UniqueIdentifierGenerator.generateId()).setRealm(realm)
+        }
+        persistenceService.publishPersistenceEvents(deletedAssets.collect {
+            new PersistenceEvent<>(PersistenceEvent.Cause.DELETE, it, null, null, null)
+        }, 1000)
+
+        then: "the MQTT broker should invalidate the cached grants of every asset in the batch"
+        conditions.eventually {
+            assert exchanges.size() == 1
+            assert invalidatedAssetIds.containsAll(deletedAssets.collect { it.id })
+        }
+
+        when: "assets are bulk merged"
+        exchanges.clear()
+        def assets = (1..2500).collect {
+            new ThingAsset("Bulk Thing " + it).setRealm(realm)
+        }
+        assetStorageService.bulkMerge(assets, false, null)
+
+        then: "the create events should be published as batches of the bulk merge batch size"
+        conditions.eventually {
+            def assetExchanges = exchanges.findAll { it.entityType == ThingAsset.class }
+            assert assetExchanges.size() == 3
+            assert assetExchanges.every { it.batch }
+            assert assetExchanges.collect { it.events.size() }.sort() == [500, 1000, 1000]
+            assert assetExchanges.collectMany { it.events }.collect { it.entity.id } as Set == assets.collect { it.id } as Set
+        }
+
+        and: "an asset event should be published for every created asset"
+        conditions.eventually {
+            assert createdAssetIds.containsAll(assets.collect { it.id })
+        }
+
+        cleanup: "the recording is removed"
+        clientEventService.cancelInternalSubscription(subscriptionId)
+        mqttBrokerService.securityManager = securityManager
+        messageBrokerService.getContext().getRouteController().stopRoute("Persistence-PublishTest")
+        messageBrokerService.getContext().removeRoute("Persistence-PublishTest")
+        if (assets != null) {
+            assets.collate(1000).each { batch ->
+                assetStorageService.delete(batch.collect { it.id })
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.persistence
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.openremote.container.persistence.PersistenceService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.model.query.AssetQuery
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import static org.openremote.container.persistence.PersistenceService.OR_DB_REPLICA_CHECK_INTERVAL_MILLIS
+import static org.openremote.container.persistence.PersistenceService.OR_DB_REPLICA_HOST
+import static org.openremote.container.persistence.PersistenceService.OR_DB_REPLICA_PORT
+
+class PersistenceReplicaTest extends Specification implements ManagerContainerTrait {
+
+    def "Check only explicit read only work is routed to the read replica"() {
+
+        given: "the primary database is also configured as the read replica"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+        def container = startContainer(defaultConfig() << [
+            (OR_DB_REPLICA_HOST): "localhost",
+            (OR_DB_REPLICA_CHECK_INTERVAL_MILLIS): "200"
+        ], defaultServices())
+        def persistenceService = container.getService(PersistenceService.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+
+        and: "read counters are attached (metrics are disabled in tests)"
+        def meterRegistry = new SimpleMeterRegistry()
+        persistenceService.replicaReadCounter = meterRegistry.counter("replica")
+        persistenceService.primaryReadCounter = meterRegistry.counter("primary")
+
+        expect: "the replica to become usable"
+        conditions.eventually {
+            assert persistenceService.isReplicaUsable()
+        }
+
+        when: "read only work is executed"
+        def readOnly = persistenceService.doReturningReadOnlyTransaction { em ->
+            em.createNativeQuery("show transaction_read_only").getSingleResult()
+        }
+
+        then: "it should run on a read only connection to the replica"
+        readOnly == "on"
+        persistenceService.replicaReadCounter.count() == 1d
+        persistenceService.primaryReadCounter.count() == 0d
+
+        when: "normal work is executed"
+        def readWrite = persistenceService.doReturningTransaction { em ->
+            em.createNativeQuery("show transaction_read_only").getSingleResult()
+        }
+
+        then: "it should run on a writable connection to the primary"
+        readWrite == "off"
+        persistenceService.replicaReadCounter.count() == 1d
+
+        when: "assets are queried and counted through the asset storage service"
+        def assets = assetStorageService.findAll(new AssetQuery())
+        def count = assetStorageService.count(new AssetQuery())
+
+        then: "the reads should not be routed to the replica"
+        !assets.isEmpty()
+        count == assets.size()
+        persistenceService.replicaReadCounter.count() == 1d
+        persistenceService.primaryReadCounter.count() == 0d
+
+        when: "assets are explicitly streamed for reporting"
+        def streamed = []
+        assetStorageService.streamAll(new AssetQuery(), true, { streamed.add(it) })
+
+        then: "the read should be routed to the replica"
+        streamed.size() == assets.size()
+        persistenceService.replicaReadCounter.count() == 2d
+    }
+
+    def "Check read only work falls back to the primary when the read replica is unreachable"() {
+
+        given: "an unreachable read replica"
+        def container = startContainer(defaultConfig() << [
+            (OR_DB_REPLICA_HOST): "localhost",
+            (OR_DB_REPLICA_PORT): "1",
+            (OR_DB_REPLICA_CHECK_INTERVAL_MILLIS): "200"
+        ], defaultServices())
+        def persistenceService = container.getService(PersistenceService.class)
+
+        when: "read only work is executed"
+        def readOnly = persistenceService.doReturningReadOnlyTransaction { em ->
+            em.createNativeQuery("show transaction_read_only").getSingleResult()
+        }
+
+        then: "it should be served by the primary"
+        !persistenceService.isReplicaUsable()
+        readOnly == "off"
+    }
+}
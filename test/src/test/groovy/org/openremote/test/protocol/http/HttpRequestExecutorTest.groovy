@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.protocol.http
+
+import jakarta.ws.rs.core.Response
+import org.openremote.container.web.HttpRequestExecutor
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class HttpRequestExecutorTest extends Specification {
+
+    def "Check requests over the per host limit are queued and rejected once the queue is full"() {
+
+        given: "an executor allowing one in-flight and two queued requests per host"
+        def executor = new HttpRequestExecutor("Test", 4, 1, 2, 10000, 5, 10000, null)
+        def uri = URI.create("http://localhost:8080/test")
+        def release = new CountDownLatch(1)
+        def order = Collections.synchronizedList([])
+
+        when: "four requests are submitted to the same host whilst the first is blocked"
+        def first = executor.submit(uri, {
+            release.await(10, TimeUnit.SECONDS)
+            order.add(1)
+            Response.ok().build()
+        })
+        def second = executor.submit(uri, { order.add(2); Response.ok().build() })
+        def third = executor.submit(uri, { order.add(3); Response.ok().build() })
+        def fourth = executor.submit(uri, { order.add(4); Response.ok().build() })
+
+        then: "the request over the queue capacity is rejected and the queued requests are waiting"
+        fourth.isCompletedExceptionally()
+        !second.isDone()
+        !third.isDone()
+
+        when: "a request to another host is submitted"
+        def other = executor.submit(URI.create("http://otherhost/test"), { Response.ok().build() })
+
+        then: "it is not held up by the first host"
+        other.get(5, TimeUnit.SECONDS).status == 200
+
+        when: "the in-flight request completes"
+        release.countDown()
+
+        then: "the queued requests are executed in order"
+        first.get(5, TimeUnit.SECONDS).status == 200
+        second.get(5, TimeUnit.SECONDS).status == 200
+        third.get(5, TimeUnit.SECONDS).status == 200
+        order == [1, 2, 3]
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "Check a queued request that times out is never started"() {
+
+        given: "an executor allowing one in-flight request per host and a short request timeout"
+        def executor = new HttpRequestExecutor("Test", 4, 1, 10, 200, 5, 10000, null)
+        def uri = URI.create("http://localhost:8080/test")
+        def release = new CountDownLatch(1)
+        def queuedStarted = new AtomicInteger()
+
+        when: "a request is queued behind a blocked request"
+        def first = executor.submit(uri, {
+            release.await(10, TimeUnit.SECONDS)
+            Response.ok().build()
+        })
+        def queued = executor.submit(uri, { queuedStarted.incrementAndGet(); Response.ok().build() })
+        queued.get(5, TimeUnit.SECONDS)
+
+        then: "the queued request times out"
+        thrown(ExecutionException)
+
+        when: "the blocked request completes and another request is made"
+        release.countDown()
+        def next = executor.submit(uri, { Response.ok().build() })
+
+        then: "the timed out request was skipped and the host is still usable"
+        next.get(5, TimeUnit.SECONDS).status == 200
+        queuedStarted.get() == 0
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "Check the half open circuit only allows a single trial request"() {
+
+        given: "an executor that opens the circuit after two failures for a short period"
+        def executor = new HttpRequestExecutor("Test", 4, 4, 10, 10000, 2, 100, null)
+        def uri = URI.create("http://localhost:8080/test")
+
+        when: "two requests fail"
+        2.times {
+            try {
+                executor.submit(uri, { Response.serverError().build() }).get(5, TimeUnit.SECONDS)
+            } catch (ignored) {
+            }
+        }
+        def rejected = executor.submit(uri, { Response.ok().build() })
+
+        then: "the circuit is open"
+        rejected.isCompletedExceptionally()
+
+        when: "the open period elapses and a slow trial request is made followed by another request"
+        Thread.sleep(200)
+        def release = new CountDownLatch(1)
+        def trial = executor.submit(uri, {
+            release.await(10, TimeUnit.SECONDS)
+            Response.ok().build()
+        })
+        executor.submit(uri, { Response.ok().build() }).get(5, TimeUnit.SECONDS)
+
+        then: "only the trial request is allowed through"
+        def ex = thrown(ExecutionException)
+        ex.cause instanceof RejectedExecutionException
+
+        when: "the trial request succeeds"
+        release.countDown()
+
+        then: "the circuit closes"
+        trial.get(5, TimeUnit.SECONDS).status == 200
+        executor.submit(uri, { Response.ok().build() }).get(5, TimeUnit.SECONDS).status == 200
+
+        cleanup:
+        executor.shutdown()
+    }
+}
@@ -7,6 +7,16 @@ import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.rules.RulesFacts
 import org.openremote.manager.rules.RulesService
 import org.openremote.manager.rules.facade.AssetsFacade
+import org.openremote.model.asset.Asset
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.query.LogicGroup
+import org.openremote.model.query.filter.AttributePredicate
+import org.openremote.model.query.filter.LocationAttributePredicate
+import org.openremote.model.query.filter.RadialGeofencePredicate
+import org.openremote.model.query.filter.RectangularGeofencePredicate
+import org.openremote.model.rules.geofence.GeofenceEvent
 import spock.lang.Specification
 
 import java.util.concurrent.TimeUnit
@@ -390,4 +400,75 @@ class BasicRulesFactsTest extends Specification {
         assert !rulesFacts.hasTemporaryFacts()
         assert rulesFacts.match(AnonFact).count() == 0
     }
+
+    def "Handle geofence event facts"() {
+
+        given: "an asset inside some geofences"
+        def radial = new RadialGeofencePredicate(100, 10d, 20d)
+        def rectangular = new RectangularGeofencePredicate(9.9999d, 19.9999d, 10.0001d, 20.0001d)
+        def location = { double lng, double lat ->
+            new AttributeEvent("asset1", Asset.LOCATION.name, new GeoJSONPoint(lng, lat), timerService.currentTimeMillis)
+        }
+        rulesFacts.putAssetState(location(20d, 10d))
+        rulesFacts.insertGeofenceEvents(5000, location(20d, 10d))
+
+        when: "the rules use the geofences"
+        rulesFacts.startTrackingLocationRules()
+        rulesFacts.matchAssetState(new AssetQuery().attributes(new LogicGroup<AttributePredicate>(
+            new LocationAttributePredicate(radial),
+            new LocationAttributePredicate(rectangular),
+            new LocationAttributePredicate(new RadialGeofencePredicate(100, 10d, 20d, true)))))
+        rulesFacts.stopTrackingLocationRules()
+
+        then: "the non negated geofences should be tracked without inserting any events"
+        assert rulesFacts.geofenceTracker.geofenceCount == 2
+        assert rulesFacts.match(GeofenceEvent).count() == 0
+
+        when: "the asset moves out of the rectangular geofence"
+        rulesFacts.insertGeofenceEvents(5000, location(20.0005d, 10d))
+
+        then: "an exit event should be inserted for the rectangular geofence"
+        assert rulesFacts.hasTemporaryFacts()
+        assert rulesFacts.match(GeofenceEvent).count() == 1
+        def exitEvent = rulesFacts.matchFirst(GeofenceEvent).get()
+        assert exitEvent.assetId == "asset1"
+        assert exitEvent.geofence == rectangular
+        assert exitEvent.exit
+
+        when: "the asset moves within the radial geofence or another attribute changes"
+        rulesFacts.insertGeofenceEvents(5000, location(20.0006d, 10d))
+        rulesFacts.insertGeofenceEvents(5000, new AttributeEvent("asset1", "other", new GeoJSONPoint(0d, 0d), timerService.currentTimeMillis))
+
+        then: "no more events should be inserted"
+        assert rulesFacts.match(GeofenceEvent).count() == 1
+
+        when: "the asset moves back into the rectangular geofence"
+        timerService.getClock().advanceTime(3, TimeUnit.SECONDS)
+        rulesFacts.insertGeofenceEvents(5000, location(20d, 10d))
+
+        then: "an enter event should be inserted for the rectangular geofence"
+        assert rulesFacts.match(GeofenceEvent, { it.enter && it.geofence == rectangular }).count() == 1
+
+        when: "the asset moves out of both geofences"
+        rulesFacts.insertGeofenceEvents(5000, location(0d, 0d))
+
+        then: "an exit event should be inserted for each geofence"
+        assert rulesFacts.match(GeofenceEvent, { it.exit }).count() == 3
+        assert rulesFacts.match(GeofenceEvent, { it.exit && it.geofence == radial }).count() == 1
+
+        when: "the clock is advanced and temporary facts are expired"
+        timerService.getClock().advanceTime(3, TimeUnit.SECONDS)
+        rulesFacts.removeExpiredTemporaryFacts()
+
+        then: "the first event should have expired"
+        assert rulesFacts.match(GeofenceEvent).count() == 3
+        assert rulesFacts.match(GeofenceEvent, { it.exit && it.geofence == rectangular }).count() == 1
+
+        when: "the clock is advanced and temporary facts are expired"
+        timerService.getClock().advanceTime(6, TimeUnit.SECONDS)
+        rulesFacts.removeExpiredTemporaryFacts()
+
+        then: "all events should have expired"
+        assert rulesFacts.match(GeofenceEvent).count() == 0
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.rules
+
+import org.openremote.manager.notification.NotificationService
+import org.openremote.manager.rules.RulesEngine
+import org.openremote.manager.rules.geofence.ORConsoleGeofenceAssetAdapter
+import org.openremote.model.notification.Notification
+import org.openremote.model.notification.PushNotificationMessage
+import org.openremote.model.query.filter.GeofencePredicate
+import org.openremote.model.query.filter.RadialGeofencePredicate
+import org.openremote.model.rules.geofence.GeofenceDefinition
+import org.openremote.model.util.ValueUtil
+import spock.lang.Specification
+
+import java.util.concurrent.ScheduledExecutorService
+
+import static org.openremote.manager.rules.geofence.ORConsoleGeofenceAssetAdapter.*
+
+class ConsoleGeofenceAdapterTest extends Specification {
+
+    def radial1 = new RadialGeofencePredicate(100, 10d, 20d)
+    def radial2 = new RadialGeofencePredicate(200, 11d, 21d)
+    def radial3 = new RadialGeofencePredicate(300, 12d, 22d)
+    def adapter = new ORConsoleGeofenceAssetAdapter()
+    int deltaMaxLength = NOTIFY_GEOFENCE_DELTA_MAX_LENGTH
+
+    def setup() {
+        adapter.consoleIdRealmMap.put("console1", "master")
+    }
+
+    def cleanup() {
+        ORConsoleGeofenceAssetAdapter.NOTIFY_GEOFENCE_DELTA_MAX_LENGTH = deltaMaxLength
+    }
+
+    def setGeofences(GeofencePredicate... geofences) {
+        adapter.assetLocationPredicatesMap.put("console1", new RulesEngine.AssetLocationPredicates("console1", geofences as Set))
+    }
+
+    def geofenceId(GeofencePredicate geofence) {
+        adapter.locationPredicateToGeofenceDefinition("console1", geofence).id
+    }
+
+    Map<String, Object> getRefreshData() {
+        synchronized (adapter.notifyAssets) {
+            return adapter.getGeofenceRefreshData("console1")
+        }
+    }
+
+    static List<String> addedIds(Map<String, Object> data) {
+        ValueUtil.parse(data[GEOFENCES_ADDED_KEY] as String, GeofenceDefinition[].class).get().collect { it.id }
+    }
+
+    static List<String> removedIds(Map<String, Object> data) {
+        ValueUtil.parse(data[GEOFENCES_REMOVED_KEY] as String, String[].class).get() as List
+    }
+
+    def "Check the refresh notification contains the changes since the console last fetched its geofences"() {
+
+        given: "a console with some geofences"
+        setGeofences(radial1, radial2)
+
+        expect: "only the action to be sent before the console has fetched its geofences"
+        refreshData == [action: GEOFENCE_REFRESH_ACTION]
+
+        when: "the console fetches its geofences and then the geofences change"
+        adapter.getAssetGeofences("console1")
+        setGeofences(radial2, radial3)
+        def data = refreshData
+
+        then: "the changes should be sent"
+        data.action == GEOFENCE_REFRESH_ACTION
+        addedIds(data) == [geofenceId(radial3)]
+        removedIds(data) == [geofenceId(radial1)]
+
+        when: "the geofences change again before the console fetches its geofences"
+        setGeofences(radial2)
+        data = refreshData
+
+        then: "the changes should still be relative to the fetched geofences including the removal of the notified geofence"
+        addedIds(data).isEmpty()
+        removedIds(data) as Set == [geofenceId(radial1), geofenceId(radial3)] as Set
+
+        and: "the changes should not depend on whether the previous notification was delivered"
+        removedIds(refreshData) as Set == [geofenceId(radial1), geofenceId(radial3)] as Set
+
+        when: "the console fetches its geofences"
+        adapter.getAssetGeofences("console1")
+        data = refreshData
+
+        then: "there should be no changes"
+        addedIds(data).isEmpty()
+        removedIds(data).isEmpty()
+
+        when: "the changes are too large for a push notification"
+        ORConsoleGeofenceAssetAdapter.NOTIFY_GEOFENCE_DELTA_MAX_LENGTH = 10
+        setGeofences(radial1, radial2, radial3)
+
+        then: "only the action should be sent"
+        refreshData == [action: GEOFENCE_REFRESH_ACTION]
+
+        when: "the changes fit again"
+        ORConsoleGeofenceAssetAdapter.NOTIFY_GEOFENCE_DELTA_MAX_LENGTH = deltaMaxLength
+
+        then: "the changes should be relative to the fetched geofences"
+        addedIds(refreshData) as Set == [geofenceId(radial1), geofenceId(radial3)] as Set
+    }
+
+    def "Check the refresh notification changes are determined when the notification is sent"() {
+
+        given: "a console that has fetched its geofences"
+        List<Runnable> scheduled = []
+        List<Notification> sent = []
+        adapter.executorService = Stub(ScheduledExecutorService) {
+            schedule(_ as Runnable, _, _) >> { args -> scheduled.add(args[0] as Runnable); null }
+        }
+        adapter.notificationService = Stub(NotificationService) {
+            sendNotification(_ as Notification) >> { args -> sent.add(args[0] as Notification); true }
+        }
+        setGeofences(radial1)
+        adapter.getAssetGeofences("console1")
+
+        when: "the geofences change and the notification is scheduled"
+        setGeofences(radial1, radial2)
+        synchronized (adapter.notifyAssets) {
+            adapter.notifyAssetGeofencesChanged(["console1"] as Set)
+        }
+
+        and: "the console fetches its geofences before the notification is sent"
+        adapter.getAssetGeofences("console1")
+        scheduled.each { it.run() }
+
+        then: "the notification should contain no changes"
+        sent.size() == 1
+        sent[0].targets[0].id == "console1"
+        def data = ((PushNotificationMessage) sent[0].message).data
+        addedIds(data).isEmpty()
+        removedIds(data).isEmpty()
+    }
+}
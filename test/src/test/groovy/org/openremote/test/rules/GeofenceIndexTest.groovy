@@ -0,0 +1,228 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.rules
+
+import org.geotools.referencing.GeodeticCalculator
+import org.openremote.manager.rules.geofence.GeoGridIndex
+import org.openremote.model.asset.Asset
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.query.LogicGroup
+import org.openremote.model.query.filter.AttributePredicate
+import org.openremote.model.query.filter.LocationAttributePredicate
+import org.openremote.model.query.filter.NameValuePredicate
+import org.openremote.model.query.filter.RadialGeofencePredicate
+import org.openremote.model.query.filter.RectangularGeofencePredicate
+import org.openremote.model.query.filter.StringPredicate
+import spock.lang.Specification
+
+class GeofenceIndexTest extends Specification {
+
+    static double[] randomBox(Random random, double maxSize) {
+        double lng = random.nextDouble() * 360d - 180d
+        double lat = random.nextDouble() * 180d - 90d
+        return [lng, lat, lng + random.nextDouble() * maxSize, lat + random.nextDouble() * maxSize] as double[]
+    }
+
+    static Set<Integer> bruteForce(Map<Integer, double[]> boxes, double[] queryBox) {
+        double[] query = normalise(queryBox)
+        return boxes.findAll { key, box ->
+            double[] entry = normalise(box)
+            entry[0] <= query[2] && entry[2] >= query[0] && entry[1] <= query[3] && entry[3] >= query[1]
+        }.keySet()
+    }
+
+    static double[] normalise(double[] box) {
+        return [
+            Math.max(-180d, Math.min(box[0], box[2])),
+            Math.max(-90d, Math.min(box[1], box[3])),
+            Math.min(180d, Math.max(box[0], box[2])),
+            Math.min(90d, Math.max(box[1], box[3]))
+        ] as double[]
+    }
+
+    def "Check the grid index returns the same entries as a brute force search"() {
+
+        given: "an index with points, small boxes and oversized boxes including some at the poles and antimeridian"
+        def random = new Random(1234)
+        def index = new GeoGridIndex<Integer>(1d)
+        Map<Integer, double[]> boxes = [:]
+        def put = { Integer key, double[] box ->
+            boxes[key] = box
+            index.put(key, box)
+        }
+        (0..<500).each { put(it, randomBox(random, 2d)) }
+        (500..<600).each {
+            def point = randomBox(random, 0d)
+            boxes[it] = point
+            index.putPoint(it, point[0], point[1])
+        }
+        (600..<620).each { put(it, randomBox(random, 90d)) }
+        put(620, [-180d, 89.5d, 180d, 90d] as double[])
+        put(621, [179.5d, -10d, 180d, 10d] as double[])
+        put(622, [-180d, -10d, -179.5d, 10d] as double[])
+        put(623, [-200d, 80d, 200d, 100d] as double[])
+        put(624, [-180d, -90d, 180d, 90d] as double[])
+
+        when: "random queries are run including at the poles and antimeridian"
+        def queries = (0..<200).collect { randomBox(random, it % 10 == 0 ? 60d : 3d) }
+        queries.addAll([
+            [-180d, 89.9d, 180d, 90d],
+            [-180d, -90d, 180d, -89.9d],
+            [179.9d, -1d, 180d, 1d],
+            [-180d, -1d, -179.9d, 1d],
+            [170d, 85d, 190d, 95d],
+            [-180d, -90d, 180d, 90d]
+        ].collect { it as double[] })
+
+        then: "every query should match a brute force search"
+        queries.every { index.query(it) == bruteForce(boxes, it) }
+
+        and: "oversized entries should be held separately"
+        index.oversizeEntries.containsAll([620, 623, 624])
+        index.oversizeEntries.containsAll((600..<620).findAll {
+            def box = normalise(boxes[it])
+            (Math.floor(box[2] + 180d) - Math.floor(box[0] + 180d) + 1) * (Math.floor(box[3] + 90d) - Math.floor(box[1] + 90d) + 1) > 256
+        })
+
+        and: "point queries should match a brute force search"
+        (500..<600).every {
+            def point = boxes[it]
+            index.queryPoint(point[0], point[1]) == bruteForce(boxes, point)
+        }
+
+        and: "queries at the edges of the coordinate range should find the entries there"
+        index.queryPoint(0d, 90d).containsAll([620, 623, 624])
+        index.queryPoint(180d, 0d).containsAll([621, 624])
+        !index.queryPoint(180d, 0d).contains(622)
+        index.queryPoint(-180d, 0d).containsAll([622, 624])
+        !index.queryPoint(-180d, 0d).contains(621)
+
+        when: "entries are replaced and removed"
+        (0..<300).each {
+            if (it % 3 == 0) {
+                boxes.remove(it)
+                assert index.remove(it)
+            } else {
+                put(it, randomBox(random, it % 30 == 1 ? 90d : 2d))
+            }
+        }
+        boxes.remove(620)
+        index.remove(620)
+
+        then: "the index should still match a brute force search"
+        !index.remove(0)
+        index.size() == boxes.size()
+        !index.contains(620)
+        queries.every { index.query(it) == bruteForce(boxes, it) }
+
+        and: "no empty cells should be left behind"
+        index.cells.values().every { !it.isEmpty() }
+
+        when: "the index is cleared"
+        index.clear()
+
+        then: "nothing should be found"
+        index.size() == 0
+        index.query([-180d, -90d, 180d, 90d] as double[]).isEmpty()
+    }
+
+    def "Check the radial geofence bounding box contains the whole circle"() {
+
+        given: "a geodetic calculator"
+        def calculator = new GeodeticCalculator()
+        def random = new Random(4321)
+
+        expect: "every point within the radius to be inside the bounding box"
+        [
+            [0d, 0d], [51.5d, -0.1d], [-33.9d, 151.2d], [60d, 179.99d], [-60d, -179.99d], [10d, 180d], [10d, -180d],
+            [89.99d, 0d], [-89.99d, 45d], [85d, 120d], [-85d, -120d], [90d, 0d], [-90d, 0d]
+        ].every { centre ->
+            [1, 100, 5000, 100000, 1000000].every { radius ->
+                def predicate = new RadialGeofencePredicate(radius, centre[0], centre[1])
+                def box = predicate.getBoundingBox()
+                (0..<200).every {
+                    calculator.setStartingGeographicPoint(centre[1], centre[0])
+                    calculator.setDirection(random.nextDouble() * 360d - 180d, radius * Math.sqrt(random.nextDouble()))
+                    def point = calculator.getDestinationGeographicPoint()
+                    point.x >= box[0] && point.x <= box[2] && point.y >= box[1] && point.y <= box[3]
+                }
+            }
+        }
+
+        and: "a geofence at a pole to cover all longitudes"
+        new RadialGeofencePredicate(1000, 89.995d, 10d).getBoundingBox() == [-180d, 89.995d - 1000 / 110000d, 180d, 90d] as double[]
+        new RadialGeofencePredicate(1000, -90d, 10d).getBoundingBox() == [-180d, -90d, 180d, -90d + 1000 / 110000d] as double[]
+
+        and: "a geofence crossing the antimeridian to cover all longitudes"
+        new RadialGeofencePredicate(1000, 10d, 179.999d).getBoundingBox()[0] == -180d
+        new RadialGeofencePredicate(1000, 10d, 179.999d).getBoundingBox()[2] == 180d
+        new RadialGeofencePredicate(1000, 10d, -179.999d).getBoundingBox()[0] == -180d
+        new RadialGeofencePredicate(1000, 10d, -179.999d).getBoundingBox()[2] == 180d
+
+        and: "a geofence away from the poles and antimeridian to be bounded"
+        def bounded = new RadialGeofencePredicate(1000, 10d, 20d).getBoundingBox()
+        bounded[0] > 19.9d && bounded[2] < 20.1d && bounded[1] > 9.9d && bounded[3] < 10.1d
+    }
+
+    def "Check the rectangular geofence bounding box is ordered"() {
+        expect:
+        new RectangularGeofencePredicate(10d, 20d, 5d, 15d).getBoundingBox() == [15d, 5d, 20d, 10d] as double[]
+    }
+
+    def "Check only required location predicates are used to narrow a query"() {
+
+        given: "some geofences"
+        def radial = new RadialGeofencePredicate(100, 10d, 20d)
+        def rectangular = new RectangularGeofencePredicate(1d, 2d, 3d, 4d)
+
+        expect: "top level non negated location predicates of an AND group to be required"
+        LocationAttributePredicate.getRequiredLocationPredicates(new LogicGroup<AttributePredicate>(
+            new LocationAttributePredicate(radial),
+            new LocationAttributePredicate(rectangular),
+            new AttributePredicate("other", new StringPredicate("value")))) == [radial, rectangular]
+
+        and: "OR groups to have no required predicates"
+        LocationAttributePredicate.getRequiredLocationPredicates(new LogicGroup<AttributePredicate>(LogicGroup.Operator.OR,
+            new LocationAttributePredicate(radial),
+            new LocationAttributePredicate(rectangular))).isEmpty()
+
+        and: "negated geofences and negated attribute predicates to be ignored"
+        LocationAttributePredicate.getRequiredLocationPredicates(new LogicGroup<AttributePredicate>(
+            new LocationAttributePredicate(new RadialGeofencePredicate(100, 10d, 20d, true)),
+            new LocationAttributePredicate(rectangular).negate())).isEmpty()
+
+        and: "predicates on other attributes or loose name matches to be ignored"
+        LocationAttributePredicate.getRequiredLocationPredicates(new LogicGroup<AttributePredicate>(
+            new AttributePredicate("otherLocation", radial),
+            new AttributePredicate(new StringPredicate(AssetQuery.Match.BEGIN, Asset.LOCATION.name), radial),
+            new AttributePredicate(new StringPredicate(AssetQuery.Match.EXACT, false, Asset.LOCATION.name), radial),
+            new AttributePredicate(new StringPredicate(Asset.LOCATION).negate(true), radial))).isEmpty()
+
+        and: "predicates on a value path to be ignored"
+        LocationAttributePredicate.getRequiredLocationPredicates(new LogicGroup<AttributePredicate>(
+            new AttributePredicate(new StringPredicate(Asset.LOCATION), radial, false, new NameValuePredicate.Path("coordinates")))).isEmpty()
+
+        and: "nested groups to be ignored"
+        LocationAttributePredicate.getRequiredLocationPredicates(new LogicGroup<AttributePredicate>(
+            LogicGroup.Operator.AND,
+            [new LogicGroup<AttributePredicate>(new LocationAttributePredicate(radial))],
+            new LocationAttributePredicate(rectangular))) == [rectangular]
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.rules
+
+import org.openremote.manager.rules.geofence.GeofenceTracker
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.query.filter.GeofencePredicate
+import org.openremote.model.query.filter.RadialGeofencePredicate
+import org.openremote.model.query.filter.RectangularGeofencePredicate
+import org.openremote.model.rules.geofence.GeofenceEvent
+import spock.lang.Specification
+
+class GeofenceTrackerTest extends Specification {
+
+    def radial = new RadialGeofencePredicate(100, 10d, 20d)
+    def rectangular = new RectangularGeofencePredicate(9.9999d, 19.9999d, 10.0001d, 20.0001d)
+    def tracker = new GeofenceTracker()
+
+    def "Check enter and exit events are generated when an asset moves"() {
+
+        given: "some tracked geofences"
+        tracker.setGeofences([radial, rectangular, new RadialGeofencePredicate(100, 10d, 20d, true)])
+
+        expect: "the negated geofence to be ignored"
+        tracker.geofenceCount == 2
+
+        when: "an asset moves inside both geofences"
+        def events = tracker.update("asset1", new GeoJSONPoint(20d, 10d), 1000L)
+
+        then: "an enter event should be generated for each geofence"
+        events.size() == 2
+        events.every { it.enter && it.assetId == "asset1" && it.timestamp == 1000L }
+        events.collect { it.geofence } as Set == [radial, rectangular] as Set
+        tracker.getAssetGeofences("asset1") == [radial, rectangular] as Set
+
+        when: "the asset reports the same location again"
+        events = tracker.update("asset1", new GeoJSONPoint(20d, 10d), 2000L)
+
+        then: "no events should be generated"
+        events.isEmpty()
+
+        when: "the asset moves out of the rectangular geofence"
+        events = tracker.update("asset1", new GeoJSONPoint(20.0005d, 10d), 3000L)
+
+        then: "an exit event should be generated for the rectangular geofence"
+        events.size() == 1
+        events[0].type == GeofenceEvent.Type.EXIT
+        events[0].geofence == rectangular
+        tracker.getAssetGeofences("asset1") == [radial] as Set
+
+        when: "the asset location is cleared"
+        events = tracker.update("asset1", null, 4000L)
+
+        then: "an exit event should be generated for the radial geofence"
+        events.size() == 1
+        events[0].exit
+        events[0].geofence == radial
+        tracker.getAssetGeofences("asset1").isEmpty()
+
+        when: "the asset moves back inside and is then removed"
+        tracker.update("asset1", new GeoJSONPoint(20d, 10d), 5000L)
+        tracker.remove("asset1")
+
+        then: "the asset should no longer be tracked"
+        tracker.getAssetGeofences("asset1").isEmpty()
+        tracker.assetIndex.size() == 0
+        tracker.update("asset1", new GeoJSONPoint(20d, 10d), 6000L).size() == 2
+    }
+
+    def "Check changing the geofences does not generate events"() {
+
+        given: "an asset inside the geofences before they are tracked"
+        tracker.update("asset1", new GeoJSONPoint(20d, 10d), 1000L)
+
+        when: "the geofences are tracked"
+        tracker.setGeofences([radial, rectangular])
+
+        then: "the asset should be inside the geofences"
+        tracker.getAssetGeofences("asset1") == [radial, rectangular] as Set
+
+        when: "the asset moves out of the rectangular geofence"
+        def events = tracker.update("asset1", new GeoJSONPoint(20.0005d, 10d), 2000L)
+
+        then: "only an exit event should be generated"
+        events.size() == 1
+        events[0].exit
+        events[0].geofence == rectangular
+
+        when: "the radial geofence is no longer tracked"
+        tracker.setGeofences([rectangular])
+
+        then: "the asset should not be inside any tracked geofence"
+        tracker.geofenceCount == 1
+        tracker.getAssetGeofences("asset1").isEmpty()
+        tracker.update("asset1", new GeoJSONPoint(0d, 0d), 3000L).isEmpty()
+
+        when: "the geofences are cleared"
+        tracker.update("asset1", new GeoJSONPoint(20d, 10d), 4000L)
+        tracker.setGeofences(null)
+
+        then: "nothing should be tracked"
+        tracker.geofenceCount == 0
+        tracker.getAssetGeofences("asset1").isEmpty()
+        tracker.update("asset1", new GeoJSONPoint(0d, 0d), 5000L).isEmpty()
+    }
+
+    def "Check events match a brute force evaluation of every geofence"() {
+
+        given: "random geofences and assets including some near the poles and the antimeridian"
+        def random = new Random(9876)
+        def randomPoint = {
+            switch (random.nextInt(4)) {
+                case 0:
+                    return [random.nextDouble() * 0.2d + 179.8d, random.nextDouble() * 0.2d] as double[]
+                case 1:
+                    return [random.nextDouble() * 0.2d - 180d, random.nextDouble() * 0.2d] as double[]
+                case 2:
+                    return [random.nextDouble() * 360d - 180d, random.nextDouble() * 0.2d + 89.8d] as double[]
+                default:
+                    return [random.nextDouble() * 0.2d, random.nextDouble() * 0.2d] as double[]
+            }
+        }
+        List<GeofencePredicate> geofences = (0..<200).collect {
+            def point = randomPoint()
+            if (it % 2 == 0) {
+                return new RadialGeofencePredicate(random.nextInt(20000) + 1, point[1], point[0])
+            }
+            def size = random.nextDouble() * 0.1d
+            return new RectangularGeofencePredicate(point[1], point[0], Math.min(90d, point[1] + size), Math.min(180d, point[0] + size))
+        }
+        def predicates = geofences.collectEntries { [(it): it.asPredicate({ System.currentTimeMillis() })] }
+        def inside = { GeoJSONPoint location ->
+            geofences.findAll { predicates[it].test(location) } as Set
+        }
+        Map<String, GeoJSONPoint> locations = [:]
+        (0..<100).each {
+            def point = randomPoint()
+            locations["asset$it".toString()] = new GeoJSONPoint(point[0], point[1])
+            tracker.update("asset$it".toString(), locations["asset$it".toString()], 0L)
+        }
+        tracker.setGeofences(geofences)
+
+        expect: "the initial membership to match"
+        locations.every { id, location -> tracker.getAssetGeofences(id) == inside(location) }
+
+        when: "assets move randomly"
+        def mismatches = (1..2000).findAll { i ->
+            def id = "asset${random.nextInt(100)}".toString()
+            def point = randomPoint()
+            def location = new GeoJSONPoint(point[0], point[1])
+            def previous = inside(locations[id])
+            def current = inside(location)
+            locations[id] = location
+            def events = tracker.update(id, location, i)
+            def entered = events.findAll { it.enter }.collect { it.geofence } as Set
+            def exited = events.findAll { it.exit }.collect { it.geofence } as Set
+            entered != (current - previous) || exited != (previous - current) || tracker.getAssetGeofences(id) != current
+        }
+
+        then: "every move should generate the events of a brute force evaluation"
+        mismatches.isEmpty()
+    }
+}